@@ -0,0 +1,113 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * count sql 生成、表别名解析与结果集行映射
+ * 行映射基于内存 H2 数据源，每次调用读取全部 rows 行
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlUtilsBenchmark {
+
+    private static final String JOIN_SQL = "select o.id, o.city, o.amount, c.name as customer " +
+            "from orders o left join customers c on o.cid = c.id " +
+            "where o.status = 'paid' order by o.dt desc";
+
+    private static final String QUERY_SQL = "select o.id, o.city, o.amount, o.dt, o.status, o.remark from orders o";
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    private Connection connection;
+
+    private SqlUtils sqlUtils;
+
+    private Set<String> queryFromsAndJoins;
+
+    @Setup
+    public void setup() throws Exception {
+        sqlUtils = new SqlUtils();
+        queryFromsAndJoins = SqlUtils.getQueryFromsAndJoins(QUERY_SQL);
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:benchmark_" + rows + ";DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists orders (id bigint primary key, city varchar(32), amount decimal(12, 2), " +
+                    "dt timestamp, status varchar(16), remark varchar(255))");
+            statement.execute("delete from orders");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("insert into orders values (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, "city_" + (i % 50));
+                insert.setBigDecimal(3, java.math.BigDecimal.valueOf(i * 7 % 10000, 2));
+                insert.setTimestamp(4, new Timestamp(1546272000000L + i * 60000L));
+                insert.setString(5, i % 3 == 0 ? "paid" : "pending");
+                insert.setString(6, i % 5 == 0 ? null : "remark of order " + i);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table orders");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public String getCountSql() {
+        return SqlUtils.getCountSql(JOIN_SQL);
+    }
+
+    @Benchmark
+    public Set<String> getQueryFromsAndJoins() {
+        return SqlUtils.getQueryFromsAndJoins(JOIN_SQL);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getResultObjectMap() throws SQLException {
+        List<Map<String, Object>> resultList = new ArrayList<>(rows);
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(QUERY_SQL)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            while (rs.next()) {
+                resultList.add(sqlUtils.getResultObjectMap(null, rs, metaData, queryFromsAndJoins));
+            }
+        }
+        return resultList;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.core.utils;
+
+import edp.davinci.core.model.SqlEntity;
+import edp.davinci.model.SqlVariable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * view sql 模板解析与变量替换
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlParseBenchmark {
+
+    private static final String DELIMITER = "$";
+
+    private static final String SQL = "select o.id, o.city, o.amount, o.dt, c.name as customer\n" +
+            "from orders o left join customers c on o.cid = c.id\n" +
+            "-- 按城市权限过滤\n" +
+            "where o.dt >= $start$ and o.status = $status$ and (o.city in ($auth_city$))";
+
+    private SqlParseUtils sqlParseUtils;
+
+    private List<SqlVariable> variables;
+
+    private SqlEntity sqlEntity;
+
+    @Setup
+    public void setup() throws Exception {
+        sqlParseUtils = new SqlParseUtils();
+        variables = Arrays.asList(
+                variable("start", "query", "date", "'2019-01-01'"),
+                variable("status", "query", "string", "paid"),
+                variable("auth_city", "auth", "string", "beijing", "shanghai", "shenzhen"));
+        sqlEntity = sqlParseUtils.parseSql(SQL, variables, DELIMITER);
+    }
+
+    @Benchmark
+    public SqlEntity parseSql() throws Exception {
+        return sqlParseUtils.parseSql(SQL, variables, DELIMITER);
+    }
+
+    @Benchmark
+    public String replaceParams() {
+        return sqlParseUtils.replaceParams(sqlEntity.getSql(), sqlEntity.getQuaryParams(), sqlEntity.getAuthParams(), DELIMITER);
+    }
+
+    private static SqlVariable variable(String name, String type, String valueType, Object... defaultValues) {
+        SqlVariable variable = new SqlVariable();
+        variable.setName(name);
+        variable.setType(type);
+        variable.setValueType(valueType);
+        variable.setDefaultValues(new ArrayList<>(Arrays.asList(defaultValues)));
+        return variable;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.excel;
+
+import edp.core.model.QueryColumn;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * excel 行写入，与导出任务一致使用 SXSSFWorkbook
+ * 每次调用在新 sheet 中写入 ROWS 行，结果为单行耗时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SheetWriterBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private SXSSFWorkbook workbook;
+
+    private SheetContext context;
+
+    private AbstractSheetWriter writer;
+
+    private List<Map<String, Object>> dataList;
+
+    @Setup(Level.Trial)
+    public void setupData() {
+        dataList = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("id", (long) i);
+            data.put("city", "city_" + (i % 50));
+            data.put("amount", BigDecimal.valueOf(i * 7 % 10000, 2));
+            data.put("dt", new Timestamp(1546272000000L + i * 60000L));
+            data.put("status", i % 3 == 0 ? "paid" : "pending");
+            data.put("remark", i % 5 == 0 ? null : "remark of order " + i);
+            dataList.add(data);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setupWorkbook() {
+        workbook = new SXSSFWorkbook(1000);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownWorkbook() {
+        workbook.dispose();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupSheet() throws Exception {
+        context = SheetContext.SheetContextBuilder.newBuilder()
+                .withWorkbook(workbook)
+                .withSheet(workbook.createSheet())
+                .withQueryColumns(new ArrayList<>(Arrays.asList(
+                        new QueryColumn("id", "BIGINT"),
+                        new QueryColumn("city", "VARCHAR"),
+                        new QueryColumn("amount", "DECIMAL"),
+                        new QueryColumn("dt", "TIMESTAMP"),
+                        new QueryColumn("status", "VARCHAR"),
+                        new QueryColumn("remark", "VARCHAR"))))
+                .withIsTable(false)
+                .withContain(false)
+                .build();
+        writer = new AbstractSheetWriter() {
+        };
+        writer.init(context);
+        writer.writeHeader(context);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void writeLine() {
+        for (Map<String, Object> data : dataList) {
+            writer.writeLine(context, data);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import edp.davinci.core.model.SqlFilter;
+import edp.davinci.dto.viewDto.Aggregator;
+import edp.davinci.dto.viewDto.Order;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import edp.davinci.model.Source;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外层查询sql构造与过滤条件生成
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuildBenchmark {
+
+    private static final String VIEW_SQL = "select o.id, o.city, o.amount, o.dt, c.name as customer " +
+            "from orders o left join customers c on o.cid = c.id where o.status = 'paid'";
+
+    private static final String CITY_FILTER = "{\"name\":\"city\",\"type\":\"filter\",\"value\":[\"'beijing'\",\"'shanghai'\"],\"operator\":\"in\",\"sqlType\":\"VARCHAR\"}";
+
+    private static final String RELATION_FILTER = "{\"type\":\"relation\",\"value\":\"or\",\"children\":[" +
+            "{\"name\":\"amount\",\"type\":\"filter\",\"value\":100,\"operator\":\">\",\"sqlType\":\"DECIMAL\"}," +
+            "{\"name\":\"dt\",\"type\":\"filter\",\"value\":[\"2019-01-01\",\"2019-12-31\"],\"operator\":\"between\",\"sqlType\":\"DATE\"}]}";
+
+    /**
+     * 是否开启 view sql 谓词下推改写
+     */
+    @Param({"false", "true"})
+    private boolean rewrite;
+
+    private ViewServiceImpl viewService;
+
+    private Source source;
+
+    private SqlFilter relationFilter;
+
+    @Setup
+    public void setup() throws Exception {
+        viewService = new ViewServiceImpl();
+        Field field = ViewServiceImpl.class.getDeclaredField("isQueryRewriteEnable");
+        field.setAccessible(true);
+        field.setBoolean(viewService, rewrite);
+
+        source = new Source();
+        source.setConfig("{\"url\":\"jdbc:mysql://localhost:3306/davinci\",\"username\":\"root\",\"password\":\"\",\"version\":\"\"}");
+
+        relationFilter = JSON.parseObject(RELATION_FILTER, SqlFilter.class);
+    }
+
+    @Benchmark
+    public List<String> buildQuerySql() {
+        ViewExecuteParam executeParam = new ViewExecuteParam();
+        executeParam.setGroups(Arrays.asList("city", "customer"));
+        executeParam.setAggregators(Arrays.asList(new Aggregator("amount", "sum"), new Aggregator("id", "countdistinct")));
+        executeParam.setOrders(Collections.singletonList(new Order("city", "asc")));
+        executeParam.setFilters(Arrays.asList(CITY_FILTER, RELATION_FILTER));
+
+        List<String> querySqlList = new ArrayList<>(Collections.singletonList(VIEW_SQL));
+        viewService.buildQuerySql(querySqlList, source, executeParam);
+        return querySqlList;
+    }
+
+    @Benchmark
+    public String dealFilter() {
+        return SqlFilter.dealFilter(relationFilter);
+    }
+}
@@ -661,6 +661,29 @@ CREATE TABLE `davinci_statistic_duration` (
   PRIMARY KEY (`id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8;
 
+DROP TABLE IF EXISTS `davinci_statistic_slow_query`;
+CREATE TABLE `davinci_statistic_slow_query` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `fingerprint` varchar(32) NOT NULL,
+  `query_sql` text,
+  `view_id` bigint(20) DEFAULT NULL,
+  `source_id` bigint(20) DEFAULT NULL,
+  `window_start` timestamp NULL DEFAULT NULL,
+  `window_end` timestamp NULL DEFAULT NULL,
+  `query_count` bigint(20) DEFAULT NULL,
+  `error_count` bigint(20) DEFAULT NULL,
+  `row_count` bigint(20) DEFAULT NULL,
+  `total_millis` bigint(20) DEFAULT NULL,
+  `avg_millis` bigint(20) DEFAULT NULL,
+  `p50_millis` bigint(20) DEFAULT NULL,
+  `p90_millis` bigint(20) DEFAULT NULL,
+  `p99_millis` bigint(20) DEFAULT NULL,
+  `max_millis` bigint(20) DEFAULT NULL,
+  `create_time` timestamp NULL DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_window_start` (`window_start`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 DROP TABLE IF EXISTS `share_download_record`;
 CREATE TABLE `share_download_record` (
   `id` bigint(20) NOT NULL AUTO_INCREMENT,
@@ -670,8 +693,25 @@ CREATE TABLE `share_download_record` (
   `status` smallint(1) NOT NULL,
   `create_time` datetime NOT NULL,
   `last_download_time` datetime DEFAULT NULL,
+  `expire_time` datetime DEFAULT NULL,
   PRIMARY KEY (`id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 
+DROP TABLE IF EXISTS `mail_queue`;
+CREATE TABLE `mail_queue` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `content` longtext NOT NULL,
+  `status` varchar(10) NOT NULL DEFAULT 'pending',
+  `host` varchar(255) DEFAULT NULL,
+  `retry_count` int(5) NOT NULL DEFAULT 0,
+  `next_retry_time` datetime NOT NULL,
+  `last_error` varchar(1000) DEFAULT NULL,
+  `create_time` datetime NOT NULL,
+  `update_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_status_retry` (`status`, `next_retry_time`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+
 SET FOREIGN_KEY_CHECKS = 1;
@@ -0,0 +1,12 @@
+CREATE TABLE IF NOT EXISTS `mail_queue` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `content` longtext NOT NULL,
+  `status` varchar(10) NOT NULL DEFAULT 'pending',
+  `retry_count` int(5) NOT NULL DEFAULT 0,
+  `next_retry_time` datetime NOT NULL,
+  `last_error` varchar(1000) DEFAULT NULL,
+  `create_time` datetime NOT NULL,
+  `update_time` datetime DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_status_retry` (`status`, `next_retry_time`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS `davinci_statistic_slow_query` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `fingerprint` varchar(32) NOT NULL,
+  `query_sql` text,
+  `view_id` bigint(20) DEFAULT NULL,
+  `source_id` bigint(20) DEFAULT NULL,
+  `window_start` timestamp NULL DEFAULT NULL,
+  `window_end` timestamp NULL DEFAULT NULL,
+  `query_count` bigint(20) DEFAULT NULL,
+  `error_count` bigint(20) DEFAULT NULL,
+  `row_count` bigint(20) DEFAULT NULL,
+  `total_millis` bigint(20) DEFAULT NULL,
+  `avg_millis` bigint(20) DEFAULT NULL,
+  `p50_millis` bigint(20) DEFAULT NULL,
+  `p90_millis` bigint(20) DEFAULT NULL,
+  `p99_millis` bigint(20) DEFAULT NULL,
+  `max_millis` bigint(20) DEFAULT NULL,
+  `create_time` timestamp NULL DEFAULT NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  KEY `idx_window_start` (`window_start`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1 @@
+ALTER TABLE `mail_queue` ADD COLUMN `host` varchar(255) DEFAULT NULL AFTER `status`;
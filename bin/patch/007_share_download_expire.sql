@@ -0,0 +1 @@
+ALTER TABLE `share_download_record` ADD COLUMN `expire_time` datetime DEFAULT NULL AFTER `last_download_time`;
@@ -0,0 +1,219 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.Data;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 直接写入元数据库生成压测用的组织、项目、view、widget 与 dashboard
+ */
+public class FixtureSeeder {
+
+    static final String PASSWORD = "loadtest";
+
+    private static final String VIEW_MODEL = "{" +
+            "\"city\":{\"sqlType\":\"VARCHAR\",\"visualType\":\"string\",\"modelType\":\"category\"}," +
+            "\"category\":{\"sqlType\":\"VARCHAR\",\"visualType\":\"string\",\"modelType\":\"category\"}," +
+            "\"dt\":{\"sqlType\":\"DATE\",\"visualType\":\"date\",\"modelType\":\"category\"}," +
+            "\"amount\":{\"sqlType\":\"DECIMAL\",\"visualType\":\"number\",\"modelType\":\"value\"}," +
+            "\"quantity\":{\"sqlType\":\"INT\",\"visualType\":\"number\",\"modelType\":\"value\"}}";
+
+    private static final String[] WIDGET_CONFIGS = {
+            "{\"cols\":[{\"name\":\"city\"}],\"rows\":[],\"metrics\":[{\"name\":\"amount@davinci@0\",\"agg\":\"sum\"}]," +
+                    "\"filters\":[],\"orders\":[],\"cache\":false,\"expired\":300,\"selectedChart\":1,\"chartStyles\":{}}",
+            "{\"cols\":[{\"name\":\"category\"}],\"rows\":[{\"name\":\"city\"}],\"metrics\":[{\"name\":\"quantity@davinci@0\",\"agg\":\"sum\"}," +
+                    "{\"name\":\"amount@davinci@1\",\"agg\":\"avg\"}],\"filters\":[],\"orders\":[],\"cache\":false,\"expired\":300," +
+                    "\"selectedChart\":1,\"chartStyles\":{}}",
+            "{\"cols\":[{\"name\":\"dt\"}],\"rows\":[],\"metrics\":[{\"name\":\"amount@davinci@0\",\"agg\":\"max\"}]," +
+                    "\"filters\":[],\"orders\":[{\"column\":\"dt\",\"direction\":\"asc\"}],\"cache\":false,\"expired\":300," +
+                    "\"selectedChart\":1,\"chartStyles\":{}}"
+    };
+
+    @Data
+    public static class Fixtures {
+        private String username;
+        private String password;
+        private List<Long> viewIds = new ArrayList<>();
+        private List<Long> widgetIds = new ArrayList<>();
+        private List<Long> dashboardIds = new ArrayList<>();
+    }
+
+    public static Fixtures seed(Connection connection, LoadTestConfig config) throws SQLException {
+        Fixtures fixtures = new Fixtures();
+        String username = "loadtest_" + Long.toString(System.currentTimeMillis(), 36);
+        fixtures.setUsername(username);
+        fixtures.setPassword(PASSWORD);
+
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Long userId = insert(connection, "user", row(
+                "email", username + "@davinci.loadtest",
+                "username", username,
+                "password", BCrypt.hashpw(PASSWORD, BCrypt.gensalt()),
+                "admin", true,
+                "active", true,
+                "name", username,
+                "create_time", now));
+
+        Long orgId = insert(connection, "organization", row(
+                "name", username,
+                "user_id", userId,
+                "project_num", config.getProjects(),
+                "member_num", 1,
+                "role_num", 0,
+                "allow_create_project", true,
+                "member_permission", 1,
+                "create_time", now,
+                "create_by", userId));
+        insert(connection, "rel_user_organization", row(
+                "org_id", orgId,
+                "user_id", userId,
+                "role", 1,
+                "create_by", userId,
+                "create_time", now));
+
+        JSONObject sourceConfig = new JSONObject(true);
+        sourceConfig.put("url", config.getWarehouseUrl());
+        sourceConfig.put("username", config.getWarehouseUsername());
+        sourceConfig.put("password", config.getWarehousePassword());
+        sourceConfig.put("version", "");
+        sourceConfig.put("ext", false);
+        sourceConfig.put("properties", new ArrayList<>());
+
+        int viewIndex = 0;
+        for (int p = 0; p < config.getProjects(); p++) {
+            Long projectId = insert(connection, "project", row(
+                    "name", "project_" + p,
+                    "org_id", orgId,
+                    "user_id", userId,
+                    "visibility", true,
+                    "is_transfer", false,
+                    "initial_org_id", orgId,
+                    "create_by", userId,
+                    "create_time", now));
+
+            Long sourceId = insert(connection, "source", row(
+                    "name", "warehouse_" + p,
+                    "config", sourceConfig.toJSONString(),
+                    "type", "jdbc",
+                    "project_id", projectId,
+                    "create_by", userId,
+                    "create_time", now));
+
+            List<Long> projectWidgetIds = new ArrayList<>();
+            for (int v = 0; v < config.getViewsPerProject(); v++, viewIndex++) {
+                Long viewId = insert(connection, "view", row(
+                        "name", "view_" + p + "_" + v,
+                        "project_id", projectId,
+                        "source_id", sourceId,
+                        "sql", Warehouse.viewSql(viewIndex, config),
+                        "model", VIEW_MODEL,
+                        "variable", "[]",
+                        "config", "{}",
+                        "create_by", userId,
+                        "create_time", now));
+                fixtures.getViewIds().add(viewId);
+
+                for (int w = 0; w < config.getWidgetsPerView(); w++) {
+                    Long widgetId = insert(connection, "widget", row(
+                            "name", "widget_" + p + "_" + v + "_" + w,
+                            "view_id", viewId,
+                            "project_id", projectId,
+                            "type", 1,
+                            "publish", true,
+                            "config", WIDGET_CONFIGS[w % WIDGET_CONFIGS.length],
+                            "create_by", userId,
+                            "create_time", now));
+                    projectWidgetIds.add(widgetId);
+                }
+            }
+            fixtures.getWidgetIds().addAll(projectWidgetIds);
+
+            int widgetCursor = 0;
+            for (int pt = 0; pt < config.getPortalsPerProject(); pt++) {
+                Long portalId = insert(connection, "dashboard_portal", row(
+                        "name", "portal_" + p + "_" + pt,
+                        "project_id", projectId,
+                        "publish", true,
+                        "create_by", userId,
+                        "create_time", now));
+
+                for (int d = 0; d < config.getDashboardsPerPortal(); d++) {
+                    Long dashboardId = insert(connection, "dashboard", row(
+                            "name", "dashboard_" + p + "_" + pt + "_" + d,
+                            "dashboard_portal_id", portalId,
+                            "type", 1,
+                            "index", d,
+                            "parent_id", 0L,
+                            "config", "{}",
+                            "create_by", userId,
+                            "create_time", now));
+                    fixtures.getDashboardIds().add(dashboardId);
+
+                    for (int i = 0; i < config.getWidgetsPerDashboard() && !projectWidgetIds.isEmpty(); i++) {
+                        insert(connection, "mem_dashboard_widget", row(
+                                "dashboard_id", dashboardId,
+                                "widget_Id", projectWidgetIds.get(widgetCursor++ % projectWidgetIds.size()),
+                                "x", (i % 2) * 6,
+                                "y", (i / 2) * 6,
+                                "width", 6,
+                                "height", 6,
+                                "polling", false,
+                                "create_by", userId,
+                                "create_time", now));
+                    }
+                }
+            }
+        }
+        return fixtures;
+    }
+
+    private static Map<String, Object> row(Object... keyValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            row.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return row;
+    }
+
+    private static Long insert(Connection connection, String table, Map<String, Object> row) throws SQLException {
+        StringJoiner columns = new StringJoiner(", ");
+        StringJoiner values = new StringJoiner(", ");
+        row.keySet().forEach(column -> {
+            columns.add("`" + column + "`");
+            values.add("?");
+        });
+        String sql = "insert into `" + table + "` (" + columns + ") values (" + values + ")";
+        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            int index = 1;
+            for (Object value : row.values()) {
+                statement.setObject(index++, value);
+            }
+            statement.executeUpdate();
+            try (ResultSet rs = statement.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+}
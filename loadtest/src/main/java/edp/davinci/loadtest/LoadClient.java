@@ -0,0 +1,105 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import edp.core.consts.Consts;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 调用 davinci 接口，所有虚拟用户共享连接池
+ */
+public class LoadClient implements Closeable {
+
+    private final String baseUrl;
+
+    private final CloseableHttpClient httpClient;
+
+    private final RestTemplate restTemplate;
+
+    private volatile String token;
+
+    public LoadClient(String baseUrl, int maxConnections) {
+        this.baseUrl = baseUrl;
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        this.httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    public void login(String username, String password) {
+        JSONObject body = new JSONObject();
+        body.put("username", username);
+        body.put("password", password);
+        JSONObject result = exchange(HttpMethod.POST, "/login", body, false);
+        if (!isSuccess(result)) {
+            throw new IllegalStateException("login failed: " + result);
+        }
+        this.token = result.getJSONObject("header").getString("token");
+    }
+
+    /**
+     * 调用 json 接口，返回 null 表示请求失败
+     */
+    public JSONObject post(String path, Object body, boolean auth) {
+        return exchange(HttpMethod.POST, path, body, auth);
+    }
+
+    public JSONObject get(String path, boolean auth) {
+        return exchange(HttpMethod.GET, path, null, auth);
+    }
+
+    public static boolean isSuccess(JSONObject result) {
+        return result != null
+                && result.getJSONObject("header") != null
+                && result.getJSONObject("header").getIntValue("code") == HttpStatus.OK.value();
+    }
+
+    private JSONObject exchange(HttpMethod method, String path, Object body, boolean auth) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        if (auth) {
+            headers.set(Consts.TOKEN_HEADER_STRING, Consts.TOKEN_PREFIX + " " + token);
+        }
+        HttpEntity<String> entity = new HttpEntity<>(body == null ? null : JSON.toJSONString(body), headers);
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(baseUrl + path, method, entity, String.class);
+            return response.getBody() == null ? null : JSON.parseObject(response.getBody());
+        } catch (RestClientException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import lombok.Data;
+
+import java.util.*;
+
+/**
+ * 压测参数，命令行格式 --key=value
+ */
+@Data
+public class LoadTestConfig {
+
+    static final String H2_META_URL = "jdbc:h2:mem:davinci;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+
+    static final String H2_WAREHOUSE_URL = "jdbc:h2:mem:warehouse;MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+
+    /**
+     * 元数据库，默认内存 H2；指定 MySQL 时需已初始化 bin/davinci.sql
+     */
+    private String metaUrl = H2_META_URL;
+    private String metaUsername = "sa";
+    private String metaPassword = "";
+
+    /**
+     * 数据源，默认内存 H2 事实表
+     */
+    private String warehouseUrl = H2_WAREHOUSE_URL;
+    private String warehouseUsername = "sa";
+    private String warehousePassword = "";
+    private int rows = 100000;
+    private int cities = 50;
+    private int categories = 20;
+
+    /**
+     * 元数据规模
+     */
+    private int projects = 1;
+    private int viewsPerProject = 10;
+    private int widgetsPerView = 3;
+    private int portalsPerProject = 2;
+    private int dashboardsPerPortal = 5;
+    private int widgetsPerDashboard = 8;
+
+    /**
+     * 压测过程
+     */
+    private List<Scenario> scenarios = Arrays.asList(Scenario.values());
+    private int vus = 20;
+    private int downloadVus = 2;
+    private int warmupSecond = 10;
+    private int durationSecond = 30;
+    private int thinkMillis = 0;
+    private String output;
+
+    public static LoadTestConfig parse(String[] args) {
+        LoadTestConfig config = new LoadTestConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("unknown argument: " + arg + ", expected --key=value");
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (key) {
+                case "metaUrl":
+                    config.metaUrl = value;
+                    break;
+                case "metaUsername":
+                    config.metaUsername = value;
+                    break;
+                case "metaPassword":
+                    config.metaPassword = value;
+                    break;
+                case "warehouseUrl":
+                    config.warehouseUrl = value;
+                    break;
+                case "warehouseUsername":
+                    config.warehouseUsername = value;
+                    break;
+                case "warehousePassword":
+                    config.warehousePassword = value;
+                    break;
+                case "rows":
+                    config.rows = Integer.parseInt(value);
+                    break;
+                case "cities":
+                    config.cities = Integer.parseInt(value);
+                    break;
+                case "categories":
+                    config.categories = Integer.parseInt(value);
+                    break;
+                case "projects":
+                    config.projects = Integer.parseInt(value);
+                    break;
+                case "viewsPerProject":
+                    config.viewsPerProject = Integer.parseInt(value);
+                    break;
+                case "widgetsPerView":
+                    config.widgetsPerView = Integer.parseInt(value);
+                    break;
+                case "portalsPerProject":
+                    config.portalsPerProject = Integer.parseInt(value);
+                    break;
+                case "dashboardsPerPortal":
+                    config.dashboardsPerPortal = Integer.parseInt(value);
+                    break;
+                case "widgetsPerDashboard":
+                    config.widgetsPerDashboard = Integer.parseInt(value);
+                    break;
+                case "scenarios":
+                    List<Scenario> scenarios = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        scenarios.add(Scenario.of(name.trim()));
+                    }
+                    config.scenarios = scenarios;
+                    break;
+                case "vus":
+                    config.vus = Integer.parseInt(value);
+                    break;
+                case "downloadVus":
+                    config.downloadVus = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    config.warmupSecond = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    config.durationSecond = Integer.parseInt(value);
+                    break;
+                case "think":
+                    config.thinkMillis = Integer.parseInt(value);
+                    break;
+                case "output":
+                    config.output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument: " + key);
+            }
+        }
+        if (config.output == null) {
+            config.output = "loadtest-result-" + System.currentTimeMillis() + ".json";
+        }
+        return config;
+    }
+
+    public boolean isH2Meta() {
+        return metaUrl.startsWith("jdbc:h2:");
+    }
+
+    public boolean isH2Warehouse() {
+        return warehouseUrl.startsWith("jdbc:h2:");
+    }
+
+    public int vusOf(Scenario scenario) {
+        return scenario == Scenario.DOWNLOAD ? downloadVus : vus;
+    }
+}
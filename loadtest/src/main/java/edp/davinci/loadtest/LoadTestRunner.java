@@ -0,0 +1,159 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import edp.DavinciServerApplication;
+import edp.davinci.core.common.Constants;
+import edp.davinci.loadtest.FixtureSeeder.Fixtures;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 端到端压测入口
+ * 1. 生成 H2 数据源与元数据库并写入压测数据
+ * 2. 在当前 JVM 内启动 davinci server
+ * 3. 依次执行各场景并输出结果
+ */
+@Slf4j
+public class LoadTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+
+        Path home = Files.createTempDirectory("davinci-loadtest");
+        Files.createDirectories(home.resolve("config"));
+        Files.createDirectories(home.resolve("userfiles"));
+        System.setProperty("DAVINCI3_HOME", home.toString());
+
+        if (config.isH2Warehouse()) {
+            log.info("create warehouse with {} rows", config.getRows());
+            Warehouse.create(config);
+        }
+
+        Fixtures fixtures;
+        try (Connection connection = DriverManager.getConnection(config.getMetaUrl(), config.getMetaUsername(), config.getMetaPassword())) {
+            if (config.isH2Meta()) {
+                MetadataSchema.create(connection);
+            }
+            fixtures = FixtureSeeder.seed(connection, config);
+        }
+        log.info("seeded {} views, {} widgets, {} dashboards", fixtures.getViewIds().size(),
+                fixtures.getWidgetIds().size(), fixtures.getDashboardIds().size());
+
+        int port = freePort();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DavinciServerApplication.class)
+                .run(serverArgs(config, home, port));
+
+        List<ScenarioResult> results = new ArrayList<>();
+        try (LoadClient client = new LoadClient("http://127.0.0.1:" + port + Constants.BASE_API_PATH, maxVus(config) * 2)) {
+            client.login(fixtures.getUsername(), fixtures.getPassword());
+            ScenarioDriver driver = new ScenarioDriver(client, fixtures, config);
+            for (Scenario scenario : config.getScenarios()) {
+                ScenarioResult result = driver.run(scenario);
+                log.info(result.format());
+                results.add(result);
+            }
+        } finally {
+            SpringApplication.exit(context);
+        }
+
+        report(config, results);
+        System.exit(0);
+    }
+
+    private static String[] serverArgs(LoadTestConfig config, Path home, int port) {
+        int poolSize = maxVus(config) + 10;
+        List<String> args = new ArrayList<>();
+        args.add("--server.address=127.0.0.1");
+        args.add("--server.port=" + port);
+        args.add("--spring.datasource.url=" + config.getMetaUrl());
+        args.add("--spring.datasource.username=" + config.getMetaUsername());
+        args.add("--spring.datasource.password=" + config.getMetaPassword());
+        args.add("--spring.datasource.driver-class-name=" + (config.isH2Meta() ? "org.h2.Driver" : "com.mysql.jdbc.Driver"));
+        args.add("--spring.datasource.initial-size=2");
+        args.add("--spring.datasource.min-idle=1");
+        args.add("--spring.datasource.max-wait=60000");
+        args.add("--spring.datasource.max-active=" + poolSize);
+        args.add("--source.initial-size=2");
+        args.add("--source.min-idle=1");
+        args.add("--source.max-active=" + poolSize);
+        args.add("--source.max-wait=60000");
+        // 邮件配置为启动校验所需，压测过程不发送邮件
+        args.add("--spring.mail.host=127.0.0.1");
+        args.add("--spring.mail.port=25");
+        args.add("--spring.mail.username=loadtest@davinci.loadtest");
+        args.add("--spring.mail.fromAddress=loadtest@davinci.loadtest");
+        args.add("--spring.mail.password=");
+        args.add("--spring.mail.nickname=loadtest");
+        args.add("--spring.ldap.domainName=");
+        args.add("--spring.redis.isEnable=false");
+        args.add("--jwtToken.secret=davinci-loadtest");
+        args.add("--jwtToken.timeout=" + 24 * 3600 * 1000L);
+        args.add("--statistic.enable=false");
+        args.add("--logging.config=classpath:logback.xml");
+        args.add("--custom-datasource-driver-path=" + home.resolve("config").resolve("datasource_driver.yml"));
+        return args.toArray(new String[0]);
+    }
+
+    private static void report(LoadTestConfig config, List<ScenarioResult> results) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("\n==================== davinci load test ====================\n");
+        builder.append(String.format("jvm=%s heapMax=%dMB rows=%d views=%d vus=%d duration=%ds%n",
+                ManagementFactory.getRuntimeMXBean().getVmVersion(),
+                Runtime.getRuntime().maxMemory() / 1024 / 1024,
+                config.getRows(), config.getProjects() * config.getViewsPerProject(), config.getVus(), config.getDurationSecond()));
+        results.forEach(r -> builder.append(r.format()).append('\n'));
+        System.out.println(builder);
+
+        JSONObject json = new JSONObject(true);
+        json.put("config", config);
+        json.put("results", results);
+        File output = new File(config.getOutput());
+        Files.write(output.toPath(), JSON.toJSONString(json, SerializerFeature.PrettyFormat).getBytes(StandardCharsets.UTF_8));
+        System.out.println("results written to " + output.getAbsolutePath());
+    }
+
+    private static int maxVus(LoadTestConfig config) {
+        return Math.max(config.getVus(), config.getDownloadVus());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 将 bin/davinci.sql 转换为 H2(MySQL 模式) 可执行的建表语句
+ */
+@Slf4j
+public class MetadataSchema {
+
+    private static final String SCHEMA_RESOURCE = "loadtest/davinci.sql";
+
+    public static void create(Connection connection) throws IOException, SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : convert(readSchema())) {
+                statement.execute(sql);
+            }
+            createFunctions(statement);
+        }
+    }
+
+    static List<String> convert(String script) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : script.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--") || trimmed.toUpperCase().startsWith("SET ")) {
+                continue;
+            }
+            // H2 索引名全库唯一，普通索引对压测无影响，直接去掉
+            if (trimmed.toUpperCase().startsWith("KEY ")) {
+                continue;
+            }
+            builder.append(line).append('\n');
+        }
+
+        List<String> statements = new ArrayList<>();
+        for (String sql : builder.toString().split(";\\s*\n")) {
+            sql = sql.trim();
+            if (sql.isEmpty()) {
+                continue;
+            }
+            sql = sql.replaceAll("(?s)\\)\\s*ENGINE\\s*=.*$", ")")
+                    .replaceAll("(?i)\\s+USING BTREE", "")
+                    .replaceAll("(?i)\\s+COLLATE\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+CHARACTER SET\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+ON UPDATE CURRENT_TIMESTAMP", "")
+                    .replaceAll("(?i)UNIQUE KEY\\s+`[^`]+`", "UNIQUE")
+                    .replaceAll(",\\s*\\)$", "\n)");
+            statements.add(sql);
+        }
+        return statements;
+    }
+
+    /**
+     * 补充 mapper 中用到的 MySQL 函数
+     */
+    private static void createFunctions(Statement statement) {
+        for (String alias : Arrays.asList(
+                "CREATE ALIAS IF NOT EXISTS DATE_FORMAT FOR \"" + MetadataSchema.class.getName() + ".dateFormat\"",
+                "CREATE ALIAS IF NOT EXISTS FIND_IN_SET FOR \"" + MetadataSchema.class.getName() + ".findInSet\"")) {
+            try {
+                statement.execute(alias);
+            } catch (SQLException e) {
+                log.warn("create h2 function alias error: {}", e.getMessage());
+            }
+        }
+    }
+
+    public static String dateFormat(java.sql.Timestamp date, String format) {
+        if (date == null || format == null) {
+            return null;
+        }
+        String pattern = format.replace("%Y", "yyyy").replace("%m", "MM").replace("%d", "dd")
+                .replace("%H", "HH").replace("%i", "mm").replace("%s", "ss");
+        return new SimpleDateFormat(pattern).format(date);
+    }
+
+    public static int findInSet(String value, String set) {
+        if (value == null || set == null) {
+            return 0;
+        }
+        String[] items = set.split(",");
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].equals(value)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String readSchema() throws IOException {
+        InputStream is = MetadataSchema.class.getClassLoader().getResourceAsStream(SCHEMA_RESOURCE);
+        if (is == null) {
+            throw new IOException(SCHEMA_RESOURCE + " not found in classpath");
+        }
+        StringBuilder builder = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.append(line).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import edp.davinci.loadtest.FixtureSeeder.Fixtures;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压测场景，每次 execute 为一次完整请求
+ */
+public enum Scenario {
+
+    /**
+     * widget 取数
+     */
+    GETDATA("getdata") {
+        @Override
+        boolean execute(LoadClient client, Fixtures fixtures, ThreadLocalRandom random) {
+            Long viewId = pick(fixtures.getViewIds(), random);
+            return LoadClient.isSuccess(client.post("/views/" + viewId + "/getdata", executeParam(random), true));
+        }
+    },
+
+    /**
+     * 控制器唯一值
+     */
+    DISTINCTVALUE("distinctvalue") {
+        @Override
+        boolean execute(LoadClient client, Fixtures fixtures, ThreadLocalRandom random) {
+            Long viewId = pick(fixtures.getViewIds(), random);
+            JSONObject param = new JSONObject();
+            param.put("columns", Collections.singletonList(random.nextBoolean() ? "city" : "category"));
+            param.put("cache", false);
+            return LoadClient.isSuccess(client.post("/views/" + viewId + "/getdistinctvalue", param, true));
+        }
+    },
+
+    /**
+     * 匿名分享 widget 取数
+     */
+    SHARE("share") {
+        private final List<String> shareTokens = new ArrayList<>();
+
+        @Override
+        void prepare(LoadClient client, Fixtures fixtures) {
+            shareTokens.clear();
+            for (Long widgetId : fixtures.getWidgetIds().subList(0, Math.min(MAX_SHARE_WIDGETS, fixtures.getWidgetIds().size()))) {
+                JSONObject result = client.get("/widgets/" + widgetId + "/share", true);
+                if (!LoadClient.isSuccess(result)) {
+                    throw new IllegalStateException("share widget " + widgetId + " failed: " + result);
+                }
+                shareTokens.add(result.getString("payload"));
+            }
+        }
+
+        @Override
+        boolean execute(LoadClient client, Fixtures fixtures, ThreadLocalRandom random) {
+            String token = pick(shareTokens, random);
+            return LoadClient.isSuccess(client.post("/share/data/" + token, executeParam(random), false));
+        }
+    },
+
+    /**
+     * 提交 dashboard 下载任务，excel 在后台线程池生成
+     */
+    DOWNLOAD("download") {
+        @Override
+        boolean execute(LoadClient client, Fixtures fixtures, ThreadLocalRandom random) {
+            Long dashboardId = pick(fixtures.getDashboardIds(), random);
+            JSONObject result = client.post("/download/submit/dashboard/" + dashboardId, new JSONArray(), true);
+            return LoadClient.isSuccess(result) && Boolean.TRUE.equals(result.getBoolean("payload"));
+        }
+    };
+
+    private static final int MAX_SHARE_WIDGETS = 50;
+
+    private final String name;
+
+    Scenario(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static Scenario of(String name) {
+        for (Scenario scenario : values()) {
+            if (scenario.name.equalsIgnoreCase(name)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("unknown scenario: " + name);
+    }
+
+    /**
+     * 压测前准备，不计入结果
+     */
+    void prepare(LoadClient client, Fixtures fixtures) {
+    }
+
+    abstract boolean execute(LoadClient client, Fixtures fixtures, ThreadLocalRandom random);
+
+    private static <T> T pick(List<T> list, ThreadLocalRandom random) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private static JSONObject executeParam(ThreadLocalRandom random) {
+        JSONObject aggregator = new JSONObject();
+        aggregator.put("column", "amount");
+        aggregator.put("func", "sum");
+        JSONObject order = new JSONObject();
+        order.put("column", "city");
+        order.put("direction", "asc");
+
+        JSONObject param = new JSONObject();
+        param.put("groups", Collections.singletonList("city"));
+        param.put("aggregators", Collections.singletonList(aggregator));
+        param.put("orders", Collections.singletonList(order));
+        param.put("cache", false);
+        param.put("pageNo", 1);
+        param.put("pageSize", 20);
+        // 一半请求带过滤条件，避免全部命中同一条 sql
+        if (random.nextBoolean()) {
+            param.put("filters", Collections.singletonList("{\"name\":\"category\",\"type\":\"filter\",\"value\":\"'category_" +
+                    random.nextInt(10) + "'\",\"operator\":\"=\",\"sqlType\":\"VARCHAR\"}"));
+        }
+        return param;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edp.davinci.loadtest.FixtureSeeder.Fixtures;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以固定数量的虚拟用户循环执行场景，记录延迟分布、吞吐与 JVM 堆/GC
+ */
+@Slf4j
+public class ScenarioDriver {
+
+    private static final long HEAP_SAMPLE_MILLIS = 100L;
+
+    private static final long MB = 1024L * 1024L;
+
+    private final LoadClient client;
+
+    private final Fixtures fixtures;
+
+    private final LoadTestConfig config;
+
+    public ScenarioDriver(LoadClient client, Fixtures fixtures, LoadTestConfig config) {
+        this.client = client;
+        this.fixtures = fixtures;
+        this.config = config;
+    }
+
+    public ScenarioResult run(Scenario scenario) throws InterruptedException {
+        int vus = config.vusOf(scenario);
+        scenario.prepare(client, fixtures);
+
+        if (config.getWarmupSecond() > 0) {
+            log.info("warmup {} with {} vus for {}s", scenario.getName(), vus, config.getWarmupSecond());
+            drive(scenario, vus, config.getWarmupSecond());
+        }
+
+        System.gc();
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        AtomicLong heapPeak = new AtomicLong(memoryMXBean.getHeapMemoryUsage().getUsed());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("LoadTest-heap-sampler").setDaemon(true).build());
+        sampler.scheduleAtFixedRate(() -> heapPeak.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max),
+                0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        log.info("run {} with {} vus for {}s", scenario.getName(), vus, config.getDurationSecond());
+        long start = System.nanoTime();
+        Recorder[] recorders = drive(scenario, vus, config.getDurationSecond());
+        long elapsed = System.nanoTime() - start;
+
+        sampler.shutdownNow();
+
+        long requests = 0L;
+        long errors = 0L;
+        for (Recorder recorder : recorders) {
+            requests += recorder.size;
+            errors += recorder.errors;
+        }
+        long[] latencies = new long[(int) requests];
+        int offset = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.size);
+            offset += recorder.size;
+        }
+        Arrays.sort(latencies);
+
+        ScenarioResult result = new ScenarioResult();
+        result.setScenario(scenario.getName());
+        result.setVus(vus);
+        result.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        result.setRequests(requests);
+        result.setErrors(errors);
+        result.setThroughput(requests * 1e9 / elapsed);
+        result.setMean(latencies.length == 0 ? 0D : toMillis(Arrays.stream(latencies).sum() / latencies.length));
+        result.setP50(toMillis(percentile(latencies, 0.50)));
+        result.setP90(toMillis(percentile(latencies, 0.90)));
+        result.setP99(toMillis(percentile(latencies, 0.99)));
+        result.setMax(latencies.length == 0 ? 0D : toMillis(latencies[latencies.length - 1]));
+        result.setHeapPeakMb(heapPeak.get() / MB);
+        result.setHeapAfterMb(memoryMXBean.getHeapMemoryUsage().getUsed() / MB);
+        result.setGcCount(gcCount() - gcCountBefore);
+        result.setGcTimeMillis(gcTime() - gcTimeBefore);
+        return result;
+    }
+
+    private Recorder[] drive(Scenario scenario, int vus, int seconds) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(vus,
+                new ThreadFactoryBuilder().setNameFormat("LoadTest-" + scenario.getName() + "-%d").build());
+        Recorder[] recorders = new Recorder[vus];
+        CountDownLatch ready = new CountDownLatch(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < vus; i++) {
+            Recorder recorder = new Recorder();
+            recorders[i] = recorder;
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    ready.await();
+                    while (System.nanoTime() < deadline) {
+                        long begin = System.nanoTime();
+                        boolean success;
+                        try {
+                            success = scenario.execute(client, fixtures, random);
+                        } catch (Exception e) {
+                            log.debug("{} request error: {}", scenario.getName(), e.getMessage());
+                            success = false;
+                        }
+                        recorder.record(System.nanoTime() - begin, success);
+                        if (config.getThinkMillis() > 0) {
+                            Thread.sleep(config.getThinkMillis());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        ready.countDown();
+        executor.shutdown();
+        if (!executor.awaitTermination(seconds + 300L, TimeUnit.SECONDS)) {
+            log.warn("{} virtual users did not finish in time", scenario.getName());
+            executor.shutdownNow();
+        }
+        return recorders;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static long gcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0L, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * 单个虚拟用户的延迟记录，仅由所属线程写入
+     */
+    private static class Recorder {
+        private long[] latencies = new long[1024];
+        private int size;
+        private long errors;
+
+        void record(long nanos, boolean success) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+            if (!success) {
+                errors++;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import lombok.Data;
+
+/**
+ * 单个场景的压测结果，耗时单位 ms
+ * 服务端与压测客户端运行在同一 JVM，堆与 GC 数据包含两者
+ */
+@Data
+public class ScenarioResult {
+
+    private String scenario;
+
+    private int vus;
+
+    private long durationMillis;
+
+    private long requests;
+
+    private long errors;
+
+    private double throughput;
+
+    private double mean;
+
+    private double p50;
+
+    private double p90;
+
+    private double p99;
+
+    private double max;
+
+    private long heapPeakMb;
+
+    private long heapAfterMb;
+
+    private long gcCount;
+
+    private long gcTimeMillis;
+
+    public String format() {
+        return String.format("%-14s vus=%-4d req=%-8d err=%-6d tps=%-9.1f mean=%-8.2f p50=%-8.2f p90=%-8.2f p99=%-8.2f max=%-9.2f heapPeak=%dMB heapAfter=%dMB gc=%d/%dms",
+                scenario, vus, requests, errors, throughput, mean, p50, p90, p99, max, heapPeakMb, heapAfterMb, gcCount, gcTimeMillis);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.loadtest;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.Random;
+
+/**
+ * 压测数据源，单张销售事实表
+ */
+public class Warehouse {
+
+    static final String TABLE = "sales";
+
+    private static final int BATCH_SIZE = 5000;
+
+    public static void create(LoadTestConfig config) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(config.getWarehouseUrl(), config.getWarehouseUsername(), config.getWarehousePassword())) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists " + TABLE);
+                statement.execute("create table " + TABLE + " (id bigint primary key, city varchar(32), category varchar(32), " +
+                        "dt date, amount decimal(12, 2), quantity int)");
+            }
+
+            connection.setAutoCommit(false);
+            // 固定种子，多次压测数据分布一致
+            Random random = new Random(42);
+            long day = 86400000L;
+            long start = Date.valueOf("2019-01-01").getTime();
+            try (PreparedStatement insert = connection.prepareStatement("insert into " + TABLE + " values (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < config.getRows(); i++) {
+                    insert.setLong(1, i);
+                    insert.setString(2, "city_" + random.nextInt(config.getCities()));
+                    insert.setString(3, "category_" + random.nextInt(config.getCategories()));
+                    insert.setDate(4, new Date(start + random.nextInt(365) * day));
+                    insert.setBigDecimal(5, BigDecimal.valueOf(random.nextInt(1000000), 2));
+                    insert.setInt(6, 1 + random.nextInt(20));
+                    insert.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create index idx_sales_city on " + TABLE + " (city)");
+                statement.execute("create index idx_sales_category on " + TABLE + " (category)");
+            }
+            connection.commit();
+        }
+    }
+
+    /**
+     * view sql，按序号轮换几种常见形态
+     */
+    static String viewSql(int index, LoadTestConfig config) {
+        switch (index % 3) {
+            case 0:
+                return "select * from " + TABLE;
+            case 1:
+                return "select * from " + TABLE + " where category = 'category_" + (index % config.getCategories()) + "'";
+            default:
+                return "select city, category, dt, sum(amount) as amount, sum(quantity) as quantity from " + TABLE +
+                        " group by city, category, dt";
+        }
+    }
+}
@@ -22,7 +22,10 @@ package edp.core.common.cache;
 public enum Caches {
     datasource,
     shareDownloadRecord(2 * 60 * 60L, 1024),
-    query(10L, 10000);
+    query(10L, 10000),
+    queryCount(10 * 60L, 10000),
+    queryCost(10 * 60L, 10000),
+    screenshot(10 * 60L, 1000);
 
     private int maxSize = 1000; //默认最大缓存数量
     private Long ttl = 3600L;     //默认过期时间（单位：秒）
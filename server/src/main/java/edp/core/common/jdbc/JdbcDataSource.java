@@ -26,6 +26,7 @@ import edp.core.enums.DataTypeEnum;
 import edp.core.exception.SourceException;
 import edp.core.model.JdbcSourceInfo;
 import edp.core.utils.CollectionUtils;
+import edp.core.utils.MetricsUtils;
 import edp.core.utils.ServerUtils;
 import edp.core.utils.SourceUtils;
 import edp.davinci.core.config.SpringContextHolder;
@@ -181,6 +182,7 @@ public class JdbcDataSource {
             throw new SourceException(e.getMessage());
         }
         dataSourceMap.put(key, instance);
+        MetricsUtils.bindDataSource(jdbcSourceInfo.getSourceId(), instance);
         return instance;
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.common.quartz;
+
+import com.alibaba.druid.util.StringUtils;
+import com.google.common.hash.Hashing;
+import edp.davinci.core.enums.LogNameEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static edp.core.consts.Consts.UNDERLINE;
+
+/**
+ * 集群定时任务协调
+ * 各节点在 zookeeper 注册临时节点，任务按节点列表分片，每次触发通过创建触发节点保证只执行一次
+ * 各节点的触发器由 SystemSchedule.syncClusterJobs 按 cron_job 表定期同步
+ * 未配置 zookeeper 时为单节点模式，所有触发均在本节点执行
+ */
+@Slf4j
+@Component
+public class ScheduleCoordinator {
+
+    private static final Logger scheduleLogger = LoggerFactory.getLogger(LogNameEnum.BUSINESS_SCHEDULE.getName());
+
+    @Value("${schedule.cluster.zookeeper:}")
+    private String zookeeper;
+
+    @Value("${schedule.cluster.root_path:/davinci/schedule}")
+    private String rootPath;
+
+    private CuratorFramework client;
+
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        if (StringUtils.isEmpty(zookeeper)) {
+            return;
+        }
+        try {
+            nodeId = InetAddress.getLocalHost().getHostName() + UNDERLINE + UUID.randomUUID().toString().replace("-", "");
+        } catch (Exception e) {
+            nodeId = UUID.randomUUID().toString().replace("-", "");
+        }
+
+        client = CuratorFrameworkFactory.builder()
+                .connectString(zookeeper)
+                .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+                .build();
+        client.getConnectionStateListenable().addListener((c, state) -> {
+            if (state == ConnectionState.RECONNECTED) {
+                register();
+            }
+        });
+        client.start();
+        try {
+            client.blockUntilConnected(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        register();
+        log.info("schedule node ({}) joined cluster {}", nodeId, zookeeper);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (null != client) {
+            client.close();
+        }
+    }
+
+    public boolean isClusterEnable() {
+        return null != client;
+    }
+
+    /**
+     * 判断本节点是否执行该次触发
+     *
+     * @param jobId
+     * @param scheduledFireTime 计划触发时间
+     * @return
+     */
+    public boolean tryAcquire(Long jobId, long scheduledFireTime) {
+        if (null == client) {
+            return true;
+        }
+        try {
+            String owner = getOwner(jobId);
+            if (null != owner && !nodeId.equals(owner)) {
+                return false;
+            }
+
+            String jobPath = rootPath + "/fires/" + jobId;
+            try {
+                client.create().creatingParentsIfNeeded().withMode(CreateMode.PERSISTENT)
+                        .forPath(jobPath + "/" + scheduledFireTime, nodeId.getBytes(StandardCharsets.UTF_8));
+            } catch (KeeperException.NodeExistsException e) {
+                scheduleLogger.info("CronJob (:{}) fire at {} is already taken by another node", jobId, scheduledFireTime);
+                return false;
+            }
+
+            //清理历史触发记录
+            for (String fire : client.getChildren().forPath(jobPath)) {
+                if (Long.parseLong(fire) < scheduledFireTime) {
+                    client.delete().quietly().forPath(jobPath + "/" + fire);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            //协调不可用时宁可重复发送也不丢失任务
+            log.warn("schedule coordinator error, CronJob (:{}) will run on this node: {}", jobId, e.getMessage());
+            scheduleLogger.warn("schedule coordinator error, CronJob (:{}) will run on this node: {}", jobId, e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 删除任务的触发记录，任务删除后调用
+     *
+     * @param jobId
+     */
+    public void removeJob(Long jobId) {
+        if (null == client) {
+            return;
+        }
+        try {
+            client.delete().deletingChildrenIfNeeded().forPath(rootPath + "/fires/" + jobId);
+        } catch (KeeperException.NoNodeException e) {
+            // never fired
+        } catch (Exception e) {
+            log.warn("remove fires of CronJob (:{}) error: {}", jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * 按 rendezvous hash 选出任务所属节点，节点增减时只迁移少量任务
+     */
+    private String getOwner(Long jobId) throws Exception {
+        List<String> nodes = client.getChildren().forPath(rootPath + "/nodes");
+        String owner = null;
+        int maxScore = Integer.MIN_VALUE;
+        for (String node : nodes) {
+            int score = Hashing.murmur3_32().hashString(node + UNDERLINE + jobId, StandardCharsets.UTF_8).asInt();
+            if (null == owner || score > maxScore) {
+                owner = node;
+                maxScore = score;
+            }
+        }
+        return owner;
+    }
+
+    private void register() {
+        String path = rootPath + "/nodes/" + nodeId;
+        try {
+            if (null == client.checkExists().forPath(path)) {
+                client.create().creatingParentsIfNeeded().withMode(CreateMode.EPHEMERAL).forPath(path);
+            }
+        } catch (KeeperException.NodeExistsException e) {
+            // already registered
+        } catch (Exception e) {
+            log.error("register schedule node ({}) error: {}", nodeId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.common.quartz;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edp.core.model.ScheduleExecutorMetrics;
+import edp.core.model.ScheduleJob;
+import edp.core.utils.MetricsUtils;
+import edp.davinci.core.config.SpringContextHolder;
+import edp.davinci.core.enums.CronJobMediaType;
+import edp.davinci.core.enums.LogNameEnum;
+import edp.davinci.model.CronJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时任务执行器
+ * 图片、excel与物化任务使用独立的有界线程池，自开始执行计时超时后中断，排队超时的触发直接丢弃，上一次触发实际结束前跳过后续触发
+ */
+@Slf4j
+@Component
+public class ScheduleJobExecutor implements MeterBinder {
+
+    private static final Logger scheduleLogger = LoggerFactory.getLogger(LogNameEnum.BUSINESS_SCHEDULE.getName());
+
+    private static final String POOL_IMAGE = CronJobMediaType.IMAGE.getType();
+
+    private static final String POOL_EXCEL = CronJobMediaType.EXCEL.getType();
+
+    private static final String POOL_MATERIALIZE = "materialize";
+
+    private static final int TASK_NEW = 0;
+
+    private static final int TASK_RUNNING = 1;
+
+    private static final int TASK_CANCELLED = 2;
+
+    private static final int TASK_TIMEOUT = 3;
+
+    private static final int TASK_DONE = 4;
+
+    @Value("${schedule.executor.image_pool_size:2}")
+    private int imagePoolSize;
+
+    @Value("${schedule.executor.excel_pool_size:4}")
+    private int excelPoolSize;
+
+    @Value("${schedule.executor.materialize_pool_size:2}")
+    private int materializePoolSize;
+
+    @Value("${schedule.executor.queue_capacity:100}")
+    private int queueCapacity;
+
+    @Value("${schedule.executor.timeout_minute:30}")
+    private int timeoutMinute;
+
+    private final Map<String, ThreadPoolExecutor> pools = new LinkedHashMap<>();
+
+    private final Map<String, PoolStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 执行中的任务，value 为本次触发的标识，避免超时任务结束时误删后续触发
+     */
+    private final Map<Long, Object> runningJobs = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService watchdog;
+
+    @PostConstruct
+    public void init() {
+        pools.put(POOL_IMAGE, newPool(POOL_IMAGE, imagePoolSize));
+        pools.put(POOL_EXCEL, newPool(POOL_EXCEL, excelPoolSize));
+        pools.put(POOL_MATERIALIZE, newPool(POOL_MATERIALIZE, materializePoolSize));
+        pools.keySet().forEach(pool -> stats.put(pool, new PoolStats()));
+        watchdog = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("schedule-watchdog-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    public void close() {
+        pools.values().forEach(ExecutorService::shutdownNow);
+        if (null != watchdog) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        pools.forEach((name, executor) -> new ExecutorServiceMetrics(executor, "schedule-" + name, Collections.emptyList()).bindTo(registry));
+    }
+
+    /**
+     * 提交定时任务
+     *
+     * @param scheduleJob
+     */
+    public void submit(ScheduleJob scheduleJob) {
+        String pool = getPool(scheduleJob);
+        PoolStats poolStats = stats.get(pool);
+
+        Object token = new Object();
+        if (null != runningJobs.putIfAbsent(scheduleJob.getId(), token)) {
+            poolStats.skipped.incrementAndGet();
+            MetricsUtils.countCronJobEvent(pool, "skipped");
+            log.warn("ScheduleJob (:{}) is still running, skip this fire", scheduleJob.getId());
+            scheduleLogger.warn("ScheduleJob (:{}) is still running, skip this fire", scheduleJob.getId());
+            return;
+        }
+
+        long submitTime = System.currentTimeMillis();
+        AtomicInteger state = new AtomicInteger(TASK_NEW);
+        Future<?> future;
+        try {
+            future = pools.get(pool).submit(() -> {
+                if (!state.compareAndSet(TASK_NEW, TASK_RUNNING)) {
+                    return;
+                }
+                long startTime = System.currentTimeMillis();
+                poolStats.recordWait(startTime - submitTime);
+
+                //执行超时从实际开始执行时计算
+                Thread worker = Thread.currentThread();
+                ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+                    synchronized (state) {
+                        if (!state.compareAndSet(TASK_RUNNING, TASK_TIMEOUT)) {
+                            return;
+                        }
+                        worker.interrupt();
+                    }
+                    poolStats.timeouts.incrementAndGet();
+                    MetricsUtils.countCronJobEvent(pool, "timeout");
+                    log.warn("ScheduleJob (:{}) timed out after running {} minutes and is interrupted", scheduleJob.getId(), timeoutMinute);
+                    scheduleLogger.warn("ScheduleJob (:{}) timed out after running {} minutes and is interrupted", scheduleJob.getId(), timeoutMinute);
+                }, timeoutMinute, TimeUnit.MINUTES);
+
+                boolean success = false;
+                try {
+                    success = execute(scheduleJob);
+                } finally {
+                    timeout.cancel(false);
+                    synchronized (state) {
+                        //超时中断未被任务消费时清除中断标记，避免影响线程池中的后续任务
+                        if (!state.compareAndSet(TASK_RUNNING, TASK_DONE)) {
+                            Thread.interrupted();
+                        }
+                    }
+                    long runMillis = System.currentTimeMillis() - startTime;
+                    poolStats.recordRun(runMillis);
+                    MetricsUtils.recordCronJob(scheduleJob.getJobType().trim(), pool, runMillis, success);
+                    runningJobs.remove(scheduleJob.getId(), token);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            runningJobs.remove(scheduleJob.getId(), token);
+            poolStats.rejected.incrementAndGet();
+            MetricsUtils.countCronJobEvent(pool, "rejected");
+            log.warn("ScheduleJob (:{}) is rejected, {} executor queue is full", scheduleJob.getId(), pool);
+            scheduleLogger.warn("ScheduleJob (:{}) is rejected, {} executor queue is full", scheduleJob.getId(), pool);
+            return;
+        }
+
+        //排队等待过久的触发直接丢弃，等待时间由 recordWait 统计
+        watchdog.schedule(() -> {
+            if (state.compareAndSet(TASK_NEW, TASK_CANCELLED)) {
+                future.cancel(false);
+                runningJobs.remove(scheduleJob.getId(), token);
+                poolStats.expired.incrementAndGet();
+                MetricsUtils.countCronJobEvent(pool, "expired");
+                log.warn("ScheduleJob (:{}) waited {} minutes in {} executor queue and is dropped", scheduleJob.getId(), timeoutMinute, pool);
+                scheduleLogger.warn("ScheduleJob (:{}) waited {} minutes in {} executor queue and is dropped", scheduleJob.getId(), timeoutMinute, pool);
+            }
+        }, timeoutMinute, TimeUnit.MINUTES);
+    }
+
+    public List<ScheduleExecutorMetrics> getMetrics() {
+        List<ScheduleExecutorMetrics> list = new ArrayList<>();
+        pools.forEach((name, executor) -> {
+            PoolStats poolStats = stats.get(name);
+            ScheduleExecutorMetrics metrics = new ScheduleExecutorMetrics();
+            metrics.setPool(name);
+            metrics.setPoolSize(executor.getPoolSize());
+            metrics.setActiveCount(executor.getActiveCount());
+            metrics.setQueueSize(executor.getQueue().size());
+            metrics.setQueueCapacity(queueCapacity);
+            metrics.setCompletedCount(executor.getCompletedTaskCount());
+            metrics.setRejectedCount(poolStats.rejected.get());
+            metrics.setSkippedCount(poolStats.skipped.get());
+            metrics.setTimeoutCount(poolStats.timeouts.get());
+            metrics.setExpiredCount(poolStats.expired.get());
+            metrics.setAvgWaitMillis(poolStats.waitCount.get() == 0 ? 0 : poolStats.waitTotal.get() / poolStats.waitCount.get());
+            metrics.setMaxWaitMillis(poolStats.waitMax.get());
+            metrics.setAvgRunMillis(poolStats.runCount.get() == 0 ? 0 : poolStats.runTotal.get() / poolStats.runCount.get());
+            metrics.setMaxRunMillis(poolStats.runMax.get());
+            list.add(metrics);
+        });
+        return list;
+    }
+
+    private boolean execute(ScheduleJob scheduleJob) {
+        String jobType = scheduleJob.getJobType().trim();
+        if (!StringUtils.isEmpty(jobType)) {
+            ScheduleService scheduleService = (ScheduleService) SpringContextHolder.getBean(jobType + "ScheduleService");
+            try {
+                scheduleService.execute(scheduleJob.getId());
+                return true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                log.error(e.getMessage());
+                scheduleLogger.error(e.getMessage());
+            }
+        } else {
+            log.warn("Unknown job type [{}], job ID: (:{})", jobType, scheduleJob.getId());
+            scheduleLogger.warn("Unknown job type [{}], job ID: (:{})", jobType, scheduleJob.getId());
+        }
+        return false;
+    }
+
+    /**
+     * 是否为物化任务，物化结果保存在各节点内存中，集群模式下每个节点都需执行
+     *
+     * @param scheduleJob
+     * @return
+     */
+    public static boolean isMaterialize(ScheduleJob scheduleJob) {
+        return POOL_MATERIALIZE.equalsIgnoreCase(StringUtils.isEmpty(scheduleJob.getJobType()) ? null : scheduleJob.getJobType().trim());
+    }
+
+    /**
+     * 物化任务进入物化线程池，避免与邮件任务争用；含图片的任务进入图片线程池，其余进入excel线程池
+     */
+    private String getPool(ScheduleJob scheduleJob) {
+        if (isMaterialize(scheduleJob)) {
+            return POOL_MATERIALIZE;
+        }
+        if (scheduleJob instanceof CronJob && !StringUtils.isEmpty(((CronJob) scheduleJob).getConfig())) {
+            try {
+                String type = JSONObject.parseObject(((CronJob) scheduleJob).getConfig()).getString("type");
+                if (CronJobMediaType.IMAGE.getType().equals(type) || CronJobMediaType.IMAGEANDEXCEL.getType().equals(type)) {
+                    return POOL_IMAGE;
+                }
+            } catch (Exception e) {
+                log.warn("parse ScheduleJob (:{}) config error: {}", scheduleJob.getId(), e.getMessage());
+            }
+        }
+        return POOL_EXCEL;
+    }
+
+    private ThreadPoolExecutor newPool(String name, int size) {
+        return new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("schedule-" + name + "-worker-%d").setDaemon(true).build());
+    }
+
+    private static class PoolStats {
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong waitCount = new AtomicLong();
+        private final AtomicLong waitTotal = new AtomicLong();
+        private final AtomicLong waitMax = new AtomicLong();
+        private final AtomicLong runCount = new AtomicLong();
+        private final AtomicLong runTotal = new AtomicLong();
+        private final AtomicLong runMax = new AtomicLong();
+
+        private void recordWait(long millis) {
+            waitCount.incrementAndGet();
+            waitTotal.addAndGet(millis);
+            waitMax.accumulateAndGet(millis, Math::max);
+        }
+
+        private void recordRun(long millis) {
+            runCount.incrementAndGet();
+            runTotal.addAndGet(millis);
+            runMax.accumulateAndGet(millis, Math::max);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.core.common.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单次请求的查询链路耗时，按线程绑定
+ * 同名阶段耗时累加，未开启追踪的线程调用 span 等方法无任何开销
+ */
+public class QueryTrace {
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 单次请求最多保留的 sql 条数
+     */
+    private static final int MAX_SQLS = 10;
+
+    private static final Span NOOP = new Span(null, null);
+
+    private final String name;
+
+    private final long start = System.nanoTime();
+
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    private final List<String> sqls = new ArrayList<>();
+
+    private long writeStart = -1L;
+
+    private QueryTrace(String name) {
+        this.name = name;
+    }
+
+    public static QueryTrace begin(String name) {
+        QueryTrace trace = new QueryTrace(name);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    public static boolean isActive() {
+        return null != CURRENT.get();
+    }
+
+    /**
+     * 开始一个阶段，配合 try-with-resources 使用
+     *
+     * @param stage
+     * @return
+     */
+    public static Span span(String stage) {
+        QueryTrace trace = CURRENT.get();
+        return null == trace ? NOOP : new Span(trace, stage);
+    }
+
+    /**
+     * 记录当前请求执行的 sql
+     *
+     * @param digest
+     * @param sql
+     */
+    public static void sql(String digest, String sql) {
+        QueryTrace trace = CURRENT.get();
+        if (null != trace && trace.sqls.size() < MAX_SQLS) {
+            trace.sqls.add(digest + "  >> \n" + sql);
+        }
+    }
+
+    /**
+     * 标记开始写出响应
+     */
+    public void markWrite() {
+        if (writeStart < 0) {
+            writeStart = System.nanoTime();
+            stages.putIfAbsent("handle", writeStart - start);
+        }
+    }
+
+    /**
+     * 结束响应写出阶段
+     */
+    public void finishWrite() {
+        if (writeStart >= 0) {
+            add("write", System.nanoTime() - writeStart);
+        }
+    }
+
+    private void add(String stage, long nanos) {
+        stages.merge(stage, nanos, Long::sum);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getSqls() {
+        return Collections.unmodifiableList(sqls);
+    }
+
+    public double elapsedMillis() {
+        return toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * 各阶段耗时，单位 ms
+     *
+     * @return
+     */
+    public Map<String, Double> getStageMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        stages.forEach((k, v) -> millis.put(k, toMillis(v)));
+        return millis;
+    }
+
+    /**
+     * Server-Timing 响应头格式
+     *
+     * @return
+     */
+    public String toServerTiming() {
+        StringBuilder builder = new StringBuilder();
+        stages.forEach((k, v) -> {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(k).append(";dur=").append(String.format("%.2f", toMillis(v)));
+        });
+        return builder.toString();
+    }
+
+    /**
+     * 日志格式
+     *
+     * @return
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder(name);
+        stages.forEach((k, v) -> builder.append(' ').append(k).append('=').append(String.format("%.2f", toMillis(v))).append("ms"));
+        return builder.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e4) / 100D;
+    }
+
+    public static class Span implements AutoCloseable {
+
+        private final QueryTrace trace;
+
+        private final String stage;
+
+        private final long start;
+
+        private Span(QueryTrace trace, String stage) {
+            this.trace = trace;
+            this.stage = stage;
+            this.start = null == trace ? 0L : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (null != trace) {
+                trace.add(stage, System.nanoTime() - start);
+            }
+        }
+    }
+}
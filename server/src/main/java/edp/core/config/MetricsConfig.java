@@ -0,0 +1,58 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.config;
+
+import edp.davinci.service.excel.ExecutorUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+
+/**
+ * 监控指标配置，指标由 /actuator/prometheus 输出
+ * 业务指标见 MetricsUtils，caffeine 缓存指标由 spring boot 自动注册
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Value("${spring.application.name:davinci}")
+    private String application;
+
+    @Bean
+    public MeterRegistryCustomizer<MeterRegistry> metricsCommonTags() {
+        return registry -> registry.config().commonTags("application", application);
+    }
+
+    /**
+     * excel 导出线程池
+     */
+    @Bean
+    public MeterBinder workbookExecutorMetrics() {
+        return registry -> {
+            new ExecutorServiceMetrics(ExecutorUtil.WORKBOOK_WORKERS, "workbook-worker", Collections.emptyList()).bindTo(registry);
+            new ExecutorServiceMetrics(ExecutorUtil.SHEET_WORKERS, "sheet-worker", Collections.emptyList()).bindTo(registry);
+        };
+    }
+}
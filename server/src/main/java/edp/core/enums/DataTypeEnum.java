@@ -26,35 +26,35 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public enum DataTypeEnum {
 
-    MYSQL("mysql", "mysql", "com.mysql.jdbc.Driver", "`", "`", "'", "'"),
+    MYSQL("mysql", "mysql", "com.mysql.jdbc.Driver", "`", "`", "'", "'", PaginationTypeEnum.LIMIT_COMMA),
 
-    ORACLE("oracle", "oracle", "oracle.jdbc.driver.OracleDriver", "\"", "\"", "\"", "\""),
+    ORACLE("oracle", "oracle", "oracle.jdbc.driver.OracleDriver", "\"", "\"", "\"", "\"", PaginationTypeEnum.ROWNUM),
 
-    SQLSERVER("sqlserver", "sqlserver", "com.microsoft.sqlserver.jdbc.SQLServerDriver", "\"", "\"", "\"", "\""),
+    SQLSERVER("sqlserver", "sqlserver", "com.microsoft.sqlserver.jdbc.SQLServerDriver", "\"", "\"", "\"", "\"", PaginationTypeEnum.TOP),
 
-    H2("h2", "h2", "org.h2.Driver", "`", "`", "\"", "\""),
+    H2("h2", "h2", "org.h2.Driver", "`", "`", "\"", "\"", PaginationTypeEnum.LIMIT_OFFSET),
 
-    PHOENIX("phoenix", "hbase phoenix", "org.apache.phoenix.jdbc.PhoenixDriver", "", "", "\"", "\""),
+    PHOENIX("phoenix", "hbase phoenix", "org.apache.phoenix.jdbc.PhoenixDriver", "", "", "\"", "\"", PaginationTypeEnum.LIMIT_OFFSET),
 
-    MONGODB("mongo", "mongodb", "mongodb.jdbc.MongoDriver", "`", "`", "\"", "\""),
+    MONGODB("mongo", "mongodb", "mongodb.jdbc.MongoDriver", "`", "`", "\"", "\"", PaginationTypeEnum.NONE),
 
-    ELASTICSEARCH("elasticsearch", "elasticsearch", "nl.anchormen.sql4es.jdbc.ESDriver", "", "", "'", "'"),
+    ELASTICSEARCH("elasticsearch", "elasticsearch", "nl.anchormen.sql4es.jdbc.ESDriver", "", "", "'", "'", PaginationTypeEnum.NONE),
 
-    PRESTO("presto", "presto", "com.facebook.presto.jdbc.PrestoDriver", "\"", "\"", "\"", "\""),
+    PRESTO("presto", "presto", "com.facebook.presto.jdbc.PrestoDriver", "\"", "\"", "\"", "\"", PaginationTypeEnum.LIMIT),
 
-    MOONBOX("moonbox", "moonbox", "moonbox.jdbc.MbDriver", "`", "`", "`", "`"),
+    MOONBOX("moonbox", "moonbox", "moonbox.jdbc.MbDriver", "`", "`", "`", "`", PaginationTypeEnum.NONE),
 
-    CASSANDRA("cassandra", "cassandra", "com.github.adejanovski.cassandra.jdbc.CassandraDriver", "", "", "'", "'"),
+    CASSANDRA("cassandra", "cassandra", "com.github.adejanovski.cassandra.jdbc.CassandraDriver", "", "", "'", "'", PaginationTypeEnum.NONE),
 
-    CLICKHOUSE("clickhouse", "clickhouse", "ru.yandex.clickhouse.ClickHouseDriver", "", "", "\"", "\""),
+    CLICKHOUSE("clickhouse", "clickhouse", "ru.yandex.clickhouse.ClickHouseDriver", "", "", "\"", "\"", PaginationTypeEnum.LIMIT_COMMA),
 
-    KYLIN("kylin", "kylin", "org.apache.kylin.jdbc.Driver", "\"", "\"", "\"", "\""),
+    KYLIN("kylin", "kylin", "org.apache.kylin.jdbc.Driver", "\"", "\"", "\"", "\"", PaginationTypeEnum.LIMIT_OFFSET),
 
-    VERTICA("vertica", "vertica", "com.vertica.jdbc.Driver", "", "", "'", "'"),
+    VERTICA("vertica", "vertica", "com.vertica.jdbc.Driver", "", "", "'", "'", PaginationTypeEnum.LIMIT_OFFSET),
 
-    HANA("sap", "sap hana", "com.sap.db.jdbc.Driver", "", "", "'", "'"),
+    HANA("sap", "sap hana", "com.sap.db.jdbc.Driver", "", "", "'", "'", PaginationTypeEnum.LIMIT_OFFSET),
 
-    IMPALA("impala", "impala", "com.cloudera.impala.jdbc41.Driver", "", "", "'", "'");
+    IMPALA("impala", "impala", "com.cloudera.impala.jdbc41.Driver", "", "", "'", "'", PaginationTypeEnum.NONE);
 
 
     private String feature;
@@ -64,8 +64,9 @@ public enum DataTypeEnum {
     private String keywordSuffix;
     private String aliasPrefix;
     private String aliasSuffix;
+    private PaginationTypeEnum paginationType;
 
-    DataTypeEnum(String feature, String desc, String driver, String keywordPrefix, String keywordSuffix, String aliasPrefix, String aliasSuffix) {
+    DataTypeEnum(String feature, String desc, String driver, String keywordPrefix, String keywordSuffix, String aliasPrefix, String aliasSuffix, PaginationTypeEnum paginationType) {
         this.feature = feature;
         this.desc = desc;
         this.driver = driver;
@@ -73,6 +74,7 @@ public enum DataTypeEnum {
         this.keywordSuffix = keywordSuffix;
         this.aliasPrefix = aliasPrefix;
         this.aliasSuffix = aliasSuffix;
+        this.paginationType = paginationType;
     }
 
     public static DataTypeEnum urlOf(String jdbcUrl) throws SourceException {
@@ -112,4 +114,8 @@ public enum DataTypeEnum {
     public String getAliasSuffix() {
         return aliasSuffix;
     }
+
+    public PaginationTypeEnum getPaginationType() {
+        return paginationType;
+    }
 }
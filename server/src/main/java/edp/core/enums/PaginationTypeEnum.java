@@ -0,0 +1,178 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.core.enums;
+
+import com.alibaba.druid.util.StringUtils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据源分页下推方式
+ */
+public enum PaginationTypeEnum {
+
+    /**
+     * 不支持分页下推，由 ResultSet 跳过 offset 之前的数据
+     */
+    NONE(false) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return sql;
+        }
+    },
+
+    /**
+     * LIMIT offset, size
+     */
+    LIMIT_COMMA(true) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return wrapLimited(sql) + " LIMIT " + offset + ", " + size;
+        }
+    },
+
+    /**
+     * LIMIT (offset + size)，只能限制读取行数，offset 之前的数据仍由 ResultSet 跳过
+     */
+    LIMIT(false) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return wrapLimited(sql) + " LIMIT " + (offset + size);
+        }
+    },
+
+    /**
+     * LIMIT size OFFSET offset
+     */
+    LIMIT_OFFSET(true) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return wrapLimited(sql) + " LIMIT " + size + " OFFSET " + offset;
+        }
+    },
+
+    /**
+     * OFFSET offset LIMIT size
+     */
+    OFFSET_LIMIT(true) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return wrapLimited(sql) + " OFFSET " + offset + " LIMIT " + size;
+        }
+    },
+
+    /**
+     * OFFSET offset ROWS FETCH NEXT size ROWS ONLY
+     */
+    OFFSET_FETCH(true) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return wrapLimited(sql) + " OFFSET " + offset + " ROWS FETCH NEXT " + size + " ROWS ONLY";
+        }
+    },
+
+    /**
+     * Oracle ROWNUM，行号列需从结果中排除
+     */
+    ROWNUM(true) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            return "SELECT * FROM (SELECT PT.*, ROWNUM " + ROW_NUMBER_COLUMN + " FROM (" + sql + ") PT WHERE ROWNUM <= " + (offset + size) + ") WHERE " + ROW_NUMBER_COLUMN + " > " + offset;
+        }
+    },
+
+    /**
+     * SELECT TOP (offset + size)，只能限制读取行数，offset 之前的数据仍由 ResultSet 跳过
+     */
+    TOP(false) {
+        @Override
+        public String paginate(String sql, int offset, int size) {
+            Matcher matcher = PATTERN_SELECT_HEAD.matcher(sql);
+            if (!matcher.find()) {
+                return sql;
+            }
+            if (PATTERN_ROW_LIMIT.matcher(sql).find()) {
+                return "SELECT TOP " + (offset + size) + " * FROM (" + sql + ") " + WRAP_ALIAS;
+            }
+            return matcher.group() + " TOP " + (offset + size) + sql.substring(matcher.end());
+        }
+    };
+
+    public static final String ROW_NUMBER_COLUMN = "DAVINCI_RN";
+
+    private static final Pattern PATTERN_SELECT_HEAD = Pattern.compile("^\\s*(?i)select(\\s+distinct)?");
+
+    /**
+     * 原始sql自带的行数限制，存在时需包一层子查询再分页，避免出现两个 LIMIT/TOP
+     */
+    private static final Pattern PATTERN_ROW_LIMIT = Pattern.compile("(?i)\\b(limit|top|fetch|offset)\\b");
+
+    private static final String WRAP_ALIAS = "T";
+
+    private boolean offsetPushdown;
+
+    PaginationTypeEnum(boolean offsetPushdown) {
+        this.offsetPushdown = offsetPushdown;
+    }
+
+    /**
+     * 构造分页sql
+     *
+     * @param sql
+     * @param offset 起始行（从0开始）
+     * @param size   读取行数
+     * @return
+     */
+    public abstract String paginate(String sql, int offset, int size);
+
+    /**
+     * offset 是否由数据库处理
+     *
+     * @return
+     */
+    public boolean isOffsetPushdown() {
+        return offsetPushdown;
+    }
+
+    /**
+     * sql 已带 LIMIT/TOP/FETCH/OFFSET 时包装为 SELECT * FROM (sql) T，否则原样返回
+     *
+     * @param sql
+     * @return
+     */
+    private static String wrapLimited(String sql) {
+        if (!PATTERN_ROW_LIMIT.matcher(sql).find()) {
+            return sql;
+        }
+        return "SELECT * FROM (" + sql + ") " + WRAP_ALIAS;
+    }
+
+    public static PaginationTypeEnum typeOf(String type) {
+        if (StringUtils.isEmpty(type)) {
+            return null;
+        }
+        for (PaginationTypeEnum paginationTypeEnum : values()) {
+            if (paginationTypeEnum.name().equalsIgnoreCase(type.trim())) {
+                return paginationTypeEnum;
+            }
+        }
+        return null;
+    }
+}
@@ -27,6 +27,8 @@ import java.util.List;
 
 @Slf4j
 public abstract class BaseSource extends RecordInfo<Source> {
+    public abstract Long getId();
+
     public abstract String getJdbcUrl();
 
     public abstract String getUsername();
@@ -40,4 +42,6 @@ public abstract class BaseSource extends RecordInfo<Source> {
     public abstract List<Dict> getProperties();
 
     public abstract boolean isExt();
+
+    public abstract String getPagination();
 }
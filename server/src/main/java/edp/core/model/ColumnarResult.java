@@ -0,0 +1,114 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.core.model;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 按列存储的查询结果，相比逐行 Map 占用更少内存，也便于按列计算
+ */
+@Getter
+public class ColumnarResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<QueryColumn> columns;
+
+    /**
+     * data[列][行]
+     */
+    private final Object[][] data;
+
+    private final int rowCount;
+
+    public ColumnarResult(List<QueryColumn> columns, Object[][] data, int rowCount) {
+        this.columns = columns;
+        this.data = data;
+        this.rowCount = rowCount;
+    }
+
+    public static ColumnarResult of(List<QueryColumn> columns, List<Map<String, Object>> rows) {
+        List<QueryColumn> queryColumns = null == columns ? Collections.emptyList() : new ArrayList<>(columns);
+        int rowCount = null == rows ? 0 : rows.size();
+        Object[][] data = new Object[queryColumns.size()][rowCount];
+        for (int i = 0; i < queryColumns.size(); i++) {
+            String name = queryColumns.get(i).getName();
+            Object[] column = data[i];
+            for (int j = 0; j < rowCount; j++) {
+                column[j] = rows.get(j).get(name);
+            }
+        }
+        return new ColumnarResult(queryColumns, data, rowCount);
+    }
+
+    /**
+     * 列下标，不存在时返回 -1
+     *
+     * @param name
+     * @return
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long cells() {
+        return (long) columns.size() * rowCount;
+    }
+
+    /**
+     * 还原为行
+     *
+     * @param from           起始行（含）
+     * @param to             结束行（不含）
+     * @param excludeColumns 不输出的列
+     * @return
+     */
+    public List<Map<String, Object>> toRows(int from, int to, Set<String> excludeColumns) {
+        int start = Math.max(0, from);
+        int end = Math.min(rowCount, to);
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (null == excludeColumns || !excludeColumns.contains(columns.get(i).getName())) {
+                indexes.add(i);
+            }
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(end - start);
+        for (int j = start; j < end; j++) {
+            Map<String, Object> row = new LinkedHashMap<>(indexes.size() * 2);
+            for (int i : indexes) {
+                row.put(columns.get(i).getName(), data[i][j]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -39,7 +39,9 @@ public class JdbcSourceInfo {
 
     private boolean ext;
 
-    private JdbcSourceInfo(String jdbcUrl, String username, String password, String database, String dbVersion, List<Dict> properties, boolean ext) {
+    private Long sourceId;
+
+    private JdbcSourceInfo(String jdbcUrl, String username, String password, String database, String dbVersion, List<Dict> properties, boolean ext, Long sourceId) {
         this.jdbcUrl = jdbcUrl;
         this.username = username;
         this.password = password;
@@ -47,6 +49,7 @@ public class JdbcSourceInfo {
         this.dbVersion = dbVersion;
         this.properties = properties;
         this.ext = ext;
+        this.sourceId = sourceId;
     }
 
 
@@ -58,6 +61,7 @@ public class JdbcSourceInfo {
         private String dbVersion;
         private List<Dict> properties;
         private boolean ext;
+        private Long sourceId;
 
         private JdbcSourceInfoBuilder() {
         }
@@ -101,8 +105,13 @@ public class JdbcSourceInfo {
             return this;
         }
 
+        public JdbcSourceInfoBuilder withSourceId(Long sourceId) {
+            this.sourceId = sourceId;
+            return this;
+        }
+
         public JdbcSourceInfo build() {
-            return new JdbcSourceInfo(jdbcUrl, username, password, database, dbVersion, properties, ext);
+            return new JdbcSourceInfo(jdbcUrl, username, password, database, dbVersion, properties, ext, sourceId);
         }
     }
 }
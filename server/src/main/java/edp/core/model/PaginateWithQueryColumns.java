@@ -27,4 +27,19 @@ import java.util.Map;
 @Data
 public class PaginateWithQueryColumns extends Paginate<Map<String, Object>> {
     List<QueryColumn> columns;
+
+    /**
+     * 是否存在下一页
+     */
+    boolean hasNext;
+
+    /**
+     * 异步总数查询标识，用于获取异步计算的总数
+     */
+    String countDigest;
+
+    /**
+     * 物化结果的刷新时间，直接查询数据源时为空
+     */
+    Long materializedTime;
 }
@@ -0,0 +1,48 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.core.model;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+public class QueryCostEstimate implements Serializable {
+
+    /**
+     * 预估扫描行数，未知时为 -1
+     */
+    private long rows = -1;
+
+    /**
+     * 预估扫描字节数，未知时为 -1
+     */
+    private long bytes = -1;
+
+    private String plan;
+
+    public QueryCostEstimate(long rows, long bytes, String plan) {
+        this.rows = rows;
+        this.bytes = bytes;
+        this.plan = plan;
+    }
+
+    public QueryCostEstimate() {
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.model;
+
+import lombok.Data;
+
+@Data
+public class ScheduleExecutorMetrics {
+
+    private String pool;
+
+    private int poolSize;
+
+    private int activeCount;
+
+    private int queueSize;
+
+    private int queueCapacity;
+
+    private long completedCount;
+
+    /**
+     * 队列已满被拒绝的触发数
+     */
+    private long rejectedCount;
+
+    /**
+     * 上一次执行未结束而跳过的触发数
+     */
+    private long skippedCount;
+
+    /**
+     * 执行超时被中断的触发数
+     */
+    private long timeoutCount;
+
+    /**
+     * 排队超时被丢弃的触发数
+     */
+    private long expiredCount;
+
+    private long avgWaitMillis;
+
+    private long maxWaitMillis;
+
+    private long avgRunMillis;
+
+    private long maxRunMillis;
+}
@@ -22,6 +22,7 @@ package edp.core.utils;
 import com.alibaba.druid.util.StringUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import edp.core.consts.Consts;
+import edp.core.enums.PaginationTypeEnum;
 import edp.core.model.CustomDataSource;
 import lombok.Getter;
 import org.yaml.snakeyaml.Yaml;
@@ -113,6 +114,10 @@ public class CustomDataSourceUtils {
                 }
             }
 
+            if (!StringUtils.isEmpty(customDataSource.getPagination()) && null == PaginationTypeEnum.typeOf(customDataSource.getPagination())) {
+                throw new Exception("Load custom datasource error: invalid pagination " + customDataSource.getPagination());
+            }
+
             List<String> versoins = null;
             if (dataSourceVersoin.containsKey(customDataSource.getName())) {
                 versoins = dataSourceVersoin.get(customDataSource.getName());
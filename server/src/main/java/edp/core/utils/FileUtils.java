@@ -31,7 +31,9 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -213,16 +215,28 @@ public class FileUtils {
      * @param targetFile
      */
     public static void zipFile(List<File> files, File targetFile) {
+        Map<String, File> entries = new LinkedHashMap<>();
+        files.forEach(file -> entries.put(file.getName(), file));
+        zipFile(entries, targetFile);
+    }
+
+    /**
+     * 压缩文件到zip
+     *
+     * @param entries    zip内文件名 -> 文件
+     * @param targetFile
+     */
+    public static void zipFile(Map<String, File> entries, File targetFile) {
 
-        byte[] bytes = new byte[1024];
+        byte[] bytes = new byte[8192];
         ZipOutputStream out = null;
         FileInputStream in = null;
         try {
-            out = new ZipOutputStream(new FileOutputStream(targetFile));
-            for (File file : files) {
+            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(targetFile)));
+            for (Map.Entry<String, File> entry : entries.entrySet()) {
                 try {
-                    in = new FileInputStream(file);
-                    out.putNextEntry(new ZipEntry(file.getName()));
+                    in = new FileInputStream(entry.getValue());
+                    out.putNextEntry(new ZipEntry(entry.getKey()));
                     int length;
                     while ((length = in.read(bytes)) > 0) {
                         out.write(bytes, 0, length);
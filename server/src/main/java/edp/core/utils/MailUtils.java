@@ -28,6 +28,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Component;
@@ -70,6 +71,42 @@ public class MailUtils {
 
     public void sendMail(MailContent mailContent, Logger customLogger) throws ServerException {
         Stopwatch watch = Stopwatch.createStarted();
+        MimeMessage message = createMimeMessage(mailContent, customLogger);
+        try {
+            javaMailSender.send(message);
+            log.info("Email sending --- content: {}, cost: {}", mailContent.toString(), watch.elapsed(TimeUnit.MILLISECONDS));
+            if (customLogger != null) {
+                customLogger.info("Email sending --- content: {}, cost: {}", mailContent.toString(), watch.elapsed(TimeUnit.MILLISECONDS));
+            }
+        } catch (MailException e) {
+            log.error("Send mail failed, {}\n", e.getMessage());
+            if (customLogger != null) {
+                customLogger.error("Send mail failed, {}\n", e.getMessage());
+            }
+            e.printStackTrace();
+            throw new ServerException(e.getMessage());
+        }
+    }
+
+    /**
+     * 批量发送，复用同一个SMTP连接
+     *
+     * @param messages
+     * @throws MailException 部分失败时为 MailSendException，可通过 getFailedMessages 获取失败的邮件
+     */
+    public void sendMimeMessages(MimeMessage... messages) throws MailException {
+        javaMailSender.send(messages);
+    }
+
+    /**
+     * 校验邮件内容并渲染为 MimeMessage
+     *
+     * @param mailContent
+     * @param customLogger
+     * @return
+     * @throws ServerException 内容校验或渲染失败，包括发件人昵称编码错误
+     */
+    public MimeMessage createMimeMessage(MailContent mailContent, Logger customLogger) throws ServerException {
         if (mailContent == null) {
             throw new ServerException("Mail content is null");
         }
@@ -195,11 +232,7 @@ public class MailUtils {
                 });
             }
 
-            javaMailSender.send(message);
-            log.info("Email sending --- content: {}, cost: {}", mailContent.toString(), watch.elapsed(TimeUnit.MILLISECONDS));
-            if (customLogger != null) {
-                customLogger.info("Email sending --- content: {}, cost: {}", mailContent.toString(), watch.elapsed(TimeUnit.MILLISECONDS));
-            }
+            return message;
         } catch (MessagingException e) {
             log.error("Send mail failed, {}\n", e.getMessage());
             if (customLogger != null) {
@@ -213,6 +246,7 @@ public class MailUtils {
                 customLogger.error("Send mail failed, {}\n", e.getMessage());
             }
             e.printStackTrace();
+            throw new ServerException(e.getMessage());
         }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.utils;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import io.micrometer.core.instrument.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 业务指标，写入 Micrometer 全局注册表，由 /actuator/prometheus 输出
+ * SqlUtils 等非 Spring 管理的对象同样可以直接调用
+ */
+public class MetricsUtils {
+
+    public static final String QUERY = "davinci.query";
+
+    public static final String QUERY_ROWS = "davinci.query.rows";
+
+    public static final String QUERY_COUNT = "davinci.query.count";
+
+    public static final String SOURCE_POOL = "davinci.source.pool";
+
+    public static final String CRON_JOB = "davinci.cronjob";
+
+    public static final String CRON_JOB_EVENTS = "davinci.cronjob.events";
+
+    public static final String SCREENSHOT = "davinci.screenshot";
+
+    public static final String STATISTIC_DROPPED = "davinci.statistic.dropped";
+
+    public static final String RESULT_SUCCESS = "success";
+
+    public static final String RESULT_ERROR = "error";
+
+    /**
+     * 数据源id -> 连接池，重建连接池时替换引用，已注册的 gauge 保持不变
+     */
+    private static final Map<Long, AtomicReference<DruidDataSource>> DATA_SOURCES = new ConcurrentHashMap<>();
+
+    private static MeterRegistry registry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * view 取数耗时与返回行数
+     * <p>
+     * 耗时开启了百分位直方图，不带 view 标签以免序列数随 view 数量膨胀，单个 view 的耗时排行见 /monitor/queries
+     *
+     * @param type     data 或 distinct
+     * @param sourceId
+     * @param viewId
+     * @param millis
+     * @param rows     失败时为 -1
+     */
+    public static void recordQuery(String type, Long sourceId, Long viewId, long millis, int rows) {
+        String result = rows < 0 ? RESULT_ERROR : RESULT_SUCCESS;
+        Timer.builder(QUERY)
+                .description("view query latency")
+                .tags("type", type, "source", String.valueOf(sourceId), "result", result)
+                .register(registry())
+                .record(millis, TimeUnit.MILLISECONDS);
+        if (rows >= 0) {
+            DistributionSummary.builder(QUERY_ROWS)
+                    .description("rows returned by view query")
+                    .baseUnit("rows")
+                    .tags("type", type, "source", String.valueOf(sourceId), "view", String.valueOf(viewId))
+                    .register(registry())
+                    .record(rows);
+        }
+    }
+
+    /**
+     * 分页总数查询耗时
+     *
+     * @param database 数据源类型
+     * @param mode     sync 或 async
+     * @param millis
+     */
+    public static void recordCountQuery(String database, String mode, long millis) {
+        Timer.builder(QUERY_COUNT)
+                .description("count query latency")
+                .tags("database", String.valueOf(database), "mode", mode)
+                .register(registry())
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 定时任务执行耗时
+     */
+    public static void recordCronJob(String jobType, String pool, long millis, boolean success) {
+        Timer.builder(CRON_JOB)
+                .description("cron job duration")
+                .tags("type", jobType, "pool", pool, "result", success ? RESULT_SUCCESS : RESULT_ERROR)
+                .register(registry())
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 定时任务被拒绝、跳过或超时
+     */
+    public static void countCronJobEvent(String pool, String event) {
+        Counter.builder(CRON_JOB_EVENTS)
+                .description("cron job fires that were rejected, skipped or timed out")
+                .tags("pool", pool, "event", event)
+                .register(registry())
+                .increment();
+    }
+
+    /**
+     * 浏览器截图耗时
+     */
+    public static void recordScreenshot(String browser, long millis, boolean success) {
+        Timer.builder(SCREENSHOT)
+                .description("headless browser screenshot duration")
+                .tags("browser", browser, "result", success ? RESULT_SUCCESS : RESULT_ERROR)
+                .register(registry())
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 埋点缓冲区已满被丢弃的记录数
+     */
+    public static void countStatisticDropped(String table) {
+        Counter.builder(STATISTIC_DROPPED)
+                .description("buried point records dropped because the buffer was full")
+                .tags("table", table)
+                .register(registry())
+                .increment();
+    }
+
+    /**
+     * 注册数据源连接池的活跃、等待与空闲连接数，以数据源id为标签，不输出连接地址与用户名
+     * 配置相同的数据源共用连接池时，指标记在创建连接池的数据源下；测试连接等无数据源id的连接池不注册
+     *
+     * @param sourceId
+     * @param dataSource
+     */
+    public static void bindDataSource(Long sourceId, DruidDataSource dataSource) {
+        if (null == sourceId) {
+            return;
+        }
+        DATA_SOURCES.computeIfAbsent(sourceId, id -> {
+            AtomicReference<DruidDataSource> reference = new AtomicReference<>();
+            Tags tags = Tags.of("source", String.valueOf(id));
+            poolGauge("active", "connections in use", reference, tags, DruidDataSource::getActiveCount);
+            poolGauge("waiting", "threads waiting for a connection", reference, tags, DruidDataSource::getWaitThreadCount);
+            poolGauge("idle", "idle connections", reference, tags, DruidDataSource::getPoolingCount);
+            poolGauge("max", "max connections", reference, tags, DruidDataSource::getMaxActive);
+            return reference;
+        }).set(dataSource);
+    }
+
+    private static void poolGauge(String name, String description, AtomicReference<DruidDataSource> reference, Tags tags,
+                                  ToDoubleFunction<DruidDataSource> function) {
+        Gauge.builder(SOURCE_POOL + "." + name, reference, r -> {
+            DruidDataSource dataSource = r.get();
+            return null == dataSource || dataSource.isClosed() ? 0D : function.applyAsDouble(dataSource);
+        }).description(description).tags(tags).register(registry());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.core.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按 getter 读取对象属性，每个类首次使用时通过 LambdaMetafactory 生成访问器并缓存，
+ * 避免每次读取都反射调用
+ */
+@Slf4j
+public class PropertyAccessors {
+
+    private static final Map<Class<?>, Map<String, Function<Object, Object>>> ACCESSORS = new ConcurrentHashMap<>();
+
+    private PropertyAccessors() {
+    }
+
+    /**
+     * 类的属性访问器，按属性名排序
+     *
+     * @param clz
+     * @return 属性名 -> 访问器
+     */
+    public static Map<String, Function<Object, Object>> of(Class<?> clz) {
+        return ACCESSORS.computeIfAbsent(clz, PropertyAccessors::generate);
+    }
+
+    /**
+     * 对象属性转 map，List 类型的值转为字符串
+     *
+     * @param bean
+     * @return
+     */
+    public static Map<String, Object> toMap(Object bean) {
+        Map<String, Function<Object, Object>> accessors = of(bean.getClass());
+        Map<String, Object> map = new HashMap<>(accessors.size() * 2);
+        accessors.forEach((name, accessor) -> {
+            Object value = accessor.apply(bean);
+            map.put(name, value instanceof List ? value.toString() : value);
+        });
+        return map;
+    }
+
+    private static Map<String, Function<Object, Object>> generate(Class<?> clz) {
+        Map<String, Function<Object, Object>> accessors = new TreeMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method method : clz.getMethods()) {
+            String name = method.getName();
+            if (!name.startsWith("get") || name.length() <= 3 || method.getParameterCount() > 0
+                    || Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            String property = name.substring(3, 4).toLowerCase() + name.substring(4);
+            accessors.put(property, accessor(lookup, method));
+        }
+        return Collections.unmodifiableMap(accessors);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> accessor(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle,
+                    handle.type().wrap());
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            log.debug("generate accessor for {} failed, fallback to reflection: {}", method, e.getMessage());
+            return bean -> {
+                try {
+                    return method.invoke(bean);
+                } catch (Exception ex) {
+                    return null;
+                }
+            };
+        }
+    }
+}
@@ -26,6 +26,7 @@ import edp.core.model.ScheduleJob;
 import edp.davinci.core.enums.LogNameEnum;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +34,8 @@ import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 @Slf4j
 @Component
@@ -149,6 +152,27 @@ public class QuartzHandler {
         }
     }
 
+    /**
+     * 本节点已注册触发器的任务id
+     *
+     * @return
+     * @throws ServerException
+     */
+    public Set<Long> getJobIds() throws ServerException {
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        Set<Long> jobIds = new HashSet<>();
+        try {
+            for (TriggerKey triggerKey : scheduler.getTriggerKeys(GroupMatcher.anyTriggerGroup())) {
+                if (triggerKey.getName().startsWith(JOB_NAME_PREFIX)) {
+                    jobIds.add(Long.parseLong(triggerKey.getName().substring(JOB_NAME_PREFIX.length())));
+                }
+            }
+        } catch (Exception e) {
+            throw new ServerException(e.getMessage());
+        }
+        return jobIds;
+    }
+
     public void startJobs() throws ServerException {
         Scheduler scheduler = schedulerFactoryBean.getScheduler();
         try {
@@ -0,0 +1,113 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.core.utils;
+
+import edp.core.exception.ServerException;
+import edp.core.model.QueryCostEstimate;
+import edp.davinci.model.Source;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询代价保护：执行前通过 EXPLAIN 预估扫描量，超过数据源阈值的查询被拒绝或排队执行
+ */
+@Slf4j
+@Component
+public class QueryCostGuard {
+
+    private static final String ACTION_QUEUE = "QUEUE";
+
+    @Value("${source.cost-guard.enable:false}")
+    private boolean enable;
+
+    @Value("${source.cost-guard.max-scan-rows:-1}")
+    private long maxScanRows;
+
+    @Value("${source.cost-guard.max-scan-bytes:-1}")
+    private long maxScanBytes;
+
+    /**
+     * 超出阈值时的处理方式：REJECT 或 QUEUE
+     */
+    @Value("${source.cost-guard.action:REJECT}")
+    private String action;
+
+    @Value("${source.cost-guard.queue-concurrency:1}")
+    private int queueConcurrency;
+
+    @Value("${source.cost-guard.queue-timeout-second:60}")
+    private long queueTimeout;
+
+    private final Map<Long, Semaphore> heavyQueryPermits = new ConcurrentHashMap<>();
+
+    /**
+     * 按预估代价执行查询
+     *
+     * @param source
+     * @param sqlUtils
+     * @param sql
+     * @param query
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public <T> T execute(Source source, SqlUtils sqlUtils, String sql, Callable<T> query) throws Exception {
+        if (!enable) {
+            return query.call();
+        }
+
+        long rowsLimit = null == source.getMaxScanRows() ? maxScanRows : source.getMaxScanRows();
+        long bytesLimit = null == source.getMaxScanBytes() ? maxScanBytes : source.getMaxScanBytes();
+        if (rowsLimit <= 0 && bytesLimit <= 0) {
+            return query.call();
+        }
+
+        QueryCostEstimate estimate = sqlUtils.explain(sql);
+        if (null == estimate || !isOverLimit(estimate, rowsLimit, bytesLimit)) {
+            return query.call();
+        }
+
+        if (!ACTION_QUEUE.equalsIgnoreCase(action)) {
+            log.warn("source (:{}) query rejected, estimate rows: {}, bytes: {}", source.getId(), estimate.getRows(), estimate.getBytes());
+            throw new ServerException(String.format("Query rejected: estimated scan of %d rows / %d bytes exceeds the limit of this source, please add filters", estimate.getRows(), estimate.getBytes()));
+        }
+
+        Semaphore permits = heavyQueryPermits.computeIfAbsent(source.getId(), id -> new Semaphore(Math.max(queueConcurrency, 1), true));
+        if (!permits.tryAcquire(queueTimeout, TimeUnit.SECONDS)) {
+            log.warn("source (:{}) heavy query waiting timeout, estimate rows: {}, bytes: {}", source.getId(), estimate.getRows(), estimate.getBytes());
+            throw new ServerException("Query rejected: too many heavy queries on this source, please try again later");
+        }
+        try {
+            return query.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isOverLimit(QueryCostEstimate estimate, long rowsLimit, long bytesLimit) {
+        return (rowsLimit > 0 && estimate.getRows() > rowsLimit) || (bytesLimit > 0 && estimate.getBytes() > bytesLimit);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.core.utils;
+
+import com.alibaba.druid.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.util.deparser.ExpressionDeParser;
+import net.sf.jsqlparser.util.deparser.SelectDeParser;
+import net.sf.jsqlparser.util.deparser.StatementDeParser;
+
+import java.util.regex.Pattern;
+
+/**
+ * sql 指纹：常量替换为 ?，IN 列表合并为 IN (?)，同一结构的查询得到相同指纹
+ * <p>
+ * JSQLParser 无法解析时按正则替换字符串与数字常量
+ */
+@Slf4j
+public class SqlFingerprintUtils {
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.`\"])-?\\d+(?:\\.\\d+)?(?![\\w`\"])");
+
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlFingerprintUtils() {
+    }
+
+    /**
+     * 归一化 sql
+     *
+     * @param sql
+     * @return
+     */
+    public static String normalize(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return sql;
+        }
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            StringBuilder buffer = new StringBuilder();
+            LiteralMaskingDeParser expressionDeParser = new LiteralMaskingDeParser();
+            SelectDeParser selectDeParser = new SelectDeParser(expressionDeParser, buffer);
+            expressionDeParser.setSelectVisitor(selectDeParser);
+            expressionDeParser.setBuffer(buffer);
+            statement.accept(new StatementDeParser(expressionDeParser, selectDeParser, buffer));
+            return buffer.toString();
+        } catch (Throwable e) {
+            log.debug("fingerprint sql by pattern: {}", e.getMessage());
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("IN (?)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * sql 指纹摘要
+     *
+     * @param normalizedSql 归一化后的 sql
+     * @return
+     */
+    public static String digest(String normalizedSql) {
+        return MD5Util.getMD5(normalizedSql, true, 16);
+    }
+
+    private static class LiteralMaskingDeParser extends ExpressionDeParser {
+
+        @Override
+        public void visit(LongValue longValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(DoubleValue doubleValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(StringValue stringValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(HexValue hexValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(DateValue dateValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(TimeValue timeValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(TimestampValue timestampValue) {
+            getBuffer().append('?');
+        }
+
+        @Override
+        public void visit(InExpression inExpression) {
+            if (null != inExpression.getLeftExpression()
+                    && inExpression.getRightItemsList() instanceof ExpressionList
+                    && isLiteralList((ExpressionList) inExpression.getRightItemsList())) {
+                inExpression.getLeftExpression().accept(this);
+                getBuffer().append(inExpression.isNot() ? " NOT IN (?)" : " IN (?)");
+                return;
+            }
+            super.visit(inExpression);
+        }
+
+        private static boolean isLiteralList(ExpressionList list) {
+            if (null == list.getExpressions()) {
+                return false;
+            }
+            for (Expression expression : list.getExpressions()) {
+                if (!(expression instanceof LongValue || expression instanceof DoubleValue || expression instanceof StringValue
+                        || expression instanceof DateValue || expression instanceof TimeValue || expression instanceof TimestampValue
+                        || expression instanceof HexValue || expression instanceof NullValue)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
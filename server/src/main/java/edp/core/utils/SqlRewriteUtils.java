@@ -0,0 +1,304 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.core.utils;
+
+import com.alibaba.druid.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+
+import java.util.*;
+
+import static edp.core.consts.Consts.*;
+
+/**
+ * view sql 改写：将外层查询的过滤条件和列裁剪下推到 view sql 内部
+ * <p>
+ * 仅处理单表/多表关联的简单查询（无 DISTINCT、GROUP BY、HAVING、LIMIT、窗口函数），
+ * 无法安全改写或解析器无法完整还原原sql时原样返回
+ */
+@Slf4j
+public class SqlRewriteUtils {
+
+    private SqlRewriteUtils() {
+    }
+
+    /**
+     * 下推过滤条件和查询列
+     *
+     * @param sql               view sql
+     * @param filters           外层查询过滤条件
+     * @param referencedColumns 外层查询引用的列，为空时不裁剪查询列
+     * @return
+     */
+    public static String pushdown(String sql, List<String> filters, Set<String> referencedColumns) {
+        if (StringUtils.isEmpty(sql) || (CollectionUtils.isEmpty(filters) && CollectionUtils.isEmpty(referencedColumns))) {
+            return sql;
+        }
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            if (!(statement instanceof Select)) {
+                return sql;
+            }
+            Select select = (Select) statement;
+            if (!CollectionUtils.isEmpty(select.getWithItemsList()) || !(select.getSelectBody() instanceof PlainSelect)) {
+                return sql;
+            }
+            PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+            if (!isSimpleSelect(plainSelect)) {
+                return sql;
+            }
+            // 解析器不识别的方言语法（hint、函数参数等）会在重新序列化时丢失，此时不改写
+            if (!normalize(select.toString()).equals(normalize(sql))) {
+                return sql;
+            }
+
+            Map<String, Column> outputColumns = getOutputColumns(plainSelect);
+            boolean changed = false;
+
+            Set<String> prunedColumns = CollectionUtils.isEmpty(referencedColumns) ? null : new HashSet<>(referencedColumns);
+            if (!CollectionUtils.isEmpty(filters)) {
+                for (String filter : filters) {
+                    if (StringUtils.isEmpty(filter)) {
+                        continue;
+                    }
+                    Expression expression;
+                    try {
+                        expression = CCJSqlParserUtil.parseCondExpression(filter);
+                    } catch (Exception e) {
+                        // 无法确认过滤条件引用的列，不再裁剪查询列
+                        prunedColumns = null;
+                        continue;
+                    }
+                    List<Column> columns = getColumns(expression);
+                    if (null != prunedColumns) {
+                        if (columns.contains(null)) {
+                            prunedColumns = null;
+                        } else {
+                            for (Column column : columns) {
+                                prunedColumns.add(column.getColumnName());
+                            }
+                        }
+                    }
+                    if (resolveColumns(columns, plainSelect, outputColumns)) {
+                        Expression where = plainSelect.getWhere();
+                        plainSelect.setWhere(null == where ? new Parenthesis(expression) : new AndExpression(wrap(where), new Parenthesis(expression)));
+                        changed = true;
+                    }
+                }
+            }
+
+            if (!CollectionUtils.isEmpty(prunedColumns) && pruneSelectItems(plainSelect, prunedColumns)) {
+                changed = true;
+            }
+
+            if (!changed) {
+                return sql;
+            }
+            String rewritten = select.toString();
+            CCJSqlParserUtil.parse(rewritten);
+            return rewritten;
+        } catch (Throwable e) {
+            log.debug("rewrite sql skipped: {}", e.getMessage());
+        }
+        return sql;
+    }
+
+    private static boolean isSimpleSelect(PlainSelect plainSelect) {
+        if (null != plainSelect.getDistinct()
+                || !CollectionUtils.isEmpty(plainSelect.getGroupByColumnReferences())
+                || null != plainSelect.getHaving()
+                || null != plainSelect.getLimit()
+                || null != plainSelect.getOffset()
+                || null != plainSelect.getFetch()
+                || null != plainSelect.getTop()
+                || !CollectionUtils.isEmpty(plainSelect.getIntoTables())
+                || null == plainSelect.getFromItem()) {
+            return false;
+        }
+
+        final boolean[] analytic = {false};
+        ExpressionVisitorAdapter analyticFinder = new ExpressionVisitorAdapter() {
+            @Override
+            public void visit(AnalyticExpression expr) {
+                analytic[0] = true;
+            }
+        };
+        for (SelectItem selectItem : plainSelect.getSelectItems()) {
+            if (selectItem instanceof SelectExpressionItem) {
+                ((SelectExpressionItem) selectItem).getExpression().accept(analyticFinder);
+            }
+        }
+        return !analytic[0];
+    }
+
+    /**
+     * 获取 view sql 输出列名与内部列的映射，仅包含直接引用列的查询项
+     */
+    private static Map<String, Column> getOutputColumns(PlainSelect plainSelect) {
+        Map<String, Column> outputColumns = new HashMap<>();
+        for (SelectItem selectItem : plainSelect.getSelectItems()) {
+            if (!(selectItem instanceof SelectExpressionItem)) {
+                continue;
+            }
+            SelectExpressionItem item = (SelectExpressionItem) selectItem;
+            if (!(item.getExpression() instanceof Column)) {
+                continue;
+            }
+            Column column = (Column) item.getExpression();
+            String name = null == item.getAlias() ? column.getColumnName() : item.getAlias().getName();
+            outputColumns.put(unquote(name), column);
+        }
+        return outputColumns;
+    }
+
+    /**
+     * 获取过滤条件引用的列，子查询以 null 占位
+     */
+    private static List<Column> getColumns(Expression expression) {
+        List<Column> columns = new ArrayList<>();
+        expression.accept(new ExpressionVisitorAdapter() {
+            @Override
+            public void visit(Column column) {
+                columns.add(column);
+            }
+
+            @Override
+            public void visit(SubSelect subSelect) {
+                columns.add(null);
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * 将过滤条件中的外层列替换为内部列，存在无法解析的列时返回 false
+     */
+    private static boolean resolveColumns(List<Column> columns, PlainSelect plainSelect, Map<String, Column> outputColumns) {
+        if (columns.isEmpty() || columns.contains(null)) {
+            return false;
+        }
+
+        boolean selectAll = plainSelect.getSelectItems().size() == 1
+                && plainSelect.getSelectItems().get(0) instanceof AllColumns
+                && CollectionUtils.isEmpty(plainSelect.getJoins());
+
+        List<Column> resolved = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            Column inner = outputColumns.get(unquote(column.getColumnName()));
+            if (null != inner) {
+                resolved.add(inner);
+            } else if (selectAll && (null == column.getTable() || null == column.getTable().getName())) {
+                resolved.add(column);
+            } else {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            Column inner = resolved.get(i);
+            if (column != inner) {
+                column.setTable(inner.getTable());
+                column.setColumnName(inner.getColumnName());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 移除外层查询未引用的查询列
+     */
+    private static boolean pruneSelectItems(PlainSelect plainSelect, Set<String> referencedColumns) {
+        if (!CollectionUtils.isEmpty(plainSelect.getOrderByElements())) {
+            return false;
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (String column : referencedColumns) {
+            if (StringUtils.isEmpty(column) || column.contains("*")) {
+                return false;
+            }
+            referenced.add(unquote(column));
+        }
+
+        List<SelectItem> items = new ArrayList<>();
+        for (SelectItem selectItem : plainSelect.getSelectItems()) {
+            if (!(selectItem instanceof SelectExpressionItem)) {
+                return false;
+            }
+            SelectExpressionItem item = (SelectExpressionItem) selectItem;
+            String name = null;
+            if (null != item.getAlias()) {
+                name = item.getAlias().getName();
+            } else if (item.getExpression() instanceof Column) {
+                name = ((Column) item.getExpression()).getColumnName();
+            }
+            if (null == name) {
+                return false;
+            }
+            if (referenced.contains(unquote(name))) {
+                items.add(item);
+            }
+        }
+
+        if (items.isEmpty() || items.size() == plainSelect.getSelectItems().size()) {
+            return false;
+        }
+        plainSelect.setSelectItems(items);
+        return true;
+    }
+
+    /**
+     * 忽略空白、大小写和结尾分号，用于比较重新序列化的sql
+     */
+    private static String normalize(String sql) {
+        String normalized = sql.replaceAll("\\s+", EMPTY).toLowerCase();
+        while (normalized.endsWith(SEMICOLON)) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized;
+    }
+
+    private static Expression wrap(Expression expression) {
+        return expression instanceof Parenthesis ? expression : new Parenthesis(expression);
+    }
+
+    private static String unquote(String name) {
+        if (null == name) {
+            return EMPTY;
+        }
+        name = name.trim();
+        if (name.length() > 1) {
+            char first = name.charAt(0);
+            char last = name.charAt(name.length() - 1);
+            if ((first == '`' && last == '`') || (first == '"' && last == '"') || (first == '[' && last == ']') || (first == '\'' && last == '\'')) {
+                name = name.substring(1, name.length() - 1);
+            }
+        }
+        return name.toLowerCase();
+    }
+}
@@ -20,9 +20,14 @@
 package edp.core.utils;
 
 import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edp.core.common.cache.Caches;
 import edp.core.common.jdbc.JdbcDataSource;
+import edp.core.common.trace.QueryTrace;
 import edp.core.consts.Consts;
 import edp.core.enums.DataTypeEnum;
+import edp.core.enums.PaginationTypeEnum;
 import edp.core.enums.SqlTypeEnum;
 import edp.core.exception.ServerException;
 import edp.core.exception.SourceException;
@@ -40,6 +45,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Scope;
@@ -50,6 +57,7 @@ import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.Matcher;
 
 import static edp.core.consts.Consts.*;
@@ -70,6 +78,12 @@ public class SqlUtils {
     @Value("${source.enable-query-log:false}")
     private boolean isQueryLogEnable;
 
+    @Value("${source.enable-async-count:false}")
+    private boolean isAsyncCountEnable;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     private static final String TABLE = "TABLE";
 
     private static final String VIEW = "VIEW";
@@ -80,12 +94,37 @@ public class SqlUtils {
 
     private static final String TABLE_TYPE = "TABLE_TYPE";
 
+    /**
+     * 表结构元数据查询线程池，大小不超过数据源连接池的默认最大连接数
+     */
+    private static final ExecutorService METADATA_WORKERS = new ThreadPoolExecutor(4, 4,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(200),
+            new ThreadFactoryBuilder().setNameFormat("metadata-worker-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * 异步总数查询线程池
+     */
+    private static final ExecutorService COUNT_WORKERS = new ThreadPoolExecutor(2, 2,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000),
+            new ThreadFactoryBuilder().setNameFormat("count-worker-%d").setDaemon(true).build());
+
+    /**
+     * 正在执行的异步总数查询
+     */
+    private static final Set<String> PENDING_COUNTS = ConcurrentHashMap.newKeySet();
+
     private JdbcSourceInfo jdbcSourceInfo;
 
     private DataTypeEnum dataTypeEnum;
 
     private SourceUtils sourceUtils;
 
+    /**
+     * 数据源配置中指定的分页下推方式
+     */
+    private PaginationTypeEnum paginationType;
+
     public SqlUtils init(BaseSource source) {
         return SqlUtilsBuilder
                 .getBuilder()
@@ -95,9 +134,13 @@ public class SqlUtils {
                 .withDbVersion(source.getDbVersion())
                 .withProperties(source.getProperties())
                 .withIsExt(source.isExt())
+                .withPagination(source.getPagination())
+                .withSourceId(source.getId())
                 .withJdbcDataSource(this.jdbcDataSource)
                 .withResultLimit(this.resultLimit)
                 .withIsQueryLogEnable(this.isQueryLogEnable)
+                .withIsAsyncCountEnable(this.isAsyncCountEnable)
+                .withCacheManager(this.cacheManager)
                 .build();
     }
 
@@ -113,6 +156,8 @@ public class SqlUtils {
                 .withJdbcDataSource(this.jdbcDataSource)
                 .withResultLimit(this.resultLimit)
                 .withIsQueryLogEnable(this.isQueryLogEnable)
+                .withIsAsyncCountEnable(this.isAsyncCountEnable)
+                .withCacheManager(this.cacheManager)
                 .build();
     }
 
@@ -146,8 +191,9 @@ public class SqlUtils {
             limit = -1;
         }
 
-        PaginateWithQueryColumns paginate = query4Paginate(sql, pageNo, pageSize, totalCount, limit, excludeColumns);
-        return paginate;
+        try (QueryTrace.Span span = QueryTrace.span("syncQuery4Paginate")) {
+            return query4Paginate(sql, pageNo, pageSize, totalCount, limit, excludeColumns);
+        }
     }
 
     @CachePut(value = "query", key = "#sql")
@@ -155,9 +201,7 @@ public class SqlUtils {
         sql = filterAnnotate(sql);
         checkSensitiveSql(sql);
         String md5 = MD5Util.getMD5(sql, true, 16);
-        if (isQueryLogEnable) {
-            sqlLogger.info("{}  >> \n{}", md5, sql);
-        }
+        logSql(md5, sql);
         JdbcTemplate jdbcTemplate = jdbcTemplate();
         jdbcTemplate.setMaxRows(limit > resultLimit ? resultLimit : limit);
 
@@ -165,7 +209,7 @@ public class SqlUtils {
 
         List<Map<String, Object>> list = jdbcTemplate.queryForList(sql);
 
-        if (isQueryLogEnable) {
+        if (isQueryLogEnable && !QueryTrace.isActive()) {
             sqlLogger.info("{} query for >> {} ms", md5, System.currentTimeMillis() - befor);
         }
 
@@ -190,9 +234,7 @@ public class SqlUtils {
             if (limit > 0) {
                 resultLimit = limit > resultLimit ? resultLimit : limit;
             }
-            if (isQueryLogEnable) {
-                sqlLogger.info("{}  >> \n{}", md5, sql);
-            }
+            logSql(md5, sql);
             jdbcTemplate.setMaxRows(resultLimit);
             getResultForPaginate(sql, paginateWithQueryColumns, jdbcTemplate, excludeColumns, -1);
             paginateWithQueryColumns.setPageNo(1);
@@ -205,35 +247,69 @@ public class SqlUtils {
 
             final int startRow = (pageNo - 1) * pageSize;
 
-            if (pageNo == 1 || totalCount == 0) {
-                Object o = jdbcTemplate.queryForObject(getCountSql(sql), Object.class);
-                totalCount = Integer.parseInt(String.valueOf(o));
+            if (isAsyncCountEnable) {
+                String countDigest = getCountDigest(sql);
+                paginateWithQueryColumns.setCountDigest(countDigest);
+                Integer count = getTotalCount(countDigest);
+                if (null != count) {
+                    totalCount = count;
+                } else if (pageNo == 1 || totalCount == 0) {
+                    submitCountTask(countDigest, sql);
+                    totalCount = -1;
+                }
+            } else if (pageNo == 1 || totalCount == 0) {
+                long countStart = System.currentTimeMillis();
+                try (QueryTrace.Span span = QueryTrace.span("count")) {
+                    Object o = jdbcTemplate.queryForObject(getCountSql(sql), Object.class);
+                    totalCount = Integer.parseInt(String.valueOf(o));
+                }
+                MetricsUtils.recordCountQuery(getDatabase(), "sync", System.currentTimeMillis() - countStart);
             }
             if (limit > 0) {
                 limit = limit > resultLimit ? resultLimit : limit;
                 totalCount = limit < totalCount ? limit : totalCount;
             }
 
-            paginateWithQueryColumns.setTotalCount(totalCount);
-            int maxRows = limit > 0 && limit < pageSize * pageNo ? limit : pageSize * pageNo;
+            // 多取一行用于判断是否存在下一页
+            int fetchSize = pageSize + 1;
+            if (limit > 0) {
+                fetchSize = Math.max(Math.min(fetchSize, limit - startRow), 1);
+            }
 
-            if (this.dataTypeEnum == MYSQL) {
-                sql = sql + " LIMIT " + startRow + ", " + pageSize;
-                md5 = MD5Util.getMD5(sql, true, 16);
-                if (isQueryLogEnable) {
-                    sqlLogger.info("{}  >> \n{}", md5, sql);
-                }
-                getResultForPaginate(sql, paginateWithQueryColumns, jdbcTemplate, excludeColumns, -1);
+            PaginationTypeEnum paginationType = null != this.paginationType ? this.paginationType : getPaginationType(this.jdbcSourceInfo.getJdbcUrl(), this.jdbcSourceInfo.getDbVersion());
+            String pageSql = paginationType.paginate(sql, startRow, fetchSize);
+            if (paginationType == PaginationTypeEnum.ROWNUM) {
+                excludeColumns = excludeColumns == null ? new HashSet<>() : new HashSet<>(excludeColumns);
+                excludeColumns.add(PaginationTypeEnum.ROW_NUMBER_COLUMN);
+            }
+
+            md5 = MD5Util.getMD5(pageSql, true, 16);
+            logSql(md5, pageSql);
+            if (paginationType.isOffsetPushdown()) {
+                jdbcTemplate.setMaxRows(fetchSize);
+                getResultForPaginate(pageSql, paginateWithQueryColumns, jdbcTemplate, excludeColumns, -1);
             } else {
-                if (isQueryLogEnable) {
-                    sqlLogger.info("{}  >> \n{}", md5, sql);
-                }
-                jdbcTemplate.setMaxRows(maxRows);
-                getResultForPaginate(sql, paginateWithQueryColumns, jdbcTemplate, excludeColumns, startRow);
+                jdbcTemplate.setMaxRows(startRow + fetchSize);
+                getResultForPaginate(pageSql, paginateWithQueryColumns, jdbcTemplate, excludeColumns, startRow);
+            }
+
+            List<Map<String, Object>> resultList = paginateWithQueryColumns.getResultList();
+            boolean hasNext = resultList.size() > pageSize && (limit <= 0 || startRow + pageSize < limit);
+            int pageRows = limit > 0 ? Math.min(pageSize, Math.max(limit - startRow, 0)) : pageSize;
+            while (resultList.size() > pageRows) {
+                resultList.remove(resultList.size() - 1);
+            }
+            paginateWithQueryColumns.setHasNext(hasNext);
+
+            // 总数未知时返回已知下界
+            int lowerBound = startRow + resultList.size() + (hasNext ? 1 : 0);
+            if (totalCount < lowerBound) {
+                totalCount = lowerBound;
             }
+            paginateWithQueryColumns.setTotalCount(totalCount);
         }
 
-        if (isQueryLogEnable) {
+        if (isQueryLogEnable && !QueryTrace.isActive()) {
             sqlLogger.info("{} query for >> {} ms", md5, System.currentTimeMillis() - befor);
         }
 
@@ -280,7 +356,7 @@ public class SqlUtils {
         });
     }
 
-    private Map<String, Object> getResultObjectMap(Set<String> excludeColumns, ResultSet rs, ResultSetMetaData metaData, Set<String> queryFromsAndJoins) throws SQLException {
+    Map<String, Object> getResultObjectMap(Set<String> excludeColumns, ResultSet rs, ResultSetMetaData metaData, Set<String> queryFromsAndJoins) throws SQLException {
         Map<String, Object> map = new LinkedHashMap<>();
 
         for (int i = 1; i <= metaData.getColumnCount(); i++) {
@@ -295,6 +371,188 @@ public class SqlUtils {
         return map;
     }
 
+    /**
+     * 获取异步总数查询结果
+     *
+     * @param countDigest
+     * @return 查询未完成或已过期时返回null
+     */
+    public Integer getTotalCount(String countDigest) {
+        if (null == cacheManager || StringUtils.isEmpty(countDigest)) {
+            return null;
+        }
+        Cache cache = cacheManager.getCache(Caches.queryCount.name());
+        return null == cache ? null : cache.get(countDigest, Integer.class);
+    }
+
+    /**
+     * 请求内的查询由 QueryTraceFilter 在请求结束后连同各阶段耗时一并输出
+     *
+     * @param md5
+     * @param sql
+     */
+    private void logSql(String md5, String sql) {
+        if (QueryTrace.isActive()) {
+            QueryTrace.sql(md5, sql);
+        } else if (isQueryLogEnable) {
+            sqlLogger.info("{}  >> \n{}", md5, sql);
+        }
+    }
+
+    private String getDatabase() {
+        return null == this.dataTypeEnum ? null : this.dataTypeEnum.getFeature();
+    }
+
+    private String getCountDigest(String sql) {
+        return MD5Util.getMD5(this.jdbcSourceInfo.getJdbcUrl() + sql, true, 32);
+    }
+
+    private void submitCountTask(String countDigest, String sql) {
+        if (null == cacheManager || !PENDING_COUNTS.add(countDigest)) {
+            return;
+        }
+        try {
+            COUNT_WORKERS.execute(() -> {
+                try {
+                    long befor = System.currentTimeMillis();
+                    Object o = jdbcTemplate().queryForObject(getCountSql(sql), Object.class);
+                    Cache cache = cacheManager.getCache(Caches.queryCount.name());
+                    if (null != cache) {
+                        cache.put(countDigest, Integer.parseInt(String.valueOf(o)));
+                    }
+                    MetricsUtils.recordCountQuery(getDatabase(), "async", System.currentTimeMillis() - befor);
+                    if (isQueryLogEnable) {
+                        sqlLogger.info("{} count query for >> {} ms", countDigest, System.currentTimeMillis() - befor);
+                    }
+                } catch (Exception e) {
+                    log.error("async count query error: {}", e.getMessage());
+                } finally {
+                    PENDING_COUNTS.remove(countDigest);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            PENDING_COUNTS.remove(countDigest);
+            log.warn("async count query rejected, digest: {}", countDigest);
+        }
+    }
+
+    /**
+     * 执行 EXPLAIN 预估查询扫描量，结果按sql摘要缓存，命中缓存时不再访问数据库
+     * <p>
+     * 支持 MySQL、ClickHouse、Presto，其他数据源或执行失败时返回null，失败结果同样缓存
+     *
+     * @param sql
+     * @return
+     */
+    public QueryCostEstimate explain(String sql) {
+        if (this.dataTypeEnum != MYSQL && this.dataTypeEnum != CLICKHOUSE && this.dataTypeEnum != PRESTO) {
+            return null;
+        }
+
+        sql = filterAnnotate(sql);
+        String md5 = MD5Util.getMD5(this.jdbcSourceInfo.getJdbcUrl() + sql, true, 32);
+
+        Cache cache = null == cacheManager ? null : cacheManager.getCache(Caches.queryCost.name());
+        if (null != cache) {
+            Cache.ValueWrapper cached = cache.get(md5);
+            if (null != cached) {
+                return (QueryCostEstimate) cached.get();
+            }
+        }
+
+        QueryCostEstimate estimate = null;
+        long befor = System.currentTimeMillis();
+        try {
+            JdbcTemplate jdbcTemplate = jdbcTemplate();
+            switch (this.dataTypeEnum) {
+                case MYSQL:
+                    estimate = multiplyPlanRows(jdbcTemplate.queryForList("EXPLAIN " + sql));
+                    break;
+                case CLICKHOUSE:
+                    estimate = sumPlanRows(jdbcTemplate.queryForList("EXPLAIN ESTIMATE " + sql), "rows");
+                    break;
+                case PRESTO:
+                    String plan = jdbcTemplate.queryForObject("EXPLAIN (TYPE IO, FORMAT JSON) " + sql, String.class);
+                    JSONObject cost = JSONObject.parseObject(plan).getJSONObject("estimate");
+                    estimate = new QueryCostEstimate(getEstimateValue(cost, "outputRowCount"), getEstimateValue(cost, "outputSizeInBytes"), plan);
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            log.warn("explain sql error: {}", e.getMessage());
+        }
+
+        if (null != estimate) {
+            sqlLogger.info("{} explain for >> {} ms, estimate rows: {}, bytes: {}\n{}", md5, System.currentTimeMillis() - befor, estimate.getRows(), estimate.getBytes(), estimate.getPlan());
+        }
+        if (null != cache) {
+            cache.put(md5, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * MySQL EXPLAIN：同一 select_id 内关联表的 rows 相乘，不同 select_id（子查询、UNION）之间相加
+     *
+     * @param plans
+     * @return
+     */
+    static QueryCostEstimate multiplyPlanRows(List<Map<String, Object>> plans) {
+        Map<Object, Long> selectRows = new LinkedHashMap<>();
+        for (Map<String, Object> plan : plans) {
+            Object selectId = null;
+            Long rows = null;
+            for (Map.Entry<String, Object> entry : plan.entrySet()) {
+                if ("id".equalsIgnoreCase(entry.getKey())) {
+                    selectId = entry.getValue();
+                } else if ("rows".equalsIgnoreCase(entry.getKey()) && entry.getValue() instanceof Number) {
+                    rows = Math.max(((Number) entry.getValue()).longValue(), 1L);
+                }
+            }
+            if (null == rows) {
+                continue;
+            }
+            selectRows.merge(null == selectId ? EMPTY : selectId.toString(), rows, SqlUtils::multiplyCapped);
+        }
+        long total = 0L;
+        for (Long rows : selectRows.values()) {
+            total = total > Long.MAX_VALUE - rows ? Long.MAX_VALUE : total + rows;
+        }
+        return new QueryCostEstimate(total, -1L, JSONObject.toJSONString(plans));
+    }
+
+    private static long multiplyCapped(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private QueryCostEstimate sumPlanRows(List<Map<String, Object>> plans, String rowsColumn) {
+        long rows = 0L;
+        for (Map<String, Object> plan : plans) {
+            for (Map.Entry<String, Object> entry : plan.entrySet()) {
+                if (rowsColumn.equalsIgnoreCase(entry.getKey()) && entry.getValue() instanceof Number) {
+                    rows += ((Number) entry.getValue()).longValue();
+                }
+            }
+        }
+        return new QueryCostEstimate(rows, -1L, JSONObject.toJSONString(plans));
+    }
+
+    private long getEstimateValue(JSONObject cost, String key) {
+        if (null == cost) {
+            return -1L;
+        }
+        Object value = cost.get(key);
+        if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())) {
+            return ((Number) value).longValue();
+        }
+        return -1L;
+    }
+
     public static String getCountSql(String sql) {
         try {
             Select select = (Select) CCJSqlParserUtil.parse(sql);
@@ -418,6 +676,23 @@ public class SqlUtils {
      * @throws SourceException
      */
     public List<QueryColumn> getTableList(String dbName) throws SourceException {
+        return getTableList(dbName, null, 0, 0);
+    }
+
+    /**
+     * 分页获取当前数据源表结构，表名前缀作为 tableNamePattern 下推至 DatabaseMetaData
+     * <p>
+     * JDBC 元数据接口不支持偏移量，分页仍需在客户端跳过前 (pageNo - 1) * pageSize 行，
+     * 表很多时应配合前缀缩小结果集
+     *
+     * @param dbName
+     * @param tablePrefix 表名前缀，为空时获取全部表
+     * @param pageNo      页码，小于1时不分页
+     * @param pageSize    每页条数，小于1时不分页
+     * @return
+     * @throws SourceException
+     */
+    public List<QueryColumn> getTableList(String dbName, String tablePrefix, int pageNo, int pageSize) throws SourceException {
         if (this.dataTypeEnum == ELASTICSEARCH) {
             return null;
         }
@@ -425,6 +700,9 @@ public class SqlUtils {
         Connection connection = null;
         ResultSet tables = null;
 
+        boolean paging = pageNo > 0 && pageSize > 0;
+        int startRow = paging ? (pageNo - 1) * pageSize : 0;
+
         try {
             connection = sourceUtils.getConnection(this.jdbcSourceInfo);
             if (null != connection) {
@@ -436,18 +714,26 @@ public class SqlUtils {
                     // ignore
                 }
 
-                tables = metaData.getTables(dbName, getDBSchemaPattern(schema), "%", TABLE_TYPES);
+                tables = metaData.getTables(dbName, getDBSchemaPattern(schema), getTableNamePattern(tablePrefix, metaData), TABLE_TYPES);
                 if (null != tables) {
                     tableList = new ArrayList<>();
+                    int currentRow = 0;
                     while (tables.next()) {
                         String name = tables.getString(TABLE_NAME);
-                        if (!StringUtils.isEmpty(name)) {
-                            String type = TABLE;
-                            try {
-                                type = tables.getString(TABLE_TYPE);
-                            } catch (Exception e) {
-                            }
-                            tableList.add(new QueryColumn(name, type));
+                        if (StringUtils.isEmpty(name)) {
+                            continue;
+                        }
+                        if (currentRow++ < startRow) {
+                            continue;
+                        }
+                        String type = TABLE;
+                        try {
+                            type = tables.getString(TABLE_TYPE);
+                        } catch (Exception e) {
+                        }
+                        tableList.add(new QueryColumn(name, type));
+                        if (paging && tableList.size() >= pageSize) {
+                            break;
                         }
                     }
                 }
@@ -456,12 +742,31 @@ public class SqlUtils {
             e.printStackTrace();
             throw new SourceException(e.getMessage() + ", jdbcUrl=" + this.jdbcSourceInfo.getJdbcUrl());
         } finally {
-            SourceUtils.releaseConnection(connection);
             SourceUtils.closeResult(tables);
+            SourceUtils.releaseConnection(connection);
         }
         return tableList;
     }
 
+    private String getTableNamePattern(String tablePrefix, DatabaseMetaData metaData) {
+        if (StringUtils.isEmpty(tablePrefix)) {
+            return PERCENT_SIGN;
+        }
+        String escape = null;
+        try {
+            escape = metaData.getSearchStringEscape();
+        } catch (Throwable t) {
+            // ignore
+        }
+        if (!StringUtils.isEmpty(escape)) {
+            tablePrefix = tablePrefix
+                    .replace(escape, escape + escape)
+                    .replace(UNDERLINE, escape + UNDERLINE)
+                    .replace(PERCENT_SIGN, escape + PERCENT_SIGN);
+        }
+        return tablePrefix + PERCENT_SIGN;
+    }
+
     private String getDBSchemaPattern(String schema) {
         if (dataTypeEnum == null || this.dataTypeEnum == ELASTICSEARCH) {
             return null;
@@ -520,6 +825,49 @@ public class SqlUtils {
     }
 
 
+    /**
+     * 并行获取多张表列信息，每张表单独占用一个连接
+     *
+     * @param dbName
+     * @param tableNames
+     * @return
+     * @throws SourceException
+     */
+    public List<TableInfo> getTablesInfo(String dbName, List<String> tableNames) throws SourceException {
+        if (this.dataTypeEnum == ELASTICSEARCH || CollectionUtils.isEmpty(tableNames)) {
+            return null;
+        }
+
+        if (tableNames.size() == 1) {
+            return Collections.singletonList(getTableInfo(dbName, tableNames.get(0)));
+        }
+
+        List<Future<TableInfo>> futures = new ArrayList<>(tableNames.size());
+        for (String tableName : tableNames) {
+            futures.add(METADATA_WORKERS.submit(() -> getTableInfo(dbName, tableName)));
+        }
+
+        List<TableInfo> tableInfos = new ArrayList<>(tableNames.size());
+        try {
+            for (Future<TableInfo> future : futures) {
+                TableInfo tableInfo = future.get();
+                if (null != tableInfo) {
+                    tableInfos.add(tableInfo);
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new SourceException("Get tables info interrupted, jdbcUrl=" + this.jdbcSourceInfo.getJdbcUrl());
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw new SourceException(cause.getMessage() + ", jdbcUrl=" + this.jdbcSourceInfo.getJdbcUrl());
+        }
+        return tableInfos;
+    }
+
+
     /**
      * 判断表是否存在
      *
@@ -832,6 +1180,20 @@ public class SqlUtils {
         return StringUtils.isEmpty(aliasSuffix) ? EMPTY : aliasSuffix;
     }
 
+    public static PaginationTypeEnum getPaginationType(String jdbcUrl, String dbVersion) {
+        PaginationTypeEnum paginationType = null;
+        CustomDataSource customDataSource = CustomDataSourceUtils.getInstance(jdbcUrl, dbVersion);
+        if (null != customDataSource) {
+            paginationType = PaginationTypeEnum.typeOf(customDataSource.getPagination());
+        } else {
+            DataTypeEnum dataTypeEnum = DataTypeEnum.urlOf(jdbcUrl);
+            if (null != dataTypeEnum) {
+                paginationType = dataTypeEnum.getPaginationType();
+            }
+        }
+        return null == paginationType ? PaginationTypeEnum.NONE : paginationType;
+    }
+
 
     /**
      * 过滤sql中的注释
@@ -904,12 +1266,16 @@ public class SqlUtils {
         private JdbcDataSource jdbcDataSource;
         private int resultLimit;
         private boolean isQueryLogEnable;
+        private boolean isAsyncCountEnable;
+        private CacheManager cacheManager;
         private String jdbcUrl;
         private String username;
         private String password;
         private List<Dict> properties;
         private String dbVersion;
         private boolean isExt;
+        private String pagination;
+        private Long sourceId;
 
         private SqlUtilsBuilder() {
 
@@ -934,6 +1300,16 @@ public class SqlUtils {
             return this;
         }
 
+        SqlUtilsBuilder withIsAsyncCountEnable(boolean isAsyncCountEnable) {
+            this.isAsyncCountEnable = isAsyncCountEnable;
+            return this;
+        }
+
+        SqlUtilsBuilder withCacheManager(CacheManager cacheManager) {
+            this.cacheManager = cacheManager;
+            return this;
+        }
+
         SqlUtilsBuilder withJdbcUrl(String jdbcUrl) {
             this.jdbcUrl = jdbcUrl;
             return this;
@@ -964,6 +1340,16 @@ public class SqlUtils {
             return this;
         }
 
+        SqlUtilsBuilder withPagination(String pagination) {
+            this.pagination = pagination;
+            return this;
+        }
+
+        SqlUtilsBuilder withSourceId(Long sourceId) {
+            this.sourceId = sourceId;
+            return this;
+        }
+
         public SqlUtils build() throws ServerException {
             String datasource = SourceUtils.isSupportedDatasource(jdbcUrl);
             SourceUtils.checkDriver(datasource, jdbcUrl, dbVersion, isExt);
@@ -978,12 +1364,16 @@ public class SqlUtils {
                     .withDbVersion(this.dbVersion)
                     .withProperties(this.properties)
                     .withExt(this.isExt)
+                    .withSourceId(this.sourceId)
                     .build();
 
             SqlUtils sqlUtils = new SqlUtils(jdbcSourceInfo);
             sqlUtils.jdbcDataSource = this.jdbcDataSource;
             sqlUtils.resultLimit = this.resultLimit;
             sqlUtils.isQueryLogEnable = this.isQueryLogEnable;
+            sqlUtils.isAsyncCountEnable = this.isAsyncCountEnable;
+            sqlUtils.cacheManager = this.cacheManager;
+            sqlUtils.paginationType = PaginationTypeEnum.typeOf(this.pagination);
             sqlUtils.sourceUtils = new SourceUtils(this.jdbcDataSource);
 
             return sqlUtils;
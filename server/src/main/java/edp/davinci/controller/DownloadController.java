@@ -23,6 +23,7 @@ import com.alibaba.druid.util.StringUtils;
 import edp.core.annotation.AuthIgnore;
 import edp.core.annotation.AuthShare;
 import edp.core.annotation.CurrentUser;
+import edp.core.enums.HttpCodeEnum;
 import edp.core.utils.FileUtils;
 import edp.davinci.common.controller.BaseController;
 import edp.davinci.core.common.Constants;
@@ -197,6 +198,31 @@ public class DownloadController extends BaseController {
     }
 
 
+    @ApiOperation(value = "get mail attachment file")
+    @GetMapping(value = "/share/mail/{token:.*}", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @AuthIgnore
+    public ResponseEntity getMailFile(@PathVariable(name = "token") String token,
+                                      HttpServletRequest request,
+                                      HttpServletResponse response) {
+        ShareDownloadRecord record = shareDownloadService.downloadMailFile(token);
+        if (null == record) {
+            ResultMap resultMap = new ResultMap(tokenUtils).fail(HttpCodeEnum.NOT_FOUND.getCode()).message("File is expired or not found");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+        FileInputStream is = null;
+        try {
+            encodeFileName(request, response, record.getName());
+            is = new FileInputStream(new File(record.getPath()));
+            Streams.copy(is, response.getOutputStream(), true);
+        } catch (Exception e) {
+            log.error("getMailFile error,id=" + record.getId() + ",e=", e);
+        } finally {
+            FileUtils.closeCloseable(is);
+        }
+        return null;
+    }
+
+
     private void encodeFileName(HttpServletRequest request, HttpServletResponse response, String filename) throws UnsupportedEncodingException {
         response.setHeader("Content-Type", "application/force-download");
         if (request.getHeader("User-Agent").toLowerCase().indexOf("firefox") > 0) {
@@ -0,0 +1,104 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.controller;
+
+import edp.core.annotation.CurrentUser;
+import edp.core.common.quartz.ScheduleJobExecutor;
+import edp.core.enums.HttpCodeEnum;
+import edp.core.model.ScheduleExecutorMetrics;
+import edp.davinci.common.controller.BaseController;
+import edp.davinci.core.common.Constants;
+import edp.davinci.core.common.ResultMap;
+import edp.davinci.dto.statistic.QueryStatistic;
+import edp.davinci.model.User;
+import edp.davinci.service.impl.QueryStatisticCollector;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import springfox.documentation.annotations.ApiIgnore;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+@Api(value = "/monitor", tags = "monitor", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+@ApiResponses(@ApiResponse(code = 404, message = "monitor not found"))
+@Slf4j
+@RestController
+@RequestMapping(value = Constants.BASE_API_PATH + "/monitor", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+public class MonitorController extends BaseController {
+
+    @Autowired
+    private ScheduleJobExecutor scheduleJobExecutor;
+
+    @Autowired
+    private QueryStatisticCollector queryStatisticCollector;
+
+    /**
+     * 获取定时任务执行器状态
+     *
+     * @param user
+     * @param request
+     * @return
+     */
+    @ApiOperation(value = "get schedule executor metrics")
+    @GetMapping("/schedule")
+    public ResponseEntity getScheduleMetrics(@ApiIgnore @CurrentUser User user, HttpServletRequest request) {
+        if (null == user.getAdmin() || !user.getAdmin()) {
+            ResultMap resultMap = new ResultMap(tokenUtils).failAndRefreshToken(request, HttpCodeEnum.FORBIDDEN).message("Only admin can view schedule metrics");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+        List<ScheduleExecutorMetrics> metrics = scheduleJobExecutor.getMetrics();
+        return ResponseEntity.ok(new ResultMap(tokenUtils).successAndRefreshToken(request).payloads(metrics));
+    }
+
+    /**
+     * 获取最近统计窗口内的查询排行
+     *
+     * @param groupBy fingerprint、view 或 source
+     * @param orderBy total、avg、p99、max、count 或 errors
+     * @param limit
+     * @param user
+     * @param request
+     * @return
+     */
+    @ApiOperation(value = "get top queries")
+    @GetMapping("/queries")
+    public ResponseEntity getTopQueries(@RequestParam(required = false, defaultValue = QueryStatisticCollector.GROUP_FINGERPRINT) String groupBy,
+                                        @RequestParam(required = false, defaultValue = "total") String orderBy,
+                                        @RequestParam(required = false, defaultValue = "20") int limit,
+                                        @ApiIgnore @CurrentUser User user,
+                                        HttpServletRequest request) {
+        if (null == user.getAdmin() || !user.getAdmin()) {
+            ResultMap resultMap = new ResultMap(tokenUtils).failAndRefreshToken(request, HttpCodeEnum.FORBIDDEN).message("Only admin can view query statistics");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+        List<QueryStatistic> statistics = queryStatisticCollector.top(groupBy, orderBy, limit);
+        return ResponseEntity.ok(new ResultMap(tokenUtils).successAndRefreshToken(request).payloads(statistics));
+    }
+}
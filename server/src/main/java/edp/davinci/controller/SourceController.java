@@ -339,6 +339,9 @@ public class SourceController extends BaseController {
     @GetMapping("/{id}/tables")
     public ResponseEntity getSourceTables(@PathVariable Long id,
                                           @RequestParam(name = "dbName") String dbName,
+                                          @RequestParam(name = "prefix", required = false) String prefix,
+                                          @RequestParam(name = "pageNo", required = false) Integer pageNo,
+                                          @RequestParam(name = "pageSize", required = false) Integer pageSize,
                                           @ApiIgnore @CurrentUser User user,
                                           HttpServletRequest request) {
         if (invalidId(id)) {
@@ -346,7 +349,7 @@ public class SourceController extends BaseController {
             return ResponseEntity.status(resultMap.getCode()).body(resultMap);
         }
 
-        DBTables dbTables = sourceService.getSourceTables(id, dbName, user);
+        DBTables dbTables = sourceService.getSourceTables(id, dbName, prefix, pageNo, pageSize, user);
         SourceDBInfo dbTableInfo = new SourceDBInfo();
         dbTableInfo.setSourceId(id);
         BeanUtils.copyProperties(dbTables, dbTableInfo);
@@ -390,6 +393,38 @@ public class SourceController extends BaseController {
     }
 
 
+    /**
+     * 批量获取表字段
+     *
+     * @param id
+     * @param dbName
+     * @param tableNames
+     * @param user
+     * @param request
+     * @return
+     */
+    @ApiOperation(value = "get columns of tables")
+    @GetMapping("/{id}/tables/columns")
+    public ResponseEntity getTablesColumns(@PathVariable Long id,
+                                           @RequestParam(name = "dbName") String dbName,
+                                           @RequestParam(name = "tableNames") List<String> tableNames,
+                                           @ApiIgnore @CurrentUser User user,
+                                           HttpServletRequest request) {
+        if (invalidId(id)) {
+            ResultMap resultMap = new ResultMap(tokenUtils).failAndRefreshToken(request).message("Inavlid source id");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+
+        if (null == tableNames || tableNames.isEmpty()) {
+            ResultMap resultMap = new ResultMap(tokenUtils).failAndRefreshToken(request).message("Tables cannot be EMPTY");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+
+        List<TableInfo> tableInfos = sourceService.getTablesInfo(id, dbName, tableNames, user);
+        return ResponseEntity.ok(new ResultMap(tokenUtils).successAndRefreshToken(request).payloads(tableInfos));
+    }
+
+
     /**
      * 获取系统支持jdbc数据源
      *
@@ -246,6 +246,31 @@ public class ViewController extends BaseController {
     }
 
 
+    /**
+     * 获取异步计算的源数据总数
+     *
+     * @param id
+     * @param countDigest
+     * @param user
+     * @param request
+     * @return
+     */
+    @ApiOperation(value = "get data total count")
+    @GetMapping("/{id}/getdata/count")
+    public ResponseEntity getDataTotalCount(@PathVariable Long id,
+                                            @RequestParam(name = "countDigest") String countDigest,
+                                            @ApiIgnore @CurrentUser User user,
+                                            HttpServletRequest request) {
+        if (invalidId(id)) {
+            ResultMap resultMap = new ResultMap(tokenUtils).failAndRefreshToken(request).message("Invalid view id");
+            return ResponseEntity.status(resultMap.getCode()).body(resultMap);
+        }
+
+        Integer totalCount = viewService.getTotalCount(id, countDigest, user);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(new ResultMap(tokenUtils).successAndRefreshToken(request).payload(totalCount));
+    }
+
+
     @ApiOperation(value = "get distinct value")
     @PostMapping(value = "/{id}/getdistinctvalue", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity getDistinctValue(@PathVariable Long id,
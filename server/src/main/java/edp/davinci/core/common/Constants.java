@@ -40,6 +40,13 @@ public class Constants extends Consts {
      */
     public static final String AUTH_API_PATH = "/auth/v3";
 
+    /**
+     * 请求头携带时返回查询链路耗时
+     */
+    public static final String QUERY_TRACE_HEADER = "X-Davinci-Trace";
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
     /**
      * 用户激活 / 重发激活邮件模板
      */
@@ -0,0 +1,71 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.core.config;
+
+import edp.core.common.trace.QueryTrace;
+import edp.davinci.core.common.Constants;
+import edp.davinci.core.common.ResultMap;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.Map;
+
+/**
+ * 请求头携带 X-Davinci-Trace 时，在 Server-Timing 响应头及返回结果 header.trace 中附带各阶段耗时
+ */
+@ControllerAdvice(annotations = RestController.class)
+public class QueryTraceAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        QueryTrace trace = QueryTrace.current();
+        if (null == trace) {
+            return body;
+        }
+        trace.markWrite();
+
+        if (StringUtils.isEmpty(request.getHeaders().getFirst(Constants.QUERY_TRACE_HEADER))) {
+            return body;
+        }
+        response.getHeaders().add(Constants.SERVER_TIMING_HEADER, trace.toServerTiming());
+        if (body instanceof ResultMap) {
+            Object header = ((ResultMap) body).get("header");
+            if (header instanceof Map) {
+                ((Map<String, Object>) header).put("trace", trace.getStageMillis());
+            }
+        }
+        return body;
+    }
+}
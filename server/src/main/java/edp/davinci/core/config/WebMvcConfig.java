@@ -28,8 +28,11 @@ import edp.davinci.core.common.Constants;
 import edp.davinci.core.inteceptor.AuthenticationInterceptor;
 import edp.davinci.core.inteceptor.CurrentPlatformMethodArgumentResolver;
 import edp.davinci.core.inteceptor.CurrentUserMethodArgumentResolver;
+import edp.davinci.core.inteceptor.MetricsAuthFilter;
 import edp.davinci.core.inteceptor.PlatformAuthInterceptor;
+import edp.davinci.core.inteceptor.QueryTraceFilter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
@@ -75,6 +78,40 @@ public class WebMvcConfig extends WebMvcConfigurationSupport {
         return new PlatformAuthInterceptor();
     }
 
+    /**
+     * 查询链路追踪过滤器
+     *
+     * @return
+     */
+    @Bean
+    public QueryTraceFilter queryTraceFilter() {
+        return new QueryTraceFilter();
+    }
+
+    @Bean
+    public FilterRegistrationBean<QueryTraceFilter> queryTraceFilterRegistration() {
+        FilterRegistrationBean<QueryTraceFilter> registrationBean = new FilterRegistrationBean<>(queryTraceFilter());
+        registrationBean.addUrlPatterns(Constants.BASE_API_PATH + "/*");
+        return registrationBean;
+    }
+
+    /**
+     * 应用端口上的 prometheus 指标鉴权过滤器
+     *
+     * @return
+     */
+    @Bean
+    public MetricsAuthFilter metricsAuthFilter() {
+        return new MetricsAuthFilter();
+    }
+
+    @Bean
+    public FilterRegistrationBean<MetricsAuthFilter> metricsAuthFilterRegistration() {
+        FilterRegistrationBean<MetricsAuthFilter> registrationBean = new FilterRegistrationBean<>(metricsAuthFilter());
+        registrationBean.addUrlPatterns("/actuator/prometheus");
+        return registrationBean;
+    }
+
     /**
      * CurrentUser 注解参数解析器
      *
@@ -0,0 +1,63 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.core.inteceptor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 应用端口上的 /actuator/prometheus 需携带 Authorization: Bearer {metrics.prometheus_token}
+ * 未配置 token 时拒绝访问，此时可通过 management.server.port 在独立端口上输出指标
+ */
+public class MetricsAuthFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    @Value("${metrics.prometheus_token:}")
+    private String token;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (!isAuthorized(request.getHeader(HttpHeaders.AUTHORIZATION))) {
+            response.sendError(HttpStatus.FORBIDDEN.value());
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    boolean isAuthorized(String authorization) {
+        if (StringUtils.isEmpty(token) || null == authorization || !authorization.startsWith(BEARER)) {
+            return false;
+        }
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.core.inteceptor;
+
+import edp.core.common.trace.QueryTrace;
+import edp.davinci.core.enums.LogNameEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 查询链路追踪，请求结束后输出 sql 与各阶段耗时
+ * 开启 source.enable-query-log 时输出全部查询，否则只输出超过 source.slow-query-threshold 的慢查询
+ */
+public class QueryTraceFilter extends OncePerRequestFilter {
+
+    private static final Logger sqlLogger = LoggerFactory.getLogger(LogNameEnum.BUSINESS_SQL.getName());
+
+    @Value("${source.enable-query-log:false}")
+    private boolean isQueryLogEnable;
+
+    @Value("${source.slow-query-threshold:3000}")
+    private long slowQueryThreshold;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        QueryTrace trace = QueryTrace.begin(request.getMethod() + " " + request.getRequestURI());
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            trace.finishWrite();
+            QueryTrace.end();
+            log(trace, response.getStatus());
+        }
+    }
+
+    private void log(QueryTrace trace, int status) {
+        // 未执行查询的请求不输出
+        if (trace.getSqls().isEmpty()) {
+            return;
+        }
+        double elapsed = trace.elapsedMillis();
+        boolean slow = slowQueryThreshold > 0 && elapsed >= slowQueryThreshold;
+        if (!slow && !isQueryLogEnable) {
+            return;
+        }
+        StringBuilder builder = new StringBuilder();
+        trace.getSqls().forEach(sql -> builder.append('\n').append(sql));
+        if (slow) {
+            sqlLogger.warn("slow query for >> {} ms, status: {}, {}{}", elapsed, status, trace.format(), builder);
+        } else {
+            sqlLogger.info("query for >> {} ms, status: {}, {}{}", elapsed, status, trace.format(), builder);
+        }
+    }
+}
@@ -20,18 +20,24 @@
 package edp.davinci.core.utils;
 
 import com.alibaba.druid.util.StringUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edp.core.utils.FileUtils;
 import lombok.extern.slf4j.Slf4j;
 
-import javax.imageio.ImageIO;
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.UUID;
+import java.util.concurrent.*;
 
 import static edp.core.consts.Consts.EMPTY;
 
@@ -43,6 +49,20 @@ import static edp.core.consts.Consts.EMPTY;
 @Slf4j
 public class ImageCropUtil {
 
+    /**
+     * 裁剪共享线程池，并行编码各分片
+     */
+    private static final ExecutorService CROP_WORKERS = new ThreadPoolExecutor(4, 4,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(200),
+            new ThreadFactoryBuilder().setNameFormat("image-crop-worker-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final String JPEG_FORMAT = ".jpg";
+
+    /**
+     * 单次裁剪中已解码、未编码完成的最大分片数
+     */
+    private static final int MAX_PENDING_BANDS = 2;
 
     /**
      * 根据高度截取图片
@@ -53,6 +73,20 @@ public class ImageCropUtil {
      * @throws Exception
      */
     public static List<String> cutImage(String basePath, String scrImagePath, int cutHeight) throws Exception {
+        return cutImage(basePath, scrImagePath, cutHeight, 0F);
+    }
+
+    /**
+     * 根据高度截取图片，同一个 ImageReader 按 y 递增顺序逐段解码，各分片交由线程池编码，
+     * 内存中只保留正在解码和等待编码的少量分片，不解码整图
+     *
+     * @param scrImagePath 源图片地址
+     * @param cutHeight    最大截取高度
+     * @param jpegQuality  大于0时裁剪结果压缩为该质量的jpg，取值 (0, 1]
+     * @return 截取后的图片相对地址列表
+     * @throws Exception
+     */
+    public static List<String> cutImage(String basePath, String scrImagePath, int cutHeight, float jpegQuality) throws Exception {
 
         if (StringUtils.isEmpty(scrImagePath)) {
             throw new Exception("source image path is EMPTY");
@@ -61,94 +95,133 @@ public class ImageCropUtil {
         List<String> files = new ArrayList<>();
 
         File file = new File(basePath + scrImagePath);
-        String format = scrImagePath.substring(scrImagePath.lastIndexOf("."));
+        String format = jpegQuality > 0 ? JPEG_FORMAT : scrImagePath.substring(scrImagePath.lastIndexOf("."));
         String sourceImageName = file.getName().substring(0, file.getName().lastIndexOf("."));
 
-        BufferedImage bufferedImage = ImageIO.read(file);
-        int width = bufferedImage.getWidth();
-        int height = bufferedImage.getHeight();
-        log.info("src file width: {}", width);
-        log.info("scr file height: {}", height);
-
-        String dir = file.getParent() + File.separator + "crop_" + sourceImageName;
-
-        if (new File(dir).exists()) {
-            FileUtils.deleteDir(new File(dir));
-        }
-        new File(dir).mkdirs();
-
-        if (height > cutHeight) {
-            int count = (int) Math.ceil((double) height / cutHeight);
-            log.info("count crop image num: {}", count);
-            ExecutorService executorService = Executors.newFixedThreadPool(8);
-            CountDownLatch countDownLatch = new CountDownLatch(count);
-
-            for (int i = 0; i < count; i++) {
-                int startX = 0;
-                int startY = i * cutHeight;
-                int endX = width;
-                int endY = i + 1 == count ? height : (i + 1) * cutHeight;
-
-                String cropPath = dir + File.separator + sourceImageName + "_" + i + format;
-                File cropFile = new File(cropPath);
-                cropFile.createNewFile();
-
-                files.add(cropPath.replace(basePath, EMPTY));
-
-                final int n = i + 1;
-                executorService.execute(() -> {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = null == input ? null : ImageIO.getImageReaders(input);
+            if (null == readers || !readers.hasNext()) {
+                throw new Exception("unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                log.info("src file width: {}", width);
+                log.info("scr file height: {}", height);
+
+                String dir = file.getParent() + File.separator + "crop_" + sourceImageName;
+
+                if (new File(dir).exists()) {
+                    FileUtils.deleteDir(new File(dir));
+                }
+                new File(dir).mkdirs();
+
+                if (height > cutHeight || jpegQuality > 0) {
+                    int count = (int) Math.ceil((double) height / cutHeight);
+                    log.info("count crop image num: {}", count);
+
+                    Deque<Future<?>> futures = new ArrayDeque<>(MAX_PENDING_BANDS);
                     try {
-                        BufferedImage cropImage = cropImage(bufferedImage, startX, startY, endX, endY);
-                        ImageIO.write(cropImage, format.substring(1, format.length()), cropFile);
-                        log.info("image_{}", n);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                        for (int i = 0; i < count; i++) {
+                            int startY = i * cutHeight;
+                            int endY = i + 1 == count ? height : (i + 1) * cutHeight;
+
+                            //等待最早的分片编码完成，限制内存中的分片数
+                            if (futures.size() >= MAX_PENDING_BANDS) {
+                                futures.poll().get();
+                            }
+
+                            ImageReadParam param = reader.getDefaultReadParam();
+                            param.setSourceRegion(new Rectangle(0, startY, width, endY - startY));
+                            BufferedImage band = reader.read(0, param);
+
+                            String cropPath = dir + File.separator + sourceImageName + "_" + i + format;
+                            files.add(cropPath.replace(basePath, EMPTY));
+
+                            final int n = i + 1;
+                            futures.add(CROP_WORKERS.submit(() -> {
+                                writeImage(band, new File(cropPath), format, jpegQuality);
+                                log.info("image_{}", n);
+                                return null;
+                            }));
+                        }
+                        for (Future<?> future : futures) {
+                            future.get();
+                        }
+                    } catch (ExecutionException e) {
+                        futures.forEach(f -> f.cancel(true));
                         log.info("crop image error");
-                        executorService.shutdownNow();
-                    } finally {
-                        countDownLatch.countDown();
+                        throw new Exception("crop image error: " + e.getCause().getMessage(), e.getCause());
                     }
-                });
-            }
-            countDownLatch.await();
-            log.info("finish");
-            executorService.shutdown();
+                    log.info("finish");
 
-        } else {
-            files.add(scrImagePath);
-        }
+                } else {
+                    files.add(scrImagePath);
+                }
 
-        File flagFile = new File(dir + File.separator + "success");
-        flagFile.createNewFile();
+                File flagFile = new File(dir + File.separator + "success");
+                flagFile.createNewFile();
+            } finally {
+                reader.dispose();
+            }
+        }
 
         //排序
         Collections.sort(files);
         return files;
     }
 
-
-    private static BufferedImage cropImage(BufferedImage bufferedImage, int startX, int startY, int endX, int endY) {
-        int width = bufferedImage.getWidth();
-        int height = bufferedImage.getHeight();
-        if (startX == -1) {
-            startX = 0;
-        }
-        if (startY == -1) {
-            startY = 0;
-        }
-        if (endX == -1) {
-            endX = width - 1;
+    /**
+     * 将图片压缩为jpg，写入源图片所在目录
+     *
+     * @param image       源图片
+     * @param jpegQuality 压缩质量，取值 (0, 1]
+     * @return 压缩后的图片
+     * @throws Exception
+     */
+    public static File compress(File image, float jpegQuality) throws Exception {
+        BufferedImage source = ImageIO.read(image);
+        if (null == source) {
+            throw new Exception("unsupported image format");
         }
-        if (endY == -1) {
-            endY = height - 1;
+        String name = image.getName();
+        int index = name.lastIndexOf(".");
+        File target = new File(image.getParent(), (index > 0 ? name.substring(0, index) : name) + "_" + UUID.randomUUID().toString().replace("-", EMPTY) + JPEG_FORMAT);
+        writeImage(source, target, JPEG_FORMAT, jpegQuality);
+        return target;
+    }
+
+    private static void writeImage(BufferedImage image, File target, String format, float jpegQuality) throws Exception {
+        if (jpegQuality <= 0) {
+            ImageIO.write(image, format.substring(1), target);
+            return;
         }
-        BufferedImage result = new BufferedImage(endX - startX, endY - startY, 4);
-        for (int x = startX; x < endX; ++x) {
-            for (int y = startY; y < endY; ++y) {
-                int rgb = bufferedImage.getRGB(x, y);
-                result.setRGB(x - startX, y - startY, rgb);
+
+        //jpg 不支持透明通道
+        BufferedImage rgbImage = image;
+        if (image.getColorModel().hasAlpha()) {
+            rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgbImage.createGraphics();
+            try {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, image.getWidth(), image.getHeight());
+                g.drawImage(image, 0, 0, null);
+            } finally {
+                g.dispose();
             }
         }
-        return result;
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.min(jpegQuality, 1F));
+            writer.write(null, new IIOImage(rgbImage, null, null), param);
+        } finally {
+            writer.dispose();
+        }
     }
 }
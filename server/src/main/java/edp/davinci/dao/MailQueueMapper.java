@@ -0,0 +1,87 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.davinci.dao;
+
+import edp.davinci.model.MailQueue;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public interface MailQueueMapper {
+
+    int insert(MailQueue mailQueue);
+
+    /**
+     * 获取到期的待发送邮件，带本地附件的邮件只由入队节点获取
+     */
+    @Select({
+            "select * from mail_queue where `status` = 'pending' and next_retry_time <= NOW()",
+            "and (host is null or host = #{host}) order by id limit #{limit}"
+    })
+    List<MailQueue> getPending(@Param("host") String host, @Param("limit") int limit);
+
+    /**
+     * 抢占待发送邮件，多节点下只有一个节点更新成功
+     */
+    @Update({
+            "update mail_queue set `status` = 'sending', update_time = NOW()",
+            "where id = #{id} and `status` = 'pending'"
+    })
+    int claim(@Param("id") Long id);
+
+    @Update({
+            "update mail_queue",
+            "set `status` = #{status,jdbcType=VARCHAR},",
+            "retry_count = #{retryCount,jdbcType=INTEGER},",
+            "last_error = #{lastError,jdbcType=VARCHAR},",
+            "update_time = NOW()",
+            "where id = #{id,jdbcType=BIGINT}"
+    })
+    int updateStatus(MailQueue mailQueue);
+
+    /**
+     * 发送失败后重新入队，重试时间按数据库时钟计算
+     */
+    @Update({
+            "update mail_queue set `status` = 'pending',",
+            "retry_count = #{retryCount},",
+            "next_retry_time = (NOW() + INTERVAL #{delaySecond} SECOND),",
+            "last_error = #{lastError},",
+            "update_time = NOW()",
+            "where id = #{id}"
+    })
+    int retry(@Param("id") Long id, @Param("retryCount") int retryCount, @Param("delaySecond") long delaySecond, @Param("lastError") String lastError);
+
+    /**
+     * 节点异常退出时遗留的发送中邮件重新入队
+     */
+    @Update({
+            "update mail_queue set `status` = 'pending', update_time = NOW()",
+            "where `status` = 'sending' and update_time < (NOW() - INTERVAL #{minutes} MINUTE)"
+    })
+    int resetStuck(@Param("minutes") int minutes);
+
+    @Delete({"delete from mail_queue where `status` = 'sent' and update_time < (NOW() - INTERVAL #{days} DAY)"})
+    int deleteSent(@Param("days") int days);
+}
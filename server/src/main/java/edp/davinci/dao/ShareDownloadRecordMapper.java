@@ -10,7 +10,7 @@ import java.util.List;
 
 public interface ShareDownloadRecordMapper {
 
-    @Delete({"DELETE FROM share_download_record WHERE id NOT IN\n" +
+    @Delete({"DELETE FROM share_download_record WHERE (expire_time IS NULL AND id NOT IN\n" +
             "(\n" +
             "    SELECT tmp.id\n" +
             "    FROM\n" +
@@ -30,7 +30,7 @@ public interface ShareDownloadRecordMapper {
             "        ON a1.uuid = b1.uuid AND a1.`create_time` = b1.create_time\n" +
             "        ORDER BY a1.uuid, a1.`create_time` DESC\n" +
             "    ) AS tmp\n" +
-            ")\n"})
+            ")) OR expire_time <= NOW()\n"})
     int deleteByCondition();
 
     int insertSelective(ShareDownloadRecord record);
@@ -54,7 +54,7 @@ public interface ShareDownloadRecordMapper {
     })
     int updateById(ShareDownloadRecord record);
 
-    @Select({"SELECT * FROM share_download_record WHERE id NOT IN\n" +
+    @Select({"SELECT * FROM share_download_record WHERE (expire_time IS NULL AND id NOT IN\n" +
             "(\n" +
             "    SELECT tmp.id\n" +
             "    FROM\n" +
@@ -74,7 +74,7 @@ public interface ShareDownloadRecordMapper {
             "        ON a1.uuid = b1.uuid AND a1.`create_time` = b1.create_time\n" +
             "        ORDER BY a1.uuid, a1.`create_time` DESC\n" +
             "    ) AS tmp\n" +
-            ")\n"})
+            ")) OR expire_time <= NOW()\n"})
     List<ShareDownloadRecord> getShareDownloadRecords();
 
 }
\ No newline at end of file
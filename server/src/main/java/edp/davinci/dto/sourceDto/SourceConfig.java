@@ -43,6 +43,12 @@ public class SourceConfig {
 
     private boolean isExt;
 
+    private Long maxScanRows;
+
+    private Long maxScanBytes;
+
+    private String pagination;
+
     public SourceConfig() {
     }
 }
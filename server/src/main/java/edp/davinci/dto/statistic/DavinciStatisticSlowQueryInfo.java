@@ -0,0 +1,44 @@
+package edp.davinci.dto.statistic;
+
+import lombok.Data;
+
+import java.sql.Timestamp;
+
+/**
+ * 查询统计快照，每个统计窗口每个 sql 指纹/view/source 一条
+ */
+@Data
+public class DavinciStatisticSlowQueryInfo {
+
+    private String fingerprint;
+
+    private String query_sql;
+
+    private Long view_id;
+
+    private Long source_id;
+
+    private Timestamp window_start;
+
+    private Timestamp window_end;
+
+    private Long query_count;
+
+    private Long error_count;
+
+    private Long row_count;
+
+    private Long total_millis;
+
+    private Long avg_millis;
+
+    private Long p50_millis;
+
+    private Long p90_millis;
+
+    private Long p99_millis;
+
+    private Long max_millis;
+
+    private Timestamp create_time;
+}
@@ -0,0 +1,42 @@
+package edp.davinci.dto.statistic;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 最近统计窗口内的查询耗时汇总，耗时单位 ms
+ */
+@Data
+public class QueryStatistic {
+
+    private String fingerprint;
+
+    private String sql;
+
+    private Long viewId;
+
+    private Long sourceId;
+
+    private long count;
+
+    private long errors;
+
+    private double errorRate;
+
+    private long rows;
+
+    private long totalMillis;
+
+    private long avgMillis;
+
+    private long p50Millis;
+
+    private long p90Millis;
+
+    private long p99Millis;
+
+    private long maxMillis;
+
+    private Date lastTime;
+}
@@ -0,0 +1,51 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.davinci.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+@Data
+public class MailQueue {
+
+    private Long id;
+
+    /**
+     * 邮件内容json，附件仅记录文件路径
+     */
+    private String content;
+
+    private String status;
+
+    /**
+     * 入队节点，附件为节点本地文件时只由该节点发送
+     */
+    private String host;
+
+    private Integer retryCount = 0;
+
+    private Date nextRetryTime;
+
+    private String lastError;
+
+    private Date createTime;
+
+    private Date updateTime;
+}
@@ -2,6 +2,8 @@ package edp.davinci.model;
 
 import lombok.Data;
 
+import java.util.Date;
+
 @Data
 public class ShareDownloadRecord extends DownloadRecordBaseInfo {
 
@@ -9,4 +11,9 @@ public class ShareDownloadRecord extends DownloadRecordBaseInfo {
 
     private String uuid;
 
+    /**
+     * 邮件附件下载链接的过期时间，为空时按分享下载记录规则清理
+     */
+    private Date expireTime;
+
 }
\ No newline at end of file
@@ -27,7 +27,10 @@ import com.alibaba.fastjson.annotation.JSONField;
 import edp.core.model.BaseSource;
 import edp.core.model.Dict;
 import edp.core.utils.SourceUtils;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -50,6 +53,17 @@ public class Source extends BaseSource {
     @JSONField(serialize = false)
     private String config;
 
+    /**
+     * config 解析结果，config 变化时重新解析
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient String parsedConfig;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient JSONObject configObject;
+
     /**
      * 从config中获取jdbcUrl
      * <p>
@@ -182,6 +196,73 @@ public class Source extends BaseSource {
     }
 
 
+    /**
+     * 从config中获取单次查询最大预估扫描行数
+     * <p>
+     * json key: maxScanRows
+     *
+     * @return
+     */
+    @JSONField(serialize = false)
+    public Long getMaxScanRows() {
+        return getConfigLong("maxScanRows");
+    }
+
+    /**
+     * 从config中获取单次查询最大预估扫描字节数
+     * <p>
+     * json key: maxScanBytes
+     *
+     * @return
+     */
+    @JSONField(serialize = false)
+    public Long getMaxScanBytes() {
+        return getConfigLong("maxScanBytes");
+    }
+
+    /**
+     * 从config中获取分页下推方式，为空时使用数据源类型默认值
+     * <p>
+     * json key: pagination
+     *
+     * @return
+     */
+    @Override
+    @JSONField(serialize = false)
+    public String getPagination() {
+        JSONObject jsonObject = getConfigObject();
+        return null == jsonObject ? null : jsonObject.getString("pagination");
+    }
+
+    private Long getConfigLong(String key) {
+        JSONObject jsonObject = getConfigObject();
+        if (null == jsonObject) {
+            return null;
+        }
+        try {
+            return jsonObject.getLong(key);
+        } catch (Exception e) {
+            log.error("get {} from source config, {}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    private synchronized JSONObject getConfigObject() {
+        if (null == config) {
+            return null;
+        }
+        if (config != parsedConfig) {
+            try {
+                configObject = JSONObject.parseObject(config);
+            } catch (Exception e) {
+                log.error("parse source config, {}", e.getMessage());
+                configObject = null;
+            }
+            parsedConfig = config;
+        }
+        return configObject;
+    }
+
     @JSONField(serialize = false)
     public String getConfigParams() {
         String params = null;
@@ -19,6 +19,7 @@
 
 package edp.davinci.schedule;
 
+import edp.core.common.quartz.ScheduleCoordinator;
 import edp.core.consts.Consts;
 import edp.core.exception.ServerException;
 import edp.core.utils.*;
@@ -27,13 +28,16 @@ import edp.davinci.dao.CronJobMapper;
 import edp.davinci.dao.ShareDownloadRecordMapper;
 import edp.davinci.model.CronJob;
 import edp.davinci.model.ShareDownloadRecord;
+import edp.davinci.service.impl.MaterializedResultStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Slf4j
 @Component
@@ -54,6 +58,12 @@ public class SystemSchedule {
     @Autowired
     private ShareDownloadRecordMapper shareDownloadRecordMapper;
 
+    @Autowired
+    private ScheduleCoordinator scheduleCoordinator;
+
+    @Autowired
+    private MaterializedResultStore materializedResultStore;
+
 
     @Scheduled(cron = "0 0 1 * * *")
     public void clearTempDir() {
@@ -82,6 +92,8 @@ public class SystemSchedule {
         List<CronJob> jobs = cronJobMapper.getStopedJob();
         if (!CollectionUtils.isEmpty(jobs)) {
             for (CronJob job : jobs) {
+                //其他节点停止的任务，丢弃本节点上的物化结果
+                materializedResultStore.invalidateJob(job.getId());
                 try {
                     quartzHandler.removeJob(job);
                 } catch (ServerException e) {
@@ -90,6 +102,44 @@ public class SystemSchedule {
         }
     }
 
+    /**
+     * 集群模式下按 cron_job 同步本节点触发器，其他节点上启动、停止或删除的任务在一分钟内生效
+     */
+    @Scheduled(cron = "30 * * * * *")
+    public void syncClusterJobs() {
+        if (!scheduleCoordinator.isClusterEnable()) {
+            return;
+        }
+        try {
+            Set<Long> registeredIds = quartzHandler.getJobIds();
+            Set<Long> startedIds = new HashSet<>();
+            List<CronJob> jobs = cronJobMapper.getStartedJobs();
+            if (!CollectionUtils.isEmpty(jobs)) {
+                for (CronJob job : jobs) {
+                    startedIds.add(job.getId());
+                    try {
+                        if (registeredIds.contains(job.getId())) {
+                            quartzHandler.modifyJob(job);
+                        } else {
+                            quartzHandler.addJob(job);
+                        }
+                    } catch (Exception e) {
+                        log.debug("sync CronJob (:{}) error: {}", job.getId(), e.getMessage());
+                    }
+                }
+            }
+            for (Long id : registeredIds) {
+                if (!startedIds.contains(id)) {
+                    CronJob job = new CronJob();
+                    job.setId(id);
+                    quartzHandler.removeJob(job);
+                }
+            }
+        } catch (ServerException e) {
+            log.warn("sync cluster jobs error: {}", e.getMessage());
+        }
+    }
+
     @Scheduled(cron = "0 0 1 * * *")
     public void clearShareDownloadRecord() {
 
@@ -108,7 +158,7 @@ public class SystemSchedule {
 
         if(file.isDirectory()){
             String fileName = file.getName();
-            if("download".equals(fileName)){
+            if("download".equals(fileName) || "email".equals(fileName)){
                 return;
             }
 
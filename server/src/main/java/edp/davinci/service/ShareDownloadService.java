@@ -19,11 +19,13 @@
 
 package edp.davinci.service;
 
+import edp.core.exception.UnAuthorizedExecption;
 import edp.davinci.core.enums.DownloadType;
 import edp.davinci.dto.viewDto.DownloadViewExecuteParam;
 import edp.davinci.model.ShareDownloadRecord;
 import edp.davinci.model.User;
 
+import java.io.File;
 import java.util.List;
 
 public interface ShareDownloadService {
@@ -61,4 +63,23 @@ public interface ShareDownloadService {
      * @return
      */
     ShareDownloadRecord downloadById(String id, String uuid, String token, User user);
+
+    /**
+     * 生成邮件附件下载token，token过期或下载记录被清理后失效
+     *
+     * @param file
+     * @param name 下载文件名
+     * @param expireMillis
+     * @return
+     */
+    String generateMailFileToken(File file, String name, long expireMillis);
+
+    /**
+     * 根据token下载邮件附件
+     *
+     * @param token
+     * @return
+     * @throws UnAuthorizedExecption
+     */
+    ShareDownloadRecord downloadMailFile(String token) throws UnAuthorizedExecption;
 }
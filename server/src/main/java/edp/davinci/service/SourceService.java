@@ -52,10 +52,12 @@ public interface SourceService extends CheckEntityService {
 
     List<String> getSourceDbs(Long id, User user) throws NotFoundException, ServerException;
 
-    DBTables getSourceTables(Long id, String dbName, User user) throws NotFoundException;
+    DBTables getSourceTables(Long id, String dbName, String tablePrefix, Integer pageNo, Integer pageSize, User user) throws NotFoundException;
 
     TableInfo getTableInfo(Long id, String dbName, String tableName, User user) throws NotFoundException;
 
+    List<TableInfo> getTablesInfo(Long id, String dbName, List<String> tableNames, User user) throws NotFoundException;
+
     SourceDetail getSourceDetail(Long id, User user) throws NotFoundException, UnAuthorizedExecption, ServerException;
 
     List<DatasourceType> getDatasources();
@@ -0,0 +1,483 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.elastic;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSON;
+import edp.core.model.Dict;
+import edp.core.model.PaginateWithQueryColumns;
+import edp.core.model.QueryColumn;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.SourceUtils;
+import edp.davinci.dto.viewDto.Aggregator;
+import edp.davinci.dto.viewDto.Order;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import edp.davinci.model.Source;
+import edp.davinci.service.elastic.ElasticQueryTranslator.DateGroup;
+import edp.davinci.service.elastic.ElasticQueryTranslator.ElasticView;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.MultiBucketsAggregation;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.NumericMetricsAggregation;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static edp.core.consts.Consts.*;
+
+/**
+ * elasticsearch 数据源的分组聚合下推
+ * <p>
+ * 分组转为嵌套的 terms / date_histogram 聚合，指标转为 sum、avg、max、min、value_count 与 cardinality，
+ * 由 ES 直接返回聚合结果，排序与分页在内存中完成。
+ * 查询无法翻译、分桶被截断、存在缺失分组字段的文档或执行出错时返回 null，由调用方回退到 JDBC 查询
+ */
+@Slf4j
+@Component
+public class ElasticAggregationEngine {
+
+    private static final String GROUP_PREFIX = "g";
+
+    private static final String METRIC_PREFIX = "m";
+
+    private static final String DEFAULT_PORT = "9300";
+
+    private static final String COUNT_DISTINCT = "COUNTDISTINCT";
+
+    private static final String ASTERISK = "*";
+
+    private static final String TYPE_VARCHAR = "VARCHAR";
+
+    private static final String TYPE_BIGINT = "BIGINT";
+
+    private static final String TYPE_DOUBLE = "DOUBLE";
+
+    @Value("${source.elastic-pushdown.max-buckets:10000}")
+    private int maxBuckets;
+
+    @Value("${source.elastic-pushdown.timeout:30000}")
+    private long timeout;
+
+    @Value("${source.result-limit:1000000}")
+    private int resultLimit;
+
+    private final Map<String, TransportClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 下推分组聚合查询
+     *
+     * @param source
+     * @param viewSql        参数替换后的 view sql
+     * @param executeParam
+     * @param excludeColumns 无权访问的列
+     * @return 无法下推或为原生查询（不分组聚合）时返回 null
+     */
+    public PaginateWithQueryColumns query(Source source, String viewSql, ViewExecuteParam executeParam, Set<String> excludeColumns) {
+        if (executeParam.isNativeQuery()) {
+            return null;
+        }
+        ElasticView view = ElasticQueryTranslator.parseView(viewSql);
+        if (null == view) {
+            return null;
+        }
+
+        List<String> groups = null == executeParam.getGroups() ? Collections.emptyList() : executeParam.getGroups();
+        List<Aggregator> aggregators = null == executeParam.getAggregators() ? Collections.emptyList() : executeParam.getAggregators();
+
+        AggregationBuilder root = null;
+        AggregationBuilder parent = null;
+        for (int i = 0; i < groups.size(); i++) {
+            AggregationBuilder builder = groupAggregation(GROUP_PREFIX + i, groups.get(i), view);
+            if (null == builder) {
+                return null;
+            }
+            if (null == parent) {
+                root = builder;
+            } else {
+                parent.subAggregation(builder);
+            }
+            parent = builder;
+        }
+
+        List<AggregationBuilder> metrics = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < aggregators.size(); i++) {
+            Aggregator aggregator = aggregators.get(i);
+            AggregationBuilder builder = metricAggregation(METRIC_PREFIX + i, aggregator, view);
+            if (null == builder && !isDocCount(aggregator)) {
+                return null;
+            }
+            metrics.add(builder);
+            labels.add(label(aggregator));
+        }
+
+        BoolQueryBuilder query = ElasticQueryTranslator.translateFilters(executeParam.getFilters(), view);
+        if (null == query) {
+            return null;
+        }
+
+        try {
+            TransportClient client = getClient(source);
+            SearchRequestBuilder request = client.prepareSearch(view.getIndex())
+                    .setQuery(query)
+                    .setSize(0);
+            if (null != root) {
+                AggregationBuilder leaf = parent;
+                metrics.stream().filter(Objects::nonNull).forEach(leaf::subAggregation);
+                request.addAggregation(root);
+            } else {
+                metrics.stream().filter(Objects::nonNull).forEach(request::addAggregation);
+            }
+
+            SearchResponse response = request.get(TimeValue.timeValueMillis(timeout));
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            if (!collect(response.getAggregations(), response.getHits().getTotalHits(), 0, groups, labels, metrics,
+                    new LinkedHashMap<>(), rows)) {
+                log.info("elasticsearch aggregation on {} is truncated, fall back to sql", view.getIndex());
+                return null;
+            }
+            return paginate(rows, groups, labels, executeParam, excludeColumns);
+        } catch (Exception e) {
+            log.warn("elasticsearch aggregation on {} failed, fall back to sql: {}", view.getIndex(), e.getMessage());
+            return null;
+        }
+    }
+
+    private AggregationBuilder groupAggregation(String name, String group, ElasticView view) {
+        DateGroup dateGroup = view.dateGroup(group);
+        if (null != dateGroup) {
+            DateHistogramAggregationBuilder builder = AggregationBuilders.dateHistogram(name)
+                    .field(dateGroup.getField())
+                    .dateHistogramInterval(dateGroup.getInterval())
+                    .format(dateGroup.getFormat())
+                    .minDocCount(1L);
+            if (!StringUtils.isEmpty(dateGroup.getTimeZone())) {
+                builder.timeZone(DateTimeZone.forID(dateGroup.getTimeZone()));
+            }
+            return builder;
+        }
+        String field = view.field(group);
+        if (null == field) {
+            return null;
+        }
+        return AggregationBuilders.terms(name).field(field).size(maxBuckets);
+    }
+
+    private AggregationBuilder metricAggregation(String name, Aggregator aggregator, ElasticView view) {
+        if (isDocCount(aggregator)) {
+            return null;
+        }
+        String field = view.field(aggregator.getColumn());
+        if (null == field) {
+            return null;
+        }
+        switch (aggregator.getFunc().trim().toUpperCase()) {
+            case "SUM":
+                return AggregationBuilders.sum(name).field(field);
+            case "AVG":
+                return AggregationBuilders.avg(name).field(field);
+            case "MAX":
+                return AggregationBuilders.max(name).field(field);
+            case "MIN":
+                return AggregationBuilders.min(name).field(field);
+            case "COUNT":
+                return AggregationBuilders.count(name).field(field);
+            case COUNT_DISTINCT:
+                return AggregationBuilders.cardinality(name).field(field);
+            default:
+                return null;
+        }
+    }
+
+    private boolean isDocCount(Aggregator aggregator) {
+        return "COUNT".equalsIgnoreCase(aggregator.getFunc().trim()) && ASTERISK.equals(aggregator.getColumn().trim());
+    }
+
+    /**
+     * 与 sql 查询结果列名保持一致
+     */
+    private String label(Aggregator aggregator) {
+        String func = aggregator.getFunc().trim();
+        return (COUNT_DISTINCT.equalsIgnoreCase(func) ? COUNT_DISTINCT : func)
+                + PARENTHESES_START + aggregator.getColumn() + PARENTHESES_END;
+    }
+
+    /**
+     * 展开嵌套分桶
+     * <p>
+     * terms 与 date_histogram 会忽略缺失分组字段的文档，而 sql 会将其归入 NULL 分组；
+     * 各分桶文档数之和与上层文档数不一致时（缺失字段或多值字段）视为无法下推
+     *
+     * @return 分桶被截断或文档数不一致时返回 false
+     */
+    private boolean collect(Aggregations aggregations, long docCount, int depth, List<String> groups, List<String> labels,
+                            List<AggregationBuilder> metrics, Map<String, Object> row, List<Map<String, Object>> rows) {
+        if (depth == groups.size()) {
+            Map<String, Object> result = new LinkedHashMap<>(row);
+            for (int i = 0; i < labels.size(); i++) {
+                if (null == metrics.get(i)) {
+                    result.put(labels.get(i), docCount);
+                    continue;
+                }
+                NumericMetricsAggregation.SingleValue metric = aggregations.get(METRIC_PREFIX + i);
+                double value = metric.value();
+                result.put(labels.get(i), Double.isNaN(value) || Double.isInfinite(value) ? null : normalize(value));
+            }
+            rows.add(result);
+            return rows.size() <= maxBuckets;
+        }
+
+        MultiBucketsAggregation aggregation = aggregations.get(GROUP_PREFIX + depth);
+        if (aggregation instanceof Terms && ((Terms) aggregation).getSumOfOtherDocCounts() > 0) {
+            return false;
+        }
+        if (bucketDocCount(aggregation) != docCount) {
+            return false;
+        }
+        for (MultiBucketsAggregation.Bucket bucket : aggregation.getBuckets()) {
+            row.put(groups.get(depth), keyOf(bucket));
+            if (!collect(bucket.getAggregations(), bucket.getDocCount(), depth + 1, groups, labels, metrics, row, rows)) {
+                return false;
+            }
+        }
+        row.remove(groups.get(depth));
+        return true;
+    }
+
+    static long bucketDocCount(MultiBucketsAggregation aggregation) {
+        long count = 0L;
+        for (MultiBucketsAggregation.Bucket bucket : aggregation.getBuckets()) {
+            count += bucket.getDocCount();
+        }
+        return count;
+    }
+
+    /**
+     * 日期类型的 key 使用格式化后的字符串，其余保持原始类型
+     */
+    private Object keyOf(MultiBucketsAggregation.Bucket bucket) {
+        Object key = bucket.getKey();
+        String keyAsString = bucket.getKeyAsString();
+        if (key instanceof Number && String.valueOf(key).equals(keyAsString)) {
+            return key;
+        }
+        return keyAsString;
+    }
+
+    private Object normalize(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return (long) value;
+        }
+        return value;
+    }
+
+    private PaginateWithQueryColumns paginate(List<Map<String, Object>> rows, List<String> groups, List<String> labels,
+                                              ViewExecuteParam executeParam, Set<String> excludeColumns) {
+        List<Order> orders = executeParam.getOrders();
+        if (!CollectionUtils.isEmpty(orders)) {
+            Comparator<Map<String, Object>> comparator = null;
+            for (Order order : orders) {
+                String column = columnOf(order.getColumn(), groups, labels);
+                if (null == column) {
+                    continue;
+                }
+                Comparator<Map<String, Object>> next = (a, b) -> compare(a.get(column), b.get(column));
+                if ("DESC".equalsIgnoreCase(order.getDirection())) {
+                    next = next.reversed();
+                }
+                comparator = null == comparator ? next : comparator.thenComparing(next);
+            }
+            if (null != comparator) {
+                rows.sort(comparator);
+            }
+        }
+
+        int limit = executeParam.getLimit() > 0 ? Math.min(executeParam.getLimit(), resultLimit) : resultLimit;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+
+        if (!CollectionUtils.isEmpty(excludeColumns)) {
+            rows.forEach(r -> r.keySet().removeAll(excludeColumns));
+        }
+
+        PaginateWithQueryColumns paginate = new PaginateWithQueryColumns();
+        List<QueryColumn> columns = new ArrayList<>();
+        Map<String, Object> first = rows.isEmpty() ? Collections.emptyMap() : rows.get(0);
+        groups.stream().filter(g -> CollectionUtils.isEmpty(excludeColumns) || !excludeColumns.contains(g))
+                .forEach(g -> columns.add(new QueryColumn(g, typeOf(first.get(g), TYPE_VARCHAR))));
+        labels.stream().filter(l -> CollectionUtils.isEmpty(excludeColumns) || !excludeColumns.contains(l))
+                .forEach(l -> columns.add(new QueryColumn(l, typeOf(first.get(l), TYPE_DOUBLE))));
+        paginate.setColumns(columns);
+
+        int pageNo = executeParam.getPageNo();
+        int pageSize = executeParam.getPageSize();
+        if (pageNo < 1 || pageSize < 1) {
+            paginate.setPageNo(1);
+            paginate.setPageSize(rows.size());
+            paginate.setTotalCount(rows.size());
+            paginate.setResultList(rows);
+        } else {
+            int start = Math.min((pageNo - 1) * pageSize, rows.size());
+            int end = Math.min(start + pageSize, rows.size());
+            paginate.setPageNo(pageNo);
+            paginate.setPageSize(pageSize);
+            paginate.setTotalCount(rows.size());
+            paginate.setHasNext(end < rows.size());
+            paginate.setResultList(new ArrayList<>(rows.subList(start, end)));
+        }
+        return paginate;
+    }
+
+    private int compare(Object a, Object b) {
+        if (null == a || null == b) {
+            return null == a ? (null == b ? 0 : 1) : -1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        return String.valueOf(a).compareTo(String.valueOf(b));
+    }
+
+    private String columnOf(String orderColumn, List<String> groups, List<String> labels) {
+        if (StringUtils.isEmpty(orderColumn)) {
+            return null;
+        }
+        String column = ElasticQueryTranslator.unquote(orderColumn).replaceAll("\\s", EMPTY);
+        for (String group : groups) {
+            if (group.equalsIgnoreCase(column)) {
+                return group;
+            }
+        }
+        for (String label : labels) {
+            if (label.replaceAll("\\s", EMPTY).equalsIgnoreCase(column)) {
+                return label;
+            }
+        }
+        return null;
+    }
+
+    private String typeOf(Object value, String defaultType) {
+        if (value instanceof Long || value instanceof Integer) {
+            return TYPE_BIGINT;
+        }
+        if (value instanceof Number) {
+            return TYPE_DOUBLE;
+        }
+        return null == value ? defaultType : TYPE_VARCHAR;
+    }
+
+    /**
+     * 数据源更新或删除时关闭缓存的 client，下次查询按新配置创建
+     *
+     * @param source 更新前的数据源
+     */
+    public void evictClient(Source source) {
+        if (null == source || null == source.getJdbcUrl()) {
+            return;
+        }
+        TransportClient client = clients.remove(clientKey(source));
+        if (null != client) {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.warn("close elasticsearch client error: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * client 的 settings 来自数据源 properties，key 中包含 properties，配置变更后不会复用旧 client
+     */
+    private String clientKey(Source source) {
+        String key = SourceUtils.getKey(source.getJdbcUrl(), source.getUsername(), source.getPassword(), null, false);
+        List<Dict> properties = source.getProperties();
+        return CollectionUtils.isEmpty(properties) ? key : key + JSON.toJSONString(properties);
+    }
+
+    private TransportClient getClient(Source source) {
+        return clients.computeIfAbsent(clientKey(source), k -> {
+            Settings.Builder builder = Settings.builder()
+                    .put("client.transport.sniff", false)
+                    .put("client.transport.ignore_cluster_name", true);
+            List<Dict> properties = source.getProperties();
+            if (!CollectionUtils.isEmpty(properties)) {
+                properties.stream()
+                        .filter(p -> !StringUtils.isEmpty(p.getKey()) && null != p.getValue())
+                        .filter(p -> p.getKey().startsWith("cluster.") || p.getKey().startsWith("client.transport."))
+                        .forEach(p -> builder.put(p.getKey().trim(), p.getValue().trim()));
+            }
+            try {
+                return ElasticConfigration.createClient(hostsOf(source.getJdbcUrl()), builder.build());
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * jdbc:elasticsearch://host1:port1,host2:port2/index
+     */
+    private String hostsOf(String jdbcUrl) {
+        String hosts = jdbcUrl.substring(jdbcUrl.indexOf("://") + 3);
+        int end = hosts.length();
+        for (char c : new char[]{'/', '?'}) {
+            int index = hosts.indexOf(c);
+            if (index > -1) {
+                end = Math.min(end, index);
+            }
+        }
+        StringJoiner joiner = new StringJoiner(COMMA);
+        for (String host : hosts.substring(0, end).split(COMMA)) {
+            if (!StringUtils.isEmpty(host.trim())) {
+                joiner.add(host.contains(COLON) ? host.trim() : host.trim() + COLON + DEFAULT_PORT);
+            }
+        }
+        return joiner.toString();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.warn("close elasticsearch client error: {}", e.getMessage());
+            }
+        });
+        clients.clear();
+    }
+}
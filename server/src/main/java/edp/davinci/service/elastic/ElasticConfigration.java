@@ -42,6 +42,20 @@ public class ElasticConfigration {
                 .put("client.transport.ignore_cluster_name", true)
                 .build();
 
+        this.client = createClient(elastic_urls, settings);
+
+        log.info("ElasticsearchClient connect success [{}].", JSON.toJSON(this.client.transportAddresses()));
+    }
+
+    /**
+     * 创建 TransportClient
+     *
+     * @param urls     host:port，多个以逗号分隔
+     * @param settings
+     * @return
+     * @throws Exception
+     */
+    public static TransportClient createClient(String urls, Settings settings) throws Exception {
         Class transportaddress;
         try{
             transportaddress = Class.forName("org.elasticsearch.common.transport.InetSocketTransportAddress");
@@ -51,17 +65,15 @@ public class ElasticConfigration {
         Constructor constructor = transportaddress.getConstructor(InetAddress.class, int.class);
 
         // 初始化地址
-        String[] addressArr = elastic_urls.split(",");
+        String[] addressArr = urls.split(",");
         TransportAddress[] transportAddresses = new TransportAddress[addressArr.length];
         for(int i=0 ; i<transportAddresses.length; i++){
-            transportAddresses[i] = (TransportAddress) constructor.newInstance(InetAddress.getByName(addressArr[i].split(":")[0]),
-                    Integer.parseInt(addressArr[i].split(":")[1]));
+            transportAddresses[i] = (TransportAddress) constructor.newInstance(InetAddress.getByName(addressArr[i].split(":")[0].trim()),
+                    Integer.parseInt(addressArr[i].split(":")[1].trim()));
         }
 
         PreBuiltTransportClient preBuiltTransportClient = new PreBuiltTransportClient(settings);
-        this.client = preBuiltTransportClient.addTransportAddresses(transportAddresses);
-
-        log.info("ElasticsearchClient connect success [{}].", JSON.toJSON(this.client.transportAddresses()));
+        return preBuiltTransportClient.addTransportAddresses(transportAddresses);
     }
 
     @PreDestroy
@@ -1,77 +1,120 @@
 package edp.davinci.service.elastic;
 
 import edp.core.exception.ServerException;
+import edp.core.utils.PropertyAccessors;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.sql.Timestamp;
-import java.text.SimpleDateFormat;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
-
+/**
+ * elasticsearch 写入
+ * 文档交给常驻的 BulkProcessor，按条数、大小或时间间隔异步批量提交，
+ * 被集群拒绝的请求按指数退避重试
+ */
 @Component
 @Slf4j
 public class ElasticOperationService extends ElasticConfigration {
 
-    public void batchInsert(String index, String type, List<?> objects) {
-        
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        
-        try{
-
-            BulkRequestBuilder bulkRequest = client.prepareBulk();
-
-            for(Object object : objects){
-                XContentBuilder builder = jsonBuilder().startObject();
-                String[] fileNames = getFiledName(object);
-                for(String fileName : fileNames){
-                    Object value = getFieldValueByName(fileName, object);
-                    if(value instanceof Timestamp){
-                        value = sdf.format(value);
-                    }
-                    builder.field(fileName, value);
+    private static final FastDateFormat DATE_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS");
+
+    @Value("${statistic.bulk_actions:1000}")
+    private int bulkActions;
+
+    @Value("${statistic.bulk_size_mb:5}")
+    private long bulkSizeMb;
+
+    @Value("${statistic.bulk_flush_interval_ms:5000}")
+    private long bulkFlushIntervalMillis;
+
+    @Value("${statistic.bulk_concurrent_requests:2}")
+    private int bulkConcurrentRequests;
+
+    @Value("${statistic.bulk_retry_initial_ms:100}")
+    private long bulkRetryInitialMillis;
+
+    @Value("${statistic.bulk_max_retries:3}")
+    private int bulkMaxRetries;
+
+    private BulkProcessor bulkProcessor;
+
+    @PostConstruct
+    public void initBulkProcessor() {
+        if (null == client) {
+            return;
+        }
+        this.bulkProcessor = BulkProcessor.builder(client, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                if (response.hasFailures()) {
+                    log.error("ElasticOperation bulk {} failed. {}", executionId, response.buildFailureMessage());
                 }
-                builder.endObject();
-                bulkRequest.add(client.prepareIndex(index, type).setSource(builder));
             }
 
-            BulkResponse bulkResponse = bulkRequest.get();
-            if (bulkResponse.hasFailures()) {
-                // process failures by iterating through each bulk response item
-                log.error("ElasticOperation batchInsert failed. {}", bulkResponse.toString());
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                log.error("ElasticOperation bulk {} of {} documents error. ", executionId, request.numberOfActions(), failure);
             }
+        })
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSizeMb, ByteSizeUnit.MB))
+                .setFlushInterval(TimeValue.timeValueMillis(bulkFlushIntervalMillis))
+                .setConcurrentRequests(bulkConcurrentRequests)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(bulkRetryInitialMillis), bulkMaxRetries))
+                .build();
+    }
 
-        }catch (Exception e){
-            log.error("ElasticOperation batchInsert error. ", e);
-            throw new ServerException(e.getMessage());
+    @PreDestroy
+    public void closeBulkProcessor() {
+        if (null == bulkProcessor) {
+            return;
+        }
+        try {
+            bulkProcessor.awaitClose(30L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private static String[] getFiledName(Object o) {
-        Field[] fields = o.getClass().getDeclaredFields();
-        String[] fieldNames = new String[fields.length];
-        for (int i = 0; i < fields.length; i++) {
-            fieldNames[i] = fields[i].getName();
+    public void batchInsert(String index, String type, List<?> objects) {
+        if (null == bulkProcessor) {
+            throw new ServerException("elasticsearch client is not initialized");
         }
-        return fieldNames;
-    }
 
-    private static Object getFieldValueByName(String fieldName, Object o) {
         try {
-            String firstLetter = fieldName.substring(0, 1).toUpperCase();
-            String getter = "get" + firstLetter + fieldName.substring(1);
-            Method method = o.getClass().getMethod(getter, new Class[]{});
-            Object value = method.invoke(o, new Object[]{});
-            return value;
+            for (Object object : objects) {
+                Map<String, Function<Object, Object>> accessors = PropertyAccessors.of(object.getClass());
+                Map<String, Object> source = new HashMap<>(accessors.size() * 2);
+                accessors.forEach((name, accessor) -> {
+                    Object value = accessor.apply(object);
+                    source.put(name, value instanceof Date ? DATE_FORMAT.format((Date) value) : value);
+                });
+                bulkProcessor.add(new IndexRequest(index, type).source(source));
+            }
         } catch (Exception e) {
-            // ignore
+            log.error("ElasticOperation batchInsert error. ", e);
+            throw new ServerException(e.getMessage());
         }
-        return null;
     }
 }
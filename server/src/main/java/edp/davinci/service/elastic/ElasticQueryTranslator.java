@@ -0,0 +1,502 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.elastic;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSON;
+import edp.core.utils.CollectionUtils;
+import edp.davinci.core.enums.SqlOperatorEnum;
+import edp.davinci.core.model.SqlFilter;
+import lombok.Getter;
+import net.sf.jsqlparser.expression.*;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.*;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.*;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+
+import java.util.*;
+
+/**
+ * 将 elasticsearch view sql 与 widget 过滤条件翻译为原生查询
+ * <p>
+ * 仅支持单索引的简单查询：SELECT 列、列别名或 DATE_FORMAT(列, '格式') FROM 索引 [WHERE 条件]，
+ * 无法翻译时返回 null，由调用方回退到 JDBC 查询
+ */
+public class ElasticQueryTranslator {
+
+    private static final String DATE_FORMAT = "DATE_FORMAT";
+
+    private static final String IS_NOT_NULL = "IS NOT NULL";
+
+    private static final String NOT_LIKE = "NOT LIKE";
+
+    private ElasticQueryTranslator() {
+    }
+
+    /**
+     * view sql 中可以下推的部分
+     */
+    @Getter
+    public static class ElasticView {
+
+        private String index;
+
+        private boolean allColumns;
+
+        /**
+         * 输出列名 -> 索引字段
+         */
+        private final Map<String, String> fields = new HashMap<>();
+
+        /**
+         * 输出列名 -> 日期格式化分组
+         */
+        private final Map<String, DateGroup> dateGroups = new HashMap<>();
+
+        private QueryBuilder where;
+
+        /**
+         * 输出列对应的索引字段，不是普通字段时返回 null
+         *
+         * @param name
+         * @return
+         */
+        public String field(String name) {
+            String column = unquote(name);
+            if (fields.containsKey(column)) {
+                return fields.get(column);
+            }
+            return allColumns && !dateGroups.containsKey(column) ? column : null;
+        }
+
+        public DateGroup dateGroup(String name) {
+            return dateGroups.get(unquote(name));
+        }
+    }
+
+    @Getter
+    public static class DateGroup {
+
+        private final String field;
+
+        private final String format;
+
+        private final String timeZone;
+
+        private final DateHistogramInterval interval;
+
+        DateGroup(String field, String format, String timeZone) {
+            this.field = field;
+            this.format = format;
+            this.timeZone = timeZone;
+            this.interval = intervalOf(format);
+        }
+    }
+
+    /**
+     * 解析 view sql
+     *
+     * @param sql
+     * @return 无法下推时返回 null
+     */
+    public static ElasticView parseView(String sql) {
+        if (StringUtils.isEmpty(sql)) {
+            return null;
+        }
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            if (!(statement instanceof Select)) {
+                return null;
+            }
+            Select select = (Select) statement;
+            if (!CollectionUtils.isEmpty(select.getWithItemsList()) || !(select.getSelectBody() instanceof PlainSelect)) {
+                return null;
+            }
+            PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+            if (null != plainSelect.getDistinct() || !CollectionUtils.isEmpty(plainSelect.getJoins())
+                    || null != plainSelect.getGroupByColumnReferences() || null != plainSelect.getHaving()
+                    || null != plainSelect.getLimit() || null != plainSelect.getTop()
+                    || !(plainSelect.getFromItem() instanceof Table)) {
+                return null;
+            }
+
+            ElasticView view = new ElasticView();
+            view.index = unquote(((Table) plainSelect.getFromItem()).getFullyQualifiedName());
+
+            for (SelectItem item : plainSelect.getSelectItems()) {
+                if (item instanceof AllColumns) {
+                    view.allColumns = true;
+                    continue;
+                }
+                if (!(item instanceof SelectExpressionItem)) {
+                    return null;
+                }
+                SelectExpressionItem expressionItem = (SelectExpressionItem) item;
+                Expression expression = expressionItem.getExpression();
+                String alias = null == expressionItem.getAlias() ? null : unquote(expressionItem.getAlias().getName());
+                if (expression instanceof Column) {
+                    String field = unquote(((Column) expression).getFullyQualifiedName());
+                    view.fields.put(null == alias ? field : alias, field);
+                } else if (expression instanceof Function && null != alias) {
+                    DateGroup dateGroup = parseDateGroup((Function) expression);
+                    if (null == dateGroup) {
+                        return null;
+                    }
+                    view.dateGroups.put(alias, dateGroup);
+                } else {
+                    return null;
+                }
+            }
+
+            if (null != plainSelect.getWhere()) {
+                view.where = translate(plainSelect.getWhere(), view);
+                if (null == view.where) {
+                    return null;
+                }
+            }
+            return view;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * 翻译 widget 过滤条件，条件为 SqlFilter json
+     *
+     * @param filters
+     * @param view
+     * @return 无法翻译时返回 null
+     */
+    public static BoolQueryBuilder translateFilters(List<String> filters, ElasticView view) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery();
+        if (null != view.getWhere()) {
+            query.filter(view.getWhere());
+        }
+        if (CollectionUtils.isEmpty(filters)) {
+            return query;
+        }
+        for (String filter : filters) {
+            QueryBuilder builder = translate(JSON.parseObject(filter, SqlFilter.class), view);
+            if (null == builder) {
+                return null;
+            }
+            query.filter(builder);
+        }
+        return query;
+    }
+
+    private static QueryBuilder translate(SqlFilter filter, ElasticView view) {
+        if (SqlFilter.Type.relation.equalsIgnoreCase(filter.getType())) {
+            if (CollectionUtils.isEmpty(filter.getChildren())) {
+                return null;
+            }
+            boolean or = SqlFilter.Type.or.equalsIgnoreCase(String.valueOf(filter.getValue()));
+            BoolQueryBuilder bool = QueryBuilders.boolQuery();
+            for (SqlFilter child : filter.getChildren()) {
+                QueryBuilder builder = translate(child, view);
+                if (null == builder) {
+                    return null;
+                }
+                if (or) {
+                    bool.should(builder);
+                } else {
+                    bool.filter(builder);
+                }
+            }
+            return or ? bool.minimumShouldMatch(1) : bool;
+        }
+
+        if (!SqlFilter.Type.filter.equalsIgnoreCase(filter.getType()) || null == filter.getOperator()) {
+            return null;
+        }
+        String field = view.field(filter.getName());
+        if (null == field) {
+            return null;
+        }
+        String operator = filter.getOperator().trim().toUpperCase();
+        Object value = filter.getValue();
+
+        if (SqlOperatorEnum.BETWEEN.getValue().equals(operator)) {
+            if (!(value instanceof List) || ((List) value).size() != 2) {
+                return null;
+            }
+            List values = (List) value;
+            return QueryBuilders.rangeQuery(field).gte(literal(values.get(0))).lte(literal(values.get(1)));
+        }
+        if (SqlOperatorEnum.IN.getValue().equals(operator) || SqlOperatorEnum.NoTIN.getValue().equals(operator)) {
+            if (!(value instanceof List)) {
+                return null;
+            }
+            List<Object> values = new ArrayList<>();
+            ((List<?>) value).forEach(v -> values.add(literal(v)));
+            QueryBuilder terms = QueryBuilders.termsQuery(field, values);
+            return SqlOperatorEnum.IN.getValue().equals(operator) ? terms : not(field, terms);
+        }
+        if (SqlOperatorEnum.ISNULL.getValue().equals(operator)) {
+            return QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(field));
+        }
+        if (IS_NOT_NULL.equals(operator)) {
+            return QueryBuilders.existsQuery(field);
+        }
+        return compare(field, operator, literal(value));
+    }
+
+    private static QueryBuilder translate(Expression expression, ElasticView view) {
+        if (expression instanceof Parenthesis) {
+            return translate(((Parenthesis) expression).getExpression(), view);
+        }
+        if (expression instanceof AndExpression || expression instanceof OrExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            QueryBuilder left = translate(binary.getLeftExpression(), view);
+            QueryBuilder right = translate(binary.getRightExpression(), view);
+            if (null == left || null == right) {
+                return null;
+            }
+            return expression instanceof AndExpression
+                    ? QueryBuilders.boolQuery().filter(left).filter(right)
+                    : QueryBuilders.boolQuery().should(left).should(right).minimumShouldMatch(1);
+        }
+        if (expression instanceof IsNullExpression) {
+            IsNullExpression isNull = (IsNullExpression) expression;
+            String field = fieldOf(isNull.getLeftExpression(), view);
+            if (null == field) {
+                return null;
+            }
+            QueryBuilder exists = QueryBuilders.existsQuery(field);
+            return isNull.isNot() ? exists : QueryBuilders.boolQuery().mustNot(exists);
+        }
+        if (expression instanceof Between) {
+            Between between = (Between) expression;
+            String field = fieldOf(between.getLeftExpression(), view);
+            Object start = literal(between.getBetweenExpressionStart());
+            Object end = literal(between.getBetweenExpressionEnd());
+            if (null == field || null == start || null == end) {
+                return null;
+            }
+            QueryBuilder range = QueryBuilders.rangeQuery(field).gte(start).lte(end);
+            return between.isNot() ? not(field, range) : range;
+        }
+        if (expression instanceof InExpression) {
+            InExpression in = (InExpression) expression;
+            String field = fieldOf(in.getLeftExpression(), view);
+            if (null == field || !(in.getRightItemsList() instanceof ExpressionList)) {
+                return null;
+            }
+            List<Object> values = new ArrayList<>();
+            for (Expression item : ((ExpressionList) in.getRightItemsList()).getExpressions()) {
+                Object value = literal(item);
+                if (null == value) {
+                    return null;
+                }
+                values.add(value);
+            }
+            QueryBuilder terms = QueryBuilders.termsQuery(field, values);
+            return in.isNot() ? not(field, terms) : terms;
+        }
+        if (expression instanceof LikeExpression) {
+            LikeExpression like = (LikeExpression) expression;
+            String field = fieldOf(like.getLeftExpression(), view);
+            Object value = literal(like.getRightExpression());
+            if (null == field || null == value) {
+                return null;
+            }
+            return compare(field, like.isNot() ? NOT_LIKE : SqlOperatorEnum.LIKE.getValue(), value);
+        }
+        if (expression instanceof ComparisonOperator) {
+            ComparisonOperator comparison = (ComparisonOperator) expression;
+            String field = fieldOf(comparison.getLeftExpression(), view);
+            Object value = literal(comparison.getRightExpression());
+            if (null == field || null == value) {
+                return null;
+            }
+            return compare(field, comparison.getStringExpression(), value);
+        }
+        return null;
+    }
+
+    private static QueryBuilder compare(String field, String operator, Object value) {
+        if (null == value) {
+            return null;
+        }
+        RangeQueryBuilder range = QueryBuilders.rangeQuery(field);
+        switch (operator) {
+            case "=":
+                return QueryBuilders.termQuery(field, value);
+            case "!=":
+            case "<>":
+                return not(field, QueryBuilders.termQuery(field, value));
+            case ">":
+                return range.gt(value);
+            case ">=":
+                return range.gte(value);
+            case "<":
+                return range.lt(value);
+            case "<=":
+                return range.lte(value);
+            case "LIKE":
+                return QueryBuilders.wildcardQuery(field, wildcard(String.valueOf(value)));
+            case NOT_LIKE:
+                return not(field, QueryBuilders.wildcardQuery(field, wildcard(String.valueOf(value))));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * sql 中 NULL 不满足否定条件，缺失字段的文档需排除，否则 mustNot 会匹配到这些文档
+     */
+    private static QueryBuilder not(String field, QueryBuilder query) {
+        return QueryBuilders.boolQuery().filter(QueryBuilders.existsQuery(field)).mustNot(query);
+    }
+
+    private static String fieldOf(Expression expression, ElasticView view) {
+        if (!(expression instanceof Column)) {
+            return null;
+        }
+        return view.field(((Column) expression).getFullyQualifiedName());
+    }
+
+    private static Object literal(Expression expression) {
+        if (expression instanceof StringValue) {
+            return ((StringValue) expression).getValue();
+        }
+        if (expression instanceof LongValue) {
+            return ((LongValue) expression).getValue();
+        }
+        if (expression instanceof DoubleValue) {
+            return ((DoubleValue) expression).getValue();
+        }
+        if (expression instanceof SignedExpression && ((SignedExpression) expression).getSign() == '-') {
+            Object value = literal(((SignedExpression) expression).getExpression());
+            if (value instanceof Long) {
+                return -(Long) value;
+            }
+            if (value instanceof Double) {
+                return -(Double) value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * widget 过滤值，字符串去掉首尾单引号
+     */
+    private static Object literal(Object value) {
+        if (value instanceof String) {
+            String str = ((String) value).trim();
+            return str.length() > 1 && str.startsWith("'") && str.endsWith("'") ? str.substring(1, str.length() - 1) : str;
+        }
+        return value;
+    }
+
+    private static String wildcard(String like) {
+        StringBuilder builder = new StringBuilder(like.length());
+        for (char c : like.toCharArray()) {
+            if (c == '%') {
+                builder.append('*');
+            } else if (c == '_') {
+                builder.append('?');
+            } else if (c == '*' || c == '?') {
+                builder.append('\\').append(c);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static DateGroup parseDateGroup(Function function) {
+        if (!DATE_FORMAT.equalsIgnoreCase(function.getName()) || null == function.getParameters()) {
+            return null;
+        }
+        List<Expression> parameters = function.getParameters().getExpressions();
+        if (parameters.size() < 2 || parameters.size() > 3
+                || !(parameters.get(0) instanceof Column) || !(parameters.get(1) instanceof StringValue)) {
+            return null;
+        }
+        String timeZone = null;
+        if (parameters.size() == 3) {
+            if (!(parameters.get(2) instanceof StringValue)) {
+                return null;
+            }
+            timeZone = ((StringValue) parameters.get(2)).getValue();
+        }
+        DateGroup dateGroup = new DateGroup(unquote(((Column) parameters.get(0)).getFullyQualifiedName()),
+                ((StringValue) parameters.get(1)).getValue(), timeZone);
+        return null == dateGroup.getInterval() ? null : dateGroup;
+    }
+
+    /**
+     * 按格式中最小的时间单位确定分桶间隔
+     */
+    private static DateHistogramInterval intervalOf(String format) {
+        String pattern = format.replaceAll("'[^']*'", "");
+        if (pattern.contains("S")) {
+            return null;
+        }
+        if (pattern.contains("s")) {
+            return DateHistogramInterval.SECOND;
+        }
+        if (pattern.contains("m")) {
+            return DateHistogramInterval.MINUTE;
+        }
+        if (pattern.contains("H") || pattern.contains("h") || pattern.contains("k") || pattern.contains("K")) {
+            return DateHistogramInterval.HOUR;
+        }
+        if (pattern.contains("d") || pattern.contains("D") || pattern.contains("E")) {
+            return DateHistogramInterval.DAY;
+        }
+        if (pattern.contains("w")) {
+            return DateHistogramInterval.WEEK;
+        }
+        if (pattern.contains("M")) {
+            return DateHistogramInterval.MONTH;
+        }
+        if (pattern.contains("y") || pattern.contains("Y")) {
+            return DateHistogramInterval.YEAR;
+        }
+        return null;
+    }
+
+    static String unquote(String name) {
+        if (null == name) {
+            return null;
+        }
+        String str = name.trim();
+        if (str.length() > 1) {
+            char first = str.charAt(0);
+            char last = str.charAt(str.length() - 1);
+            if ((first == '`' && last == '`') || (first == '"' && last == '"') || (first == '\'' && last == '\'')) {
+                return str.substring(1, str.length() - 1);
+            }
+        }
+        return str;
+    }
+}
@@ -1,7 +1,12 @@
 package edp.davinci.service.impl;
 
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edp.core.model.QueryColumn;
 import edp.core.model.TableInfo;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.MetricsUtils;
+import edp.core.utils.PropertyAccessors;
 import edp.core.utils.SqlUtils;
 import edp.davinci.core.common.Constants;
 import edp.davinci.service.BuriedPointsService;
@@ -17,13 +22,24 @@ import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.STGroupFile;
 
 import javax.annotation.PostConstruct;
-import java.lang.reflect.Method;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 埋点数据写入
+ * 请求线程只把数据放入有界缓冲区，由后台线程按条数或时间间隔批量写入 elasticsearch 或 davinci 数据库；
+ * 缓冲区满时按 statistic.overflow_policy 丢弃最新、丢弃最旧或限时阻塞
+ */
 @Service("buriedPointsService")
 @Slf4j
 public class BuriedPointsServiceImpl implements BuriedPointsService {
 
+    private static final String DROP_OLDEST = "DROP_OLDEST";
+
+    private static final String BLOCK = "BLOCK";
+
     @Autowired
     private Environment environment;
 
@@ -47,37 +63,172 @@ public class BuriedPointsServiceImpl implements BuriedPointsService {
     @Value("${statistic.elastic_index_prefix:''}")
     private String elasticIndexPrefix;
 
+    @Value("${statistic.buffer_capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${statistic.batch_size:500}")
+    private int batchSize;
+
+    @Value("${statistic.flush_interval_ms:2000}")
+    private long flushIntervalMillis;
+
+    /**
+     * 缓冲区满时的处理方式：DROP_NEWEST、DROP_OLDEST 或 BLOCK
+     */
+    @Value("${statistic.overflow_policy:DROP_NEWEST}")
+    private String overflowPolicy;
+
+    @Value("${statistic.offer_timeout_ms:100}")
+    private long offerTimeoutMillis;
+
+    private boolean elastic = false;
+
+    private BlockingQueue<Object> buffer;
+
+    private ExecutorService flusher;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * 表名 -> 表字段，表结构变更后写入失败时清除
+     */
+    private final Map<String, Set<QueryColumn>> tableHeaders = new ConcurrentHashMap<>();
+
+    private final Map<String, String> insertSqls = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void init(){
         String statistic_open = environment.getProperty("statistic.enable");
         if("true".equalsIgnoreCase(statistic_open)){
             this.statisticOpen = true;
         }
+        if (!statisticOpen) {
+            return;
+        }
+
+        this.elastic = StringUtils.isNotBlank(environment.getProperty("statistic.elastic_urls"));
+        this.buffer = new ArrayBlockingQueue<>(Math.max(bufferCapacity, 1));
+        this.flusher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("statistic-flusher-%d").setDaemon(true).build());
+        this.flusher.execute(this::drain);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (null == flusher) {
+            return;
+        }
+        running = false;
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(10L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写出剩余数据
+        List<Object> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        write(rest);
     }
 
     @Override
     public <T> void insert(List<T> infoList, Class clz){
-        if(statisticOpen){
-            String elastic_urls = environment.getProperty("statistic.elastic_urls");
-            if(StringUtils.isBlank(elastic_urls) && !durl.equals(this.sqlUtils.getJdbcUrl())){
-                this.sqlUtils = this.sqlUtils.init(durl, username, password, null, null, false);
+        if (!statisticOpen || CollectionUtils.isEmpty(infoList)) {
+            return;
+        }
+        for (T info : infoList) {
+            if (null != info && !offer(info)) {
+                dropped.incrementAndGet();
+                MetricsUtils.countStatisticDropped(getTableName4Info(clz));
             }
-        }else{
+        }
+    }
+
+    private boolean offer(Object info) {
+        if (DROP_OLDEST.equalsIgnoreCase(overflowPolicy)) {
+            while (!buffer.offer(info)) {
+                if (null != buffer.poll()) {
+                    dropped.incrementAndGet();
+                    MetricsUtils.countStatisticDropped(getTableName4Info(info.getClass()));
+                }
+            }
+            return true;
+        }
+        if (BLOCK.equalsIgnoreCase(overflowPolicy)) {
+            try {
+                return buffer.offer(info, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return buffer.offer(info);
+    }
+
+    /**
+     * 后台线程：攒够 batch_size 条或等待 flush_interval_ms 后写出一批
+     */
+    private void drain() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Queues.drain(buffer, batch, batchSize, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                write(batch);
+                return;
+            }
+            write(batch);
+            batch.clear();
+
+            long count = dropped.getAndSet(0L);
+            if (count > 0) {
+                log.warn("statistic buffer is full, {} records dropped", count);
+            }
+        }
+    }
+
+    private void write(List<Object> batch) {
+        if (batch.isEmpty()) {
             return;
         }
+        Map<Class, List<Object>> groups = new LinkedHashMap<>();
+        for (Object info : batch) {
+            groups.computeIfAbsent(info.getClass(), k -> new ArrayList<>()).add(info);
+        }
+        groups.forEach((clz, infos) -> {
+            // elasticsearch 为异步批量写入，写入失败由 BulkProcessor 的 listener 记录，这里只会捕获入队异常
+            try {
+                write(infos, clz);
+            } catch (Exception e) {
+                log.error("write statistic {} error", clz.getSimpleName(), e);
+            }
+        });
+    }
 
+    private void write(List<Object> infoList, Class clz) {
         String tableName = getTableName4Info(clz);
 
-        String elastic_urls = environment.getProperty("statistic.elastic_urls");
-        if(StringUtils.isNotBlank(elastic_urls)){
+        if(elastic){
             String index = StringUtils.isBlank(elasticIndexPrefix) ? tableName : elasticIndexPrefix + "_" + tableName;
             elasticOperationService.batchInsert(index, index, infoList);
         }else{
+            if (!durl.equals(this.sqlUtils.getJdbcUrl())) {
+                this.sqlUtils = this.sqlUtils.init(durl, username, password, null, null, false);
+            }
             List<Map<String, Object>> values = entityConvertIntoMap(infoList);
-            Set<QueryColumn> headers = getHeaders(tableName);
-            String sql = getInsertSql(clz, headers);
+            Set<QueryColumn> headers = tableHeaders.computeIfAbsent(tableName, this::getHeaders);
+            String sql = insertSqls.computeIfAbsent(tableName, k -> getInsertSql(clz, headers));
 
-            sqlUtils.executeBatch(sql, headers, values);
+            try {
+                sqlUtils.executeBatch(sql, headers, values);
+            } catch (RuntimeException e) {
+                tableHeaders.remove(tableName);
+                insertSqls.remove(tableName);
+                throw e;
+            }
         }
     }
 
@@ -127,29 +278,10 @@ public class BuriedPointsServiceImpl implements BuriedPointsService {
     }
 
     public static <T> List<Map<String, Object>> entityConvertIntoMap(List<T> list){
-        List<Map<String, Object>> l = new LinkedList<>();
-        try {
-            for(T t : list){
-                Map<String, Object> map = new HashMap<>();
-                Method[] methods = t.getClass().getMethods();
-                for (Method method : methods) {
-                    if (method.getName().startsWith("get")) {
-                        String name = method.getName().substring(3);
-                        name = name.substring(0, 1).toLowerCase() + name.substring(1);
-                        Object value = method.invoke(t);
-                        if(value instanceof List){
-                            value = value.toString();
-                        }
-                        map.put(name,value);
-                    }
-                }
-                l.add(map);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        List<Map<String, Object>> l = new ArrayList<>(list.size());
+        for(T t : list){
+            l.add(PropertyAccessors.toMap(t));
         }
         return l;
     }
-
-
 }
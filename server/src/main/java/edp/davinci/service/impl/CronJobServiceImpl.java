@@ -19,6 +19,8 @@
 
 package edp.davinci.service.impl;
 
+import edp.core.common.quartz.ScheduleCoordinator;
+import edp.core.common.quartz.ScheduleJobExecutor;
 import edp.core.consts.Consts;
 import edp.core.exception.NotFoundException;
 import edp.core.exception.ServerException;
@@ -74,6 +76,12 @@ public class CronJobServiceImpl implements CronJobService {
     @Autowired
     private RedisUtils redisUtils;
 
+    @Autowired
+    private ScheduleCoordinator scheduleCoordinator;
+
+    @Autowired
+    private MaterializedResultStore materializedResultStore;
+
     private static final String CRONJOB_KEY = "CRONJOB";
 
 
@@ -265,6 +273,8 @@ public class CronJobServiceImpl implements CronJobService {
         if (i > 0) {
             optLogger.info("cronjob ({}) is delete by (:{})", cronJob.toString(), user.getId());
             quartzHandler.removeJob(cronJob);
+            scheduleCoordinator.removeJob(id);
+            materializedResultStore.invalidateJob(id);
         }
 
         return true;
@@ -316,6 +326,8 @@ public class CronJobServiceImpl implements CronJobService {
             throw new UnAuthorizedExecption("Insufficient permissions");
         }
 
+        materializedResultStore.invalidateJob(id);
+
         if (redisUtils.isRedisEnable()) {
             String flag = MD5Util.getMD5(UUID.randomUUID().toString() + id, true, 32);
             redisUtils.convertAndSend(DAVINCI_TOPIC_CHANNEL, new RedisMessageEntity(CronJobMessageHandler.class, id, flag));
@@ -382,7 +394,9 @@ public class CronJobServiceImpl implements CronJobService {
         if (!CollectionUtils.isEmpty(jobList)) {
             for (CronJob cronJob : jobList) {
                 String md5 = MD5Util.getMD5(CRONJOB_KEY + Consts.UNDERLINE + cronJob.getId(), true, 32);
-                if (CronJobStatusEnum.START.getStatus().equals(cronJob.getJobStatus()) && null == redisUtils.get(md5)) {
+                //集群模式下每个节点都注册触发器，由 ScheduleCoordinator 决定执行节点；物化任务每个节点都执行
+                if (CronJobStatusEnum.START.getStatus().equals(cronJob.getJobStatus())
+                        && (scheduleCoordinator.isClusterEnable() || ScheduleJobExecutor.isMaterialize(cronJob) || null == redisUtils.get(md5))) {
                     try {
                         quartzHandler.addJob(cronJob);
                         redisUtils.set(md5, 1, 5L, TimeUnit.MINUTES);
@@ -21,16 +21,18 @@ package edp.davinci.service.impl;
 
 import com.alibaba.druid.util.StringUtils;
 import com.alibaba.fastjson.JSONObject;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edp.core.common.quartz.ScheduleService;
 import edp.core.enums.MailContentTypeEnum;
 import edp.core.exception.ServerException;
 import edp.core.model.MailAttachment;
 import edp.core.model.MailContent;
+import edp.core.model.Paginate;
 import edp.core.utils.CollectionUtils;
-import edp.core.utils.MailUtils;
 import edp.core.utils.ServerUtils;
 import edp.davinci.core.common.Constants;
 import edp.davinci.core.enums.*;
+import edp.davinci.core.utils.ImageCropUtil;
 import edp.davinci.dao.*;
 import edp.davinci.dto.cronJobDto.CronJobConfig;
 import edp.davinci.dto.cronJobDto.CronJobContent;
@@ -43,11 +45,17 @@ import edp.davinci.dto.widgetDto.WidgetWithRelationDashboardId;
 import edp.davinci.model.*;
 import edp.davinci.service.ProjectService;
 import edp.davinci.service.ShareService;
+import edp.davinci.service.ViewService;
 import edp.davinci.service.excel.ExecutorUtil;
 import edp.davinci.service.excel.MsgWrapper;
 import edp.davinci.service.excel.WidgetContext;
 import edp.davinci.service.excel.WorkBookContext;
+import edp.davinci.service.mail.MailAttachmentPolicy;
+import edp.davinci.service.mail.MailAttachmentPolicy.AttachmentDelivery;
+import edp.davinci.service.mail.MailQueueSender;
+import edp.davinci.service.screenshot.ChartRenderer;
 import edp.davinci.service.screenshot.ImageContent;
+import edp.davinci.service.screenshot.ScreenshotCache;
 import edp.davinci.service.screenshot.ScreenshotUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
@@ -56,12 +64,12 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
 
 import javax.script.ScriptEngine;
+import java.io.File;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static edp.core.consts.Consts.EMPTY;
@@ -78,7 +86,10 @@ public class EmailScheduleServiceImpl implements ScheduleService {
     private CronJobMapper cronJobMapper;
 
     @Autowired
-    private MailUtils mailUtils;
+    private MailQueueSender mailQueueSender;
+
+    @Autowired
+    private MailAttachmentPolicy mailAttachmentPolicy;
 
     @Value("${file.userfiles-path}")
     private String fileBasePath;
@@ -107,12 +118,54 @@ public class EmailScheduleServiceImpl implements ScheduleService {
     @Autowired
     private ScreenshotUtil screenshotUtil;
 
+    @Autowired
+    private ChartRenderer chartRenderer;
+
+    @Autowired
+    private ViewService viewService;
+
+    @Autowired
+    private MemDashboardWidgetMapper memDashboardWidgetMapper;
+
+    @Value("${screenshot.server_render:false}")
+    private boolean isServerRenderEnable;
+
+    @Autowired
+    private ScreenshotCache screenshotCache;
+
+    @Value("${screenshot.cache_enable:false}")
+    private boolean isScreenshotCacheEnable;
+
+    /**
+     * 大于0时邮件中的截图压缩为该质量的jpg
+     */
+    @Value("${screenshot.mail_jpeg_quality:0}")
+    private float mailJpegQuality;
 
     @Value("${source.result-limit:1000000}")
     private int resultLimit;
 
     private static final String PORTAL = "PORTAL";
 
+    /**
+     * 邮件内容生成线程池，图片与excel并行生成
+     */
+    private static final ExecutorService CONTENT_WORKERS = new ThreadPoolExecutor(4, 16,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("mail-content-worker-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * 服务端绘制dashboard时并行查询widget数据，所有任务共享
+     */
+    private static final ExecutorService RENDER_QUERY_WORKERS = new ThreadPoolExecutor(4, 4,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(200),
+            new ThreadFactoryBuilder().setNameFormat("mail-render-query-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    @Value("${schedule.executor.content_timeout_minute:25}")
+    private int contentTimeoutMinute;
+
     @Override
     public void execute(long jobId) throws Exception {
         CronJob cronJob = cronJobMapper.getById(jobId);
@@ -135,74 +188,166 @@ public class EmailScheduleServiceImpl implements ScheduleService {
             return;
         }
 
-        List<ExcelContent> excels = null;
-        List<ImageContent> images = null;
-
         User creater = userMapper.getById(cronJob.getCreateBy());
 
-        if (cronJobConfig.getType().equals(CronJobMediaType.IMAGE.getType())) {
-            images = generateImages(jobId, cronJobConfig, cronJob.getCreateBy());
-        } else if (cronJobConfig.getType().equals(CronJobMediaType.EXCEL.getType())) {
-            try {
-                excels = generateExcels(jobId, cronJobConfig, creater);
-            } catch (Exception e) {
-                e.printStackTrace();
-                scheduleLogger.error(e.getMessage());
-            }
-        } else if (cronJobConfig.getType().equals(CronJobMediaType.IMAGEANDEXCEL.getType())) {
-            images = generateImages(jobId, cronJobConfig, cronJob.getCreateBy());
-            excels = generateExcels(jobId, cronJobConfig, creater);
-        }
+        boolean withImages = cronJobConfig.getType().equals(CronJobMediaType.IMAGE.getType())
+                || cronJobConfig.getType().equals(CronJobMediaType.IMAGEANDEXCEL.getType());
+        boolean withExcels = cronJobConfig.getType().equals(CronJobMediaType.EXCEL.getType())
+                || cronJobConfig.getType().equals(CronJobMediaType.IMAGEANDEXCEL.getType());
+
+        //图片与excel并行生成，截止时间后中断未完成的部分
+        final CronJobConfig jobConfig = cronJobConfig;
+        final long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(contentTimeoutMinute);
+        Future<List<ExcelContent>> excelFuture = withExcels ? CONTENT_WORKERS.submit(() -> generateExcels(jobId, jobConfig, creater, deadline)) : null;
+        Future<List<ImageContent>> imageFuture = withImages ? CONTENT_WORKERS.submit(() -> generateImages(jobId, jobConfig, creater, deadline)) : null;
 
-        List<MailAttachment> attachmentList = new ArrayList<>();
+        List<String> timeoutContents = new ArrayList<>();
+        List<ExcelContent> excels;
+        List<ImageContent> images;
+        try {
+            excels = getContent(jobId, CronJobMediaType.EXCEL.getType(), excelFuture, deadline, timeoutContents);
+            images = getContent(jobId, CronJobMediaType.IMAGE.getType(), imageFuture, deadline, timeoutContents);
+        } catch (InterruptedException e) {
+            cancelContent(excelFuture);
+            cancelContent(imageFuture);
+            throw e;
+        }
 
+        List<MailAttachment> excelAttachments = new ArrayList<>();
         if (!CollectionUtils.isEmpty(excels)) {
-            excels.forEach(excel -> attachmentList.add(new MailAttachment(excel.getName() + FileTypeEnum.XLSX.getFormat(), excel.getFile())));
+            excels.forEach(excel -> excelAttachments.add(new MailAttachment(excel.getName() + FileTypeEnum.XLSX.getFormat(), excel.getFile())));
         }
+        List<MailAttachment> imageAttachments = new ArrayList<>();
         if (!CollectionUtils.isEmpty(images)) {
             images.forEach(image -> {
                 String contentId = CronJobMediaType.IMAGE.getType() + image.getOrder();
-                attachmentList.add(new MailAttachment(contentId, image.getImageFile(), image.getUrl(), true));
+                imageAttachments.add(new MailAttachment(contentId, getMailImage(jobId, image.getImageFile()), image.getUrl(), true));
             });
         }
 
-        if (CollectionUtils.isEmpty(attachmentList)) {
+        if (CollectionUtils.isEmpty(excelAttachments) && CollectionUtils.isEmpty(imageAttachments)) {
             log.warn("CronJob (:{}) Email content is empty", jobId);
             scheduleLogger.warn("CronJob (:{}) Email content is empty", jobId);
             return;
         }
 
-        MailContent mailContent = null;
-        try {
-            mailContent = MailContent.MailContentBuilder.builder()
-                    .withSubject(cronJobConfig.getSubject())
-                    .withTo(cronJobConfig.getTo())
-                    .withCc(cronJobConfig.getCc())
-                    .withBcc(cronJobConfig.getBcc())
-                    .withMainContent(MailContentTypeEnum.HTML)
-                    .withHtmlContent(cronJobConfig.getContent())
-                    .withTemplate(Constants.SCHEDULE_MAIL_TEMPLATE)
-                    .withAttachments(attachmentList)
-                    .build();
-        } catch (ServerException e) {
-            log.error("EmailScheduleServiceImpl.execute, build MailContent error: {}", e.getMessage());
-            scheduleLogger.error("EmailScheduleServiceImpl.execute, build MailContent error: {}", e.getMessage());
-        }
-        mailUtils.sendMail(mailContent, null);
+        //excel附件按策略压缩、拆分或替换为下载链接，图片随第一封邮件发送
+        AttachmentDelivery delivery = mailAttachmentPolicy.apply(jobId, cronJob.getName(), excelAttachments);
+        List<List<MailAttachment>> parts = delivery.getParts();
+        String htmlContent = cronJobConfig.getContent();
+        if (!delivery.getLinks().isEmpty()) {
+            StringBuilder links = new StringBuilder(null == htmlContent ? EMPTY : htmlContent).append("<ul>");
+            delivery.getLinks().forEach((name, url) -> links.append("<li><a href=\"").append(url).append("\">")
+                    .append(HtmlUtils.htmlEscape(name)).append("</a></li>"));
+            htmlContent = links.append("</ul>").toString();
+        }
+        if (!timeoutContents.isEmpty()) {
+            htmlContent = (null == htmlContent ? EMPTY : htmlContent) + "<p>The " + String.join(" and ", timeoutContents)
+                    + " contents were not ready within " + contentTimeoutMinute + " minutes and are not included in this mail.</p>";
+        }
+
+        int failedParts = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            List<MailAttachment> attachmentList = new ArrayList<>(parts.get(i));
+            if (i == 0) {
+                attachmentList.addAll(imageAttachments);
+            }
+            String subject = parts.size() > 1 ? cronJobConfig.getSubject() + " (" + (i + 1) + "/" + parts.size() + ")" : cronJobConfig.getSubject();
+
+            MailContent mailContent = null;
+            try {
+                mailContent = MailContent.MailContentBuilder.builder()
+                        .withSubject(subject)
+                        .withTo(cronJobConfig.getTo())
+                        .withCc(cronJobConfig.getCc())
+                        .withBcc(cronJobConfig.getBcc())
+                        .withMainContent(MailContentTypeEnum.HTML)
+                        .withHtmlContent(htmlContent)
+                        .withTemplate(Constants.SCHEDULE_MAIL_TEMPLATE)
+                        .withAttachments(attachmentList)
+                        .build();
+            } catch (ServerException e) {
+                log.error("EmailScheduleServiceImpl.execute, build MailContent error: {}", e.getMessage());
+                scheduleLogger.error("EmailScheduleServiceImpl.execute, build MailContent error: {}", e.getMessage());
+            }
+            //单封邮件失败不影响其余拆分邮件的发送
+            try {
+                mailQueueSender.send(mailContent, null);
+            } catch (ServerException e) {
+                failedParts++;
+                log.error("CronJob (:{}) send mail {}/{} error: {}", jobId, i + 1, parts.size(), e.getMessage());
+                scheduleLogger.error("CronJob (:{}) send mail {}/{} error: {}", jobId, i + 1, parts.size(), e.getMessage());
+            }
+        }
+        if (failedParts > 0) {
+            throw new ServerException(failedParts + " of " + parts.size() + " mails of cronJob " + jobId + " failed to send");
+        }
         scheduleLogger.info("CronJob (:{}) is finish! --------------", jobId);
     }
 
 
+    /**
+     * 按配置压缩邮件中的截图，压缩失败时使用原图
+     */
+    private File getMailImage(long jobId, File image) {
+        if (mailJpegQuality <= 0 || null == image) {
+            return image;
+        }
+        try {
+            return ImageCropUtil.compress(image, mailJpegQuality);
+        } catch (Exception e) {
+            log.warn("CronJob (:{}) compress image {} error: {}", jobId, image.getName(), e.getMessage());
+            return image;
+        }
+    }
+
+    /**
+     * 在截止时间前获取生成的内容，超时后中断生成任务
+     *
+     * @param jobId
+     * @param type            内容类型
+     * @param future
+     * @param deadline        内容生成截止时间
+     * @param timeoutContents 超时的内容类型
+     * @param <T>
+     * @return 超时或生成失败时返回null
+     * @throws InterruptedException
+     */
+    private <T> List<T> getContent(long jobId, String type, Future<List<T>> future, long deadline, List<String> timeoutContents) throws InterruptedException {
+        if (null == future) {
+            return null;
+        }
+        try {
+            return future.get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancelContent(future);
+            timeoutContents.add(type);
+            log.warn("CronJob (:{}) {} contents are not ready in {} minutes and are cancelled", jobId, type, contentTimeoutMinute);
+            scheduleLogger.warn("CronJob (:{}) {} contents are not ready in {} minutes and are cancelled", jobId, type, contentTimeoutMinute);
+        } catch (ExecutionException e) {
+            log.error("CronJob (:{}) generate {} contents error", jobId, type, e.getCause());
+            scheduleLogger.error("CronJob (:{}) generate {} contents error: {}", jobId, type, e.getCause().getMessage());
+        }
+        return null;
+    }
+
+    private void cancelContent(Future<?> future) {
+        if (null != future) {
+            future.cancel(true);
+        }
+    }
+
     /**
      * 根据job配置截取图片
      *
      * @param jobId
      * @param cronJobConfig
-     * @param userId
+     * @param user
+     * @param deadline 内容生成截止时间
      * @return
      * @throws Exception
      */
-    private List<ImageContent> generateImages(long jobId, CronJobConfig cronJobConfig, Long userId) throws Exception {
+    private List<ImageContent> generateImages(long jobId, CronJobConfig cronJobConfig, User user, long deadline) throws Exception {
         scheduleLogger.info("CronJob (:{}) fetching images contents", jobId);
 
         List<ImageContent> imageContents = new ArrayList<>();
@@ -244,19 +389,143 @@ public class EmailScheduleServiceImpl implements ScheduleService {
         }
 
         int order = 0;
-        for (CronJobContent cronJobContent : jobContentList) {
-            String url = getContentUrl(userId, cronJobContent.getContentType(), cronJobContent.getId());
-            imageContents.add(new ImageContent(order, cronJobContent.getId(), cronJobContent.getContentType(), url));
-            order++;
+        List<ImageContent> screenshotContents = new ArrayList<>();
+        Map<ImageContent, String> acquiredKeys = new IdentityHashMap<>();
+        Map<ImageContent, CompletableFuture<File>> waitingContents = new IdentityHashMap<>();
+        try {
+            for (CronJobContent cronJobContent : jobContentList) {
+                String url = getContentUrl(user.getId(), cronJobContent.getContentType(), cronJobContent.getId());
+                ImageContent imageContent = new ImageContent(order, cronJobContent.getId(), cronJobContent.getContentType(), url);
+                imageContents.add(imageContent);
+                order++;
+
+                if (isScreenshotCacheEnable) {
+                    String cacheKey = screenshotCache.getCacheKey(cronJobContent.getContentType(), cronJobContent.getId(), cronJobConfig.getImageWidth(), user);
+                    if (null != cacheKey) {
+                        File cachedImage = screenshotCache.get(cacheKey);
+                        if (null != cachedImage) {
+                            imageContent.setContent(cachedImage);
+                            scheduleLogger.info("CronJob (:{}) {} (:{}) hit screenshot cache", jobId, cronJobContent.getContentType(), cronJobContent.getId());
+                            continue;
+                        }
+                        CompletableFuture<File> pendingImage = screenshotCache.acquire(cacheKey);
+                        if (null != pendingImage) {
+                            waitingContents.put(imageContent, pendingImage);
+                            continue;
+                        }
+                        acquiredKeys.put(imageContent, cacheKey);
+                    }
+                }
+
+                if (isServerRenderEnable && "dashboard".equalsIgnoreCase(cronJobContent.getContentType())
+                        && renderDashboard(jobId, imageContent, user, cronJobConfig.getImageWidth(), deadline)) {
+                    continue;
+                }
+                screenshotContents.add(imageContent);
+            }
+
+            if (!CollectionUtils.isEmpty(screenshotContents)) {
+                screenshotUtil.screenshot(jobId, screenshotContents, cronJobConfig.getImageWidth());
+            }
+        } finally {
+            acquiredKeys.forEach((content, key) -> screenshotCache.release(key, content.getImageFile()));
         }
 
-        if (!CollectionUtils.isEmpty(imageContents)) {
-            screenshotUtil.screenshot(jobId, imageContents, cronJobConfig.getImageWidth());
+        //同一截图正由其他任务生成，等待其结果，失败时自行截图
+        List<ImageContent> retryContents = new ArrayList<>();
+        waitingContents.forEach((content, pendingImage) -> {
+            File image = null;
+            try {
+                image = pendingImage.get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn(e.getMessage());
+            }
+            if (null != image) {
+                content.setContent(image);
+            } else {
+                retryContents.add(content);
+            }
+        });
+        if (!CollectionUtils.isEmpty(retryContents)) {
+            screenshotUtil.screenshot(jobId, retryContents, cronJobConfig.getImageWidth());
         }
         scheduleLogger.info("CronJob (:{}) fetched images contents, count: {}", jobId, imageContents.size());
         return imageContents;
     }
 
+    /**
+     * 服务端直接绘制dashboard图片，存在不支持的widget或截止时间前未取得数据时返回false，由浏览器截图兜底
+     *
+     * @param jobId
+     * @param imageContent
+     * @param user
+     * @param imageWidth
+     * @param deadline     内容生成截止时间
+     * @return
+     */
+    private boolean renderDashboard(long jobId, ImageContent imageContent, User user, Integer imageWidth, long deadline) {
+        List<Future<Paginate<Map<String, Object>>>> dataFutures = new ArrayList<>();
+        try {
+            Dashboard dashboard = dashboardMapper.getById(imageContent.getCId());
+            if (dashboard == null) {
+                return false;
+            }
+
+            List<MemDashboardWidget> memDashboardWidgets = memDashboardWidgetMapper.getByDashboardId(dashboard.getId());
+            Set<WidgetWithRelationDashboardId> widgets = widgetMapper.getByDashboard(dashboard.getId());
+            if (CollectionUtils.isEmpty(memDashboardWidgets) || CollectionUtils.isEmpty(widgets)) {
+                return false;
+            }
+
+            Map<Long, WidgetWithRelationDashboardId> widgetMap = new HashMap<>();
+            widgets.forEach(w -> widgetMap.put(w.getRelationId(), w));
+
+            ScriptEngine engine = getExecuptParamScriptEngine();
+            List<ChartRenderer.ChartItem> items = new ArrayList<>();
+            for (MemDashboardWidget memDashboardWidget : memDashboardWidgets) {
+                WidgetWithRelationDashboardId widget = widgetMap.get(memDashboardWidget.getId());
+                if (widget == null || !chartRenderer.isSupported(widget.getConfig())) {
+                    return false;
+                }
+
+                ViewExecuteParam executeParam = getViewExecuteParam(engine, dashboard.getConfig(), widget.getConfig(), memDashboardWidget.getId());
+                if (JSONObject.parseObject(widget.getConfig()).getIntValue("selectedChart") == 1) {
+                    executeParam.setPageNo(1);
+                    executeParam.setPageSize(chartRenderer.getTableRowCapacity(memDashboardWidget.getHeight()));
+                }
+                dataFutures.add(RENDER_QUERY_WORKERS.submit(() -> viewService.getData(widget.getViewId(), executeParam, user)));
+
+                ChartRenderer.ChartItem item = new ChartRenderer.ChartItem();
+                item.setName(widget.getName());
+                item.setConfig(widget.getConfig());
+                item.setExecuteParam(executeParam);
+                item.setX(memDashboardWidget.getX());
+                item.setY(memDashboardWidget.getY());
+                item.setWidth(memDashboardWidget.getWidth());
+                item.setHeight(memDashboardWidget.getHeight());
+                items.add(item);
+            }
+
+            for (int i = 0; i < items.size(); i++) {
+                Paginate<Map<String, Object>> paginate = dataFutures.get(i).get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+                items.get(i).setData(paginate == null ? null : paginate.getResultList());
+            }
+
+            imageContent.setContent(chartRenderer.render(items, imageWidth));
+            scheduleLogger.info("CronJob (:{}) dashboard (:{}) rendered without browser", jobId, dashboard.getId());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("CronJob (:{}) render dashboard (:{}) error: {}", jobId, imageContent.getCId(), e.toString());
+            scheduleLogger.warn("CronJob (:{}) render dashboard (:{}) error: {}", jobId, imageContent.getCId(), e.toString());
+            return false;
+        } finally {
+            dataFutures.forEach(future -> future.cancel(true));
+        }
+    }
+
     private String getContentUrl(Long userId, String contentType, Long contengId) {
         String shareToken = shareService.generateShareToken(contengId, null, userId);
         StringBuilder sb = new StringBuilder();
@@ -289,10 +558,12 @@ public class EmailScheduleServiceImpl implements ScheduleService {
      *
      * @param cronJobId
      * @param cronJobConfig
+     * @param user
+     * @param deadline      内容生成截止时间
      * @return
      * @throws Exception
      */
-    private List<ExcelContent> generateExcels(Long cronJobId, CronJobConfig cronJobConfig, User user) throws Exception {
+    private List<ExcelContent> generateExcels(Long cronJobId, CronJobConfig cronJobConfig, User user, long deadline) throws Exception {
         scheduleLogger.info("CronJob (:{}) fetching excel contents", cronJobId);
 
         ScriptEngine engine = getExecuptParamScriptEngine();
@@ -406,17 +677,21 @@ public class EmailScheduleServiceImpl implements ScheduleService {
             excelPathFutureMap.put(name, ExecutorUtil.submitWorkbookTask(context, scheduleLogger));
         });
 
-        excelPathFutureMap.forEach((name, future) -> {
-            String excelPath = null;
-            try {
-                excelPath = future.get(1, TimeUnit.HOURS);
-            } catch (Exception e) {
-                log.warn(e.getMessage());
-            }
-            if (!StringUtils.isEmpty(excelPath)) {
-                excelContents.add(new ExcelContent(name, excelPath));
+        try {
+            for (Map.Entry<String, Future<String>> entry : excelPathFutureMap.entrySet()) {
+                String excelPath = null;
+                try {
+                    excelPath = entry.getValue().get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    log.warn("CronJob (:{}) workbook {} is not generated: {}", cronJobId, entry.getKey(), e.toString());
+                }
+                if (!StringUtils.isEmpty(excelPath)) {
+                    excelContents.add(new ExcelContent(entry.getKey(), excelPath));
+                }
             }
-        });
+        } finally {
+            excelPathFutureMap.values().forEach(future -> future.cancel(true));
+        }
         scheduleLogger.info("CronJob (:{}) fetched excel contents, count {}", cronJobId, excelContents.size());
 
         return excelContents.isEmpty() ? null : excelContents;
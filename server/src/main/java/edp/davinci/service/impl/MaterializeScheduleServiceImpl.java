@@ -0,0 +1,213 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.impl;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSONObject;
+import edp.core.common.quartz.ScheduleService;
+import edp.core.utils.CollectionUtils;
+import edp.davinci.core.enums.CheckEntityEnum;
+import edp.davinci.core.enums.LogNameEnum;
+import edp.davinci.dao.*;
+import edp.davinci.dto.cronJobDto.CronJobConfig;
+import edp.davinci.dto.cronJobDto.CronJobContent;
+import edp.davinci.dto.dashboardDto.DashboardWithPortal;
+import edp.davinci.dto.projectDto.ProjectDetail;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import edp.davinci.dto.viewDto.ViewWithSource;
+import edp.davinci.dto.widgetDto.WidgetWithRelationDashboardId;
+import edp.davinci.model.CronJob;
+import edp.davinci.model.Dashboard;
+import edp.davinci.model.User;
+import edp.davinci.model.Widget;
+import edp.davinci.service.ProjectService;
+import edp.davinci.service.ViewService;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.script.ScriptEngine;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static edp.davinci.common.utils.ScriptUtiils.getExecuptParamScriptEngine;
+import static edp.davinci.common.utils.ScriptUtiils.getViewExecuteParam;
+
+/**
+ * 物化 widget 查询结果的定时任务，jobType 为 materialize
+ * <p>
+ * config 沿用 CronJobConfig.contentList：widget 为单个 widget，dashboard / portal 与邮件任务相同，
+ * 按任务创建者的权限执行查询，结果写入 MaterializedResultStore
+ */
+@Slf4j
+@Service("materializeScheduleService")
+public class MaterializeScheduleServiceImpl implements ScheduleService {
+
+    private static final Logger scheduleLogger = LoggerFactory.getLogger(LogNameEnum.BUSINESS_SCHEDULE.getName());
+
+    private static final String PORTAL = "PORTAL";
+
+    @Autowired
+    private CronJobMapper cronJobMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private WidgetMapper widgetMapper;
+
+    @Autowired
+    private DashboardMapper dashboardMapper;
+
+    @Autowired
+    private ViewMapper viewMapper;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Autowired
+    private ViewService viewService;
+
+    @Autowired
+    private MaterializedResultStore materializedResultStore;
+
+    @Override
+    public void execute(long jobId) throws Exception {
+        if (!materializedResultStore.isEnabled()) {
+            scheduleLogger.warn("CronJob (:{}) is skipped, source.materialize.enable is false", jobId);
+            return;
+        }
+
+        CronJob cronJob = cronJobMapper.getById(jobId);
+        if (null == cronJob || StringUtils.isEmpty(cronJob.getConfig())) {
+            scheduleLogger.info("CronJob (:{}) config ie empty!", jobId);
+            return;
+        }
+
+        CronJobConfig cronJobConfig;
+        try {
+            cronJobConfig = JSONObject.parseObject(cronJob.getConfig(), CronJobConfig.class);
+        } catch (Exception e) {
+            log.error("Cronjob (:{}), parse config ({}) error: {}", jobId, cronJob.getConfig(), e.getMessage());
+            return;
+        }
+        if (null == cronJobConfig || CollectionUtils.isEmpty(cronJobConfig.getContentList())) {
+            scheduleLogger.warn("cron job config is not expected format: {}", cronJob.getConfig());
+            return;
+        }
+
+        scheduleLogger.info("CronJob (:{}) is started! ----------------", jobId);
+        User creater = userMapper.getById(cronJob.getCreateBy());
+        ScriptEngine engine = getExecuptParamScriptEngine();
+
+        Set<Long> widgetIds = new HashSet<>();
+        Set<Long> portalIds = new HashSet<>();
+        Set<Long> dashboardIds = new HashSet<>();
+        for (CronJobContent content : cronJobConfig.getContentList()) {
+            if (null == content.getContentType()) {
+                continue;
+            }
+            String contentType = content.getContentType().trim();
+            if (CheckEntityEnum.WIDGET.getSource().equalsIgnoreCase(contentType)) {
+                widgetIds.add(content.getId());
+            } else if (CheckEntityEnum.DASHBOARD.getSource().equalsIgnoreCase(contentType) || PORTAL.equalsIgnoreCase(contentType)) {
+                //兼容原始结构：contentId 为 portalId
+                if (CollectionUtils.isEmpty(content.getItems())) {
+                    portalIds.add(content.getId());
+                } else {
+                    dashboardIds.addAll(content.getItems());
+                }
+            }
+        }
+
+        if (!CollectionUtils.isEmpty(portalIds)) {
+            Set<Dashboard> dashboards = dashboardMapper.queryByPortals(portalIds);
+            if (!CollectionUtils.isEmpty(dashboards)) {
+                dashboardIds.addAll(dashboards.stream().map(Dashboard::getId).collect(Collectors.toList()));
+            }
+        }
+
+        int total = 0;
+        int success = 0;
+        Map<Long, Boolean> maintainers = new HashMap<>();
+        if (!CollectionUtils.isEmpty(widgetIds)) {
+            List<Widget> widgets = widgetMapper.getByIds(widgetIds);
+            if (!CollectionUtils.isEmpty(widgets)) {
+                for (Widget widget : widgets) {
+                    total++;
+                    ViewExecuteParam executeParam = getViewExecuteParam(engine, null, widget.getConfig(), null);
+                    if (materialize(jobId, widget, executeParam, isMaintainer(widget.getProjectId(), creater, maintainers), creater)) {
+                        success++;
+                    }
+                }
+            }
+        }
+
+        for (Long dashboardId : dashboardIds) {
+            DashboardWithPortal dashboard = dashboardMapper.getDashboardWithPortalAndProject(dashboardId);
+            if (null == dashboard) {
+                continue;
+            }
+            boolean isMaintainer = isMaintainer(dashboard.getProject().getId(), creater, maintainers);
+            Set<WidgetWithRelationDashboardId> widgets = widgetMapper.getByDashboard(dashboardId);
+            if (CollectionUtils.isEmpty(widgets)) {
+                continue;
+            }
+            for (WidgetWithRelationDashboardId widget : widgets) {
+                total++;
+                ViewExecuteParam executeParam = getViewExecuteParam(engine, dashboard.getConfig(), widget.getConfig(), widget.getRelationId());
+                if (materialize(jobId, widget, executeParam, isMaintainer, creater)) {
+                    success++;
+                }
+            }
+        }
+
+        scheduleLogger.info("CronJob (:{}) is finish! {}/{} widgets materialized --------------", jobId, success, total);
+    }
+
+    private boolean materialize(long jobId, Widget widget, ViewExecuteParam executeParam, boolean isMaintainer, User user) {
+        try {
+            ViewWithSource viewWithSource = viewMapper.getViewWithSource(widget.getViewId());
+            if (null == viewWithSource) {
+                scheduleLogger.warn("CronJob (:{}): view (:{}) of widget (:{}) not found", jobId, widget.getViewId(), widget.getId());
+                return false;
+            }
+            return null != viewService.materialize(jobId, isMaintainer, viewWithSource, executeParam, user);
+        } catch (Exception e) {
+            log.error("CronJob (:{}): materialize widget (:{}) error: {}", jobId, widget.getId(), e.getMessage());
+            scheduleLogger.error("CronJob (:{}): materialize widget (:{}) error: {}", jobId, widget.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isMaintainer(Long projectId, User user, Map<Long, Boolean> maintainers) {
+        return maintainers.computeIfAbsent(projectId, id -> {
+            try {
+                ProjectDetail projectDetail = projectService.getProjectDetail(id, user, false);
+                return projectService.isMaintainer(projectDetail, user);
+            } catch (Exception e) {
+                return false;
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edp.core.model.ColumnarResult;
+import edp.core.model.PaginateWithQueryColumns;
+import edp.core.utils.MD5Util;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static edp.core.consts.Consts.MINUS;
+
+/**
+ * 物化的 widget 查询结果
+ * <p>
+ * 由 materialize 类型的定时任务按计划刷新，以最终查询 sql 为键按列存储在本地内存；
+ * 行权限不同的用户生成的 sql 不同，不会命中他人的结果；存储不做列过滤的完整结果，列权限在读取时按读取者过滤。
+ * 任务停止或删除后丢弃只由该任务写入的结果
+ */
+@Slf4j
+@Component
+public class MaterializedResultStore {
+
+    @Value("${source.materialize.enable:false}")
+    private boolean enable;
+
+    /**
+     * 所有结果的单元格（行数 * 列数）总数上限
+     */
+    @Value("${source.materialize.max-cells:5000000}")
+    private long maxCells;
+
+    /**
+     * 超过该时长未刷新的结果不再使用
+     */
+    @Value("${source.materialize.expire-minutes:1440}")
+    private long expireMinutes;
+
+    private Cache<String, Entry> entries;
+
+    @PostConstruct
+    public void init() {
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxCells)
+                .weigher((String key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1L, entry.result.cells())))
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enable;
+    }
+
+    public static String key(Long viewId, int limit, String sql) {
+        return MD5Util.getMD5(viewId + MINUS + limit + MINUS + sql, true, 32);
+    }
+
+    /**
+     * 写入物化结果，多个任务物化同一查询时共用一份结果
+     *
+     * @param key
+     * @param viewId
+     * @param jobId    写入结果的定时任务
+     * @param paginate 未做列过滤的完整结果
+     */
+    public void put(String key, Long viewId, Long jobId, PaginateWithQueryColumns paginate) {
+        if (!enable || null == paginate) {
+            return;
+        }
+        ColumnarResult result = ColumnarResult.of(paginate.getColumns(), paginate.getResultList());
+        entries.asMap().compute(key, (k, old) -> {
+            Set<Long> jobIds = new HashSet<>();
+            if (null != old) {
+                jobIds.addAll(old.jobIds);
+            }
+            jobIds.add(jobId);
+            return new Entry(viewId, jobIds, result, System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * 读取物化结果并在内存中分页
+     *
+     * @param key
+     * @param pageNo
+     * @param pageSize
+     * @param excludeColumns 无权访问的列
+     * @return 未物化时返回 null
+     */
+    public PaginateWithQueryColumns get(String key, int pageNo, int pageSize, Set<String> excludeColumns) {
+        if (!enable) {
+            return null;
+        }
+        Entry entry = entries.getIfPresent(key);
+        if (null == entry) {
+            return null;
+        }
+
+        ColumnarResult result = entry.result;
+        PaginateWithQueryColumns paginate = new PaginateWithQueryColumns();
+        paginate.setColumns(result.getColumns().stream()
+                .filter(c -> null == excludeColumns || !excludeColumns.contains(c.getName()))
+                .collect(Collectors.toList()));
+        paginate.setTotalCount(result.getRowCount());
+        if (pageNo < 1 || pageSize < 1) {
+            paginate.setPageNo(1);
+            paginate.setPageSize(result.getRowCount());
+            paginate.setResultList(result.toRows(0, result.getRowCount(), excludeColumns));
+        } else {
+            int start = (pageNo - 1) * pageSize;
+            paginate.setPageNo(pageNo);
+            paginate.setPageSize(pageSize);
+            paginate.setHasNext(start + pageSize < result.getRowCount());
+            paginate.setResultList(result.toRows(start, start + pageSize, excludeColumns));
+        }
+        paginate.setMaterializedTime(entry.refreshTime);
+        return paginate;
+    }
+
+    /**
+     * view 修改或删除后丢弃其物化结果
+     *
+     * @param viewId
+     */
+    public void invalidate(Long viewId) {
+        if (null != entries) {
+            entries.asMap().values().removeIf(entry -> entry.viewId.equals(viewId));
+        }
+    }
+
+    /**
+     * 定时任务停止或删除后丢弃其物化结果，仍被其他任务刷新的结果保留
+     *
+     * @param jobId
+     */
+    public void invalidateJob(Long jobId) {
+        if (null == entries || null == jobId) {
+            return;
+        }
+        for (String key : new ArrayList<>(entries.asMap().keySet())) {
+            entries.asMap().computeIfPresent(key, (k, entry) -> {
+                if (!entry.jobIds.contains(jobId)) {
+                    return entry;
+                }
+                Set<Long> jobIds = new HashSet<>(entry.jobIds);
+                jobIds.remove(jobId);
+                return jobIds.isEmpty() ? null : new Entry(entry.viewId, jobIds, entry.result, entry.refreshTime);
+            });
+        }
+    }
+
+    private static class Entry {
+        private final Long viewId;
+        private final Set<Long> jobIds;
+        private final ColumnarResult result;
+        private final long refreshTime;
+
+        private Entry(Long viewId, Set<Long> jobIds, ColumnarResult result, long refreshTime) {
+            this.viewId = viewId;
+            this.jobIds = jobIds;
+            this.result = result;
+            this.refreshTime = refreshTime;
+        }
+    }
+}
@@ -37,6 +37,7 @@ import edp.davinci.model.Project;
 import edp.davinci.model.RelUserOrganization;
 import edp.davinci.model.User;
 import edp.davinci.service.OrganizationService;
+import edp.davinci.service.mail.MailQueueSender;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,7 +73,7 @@ public class OrganizationServiceImpl implements OrganizationService {
     private TokenUtils tokenUtils;
 
     @Autowired
-    private MailUtils mailUtils;
+    private MailQueueSender mailQueueSender;
 
     @Autowired
     private FileUtils fileUtils;
@@ -383,7 +384,7 @@ public class OrganizationServiceImpl implements OrganizationService {
                     .withTemplateContent(content)
                     .build();
 
-            mailUtils.sendMail(mailContent, null);
+            mailQueueSender.send(mailContent, null);
         } catch (ServerException e) {
             log.info(e.getMessage());
             e.printStackTrace();
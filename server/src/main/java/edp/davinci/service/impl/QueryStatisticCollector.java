@@ -0,0 +1,409 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edp.core.utils.MD5Util;
+import edp.core.utils.SqlFingerprintUtils;
+import edp.davinci.dto.statistic.DavinciStatisticSlowQueryInfo;
+import edp.davinci.dto.statistic.QueryStatistic;
+import edp.davinci.service.BuriedPointsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 查询统计：按 sql 指纹、view、source 汇总查询次数、返回行数、失败率与耗时分位数
+ * <p>
+ * 每个条目保留最近若干个统计窗口，条目总数超过上限时淘汰低频条目；
+ * 窗口结束后将最大耗时超过阈值的条目按总耗时取前若干条写入统计库（davinci_statistic_slow_query 表或 elasticsearch 索引）
+ */
+@Slf4j
+@Component
+public class QueryStatisticCollector {
+
+    public static final String GROUP_FINGERPRINT = "fingerprint";
+
+    public static final String GROUP_VIEW = "view";
+
+    public static final String GROUP_SOURCE = "source";
+
+    /**
+     * 耗时分桶上界，单位 ms，超过最后一档的计入溢出桶
+     */
+    private static final long[] BUCKETS = {1L, 2L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L, 2000L, 5000L,
+            10000L, 20000L, 30000L, 60000L, 120000L, 300000L};
+
+    private static final int MAX_SQL_LENGTH = 2000;
+
+    @Autowired
+    private BuriedPointsService buriedPointsService;
+
+    @Value("${source.query-statistic.enable:true}")
+    private boolean enable;
+
+    @Value("${source.query-statistic.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${source.query-statistic.window-minutes:5}")
+    private int windowMinutes;
+
+    /**
+     * 保留的窗口数，top-N 统计覆盖 window-minutes * windows 分钟
+     */
+    @Value("${source.query-statistic.windows:12}")
+    private int windows;
+
+    @Value("${source.query-statistic.flush:true}")
+    private boolean flush;
+
+    /**
+     * 窗口内最大耗时达到该值（ms）的条目才写入统计库
+     */
+    @Value("${source.query-statistic.flush-slow-millis:1000}")
+    private long flushSlowMillis;
+
+    /**
+     * 每个窗口最多写入的条目数，按总耗时排序
+     */
+    @Value("${source.query-statistic.flush-top:100}")
+    private int flushTop;
+
+    private long windowMillis;
+
+    private Cache<String, Entry> entries;
+
+    /**
+     * 原始 sql 摘要 -> 归一化 sql，避免重复解析
+     */
+    private Cache<String, String> fingerprints;
+
+    private volatile long flushedWindow;
+
+    @PostConstruct
+    public void init() {
+        this.windowMillis = Math.max(windowMinutes, 1) * 60 * 1000L;
+        this.windows = Math.max(windows, 1);
+        this.entries = Caffeine.newBuilder().maximumSize(maxEntries).build();
+        this.fingerprints = Caffeine.newBuilder().maximumSize(maxEntries * 4L).build();
+        this.flushedWindow = currentWindow() - 1;
+    }
+
+    /**
+     * 记录一次查询
+     *
+     * @param sourceId
+     * @param viewId
+     * @param sql
+     * @param millis
+     * @param rows     失败时为 -1
+     */
+    public void record(Long sourceId, Long viewId, String sql, long millis, int rows) {
+        if (!enable || null == sql) {
+            return;
+        }
+        try {
+            String normalized = fingerprints.get(MD5Util.getMD5(sql, true, 32), k -> {
+                String n = SqlFingerprintUtils.normalize(sql);
+                return n.length() > MAX_SQL_LENGTH ? n.substring(0, MAX_SQL_LENGTH) : n;
+            });
+            String fingerprint = SqlFingerprintUtils.digest(normalized);
+            Entry entry = entries.get(fingerprint + "|" + viewId + "|" + sourceId,
+                    k -> new Entry(fingerprint, normalized, viewId, sourceId, windows));
+            entry.record(currentWindow(), millis, rows);
+        } catch (Exception e) {
+            log.warn("record query statistic error: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 最近窗口内的查询排行
+     *
+     * @param groupBy fingerprint、view 或 source
+     * @param orderBy total、avg、p99、max、count 或 errors
+     * @param limit
+     * @return
+     */
+    public List<QueryStatistic> top(String groupBy, String orderBy, int limit) {
+        long current = currentWindow();
+        long from = current - windows + 1;
+
+        Function<Entry, String> grouping;
+        if (GROUP_VIEW.equalsIgnoreCase(groupBy)) {
+            grouping = e -> String.valueOf(e.viewId);
+        } else if (GROUP_SOURCE.equalsIgnoreCase(groupBy)) {
+            grouping = e -> String.valueOf(e.sourceId);
+        } else {
+            grouping = e -> e.fingerprint + "|" + e.viewId + "|" + e.sourceId;
+        }
+
+        Map<String, Window> merged = new HashMap<>();
+        // 分组内总耗时最高的条目作为代表 sql
+        Map<String, Entry> samples = new HashMap<>();
+        Map<String, Long> sampleMillis = new HashMap<>();
+        for (Entry entry : entries.asMap().values()) {
+            Window window = entry.merge(from, current);
+            if (window.count == 0) {
+                continue;
+            }
+            String key = grouping.apply(entry);
+            if (window.totalMillis > sampleMillis.getOrDefault(key, -1L)) {
+                samples.put(key, entry);
+                sampleMillis.put(key, window.totalMillis);
+            }
+            Window group = merged.get(key);
+            if (null == group) {
+                merged.put(key, window);
+            } else {
+                group.add(window);
+            }
+        }
+
+        Comparator<QueryStatistic> comparator = getComparator(orderBy);
+        return merged.entrySet().stream()
+                .map(e -> toStatistic(samples.get(e.getKey()), e.getValue(), groupBy))
+                .sorted(comparator.reversed())
+                .limit(Math.max(limit, 1))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 写出已结束窗口的快照
+     */
+    @Scheduled(cron = "30 * * * * *")
+    public void flush() {
+        if (!enable || !flush) {
+            return;
+        }
+        long current = currentWindow();
+        long last = flushedWindow;
+        if (last >= current - 1) {
+            return;
+        }
+        flushedWindow = current - 1;
+
+        List<DavinciStatisticSlowQueryInfo> infos = new ArrayList<>();
+        for (long window = Math.max(last + 1, current - windows); window < current; window++) {
+            List<DavinciStatisticSlowQueryInfo> slowInfos = new ArrayList<>();
+            for (Entry entry : entries.asMap().values()) {
+                Window snapshot = entry.merge(window, window);
+                if (snapshot.count > 0 && snapshot.maxMillis >= flushSlowMillis) {
+                    slowInfos.add(toInfo(entry, snapshot, window));
+                }
+            }
+            slowInfos.stream()
+                    .sorted(Comparator.comparingLong(DavinciStatisticSlowQueryInfo::getTotal_millis).reversed())
+                    .limit(Math.max(flushTop, 1))
+                    .forEach(infos::add);
+        }
+        if (infos.isEmpty()) {
+            return;
+        }
+        try {
+            buriedPointsService.insert(infos, DavinciStatisticSlowQueryInfo.class);
+        } catch (Exception e) {
+            log.warn("flush query statistic error: {}", e.getMessage());
+        }
+    }
+
+    private long currentWindow() {
+        return System.currentTimeMillis() / windowMillis;
+    }
+
+    private Comparator<QueryStatistic> getComparator(String orderBy) {
+        if (null == orderBy) {
+            return Comparator.comparingLong(QueryStatistic::getTotalMillis);
+        }
+        switch (orderBy.toLowerCase()) {
+            case "avg":
+                return Comparator.comparingLong(QueryStatistic::getAvgMillis);
+            case "p99":
+                return Comparator.comparingLong(QueryStatistic::getP99Millis);
+            case "max":
+                return Comparator.comparingLong(QueryStatistic::getMaxMillis);
+            case "count":
+                return Comparator.comparingLong(QueryStatistic::getCount);
+            case "errors":
+                return Comparator.comparingLong(QueryStatistic::getErrors);
+            default:
+                return Comparator.comparingLong(QueryStatistic::getTotalMillis);
+        }
+    }
+
+    private QueryStatistic toStatistic(Entry entry, Window window, String groupBy) {
+        QueryStatistic statistic = new QueryStatistic();
+        boolean byFingerprint = !GROUP_VIEW.equalsIgnoreCase(groupBy) && !GROUP_SOURCE.equalsIgnoreCase(groupBy);
+        statistic.setFingerprint(entry.fingerprint);
+        statistic.setSql(entry.sql);
+        statistic.setViewId(byFingerprint || GROUP_VIEW.equalsIgnoreCase(groupBy) ? entry.viewId : null);
+        statistic.setSourceId(entry.sourceId);
+        statistic.setCount(window.count);
+        statistic.setErrors(window.errors);
+        statistic.setErrorRate((double) window.errors / window.count);
+        statistic.setRows(window.rows);
+        statistic.setTotalMillis(window.totalMillis);
+        statistic.setAvgMillis(window.totalMillis / window.count);
+        statistic.setP50Millis(window.percentile(0.50));
+        statistic.setP90Millis(window.percentile(0.90));
+        statistic.setP99Millis(window.percentile(0.99));
+        statistic.setMaxMillis(window.maxMillis);
+        statistic.setLastTime(new Date(window.lastTime));
+        return statistic;
+    }
+
+    private DavinciStatisticSlowQueryInfo toInfo(Entry entry, Window window, long index) {
+        DavinciStatisticSlowQueryInfo info = new DavinciStatisticSlowQueryInfo();
+        info.setFingerprint(entry.fingerprint);
+        info.setQuery_sql(entry.sql);
+        info.setView_id(entry.viewId);
+        info.setSource_id(entry.sourceId);
+        info.setWindow_start(new Timestamp(index * windowMillis));
+        info.setWindow_end(new Timestamp((index + 1) * windowMillis));
+        info.setQuery_count(window.count);
+        info.setError_count(window.errors);
+        info.setRow_count(window.rows);
+        info.setTotal_millis(window.totalMillis);
+        info.setAvg_millis(window.totalMillis / window.count);
+        info.setP50_millis(window.percentile(0.50));
+        info.setP90_millis(window.percentile(0.90));
+        info.setP99_millis(window.percentile(0.99));
+        info.setMax_millis(window.maxMillis);
+        info.setCreate_time(new Timestamp(System.currentTimeMillis()));
+        return info;
+    }
+
+    /**
+     * 单个 sql 指纹/view/source 的统计，窗口按序号循环复用
+     */
+    private static class Entry {
+
+        private final String fingerprint;
+
+        private final String sql;
+
+        private final Long viewId;
+
+        private final Long sourceId;
+
+        private final Window[] windows;
+
+        Entry(String fingerprint, String sql, Long viewId, Long sourceId, int size) {
+            this.fingerprint = fingerprint;
+            this.sql = sql;
+            this.viewId = viewId;
+            this.sourceId = sourceId;
+            this.windows = new Window[size];
+        }
+
+        synchronized void record(long index, long millis, int rows) {
+            int slot = (int) (index % windows.length);
+            Window window = windows[slot];
+            if (null == window || window.index != index) {
+                window = new Window(index);
+                windows[slot] = window;
+            }
+            window.record(millis, rows);
+        }
+
+        synchronized Window merge(long from, long to) {
+            Window merged = new Window(to);
+            for (Window window : windows) {
+                if (null != window && window.index >= from && window.index <= to) {
+                    merged.add(window);
+                }
+            }
+            return merged;
+        }
+    }
+
+    private static class Window {
+
+        private final long index;
+
+        private final long[] histogram = new long[BUCKETS.length + 1];
+
+        private long count;
+
+        private long errors;
+
+        private long rows;
+
+        private long totalMillis;
+
+        private long maxMillis;
+
+        private long lastTime;
+
+        Window(long index) {
+            this.index = index;
+        }
+
+        void record(long millis, int rows) {
+            int bucket = Arrays.binarySearch(BUCKETS, millis);
+            histogram[bucket < 0 ? -bucket - 1 : bucket]++;
+            count++;
+            if (rows < 0) {
+                errors++;
+            } else {
+                this.rows += rows;
+            }
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+            lastTime = System.currentTimeMillis();
+        }
+
+        void add(Window other) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            count += other.count;
+            errors += other.errors;
+            rows += other.rows;
+            totalMillis += other.totalMillis;
+            maxMillis = Math.max(maxMillis, other.maxMillis);
+            lastTime = Math.max(lastTime, other.lastTime);
+        }
+
+        /**
+         * 按分桶估算分位数，取所在桶的上界且不超过最大值
+         */
+        long percentile(double percentile) {
+            long rank = (long) Math.ceil(percentile * count);
+            long cumulative = 0L;
+            for (int i = 0; i < histogram.length; i++) {
+                cumulative += histogram[i];
+                if (cumulative >= rank) {
+                    return i < BUCKETS.length ? Math.min(BUCKETS[i], maxMillis) : maxMillis;
+                }
+            }
+            return maxMillis;
+        }
+    }
+}
@@ -19,9 +19,14 @@
 
 package edp.davinci.service.impl;
 
+import com.alibaba.druid.util.StringUtils;
+import edp.core.exception.UnAuthorizedExecption;
+import edp.core.utils.AESUtils;
+import edp.davinci.core.common.Constants;
 import edp.davinci.core.enums.ActionEnum;
 import edp.davinci.core.enums.DownloadTaskStatus;
 import edp.davinci.core.enums.DownloadType;
+import edp.davinci.core.model.TokenEntity;
 import edp.davinci.dao.ShareDownloadRecordMapper;
 import edp.davinci.dto.shareDto.ShareInfo;
 import edp.davinci.dto.viewDto.DownloadViewExecuteParam;
@@ -37,8 +42,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 @Service
 @Slf4j
@@ -104,4 +111,62 @@ public class ShareDownloadServiceImpl extends DownloadCommonService implements S
             return null;
         }
     }
+
+    @Override
+    public String generateMailFileToken(File file, String name, long expireMillis) {
+        String uuid = UUID.randomUUID().toString().replace("-", "");
+
+        ShareDownloadRecord record = new ShareDownloadRecord();
+        record.setUuid(uuid);
+        record.setName(name);
+        record.setPath(file.getAbsolutePath());
+        record.setStatus(DownloadTaskStatus.SUCCESS.getStatus());
+        record.setCreateTime(new Date());
+        //文件保留到链接过期，避免被分享下载记录的定时清理提前删除
+        record.setExpireTime(new Date(record.getCreateTime().getTime() + expireMillis));
+        shareDownloadRecordMapper.insertSelective(record);
+
+        /**
+         * username: 下载记录id:-:uuid
+         * password: uuid
+         */
+        TokenEntity tokenEntity = new TokenEntity();
+        tokenEntity.setUsername(record.getId() + Constants.SPLIT_CHAR_STRING + uuid);
+        tokenEntity.setPassword(uuid);
+        return AESUtils.encrypt(tokenUtils.generateToken(tokenEntity, expireMillis), null);
+    }
+
+    @Override
+    public ShareDownloadRecord downloadMailFile(String token) throws UnAuthorizedExecption {
+        if (StringUtils.isEmpty(token)) {
+            throw new UnAuthorizedExecption();
+        }
+
+        //token 过期时解析结果为空
+        String decrypt = AESUtils.decrypt(token, null);
+        String username = StringUtils.isEmpty(decrypt) ? null : tokenUtils.getUsername(decrypt);
+        if (StringUtils.isEmpty(username)) {
+            throw new UnAuthorizedExecption();
+        }
+
+        String[] tokenInfos = username.split(Constants.SPLIT_CHAR_STRING);
+        if (tokenInfos.length < 2) {
+            throw new UnAuthorizedExecption();
+        }
+
+        ShareDownloadRecord record;
+        try {
+            record = shareDownloadRecordMapper.getShareDownloadRecordBy(Long.valueOf(tokenInfos[0]), tokenInfos[1]);
+        } catch (NumberFormatException e) {
+            throw new UnAuthorizedExecption();
+        }
+        if (null == record || StringUtils.isEmpty(record.getPath()) || !new File(record.getPath()).exists()) {
+            return null;
+        }
+
+        record.setLastDownloadTime(new Date());
+        record.setStatus(DownloadTaskStatus.DOWNLOADED.getStatus());
+        shareDownloadRecordMapper.updateById(record);
+        return record;
+    }
 }
@@ -22,6 +22,7 @@ package edp.davinci.service.impl;
 import com.alibaba.fastjson.JSONObject;
 import edp.core.common.jdbc.JdbcDataSource;
 import edp.core.enums.DataTypeEnum;
+import edp.core.enums.PaginationTypeEnum;
 import edp.core.exception.NotFoundException;
 import edp.core.exception.ServerException;
 import edp.core.exception.SourceException;
@@ -48,6 +49,8 @@ import edp.davinci.model.View;
 import edp.davinci.runner.LoadSupportDataSourceRunner;
 import edp.davinci.service.ProjectService;
 import edp.davinci.service.SourceService;
+import edp.davinci.service.elastic.ElasticAggregationEngine;
+import edp.davinci.service.olap.RollupEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +98,12 @@ public class SourceServiceImpl implements SourceService {
     @Autowired
     private RedisUtils redisUtils;
 
+    @Autowired
+    private ElasticAggregationEngine elasticAggregationEngine;
+
+    @Autowired
+    private RollupEngine rollupEngine;
+
     @Override
     public synchronized boolean isExist(String name, Long id, Long projectId) {
         Long sourceId = sourceMapper.getByNameWithProjectId(name, projectId);
@@ -187,6 +196,7 @@ public class SourceServiceImpl implements SourceService {
 
         //测试连接
         SourceConfig config = sourceCreate.getConfig();
+        checkPagination(config);
 
         boolean testConnection = sqlUtils
                 .init(
@@ -215,6 +225,12 @@ public class SourceServiceImpl implements SourceService {
         }
     }
 
+    private void checkPagination(SourceConfig config) throws ServerException {
+        if (!StringUtils.isEmpty(config.getPagination()) && null == PaginationTypeEnum.typeOf(config.getPagination())) {
+            throw new ServerException("Invalid pagination type: " + config.getPagination());
+        }
+    }
+
     /**
      * 修改source
      *
@@ -245,6 +261,7 @@ public class SourceServiceImpl implements SourceService {
         }
 
         SourceConfig sourceConfig = sourceInfo.getConfig();
+        checkPagination(sourceConfig);
         //测试连接
         boolean testConnection = sqlUtils
                 .init(
@@ -258,6 +275,11 @@ public class SourceServiceImpl implements SourceService {
 
         if (testConnection) {
             String origin = source.toString();
+            elasticAggregationEngine.evictClient(source);
+            List<View> views = viewMapper.getBySourceId(source.getId());
+            if (!CollectionUtils.isEmpty(views)) {
+                views.forEach(view -> rollupEngine.invalidate(view.getId()));
+            }
 
             BeanUtils.copyProperties(sourceInfo, source);
             source.updatedBy(user.getId());
@@ -309,6 +331,7 @@ public class SourceServiceImpl implements SourceService {
 
         int i = sourceMapper.deleteById(id);
         if (i > 0) {
+            elasticAggregationEngine.evictClient(source);
             optLogger.info("source ({}) delete by user(:{})", source.toString(), user.getId());
             return true;
         } else {
@@ -513,11 +536,15 @@ public class SourceServiceImpl implements SourceService {
      * 获取Source的data tables
      *
      * @param id
+     * @param dbName
+     * @param tablePrefix
+     * @param pageNo
+     * @param pageSize
      * @param user
      * @return
      */
     @Override
-    public DBTables getSourceTables(Long id, String dbName, User user) throws NotFoundException {
+    public DBTables getSourceTables(Long id, String dbName, String tablePrefix, Integer pageNo, Integer pageSize, User user) throws NotFoundException {
 
 
         DBTables dbTable = new DBTables(dbName);
@@ -534,7 +561,8 @@ public class SourceServiceImpl implements SourceService {
 
         List<QueryColumn> tableList = null;
         try {
-            tableList = sqlUtils.init(source).getTableList(dbName);
+            tableList = sqlUtils.init(source).getTableList(dbName, tablePrefix,
+                    null == pageNo ? 0 : pageNo, null == pageSize ? 0 : pageSize);
         } catch (SourceException e) {
             throw new ServerException(e.getMessage());
         }
@@ -591,6 +619,42 @@ public class SourceServiceImpl implements SourceService {
         return tableInfo;
     }
 
+    /**
+     * 批量获取Source的data tables列信息
+     *
+     * @param id
+     * @param dbName
+     * @param tableNames
+     * @param user
+     * @return
+     */
+    @Override
+    public List<TableInfo> getTablesInfo(Long id, String dbName, List<String> tableNames, User user) throws NotFoundException {
+
+        Source source = sourceMapper.getById(id);
+        if (null == source) {
+            log.info("source (:{}) is not found", id);
+            throw new NotFoundException("source is not found");
+        }
+
+        ProjectDetail projectDetail = projectService.getProjectDetail(source.getProjectId(), user, false);
+        ProjectPermission projectPermission = projectService.getProjectPermission(projectDetail, user);
+        if (projectPermission.getSourcePermission() == UserPermissionEnum.HIDDEN.getPermission()) {
+            log.info("user (:{}) have not permission to get source(:{}) table columns", user.getId(), source.getId());
+            return null;
+        }
+
+        List<TableInfo> tableInfos = null;
+        try {
+            tableInfos = sqlUtils.init(source).getTablesInfo(dbName, tableNames);
+        } catch (SourceException e) {
+            e.printStackTrace();
+            throw new ServerException(e.getMessage());
+        }
+
+        return tableInfos;
+    }
+
     @Override
     public List<DatasourceType> getDatasources() {
         return LoadSupportDataSourceRunner.getSupportDatasourceList();
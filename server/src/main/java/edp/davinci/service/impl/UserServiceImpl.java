@@ -39,6 +39,7 @@ import edp.davinci.model.RelUserOrganization;
 import edp.davinci.model.User;
 import edp.davinci.service.LdapService;
 import edp.davinci.service.UserService;
+import edp.davinci.service.mail.MailQueueSender;
 import lombok.extern.slf4j.Slf4j;
 import org.mindrot.jbcrypt.BCrypt;
 import org.springframework.beans.BeanUtils;
@@ -68,7 +69,7 @@ public class UserServiceImpl implements UserService {
     private TokenUtils tokenUtils;
 
     @Autowired
-    private MailUtils mailUtils;
+    private MailQueueSender mailQueueSender;
 
 
     @Autowired
@@ -124,8 +125,12 @@ public class UserServiceImpl implements UserService {
         //添加用户
         int insert = userMapper.insert(user);
         if (insert > 0) {
-            //添加成功，发送激活邮件
-            sendMail(user.getEmail(), user);
+            //添加成功，发送激活邮件，发送失败时不影响注册，用户可重新发送激活邮件
+            try {
+                sendMail(user.getEmail(), user);
+            } catch (ServerException e) {
+                log.error("regist send activate mail to {} error: {}", user.getEmail(), e.getMessage());
+            }
             return user;
         } else {
             log.info("regist fail: {}", userRegist.toString());
@@ -349,7 +354,7 @@ public class UserServiceImpl implements UserService {
                 .withTemplateContent(content)
                 .build();
 
-        mailUtils.sendMail(mailContent, null);
+        mailQueueSender.send(mailContent, null);
         return true;
     }
 
@@ -23,6 +23,8 @@ import com.alibaba.druid.util.StringUtils;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
+import edp.core.common.trace.QueryTrace;
+import edp.core.enums.DataTypeEnum;
 import edp.core.exception.NotFoundException;
 import edp.core.exception.ServerException;
 import edp.core.exception.UnAuthorizedExecption;
@@ -30,7 +32,10 @@ import edp.core.model.Paginate;
 import edp.core.model.PaginateWithQueryColumns;
 import edp.core.utils.CollectionUtils;
 import edp.core.utils.MD5Util;
+import edp.core.utils.MetricsUtils;
+import edp.core.utils.QueryCostGuard;
 import edp.core.utils.RedisUtils;
+import edp.core.utils.SqlRewriteUtils;
 import edp.core.utils.SqlUtils;
 import edp.davinci.core.common.Constants;
 import edp.davinci.core.enums.LogNameEnum;
@@ -51,6 +56,8 @@ import edp.davinci.dto.viewDto.*;
 import edp.davinci.model.*;
 import edp.davinci.service.ProjectService;
 import edp.davinci.service.ViewService;
+import edp.davinci.service.elastic.ElasticAggregationEngine;
+import edp.davinci.service.olap.RollupEngine;
 import edp.davinci.service.excel.SQLContext;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
@@ -70,7 +77,9 @@ import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static edp.core.consts.Consts.COMMA;
+import static edp.core.consts.Consts.DOT;
 import static edp.core.consts.Consts.MINUS;
+import static edp.core.consts.Consts.PARENTHESES_START;
 import static edp.davinci.core.common.Constants.NO_AUTH_PERMISSION;
 import static edp.davinci.core.enums.SqlVariableTypeEnum.AUTHVARE;
 import static edp.davinci.core.enums.SqlVariableTypeEnum.QUERYVAR;
@@ -105,9 +114,33 @@ public class ViewServiceImpl implements ViewService {
     @Autowired
     private SqlParseUtils sqlParseUtils;
 
+    @Autowired
+    private QueryCostGuard queryCostGuard;
+
+    @Autowired
+    private QueryStatisticCollector queryStatisticCollector;
+
+    @Autowired
+    private ElasticAggregationEngine elasticAggregationEngine;
+
+    @Autowired
+    private MaterializedResultStore materializedResultStore;
+
+    @Autowired
+    private RollupEngine rollupEngine;
+
     @Value("${sql_template_delimiter:$}")
     private String sqlTempDelimiter;
 
+    @Value("${jwtToken.secret:Pa@ss@Word}")
+    private String tokenSecret;
+
+    @Value("${source.enable-query-rewrite:false}")
+    private boolean isQueryRewriteEnable;
+
+    @Value("${source.elastic-pushdown.enable:false}")
+    private boolean isElasticPushdownEnable;
+
     private static final String SQL_VARABLE_KEY = "name";
 
     @Override
@@ -322,6 +355,8 @@ public class ViewServiceImpl implements ViewService {
                 } else if (!StringUtils.isEmpty(viewUpdate.getVariable())) {
                     checkAndInsertRoleParam(viewUpdate.getVariable(), viewUpdate.getRoles(), user, view);
                 }
+                materializedResultStore.invalidate(view.getId());
+                rollupEngine.invalidate(view.getId());
 
                 return true;
             } else {
@@ -374,6 +409,8 @@ public class ViewServiceImpl implements ViewService {
         if (i > 0) {
             optLogger.info("view ( {} ) delete by user( :{} )", view.toString(), user.getId());
             relRoleViewMapper.deleteByViewId(id);
+            materializedResultStore.invalidate(id);
+            rollupEngine.invalidate(id);
         }
 
         return true;
@@ -473,7 +510,10 @@ public class ViewServiceImpl implements ViewService {
             throw new NotFoundException("view is not found");
         }
 
-        ProjectDetail projectDetail = projectService.getProjectDetail(viewWithSource.getProjectId(), user, false);
+        ProjectDetail projectDetail;
+        try (QueryTrace.Span span = QueryTrace.span("getProjectDetail")) {
+            projectDetail = projectService.getProjectDetail(viewWithSource.getProjectId(), user, false);
+        }
 
         boolean allowGetData = projectService.allowGetData(projectDetail, user);
 
@@ -482,7 +522,53 @@ public class ViewServiceImpl implements ViewService {
         }
 
         boolean maintainer = projectService.isMaintainer(projectDetail, user);
-        return getResultDataList(maintainer, viewWithSource, executeParam, user);
+        PaginateWithQueryColumns paginate = getResultDataList(maintainer, viewWithSource, executeParam, user);
+        if (null == paginate || StringUtils.isEmpty(paginate.getCountDigest())) {
+            return paginate;
+        }
+        // 结果可能来自缓存，复制后再签名，避免修改缓存对象
+        PaginateWithQueryColumns signed = new PaginateWithQueryColumns();
+        BeanUtils.copyProperties(paginate, signed);
+        signed.setCountDigest(signCountDigest(id, user, paginate.getCountDigest()));
+        return signed;
+    }
+
+    /**
+     * 总数标识绑定 view 与用户，避免通过其他 view 的权限读取该查询的总数
+     */
+    private String signCountDigest(Long viewId, User user, String countDigest) {
+        return countDigest + DOT + MD5Util.getMD5(tokenSecret + MINUS + viewId + MINUS + user.getId() + MINUS + countDigest, true, 32);
+    }
+
+
+    /**
+     * 获取异步计算的view结果集总数
+     *
+     * @param id
+     * @param countDigest
+     * @param user
+     * @return 计算未完成时返回null
+     */
+    @Override
+    public Integer getTotalCount(Long id, String countDigest, User user) throws NotFoundException, UnAuthorizedExecption, ServerException {
+        ViewWithSource viewWithSource = viewMapper.getViewWithSource(id);
+        if (null == viewWithSource) {
+            log.info("view (:{}) not found", id);
+            throw new NotFoundException("view is not found");
+        }
+
+        ProjectDetail projectDetail = projectService.getProjectDetail(viewWithSource.getProjectId(), user, false);
+
+        if (!projectService.allowGetData(projectDetail, user)) {
+            throw new UnAuthorizedExecption("you have not permission to get data");
+        }
+
+        int index = null == countDigest ? -1 : countDigest.lastIndexOf(DOT);
+        if (index < 0 || !countDigest.equals(signCountDigest(id, user, countDigest.substring(0, index)))) {
+            throw new UnAuthorizedExecption("count digest does not belong to this view");
+        }
+
+        return sqlUtils.getTotalCount(countDigest.substring(0, index));
     }
 
 
@@ -500,18 +586,57 @@ public class ViewServiceImpl implements ViewService {
                 st.add("aggregators", executeParam.getAggregators(source.getJdbcUrl(), source.getDbVersion()));
             }
             st.add("orders", executeParam.getOrders(source.getJdbcUrl(), source.getDbVersion()));
-            st.add("filters", convertFilters(executeParam.getFilters(), source));
+            List<String> filters = convertFilters(executeParam.getFilters(), source);
+            st.add("filters", filters);
             st.add("keywordPrefix", sqlUtils.getKeywordPrefix(source.getJdbcUrl(), source.getDbVersion()));
             st.add("keywordSuffix", sqlUtils.getKeywordSuffix(source.getJdbcUrl(), source.getDbVersion()));
 
+            Set<String> referencedColumns = isQueryRewriteEnable ? getReferencedColumns(executeParam) : null;
             for (int i = 0; i < querySqlList.size(); i++) {
-                st.add("sql", querySqlList.get(i));
+                String sql = querySqlList.get(i);
+                if (isQueryRewriteEnable) {
+                    sql = SqlRewriteUtils.pushdown(sql, filters, referencedColumns);
+                }
+                st.add("sql", sql);
                 querySqlList.set(i, st.render());
             }
 
         }
     }
 
+    /**
+     * 外层查询引用的view列，无分组和聚合时（SELECT *）或排序项为表达式时返回null
+     *
+     * @param executeParam
+     * @return
+     */
+    private Set<String> getReferencedColumns(ViewExecuteParam executeParam) {
+        if (CollectionUtils.isEmpty(executeParam.getGroups()) && CollectionUtils.isEmpty(executeParam.getAggregators())) {
+            return null;
+        }
+        Set<String> columns = new HashSet<>();
+        if (!CollectionUtils.isEmpty(executeParam.getGroups())) {
+            columns.addAll(executeParam.getGroups());
+        }
+        if (!CollectionUtils.isEmpty(executeParam.getAggregators())) {
+            executeParam.getAggregators().forEach(a -> columns.add(a.getColumn()));
+        }
+        if (!CollectionUtils.isEmpty(executeParam.getOrders())) {
+            for (Order order : executeParam.getOrders()) {
+                String column = order.getColumn();
+                if (null == column) {
+                    continue;
+                }
+                // 排序表达式引用的列无法确定，不裁剪查询列
+                if (column.contains(PARENTHESES_START)) {
+                    return null;
+                }
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
     public List<String> convertFilters(List<String> filterStrs, Source source){
         List<String> whereClauses = new ArrayList<>();
         List<SqlFilter> filters = new ArrayList<>();
@@ -550,7 +675,38 @@ public class ViewServiceImpl implements ViewService {
      */
     @Override
     public PaginateWithQueryColumns getResultDataList(boolean isMaintainer, ViewWithSource viewWithSource, ViewExecuteParam executeParam, User user) throws ServerException, SQLException {
+        return getResultDataList(isMaintainer, viewWithSource, executeParam, user, null);
+    }
+
+    /**
+     * 查询完整结果并写入物化结果，供 materialize 定时任务调用
+     *
+     * @param jobId
+     * @param isMaintainer
+     * @param viewWithSource
+     * @param executeParam
+     * @param user
+     * @return
+     * @throws ServerException
+     * @throws SQLException
+     */
+    @Override
+    public PaginateWithQueryColumns materialize(long jobId, boolean isMaintainer, ViewWithSource viewWithSource, ViewExecuteParam executeParam, User user) throws ServerException, SQLException {
+        if (!materializedResultStore.isEnabled() || null == executeParam) {
+            return null;
+        }
+        executeParam.setPageNo(-1);
+        executeParam.setPageSize(-1);
+        executeParam.setCache(false);
+        return getResultDataList(isMaintainer, viewWithSource, executeParam, user, jobId);
+    }
+
+    /**
+     * @param materializeJobId 不为空时查询不做列过滤的完整结果并写入该任务的物化结果
+     */
+    private PaginateWithQueryColumns getResultDataList(boolean isMaintainer, ViewWithSource viewWithSource, ViewExecuteParam executeParam, User user, Long materializeJobId) throws ServerException, SQLException {
         PaginateWithQueryColumns paginate = null;
+        boolean materialize = null != materializeJobId;
 
         if (null == executeParam || (CollectionUtils.isEmpty(executeParam.getGroups()) && CollectionUtils.isEmpty(executeParam.getAggregators()))) {
             return null;
@@ -570,8 +726,13 @@ public class ViewServiceImpl implements ViewService {
                 SqlEntity sqlEntity = sqlParseUtils.parseSql(viewWithSource.getSql(), variables, sqlTempDelimiter);
                 //列权限（只记录被限制访问的字段）
                 Set<String> excludeColumns = new HashSet<>();
-                packageParams(isMaintainer, viewWithSource.getId(), sqlEntity, variables, executeParam.getParams(), excludeColumns, user);
-                String srcSql = sqlParseUtils.replaceParams(sqlEntity.getSql(), sqlEntity.getQuaryParams(), sqlEntity.getAuthParams(), sqlTempDelimiter);
+                try (QueryTrace.Span span = QueryTrace.span("packageParams")) {
+                    packageParams(isMaintainer, viewWithSource.getId(), sqlEntity, variables, executeParam.getParams(), excludeColumns, user);
+                }
+                String srcSql;
+                try (QueryTrace.Span span = QueryTrace.span("replaceParams")) {
+                    srcSql = sqlParseUtils.replaceParams(sqlEntity.getSql(), sqlEntity.getQuaryParams(), sqlEntity.getAuthParams(), sqlTempDelimiter);
+                }
 
                 Source source = viewWithSource.getSource();
 
@@ -585,9 +746,23 @@ public class ViewServiceImpl implements ViewService {
 
                 List<String> querySqlList = sqlParseUtils.getSqls(srcSql, true);
                 if (!CollectionUtils.isEmpty(querySqlList)) {
-                    buildQuerySql(querySqlList, source, executeParam);
+                    String viewSql = querySqlList.get(querySqlList.size() - 1);
+                    try (QueryTrace.Span span = QueryTrace.span("buildQuerySql")) {
+                        buildQuerySql(querySqlList, source, executeParam);
+                    }
                     executeParam.addExcludeColumn(excludeColumns, source.getJdbcUrl(), source.getDbVersion());
 
+                    String materializedKey = null;
+                    if (materializedResultStore.isEnabled()) {
+                        materializedKey = MaterializedResultStore.key(viewWithSource.getId(), executeParam.getLimit(), querySqlList.get(querySqlList.size() - 1));
+                        if (!materialize && !Boolean.TRUE.equals(executeParam.getFlush())) {
+                            paginate = materializedResultStore.get(materializedKey, executeParam.getPageNo(), executeParam.getPageSize(), excludeColumns);
+                            if (null != paginate) {
+                                return paginate;
+                            }
+                        }
+                    }
+
                     if (null != executeParam
                             && null != executeParam.getCache()
                             && executeParam.getCache()
@@ -616,14 +791,45 @@ public class ViewServiceImpl implements ViewService {
                         }
                     }
 
-                    for (String sql : querySqlList) {
-                        paginate = sqlUtils.syncQuery4Paginate(
-                                sql,
-                                executeParam.getPageNo(),
-                                executeParam.getPageSize(),
-                                executeParam.getTotalCount(),
-                                executeParam.getLimit(),
-                                excludeColumns);
+                    //物化结果按读取者的列权限过滤，写入时保留全部列
+                    Set<String> queryExcludeColumns = materialize ? new HashSet<>() : excludeColumns;
+                    long queryStart = System.currentTimeMillis();
+                    int rows = -1;
+                    try {
+                        boolean rolledUp = false;
+                        if (!materialize && rollupEngine.isEnabled() && querySqlList.size() == 1) {
+                            try (QueryTrace.Span span = QueryTrace.span("rollup")) {
+                                paginate = rollupEngine.query(viewWithSource.getId(), viewSql, executeParam, excludeColumns);
+                            }
+                            rolledUp = null != paginate;
+                        }
+                        if (null == paginate && isElasticPushdownEnable && querySqlList.size() == 1
+                                && DataTypeEnum.ELASTICSEARCH == DataTypeEnum.urlOf(source.getJdbcUrl())) {
+                            try (QueryTrace.Span span = QueryTrace.span("elasticAggregation")) {
+                                paginate = elasticAggregationEngine.query(source, viewSql, executeParam, queryExcludeColumns);
+                            }
+                        }
+                        if (null == paginate) {
+                            for (String sql : querySqlList) {
+                                paginate = queryCostGuard.execute(source, sqlUtils, sql, () -> sqlUtils.syncQuery4Paginate(
+                                        sql,
+                                        executeParam.getPageNo(),
+                                        executeParam.getPageSize(),
+                                        executeParam.getTotalCount(),
+                                        executeParam.getLimit(),
+                                        queryExcludeColumns));
+                            }
+                        }
+                        rows = null == paginate || null == paginate.getResultList() ? 0 : paginate.getResultList().size();
+                        if (materialize) {
+                            materializedResultStore.put(materializedKey, viewWithSource.getId(), materializeJobId, paginate);
+                        } else if (!rolledUp && querySqlList.size() == 1) {
+                            rollupEngine.register(viewWithSource.getId(), viewSql, executeParam, paginate);
+                        }
+                    } finally {
+                        long elapsed = System.currentTimeMillis() - queryStart;
+                        MetricsUtils.recordQuery("data", source.getId(), viewWithSource.getId(), elapsed, rows);
+                        queryStatisticCollector.record(source.getId(), viewWithSource.getId(), querySqlList.get(querySqlList.size() - 1), elapsed, rows);
                     }
                 }
             }
@@ -651,7 +857,10 @@ public class ViewServiceImpl implements ViewService {
             throw new NotFoundException("view is not found");
         }
 
-        ProjectDetail projectDetail = projectService.getProjectDetail(viewWithSource.getProjectId(), user, false);
+        ProjectDetail projectDetail;
+        try (QueryTrace.Span span = QueryTrace.span("getProjectDetail")) {
+            projectDetail = projectService.getProjectDetail(viewWithSource.getProjectId(), user, false);
+        }
 
         boolean allowGetData = projectService.allowGetData(projectDetail, user);
 
@@ -674,9 +883,14 @@ public class ViewServiceImpl implements ViewService {
             
             List<SqlVariable> variables = viewWithSource.getVariables();
             SqlEntity sqlEntity = sqlParseUtils.parseSql(viewWithSource.getSql(), variables, sqlTempDelimiter);
-            packageParams(isMaintainer, viewWithSource.getId(), sqlEntity, variables, param.getParams(), null, user);
+            try (QueryTrace.Span span = QueryTrace.span("packageParams")) {
+                packageParams(isMaintainer, viewWithSource.getId(), sqlEntity, variables, param.getParams(), null, user);
+            }
 
-            String srcSql = sqlParseUtils.replaceParams(sqlEntity.getSql(), sqlEntity.getQuaryParams(), sqlEntity.getAuthParams(), sqlTempDelimiter);
+            String srcSql;
+            try (QueryTrace.Span span = QueryTrace.span("replaceParams")) {
+                srcSql = sqlParseUtils.replaceParams(sqlEntity.getSql(), sqlEntity.getQuaryParams(), sqlEntity.getAuthParams(), sqlTempDelimiter);
+            }
 
             Source source = viewWithSource.getSource();
 
@@ -716,8 +930,17 @@ public class ViewServiceImpl implements ViewService {
                     }
                 }
                 List<Map<String, Object>> list = null;
-                for (String sql : querySqlList) {
-                    list = sqlUtils.query4List(sql, -1);
+                long queryStart = System.currentTimeMillis();
+                int rows = -1;
+                try (QueryTrace.Span span = QueryTrace.span("query4List")) {
+                    for (String sql : querySqlList) {
+                        list = sqlUtils.query4List(sql, -1);
+                    }
+                    rows = null == list ? 0 : list.size();
+                } finally {
+                    long elapsed = System.currentTimeMillis() - queryStart;
+                    MetricsUtils.recordQuery("distinct", source.getId(), viewWithSource.getId(), elapsed, rows);
+                    queryStatisticCollector.record(source.getId(), viewWithSource.getId(), querySqlList.get(querySqlList.size() - 1), elapsed, rows);
                 }
 
                 if (null != param.getCache() && param.getCache() && param.getExpired().longValue() > 0L) {
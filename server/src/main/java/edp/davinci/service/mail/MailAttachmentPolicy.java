@@ -0,0 +1,230 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.mail;
+
+import com.google.common.base.Stopwatch;
+import edp.core.model.MailAttachment;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.FileUtils;
+import edp.core.utils.ServerUtils;
+import edp.davinci.core.common.Constants;
+import edp.davinci.core.enums.LogNameEnum;
+import edp.davinci.service.ShareDownloadService;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static edp.core.consts.Consts.UNDERLINE;
+
+/**
+ * 邮件附件策略
+ * 附件超过压缩阈值时打包为zip，超过单封邮件大小上限时按上限拆分为多封邮件，或替换为有时效的下载链接
+ */
+@Slf4j
+@Component
+public class MailAttachmentPolicy {
+
+    private static final Logger scheduleLogger = LoggerFactory.getLogger(LogNameEnum.BUSINESS_SCHEDULE.getName());
+
+    private static final String POLICY_LINK = "link";
+
+    private static final String ZIP_FORMAT = ".zip";
+
+    private static final long MB = 1024L * 1024L;
+
+    @Autowired
+    private ShareDownloadService shareDownloadService;
+
+    @Autowired
+    private ServerUtils serverUtils;
+
+    @Value("${schedule.attachment.compress_threshold_mb:0}")
+    private long compressThresholdMb;
+
+    @Value("${schedule.attachment.max_size_mb:0}")
+    private long maxSizeMb;
+
+    @Value("${schedule.attachment.oversize_policy:split}")
+    private String oversizePolicy;
+
+    @Value("${schedule.attachment.link_expire_hour:48}")
+    private int linkExpireHour;
+
+    /**
+     * 按策略处理附件
+     *
+     * @param jobId
+     * @param baseName    压缩包文件名
+     * @param attachments
+     * @return
+     */
+    public AttachmentDelivery apply(long jobId, String baseName, List<MailAttachment> attachments) {
+        AttachmentDelivery delivery = new AttachmentDelivery();
+        if (CollectionUtils.isEmpty(attachments)) {
+            delivery.getParts().add(new ArrayList<>());
+            return delivery;
+        }
+
+        Stopwatch watch = Stopwatch.createStarted();
+        long rawSize = getSize(attachments);
+        List<MailAttachment> files = attachments;
+        boolean compressed = false;
+
+        if (compressThresholdMb > 0 && rawSize > compressThresholdMb * MB) {
+            files = Collections.singletonList(zip(baseName + ZIP_FORMAT, attachments));
+            compressed = true;
+        }
+
+        long size = getSize(files);
+        long maxSize = maxSizeMb * MB;
+        if (maxSize <= 0 || size <= maxSize) {
+            delivery.getParts().add(new ArrayList<>(files));
+        } else if (POLICY_LINK.equalsIgnoreCase(oversizePolicy)) {
+            long expireMillis = TimeUnit.HOURS.toMillis(linkExpireHour);
+            for (MailAttachment file : files) {
+                String token = shareDownloadService.generateMailFileToken(file.getFile(), file.getName(), expireMillis);
+                delivery.getLinks().put(file.getName(), serverUtils.getHost() + Constants.BASE_API_PATH + "/download/share/mail/" + token);
+            }
+            delivery.getParts().add(new ArrayList<>());
+        } else {
+            delivery.getParts().addAll(split(files, maxSize));
+        }
+
+        log.info("CronJob (:{}) attachments: files {}, raw {} KB, compressed {}, sent {} KB, mails {}, links {}, cost {} ms",
+                jobId, attachments.size(), rawSize / 1024, compressed, size / 1024,
+                delivery.getParts().size(), delivery.getLinks().size(), watch.elapsed(TimeUnit.MILLISECONDS));
+        scheduleLogger.info("CronJob (:{}) attachments: files {}, raw {} KB, compressed {}, sent {} KB, mails {}, links {}, cost {} ms",
+                jobId, attachments.size(), rawSize / 1024, compressed, size / 1024,
+                delivery.getParts().size(), delivery.getLinks().size(), watch.elapsed(TimeUnit.MILLISECONDS));
+        return delivery;
+    }
+
+    /**
+     * 按大小上限装箱，单个文件超过上限时切分为分卷（.001, .002 ...），可用 7-Zip 直接解压
+     */
+    private List<List<MailAttachment>> split(List<MailAttachment> files, long maxSize) {
+        List<List<MailAttachment>> parts = new ArrayList<>();
+        List<MailAttachment> current = new ArrayList<>();
+        long currentSize = 0L;
+        for (MailAttachment file : files) {
+            long length = file.getFile().length();
+            if (length > maxSize) {
+                MailAttachment archive = file.getName().endsWith(ZIP_FORMAT) ? file
+                        : zip(file.getName() + ZIP_FORMAT, Collections.singletonList(file));
+                for (MailAttachment volume : splitVolumes(archive, maxSize)) {
+                    parts.add(new ArrayList<>(Collections.singletonList(volume)));
+                }
+                continue;
+            }
+            if (currentSize + length > maxSize && !current.isEmpty()) {
+                parts.add(current);
+                current = new ArrayList<>();
+                currentSize = 0L;
+            }
+            current.add(file);
+            currentSize += length;
+        }
+        if (!current.isEmpty() || parts.isEmpty()) {
+            parts.add(current);
+        }
+        return parts;
+    }
+
+    private List<MailAttachment> splitVolumes(MailAttachment attachment, long volumeSize) {
+        List<MailAttachment> volumes = new ArrayList<>();
+        byte[] buffer = new byte[8192];
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(attachment.getFile()));
+            int index = 1;
+            int length = 0;
+            while (length >= 0) {
+                String suffix = String.format(".%03d", index++);
+                File volume = new File(attachment.getFile().getAbsolutePath() + suffix);
+                long written = 0L;
+                OutputStream out = null;
+                try {
+                    out = new BufferedOutputStream(new FileOutputStream(volume));
+                    while (written < volumeSize && (length = in.read(buffer, 0, (int) Math.min(buffer.length, volumeSize - written))) >= 0) {
+                        out.write(buffer, 0, length);
+                        written += length;
+                    }
+                } finally {
+                    FileUtils.closeCloseable(out);
+                }
+                if (written > 0) {
+                    volumes.add(new MailAttachment(attachment.getName() + suffix, volume));
+                } else {
+                    volume.delete();
+                }
+            }
+        } catch (IOException e) {
+            log.error("split attachment {} error: {}", attachment.getName(), e.getMessage());
+            return Collections.singletonList(attachment);
+        } finally {
+            FileUtils.closeCloseable(in);
+        }
+        return volumes;
+    }
+
+    private MailAttachment zip(String name, List<MailAttachment> attachments) {
+        Map<String, File> entries = new LinkedHashMap<>();
+        for (MailAttachment attachment : attachments) {
+            String entryName = attachment.getName();
+            //同名附件加序号区分，避免zip条目重复
+            int dot = attachment.getName().lastIndexOf('.');
+            String prefix = dot > 0 ? attachment.getName().substring(0, dot) : attachment.getName();
+            String format = dot > 0 ? attachment.getName().substring(dot) : "";
+            for (int i = 1; entries.containsKey(entryName); i++) {
+                entryName = prefix + UNDERLINE + i + format;
+            }
+            entries.put(entryName, attachment.getFile());
+        }
+        File target = new File(attachments.get(0).getFile().getParentFile(),
+                UUID.randomUUID().toString().replace("-", "") + ZIP_FORMAT);
+        FileUtils.zipFile(entries, target);
+        return new MailAttachment(name, target);
+    }
+
+    private long getSize(List<MailAttachment> attachments) {
+        return attachments.stream().mapToLong(attachment -> attachment.getFile().length()).sum();
+    }
+
+    @Data
+    public static class AttachmentDelivery {
+        /**
+         * 每封邮件的附件，第一封邮件同时包含图片
+         */
+        private List<List<MailAttachment>> parts = new ArrayList<>();
+
+        /**
+         * 附件名 -> 下载链接
+         */
+        private Map<String, String> links = new LinkedHashMap<>();
+    }
+}
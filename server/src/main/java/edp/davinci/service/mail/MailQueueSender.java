@@ -0,0 +1,379 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.mail;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSON;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edp.core.enums.MailContentTypeEnum;
+import edp.core.exception.ServerException;
+import edp.core.model.MailAttachment;
+import edp.core.model.MailContent;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.MailUtils;
+import edp.davinci.dao.MailQueueMapper;
+import edp.davinci.model.MailQueue;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.internet.MimeMessage;
+import java.io.File;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static edp.core.consts.Consts.EMPTY;
+
+/**
+ * 邮件发送队列
+ * 邮件先持久化到 mail_queue，由独立线程池批量发送，同一批邮件复用一个SMTP连接，失败后指数退避重试，超过重试次数后标记为 dead
+ * 附件只记录本地文件路径，带附件的邮件记录入队节点，只由该节点发送；队列时间均使用数据库时钟
+ */
+@Slf4j
+@Component
+public class MailQueueSender {
+
+    private static final String STATUS_PENDING = "pending";
+    private static final String STATUS_SENT = "sent";
+    private static final String STATUS_DEAD = "dead";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final int STUCK_MINUTE = 30;
+
+    @Autowired
+    private MailUtils mailUtils;
+
+    @Autowired
+    private MailQueueMapper mailQueueMapper;
+
+    @Value("${spring.mail.queue.enable:false}")
+    private boolean isQueueEnable;
+
+    @Value("${spring.mail.queue.sender_pool_size:2}")
+    private int senderPoolSize;
+
+    @Value("${spring.mail.queue.batch_size:20}")
+    private int batchSize;
+
+    @Value("${spring.mail.queue.recipient_batch_size:50}")
+    private int recipientBatchSize;
+
+    @Value("${spring.mail.queue.max_retries:5}")
+    private int maxRetries;
+
+    @Value("${spring.mail.queue.retry_base_second:30}")
+    private int retryBaseSecond;
+
+    @Value("${spring.mail.queue.poll_interval_second:5}")
+    private int pollIntervalSecond;
+
+    @Value("${spring.mail.queue.keep_sent_day:7}")
+    private int keepSentDay;
+
+    /**
+     * 节点标识，为空时使用主机名
+     */
+    @Value("${spring.mail.queue.host:}")
+    private String host;
+
+    private ScheduledExecutorService poller;
+
+    private ThreadPoolExecutor senders;
+
+    private long lastCleanTime = 0L;
+
+    @PostConstruct
+    public void init() {
+        if (!isQueueEnable) {
+            return;
+        }
+        if (StringUtils.isEmpty(host)) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                log.warn("get local host name error: {}", e.getMessage());
+                host = UUID.randomUUID().toString().replace("-", EMPTY);
+            }
+        }
+        senders = new ThreadPoolExecutor(senderPoolSize, senderPoolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(senderPoolSize * 2),
+                new ThreadFactoryBuilder().setNameFormat("mail-sender-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        poller = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("mail-queue-poller-%d").setDaemon(true).build());
+        poller.scheduleWithFixedDelay(this::poll, pollIntervalSecond, pollIntervalSecond, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (null != poller) {
+            poller.shutdownNow();
+        }
+        if (null != senders) {
+            senders.shutdown();
+        }
+    }
+
+    /**
+     * 发送邮件，开启队列时仅校验并入队
+     *
+     * @param mailContent
+     * @param customLogger
+     * @throws ServerException 邮件内容无法渲染（包括发件人昵称编码错误）或同步发送失败
+     */
+    public void send(MailContent mailContent, Logger customLogger) throws ServerException {
+        if (!isQueueEnable) {
+            mailUtils.sendMail(mailContent, customLogger);
+            return;
+        }
+
+        //提前校验，内容错误时调用方可立即感知
+        mailUtils.createMimeMessage(mailContent, customLogger);
+
+        List<QueuedMail> mails = split(mailContent);
+        for (QueuedMail mail : mails) {
+            MailQueue mailQueue = new MailQueue();
+            mailQueue.setContent(JSON.toJSONString(mail));
+            mailQueue.setStatus(STATUS_PENDING);
+            mailQueue.setHost(CollectionUtils.isEmpty(mail.getAttachments()) ? null : host);
+            mailQueue.setRetryCount(0);
+            mailQueueMapper.insert(mailQueue);
+        }
+        log.info("Email queued --- content: {}, parts: {}", mailContent.toString(), mails.size());
+        if (customLogger != null) {
+            customLogger.info("Email queued --- content: {}, parts: {}", mailContent.toString(), mails.size());
+        }
+    }
+
+    private void poll() {
+        try {
+            if (System.currentTimeMillis() - lastCleanTime > TimeUnit.HOURS.toMillis(1)) {
+                mailQueueMapper.resetStuck(STUCK_MINUTE);
+                mailQueueMapper.deleteSent(keepSentDay);
+                lastCleanTime = System.currentTimeMillis();
+            }
+
+            List<MailQueue> pendings = mailQueueMapper.getPending(host, senderPoolSize * batchSize);
+            if (CollectionUtils.isEmpty(pendings)) {
+                return;
+            }
+            List<MailQueue> claimed = new ArrayList<>();
+            for (MailQueue mailQueue : pendings) {
+                if (mailQueueMapper.claim(mailQueue.getId()) == 1) {
+                    claimed.add(mailQueue);
+                }
+            }
+            for (List<MailQueue> batch : Lists.partition(claimed, batchSize)) {
+                List<MailQueue> mails = new ArrayList<>(batch);
+                senders.execute(() -> sendBatch(mails));
+            }
+        } catch (Exception e) {
+            log.error("poll mail queue error: {}", e.getMessage());
+        }
+    }
+
+    private void sendBatch(List<MailQueue> batch) {
+        Stopwatch watch = Stopwatch.createStarted();
+        Map<MimeMessage, MailQueue> messages = new IdentityHashMap<>();
+        for (MailQueue mailQueue : batch) {
+            try {
+                MailContent mailContent = JSON.parseObject(mailQueue.getContent(), QueuedMail.class).toMailContent();
+                messages.put(mailUtils.createMimeMessage(mailContent, null), mailQueue);
+            } catch (Exception e) {
+                //内容无法渲染，重试无意义
+                markDead(mailQueue, e.getMessage());
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failedMessages = Collections.emptyMap();
+        try {
+            mailUtils.sendMimeMessages(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            failedMessages = e.getFailedMessages();
+        } catch (MailException e) {
+            String error = e.getMessage();
+            messages.values().forEach(mailQueue -> markFailed(mailQueue, error));
+            return;
+        }
+
+        int failed = 0;
+        for (Map.Entry<MimeMessage, MailQueue> entry : messages.entrySet()) {
+            Exception exception = failedMessages.get(entry.getKey());
+            if (null == exception) {
+                entry.getValue().setStatus(STATUS_SENT);
+                entry.getValue().setLastError(null);
+                mailQueueMapper.updateStatus(entry.getValue());
+            } else {
+                failed++;
+                markFailed(entry.getValue(), exception.getMessage());
+            }
+        }
+        log.info("Email batch sent, count: {}, failed: {}, cost: {}", messages.size(), failed, watch.elapsed(TimeUnit.MILLISECONDS));
+    }
+
+    private void markFailed(MailQueue mailQueue, String error) {
+        int retryCount = mailQueue.getRetryCount() + 1;
+        if (retryCount > maxRetries) {
+            markDead(mailQueue, error);
+            return;
+        }
+        long delay = retryBaseSecond * (1L << Math.min(retryCount - 1, 16));
+        mailQueueMapper.retry(mailQueue.getId(), retryCount, delay, truncate(error));
+        log.warn("Email (:{}) send failed, retry {} in {} s: {}", mailQueue.getId(), retryCount, delay, error);
+    }
+
+    private void markDead(MailQueue mailQueue, String error) {
+        mailQueue.setStatus(STATUS_DEAD);
+        mailQueue.setLastError(truncate(error));
+        mailQueueMapper.updateStatus(mailQueue);
+        log.error("Email (:{}) is moved to dead letter: {}", mailQueue.getId(), error);
+    }
+
+    private String truncate(String error) {
+        return null != error && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    /**
+     * 收件人过多时按 recipient_batch_size 拆分为多封邮件，bcc 只随第一封发送
+     */
+    private List<QueuedMail> split(MailContent mailContent) {
+        List<String> to = mailContent.getTo() == null ? Collections.emptyList() : Arrays.asList(mailContent.getTo());
+        List<String> cc = mailContent.getCc() == null ? Collections.emptyList() : Arrays.asList(mailContent.getCc());
+        if (to.size() + cc.size() <= recipientBatchSize) {
+            return Collections.singletonList(new QueuedMail(mailContent, mailContent.getTo(), mailContent.getCc(), mailContent.getBcc()));
+        }
+
+        List<List<String>> toParts = Lists.partition(to, recipientBatchSize);
+        List<List<String>> ccParts = Lists.partition(cc, recipientBatchSize);
+        List<QueuedMail> mails = new ArrayList<>();
+        for (int i = 0; i < Math.max(toParts.size(), ccParts.size()); i++) {
+            List<String> toPart = i < toParts.size() ? toParts.get(i) : Collections.emptyList();
+            List<String> ccPart = i < ccParts.size() ? ccParts.get(i) : Collections.emptyList();
+            if (toPart.isEmpty()) {
+                toPart = ccPart;
+                ccPart = Collections.emptyList();
+            }
+            mails.add(new QueuedMail(mailContent,
+                    toPart.toArray(new String[0]),
+                    ccPart.isEmpty() ? null : ccPart.toArray(new String[0]),
+                    i == 0 ? mailContent.getBcc() : null));
+        }
+        return mails;
+    }
+
+    /**
+     * 持久化的邮件内容
+     */
+    @Data
+    public static class QueuedMail {
+        private String from;
+        private String nickName;
+        private String subject;
+        private String[] to;
+        private String[] cc;
+        private String[] bcc;
+        private MailContentTypeEnum mailContentType;
+        private String template;
+        private String content;
+        private String htmlContent;
+        private Map<String, Object> templateContent;
+        private List<QueuedAttachment> attachments;
+
+        public QueuedMail() {
+        }
+
+        QueuedMail(MailContent mailContent, String[] to, String[] cc, String[] bcc) {
+            this.from = mailContent.getFrom();
+            this.nickName = mailContent.getNickName();
+            this.subject = mailContent.getSubject();
+            this.to = to;
+            this.cc = cc;
+            this.bcc = bcc;
+            this.mailContentType = mailContent.getMailContentType();
+            this.template = mailContent.getTemplate();
+            this.content = mailContent.getContent();
+            this.htmlContent = mailContent.getHtmlContent();
+            this.templateContent = mailContent.getTemplateContent();
+            if (!CollectionUtils.isEmpty(mailContent.getAttachments())) {
+                this.attachments = new ArrayList<>();
+                for (MailAttachment attachment : mailContent.getAttachments()) {
+                    if (null != attachment.getFile()) {
+                        this.attachments.add(new QueuedAttachment(attachment));
+                    }
+                }
+            }
+        }
+
+        MailContent toMailContent() throws ServerException {
+            List<MailAttachment> mailAttachments = null;
+            if (!CollectionUtils.isEmpty(attachments)) {
+                mailAttachments = new ArrayList<>();
+                for (QueuedAttachment attachment : attachments) {
+                    mailAttachments.add(new MailAttachment(attachment.getName(), new File(attachment.getPath()), attachment.getUrl(), attachment.isImage()));
+                }
+            }
+            return MailContent.MailContentBuilder.builder()
+                    .withFrom(from)
+                    .withNickName(nickName)
+                    .withSubject(subject)
+                    .withTo(to)
+                    .withCc(cc)
+                    .withBcc(bcc)
+                    .withMainContent(mailContentType)
+                    .withTemplate(template)
+                    .withContent(content)
+                    .withHtmlContent(htmlContent)
+                    .withTemplateContent(templateContent)
+                    .withAttachments(mailAttachments)
+                    .build();
+        }
+    }
+
+    @Data
+    public static class QueuedAttachment {
+        private String name;
+        private String path;
+        private String url;
+        private boolean image;
+
+        public QueuedAttachment() {
+        }
+
+        QueuedAttachment(MailAttachment attachment) {
+            this.name = attachment.getName();
+            this.path = attachment.getFile().getAbsolutePath();
+            this.url = attachment.getUrl();
+            this.image = attachment.isImage();
+        }
+    }
+}
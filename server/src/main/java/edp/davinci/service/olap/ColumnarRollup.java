@@ -0,0 +1,553 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.olap;
+
+import edp.core.model.ColumnarResult;
+import edp.core.model.QueryColumn;
+import edp.core.utils.CollectionUtils;
+import edp.davinci.core.enums.SqlOperatorEnum;
+import edp.davinci.core.model.SqlFilter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static edp.core.consts.Consts.EMPTY;
+
+/**
+ * 基于列存结果的过滤与上卷聚合
+ * <p>
+ * 过滤按列生成行掩码，分组按列生成组号，聚合按列累加到组号对应的数组中，避免逐行构造 Map；
+ * 结果可能与数据库不一致时（如字符串比较或分组依赖排序规则、日期字面量）抛出 {@link Unsupported}，由调用方回退。
+ * 数据源的排序规则未知，字符串按最宽松的规则（忽略大小写、重音与尾部空格，如 MySQL 的 _ci 与 PAD SPACE）判断是否可能不一致
+ */
+class ColumnarRollup {
+
+    static final String SUM = "SUM";
+
+    static final String COUNT = "COUNT";
+
+    static final String MIN = "MIN";
+
+    static final String MAX = "MAX";
+
+    private static final String IS_NOT_NULL = "IS NOT NULL";
+
+    private static final String NOT_LIKE = "NOT LIKE";
+
+    private static final Object NULL_KEY = new Object();
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern TRAILING_SPACES = Pattern.compile(" +$");
+
+    private ColumnarRollup() {
+    }
+
+    /**
+     * 无法在内存中得到与数据库一致的结果
+     */
+    static class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * 计算过滤掩码
+     *
+     * @param data
+     * @param filters 多个条件之间为 and
+     * @param columns 过滤字段 -> 列下标
+     * @return
+     */
+    static boolean[] filter(ColumnarResult data, List<SqlFilter> filters, Map<String, Integer> columns) {
+        boolean[] mask = new boolean[data.getRowCount()];
+        Arrays.fill(mask, true);
+        for (SqlFilter filter : filters) {
+            and(mask, evaluate(data, filter, columns));
+        }
+        return mask;
+    }
+
+    private static boolean[] evaluate(ColumnarResult data, SqlFilter filter, Map<String, Integer> columns) {
+        if (SqlFilter.Type.relation.equalsIgnoreCase(filter.getType())) {
+            if (CollectionUtils.isEmpty(filter.getChildren())) {
+                throw new Unsupported("empty relation");
+            }
+            boolean or = SqlFilter.Type.or.equalsIgnoreCase(String.valueOf(filter.getValue()));
+            boolean[] mask = null;
+            for (SqlFilter child : filter.getChildren()) {
+                boolean[] childMask = evaluate(data, child, columns);
+                if (null == mask) {
+                    mask = childMask;
+                } else if (or) {
+                    or(mask, childMask);
+                } else {
+                    and(mask, childMask);
+                }
+            }
+            return mask;
+        }
+
+        Integer index = columns.get(filter.getName());
+        if (null == index || null == filter.getOperator()) {
+            throw new Unsupported("unknown filter column " + filter.getName());
+        }
+        Object[] column = data.getData()[index];
+        String operator = filter.getOperator().trim().toUpperCase();
+        Object value = filter.getValue();
+        boolean[] mask = new boolean[data.getRowCount()];
+
+        if (SqlOperatorEnum.ISNULL.getValue().equals(operator) || IS_NOT_NULL.equals(operator)) {
+            boolean isNull = SqlOperatorEnum.ISNULL.getValue().equals(operator);
+            for (int i = 0; i < column.length; i++) {
+                mask[i] = (null == column[i]) == isNull;
+            }
+            return mask;
+        }
+
+        if (SqlOperatorEnum.IN.getValue().equals(operator) || SqlOperatorEnum.NoTIN.getValue().equals(operator)) {
+            if (!(value instanceof List)) {
+                throw new Unsupported("IN without list");
+            }
+            boolean in = SqlOperatorEnum.IN.getValue().equals(operator);
+            List<?> values = (List<?>) value;
+            for (int i = 0; i < column.length; i++) {
+                boolean match = false;
+                for (Object v : values) {
+                    if (equalsTo(column[i], v)) {
+                        match = true;
+                        break;
+                    }
+                }
+                // 与 sql 一致，NULL 不满足 IN 与 NOT IN
+                mask[i] = null != column[i] && match == in;
+            }
+            return mask;
+        }
+
+        if (SqlOperatorEnum.BETWEEN.getValue().equals(operator)) {
+            if (!(value instanceof List) || ((List) value).size() != 2) {
+                throw new Unsupported("BETWEEN without range");
+            }
+            List<?> values = (List<?>) value;
+            for (int i = 0; i < column.length; i++) {
+                mask[i] = null != column[i] && compareTo(column[i], values.get(0)) >= 0 && compareTo(column[i], values.get(1)) <= 0;
+            }
+            return mask;
+        }
+
+        if (SqlOperatorEnum.LIKE.getValue().equals(operator) || NOT_LIKE.equals(operator)) {
+            boolean like = SqlOperatorEnum.LIKE.getValue().equals(operator);
+            String pattern = likeRegex(literal(value));
+            Pattern sensitive = Pattern.compile(pattern, Pattern.DOTALL);
+            Pattern insensitive = Pattern.compile(pattern, Pattern.DOTALL | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            for (int i = 0; i < column.length; i++) {
+                if (null == column[i]) {
+                    continue;
+                }
+                String str = stringOf(column[i]);
+                boolean match = sensitive.matcher(str).matches();
+                if (match != insensitive.matcher(str).matches()) {
+                    throw new Unsupported("LIKE depends on collation");
+                }
+                mask[i] = match == like;
+            }
+            return mask;
+        }
+
+        for (int i = 0; i < column.length; i++) {
+            if (null == column[i]) {
+                continue;
+            }
+            switch (operator) {
+                case "=":
+                    mask[i] = equalsTo(column[i], value);
+                    break;
+                case "!=":
+                case "<>":
+                    mask[i] = !equalsTo(column[i], value);
+                    break;
+                case ">":
+                    mask[i] = compareTo(column[i], value) > 0;
+                    break;
+                case ">=":
+                    mask[i] = compareTo(column[i], value) >= 0;
+                    break;
+                case "<":
+                    mask[i] = compareTo(column[i], value) < 0;
+                    break;
+                case "<=":
+                    mask[i] = compareTo(column[i], value) <= 0;
+                    break;
+                default:
+                    throw new Unsupported("operator " + operator);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 按分组上卷
+     *
+     * @param data
+     * @param mask          过滤掩码
+     * @param groupIndexes  分组列下标
+     * @param aggIndexes    聚合列下标
+     * @param funcs         聚合函数，SUM / COUNT / MIN / MAX，COUNT 上卷为求和
+     * @param groupNames    输出分组列名
+     * @param labels        输出聚合列名
+     * @return
+     */
+    static ColumnarResult rollup(ColumnarResult data, boolean[] mask, int[] groupIndexes, int[] aggIndexes, String[] funcs,
+                                 List<String> groupNames, List<String> labels) {
+        int rowCount = data.getRowCount();
+        Object[][] source = data.getData();
+
+        // 1. 分组：每行的组号，-1 表示被过滤
+        checkGroupCollation(source, mask, groupIndexes);
+        int[] groupIds = new int[rowCount];
+        List<Object[]> groupValues = new ArrayList<>();
+        Map<Object, Integer> groupMap = new HashMap<>();
+        for (int j = 0; j < rowCount; j++) {
+            if (!mask[j]) {
+                groupIds[j] = -1;
+                continue;
+            }
+            Object key;
+            if (groupIndexes.length == 1) {
+                Object v = source[groupIndexes[0]][j];
+                key = null == v ? NULL_KEY : v;
+            } else {
+                Object[] values = new Object[groupIndexes.length];
+                for (int g = 0; g < groupIndexes.length; g++) {
+                    Object v = source[groupIndexes[g]][j];
+                    values[g] = null == v ? NULL_KEY : v;
+                }
+                key = Arrays.asList(values);
+            }
+            Integer id = groupMap.get(key);
+            if (null == id) {
+                id = groupValues.size();
+                groupMap.put(key, id);
+                Object[] values = new Object[groupIndexes.length];
+                for (int g = 0; g < groupIndexes.length; g++) {
+                    values[g] = source[groupIndexes[g]][j];
+                }
+                groupValues.add(values);
+            }
+            groupIds[j] = id;
+        }
+
+        // 无分组时与 sql 一致，始终返回一行
+        if (groupIndexes.length == 0 && groupValues.isEmpty()) {
+            groupValues.add(new Object[0]);
+        }
+        int groupCount = groupValues.size();
+
+        // 2. 按列聚合
+        Object[][] out = new Object[groupNames.size() + labels.size()][groupCount];
+        for (int g = 0; g < groupIndexes.length; g++) {
+            for (int k = 0; k < groupCount; k++) {
+                out[g][k] = groupValues.get(k)[g];
+            }
+        }
+        for (int a = 0; a < aggIndexes.length; a++) {
+            Object[] column = source[aggIndexes[a]];
+            Object[] result = out[groupIndexes.length + a];
+            switch (funcs[a]) {
+                case SUM:
+                    sum(column, groupIds, result, false);
+                    break;
+                case COUNT:
+                    sum(column, groupIds, result, true);
+                    break;
+                case MIN:
+                case MAX:
+                    extreme(column, groupIds, result, MAX.equals(funcs[a]));
+                    break;
+                default:
+                    throw new Unsupported("aggregator " + funcs[a]);
+            }
+        }
+
+        List<QueryColumn> columns = new ArrayList<>();
+        for (int g = 0; g < groupIndexes.length; g++) {
+            columns.add(new QueryColumn(groupNames.get(g), data.getColumns().get(groupIndexes[g]).getType()));
+        }
+        for (int a = 0; a < aggIndexes.length; a++) {
+            columns.add(new QueryColumn(labels.get(a), data.getColumns().get(aggIndexes[a]).getType()));
+        }
+        return new ColumnarResult(columns, out, groupCount);
+    }
+
+    /**
+     * 字符串分组值在不区分大小写、重音或尾部空格的排序规则下可能属于同一组，此时 HashMap 分组与数据库不一致
+     */
+    private static void checkGroupCollation(Object[][] source, boolean[] mask, int[] groupIndexes) {
+        for (int index : groupIndexes) {
+            Object[] column = source[index];
+            Map<String, String> values = new HashMap<>();
+            for (int j = 0; j < column.length; j++) {
+                if (!mask[j] || !(column[j] instanceof String)) {
+                    continue;
+                }
+                String value = (String) column[j];
+                String previous = values.putIfAbsent(collationKey(value), value);
+                if (null != previous && !previous.equals(value)) {
+                    throw new Unsupported("group by string depends on collation");
+                }
+            }
+        }
+    }
+
+    /**
+     * 最宽松排序规则下的比较键：忽略大小写、重音与尾部空格
+     */
+    static String collationKey(String value) {
+        String key = Normalizer.normalize(value, Normalizer.Form.NFD);
+        key = COMBINING_MARKS.matcher(key).replaceAll(EMPTY);
+        key = TRAILING_SPACES.matcher(key).replaceAll(EMPTY);
+        return key.toLowerCase(Locale.ROOT);
+    }
+
+    private static void sum(Object[] column, int[] groupIds, Object[] result, boolean count) {
+        NumberKind kind = NumberKind.of(column);
+        int groupCount = result.length;
+        boolean[] seen = new boolean[groupCount];
+        switch (kind) {
+            case LONG: {
+                long[] sums = new long[groupCount];
+                for (int j = 0; j < column.length; j++) {
+                    int id = groupIds[j];
+                    if (id >= 0 && null != column[j]) {
+                        sums[id] = Math.addExact(sums[id], ((Number) column[j]).longValue());
+                        seen[id] = true;
+                    }
+                }
+                for (int k = 0; k < groupCount; k++) {
+                    result[k] = seen[k] || count ? (Object) sums[k] : null;
+                }
+                break;
+            }
+            case DECIMAL: {
+                BigDecimal[] sums = new BigDecimal[groupCount];
+                for (int j = 0; j < column.length; j++) {
+                    int id = groupIds[j];
+                    if (id >= 0 && null != column[j]) {
+                        BigDecimal v = decimalOf(column[j]);
+                        sums[id] = null == sums[id] ? v : sums[id].add(v);
+                    }
+                }
+                for (int k = 0; k < groupCount; k++) {
+                    result[k] = null == sums[k] && count ? BigDecimal.ZERO : sums[k];
+                }
+                break;
+            }
+            default: {
+                double[] sums = new double[groupCount];
+                for (int j = 0; j < column.length; j++) {
+                    int id = groupIds[j];
+                    if (id >= 0 && null != column[j]) {
+                        sums[id] += ((Number) column[j]).doubleValue();
+                        seen[id] = true;
+                    }
+                }
+                for (int k = 0; k < groupCount; k++) {
+                    result[k] = seen[k] || count ? (Object) sums[k] : null;
+                }
+            }
+        }
+    }
+
+    private static void extreme(Object[] column, int[] groupIds, Object[] result, boolean max) {
+        for (int j = 0; j < column.length; j++) {
+            int id = groupIds[j];
+            if (id < 0 || null == column[j]) {
+                continue;
+            }
+            if (null == result[id]) {
+                result[id] = column[j];
+            } else {
+                int compare = compareValues(column[j], result[id]);
+                if (max ? compare > 0 : compare < 0) {
+                    result[id] = column[j];
+                }
+            }
+        }
+    }
+
+    private enum NumberKind {
+        LONG, DECIMAL, DOUBLE;
+
+        static NumberKind of(Object[] column) {
+            NumberKind kind = LONG;
+            for (Object v : column) {
+                if (null == v) {
+                    continue;
+                }
+                if (!(v instanceof Number)) {
+                    throw new Unsupported("non numeric value " + v.getClass().getSimpleName());
+                }
+                if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                    continue;
+                }
+                if (v instanceof BigDecimal || v instanceof BigInteger) {
+                    if (kind == LONG) {
+                        kind = DECIMAL;
+                    }
+                } else {
+                    kind = DOUBLE;
+                }
+            }
+            return kind;
+        }
+    }
+
+    /**
+     * 行值与过滤值是否相等，字符串不同但在宽松排序规则下相等时结果依赖排序规则
+     */
+    private static boolean equalsTo(Object columnValue, Object filterValue) {
+        if (null == columnValue) {
+            return false;
+        }
+        if (columnValue instanceof Number) {
+            return numberCompare((Number) columnValue, filterValue) == 0;
+        }
+        String str = stringOf(columnValue);
+        String literal = literal(filterValue);
+        if (str.equals(literal)) {
+            return true;
+        }
+        if (collationKey(str).equals(collationKey(literal))) {
+            throw new Unsupported("string comparison depends on collation");
+        }
+        return false;
+    }
+
+    /**
+     * 仅数值支持范围比较，字符串的大小依赖排序规则
+     */
+    private static int compareTo(Object columnValue, Object filterValue) {
+        if (columnValue instanceof Number) {
+            return numberCompare((Number) columnValue, filterValue);
+        }
+        throw new Unsupported("range comparison on " + columnValue.getClass().getSimpleName());
+    }
+
+    private static int numberCompare(Number number, Object filterValue) {
+        try {
+            return decimalOf(number).compareTo(new BigDecimal(literal(filterValue).trim()));
+        } catch (NumberFormatException e) {
+            throw new Unsupported("non numeric literal " + filterValue);
+        }
+    }
+
+    private static int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return decimalOf(a).compareTo(decimalOf(b));
+        }
+        if (a instanceof Date && b instanceof Date) {
+            return ((Date) a).compareTo((Date) b);
+        }
+        throw new Unsupported("MIN/MAX on " + a.getClass().getSimpleName());
+    }
+
+    private static BigDecimal decimalOf(Object number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger) number);
+        }
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return BigDecimal.valueOf(((Number) number).longValue());
+        }
+        double d = ((Number) number).doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new Unsupported("non finite number");
+        }
+        return BigDecimal.valueOf(d);
+    }
+
+    /**
+     * 仅支持字符串与数值列
+     */
+    private static String stringOf(Object value) {
+        if (value instanceof String || value instanceof Character) {
+            return value.toString();
+        }
+        throw new Unsupported("string comparison on " + value.getClass().getSimpleName());
+    }
+
+    /**
+     * 过滤值去掉首尾单引号
+     */
+    private static String literal(Object value) {
+        if (null == value) {
+            throw new Unsupported("null literal");
+        }
+        String str = value.toString();
+        String trimmed = str.trim();
+        if (trimmed.length() > 1 && trimmed.startsWith("'") && trimmed.endsWith("'")) {
+            return trimmed.substring(1, trimmed.length() - 1).replace("''", "'");
+        }
+        return str;
+    }
+
+    private static String likeRegex(String like) {
+        StringBuilder builder = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '\\' && i + 1 < like.length()) {
+                literal.append(like.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    builder.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                builder.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            builder.append(Pattern.quote(literal.toString()));
+        }
+        return builder.toString();
+    }
+
+    private static void and(boolean[] mask, boolean[] other) {
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] &= other[i];
+        }
+    }
+
+    private static void or(boolean[] mask, boolean[] other) {
+        for (int i = 0; i < mask.length; i++) {
+            mask[i] |= other[i];
+        }
+    }
+}
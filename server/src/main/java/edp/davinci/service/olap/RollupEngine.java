@@ -0,0 +1,413 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+
+package edp.davinci.service.olap;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSON;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edp.core.model.ColumnarResult;
+import edp.core.model.PaginateWithQueryColumns;
+import edp.core.model.QueryColumn;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.MD5Util;
+import edp.davinci.core.model.SqlFilter;
+import edp.davinci.dto.viewDto.Aggregator;
+import edp.davinci.dto.viewDto.Order;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static edp.core.consts.Consts.*;
+
+/**
+ * 基于已缓存的细粒度结果回答新的分组聚合查询
+ * <p>
+ * 同一 view（参数与行权限替换后的 sql 相同）的完整查询结果按列缓存为候选；
+ * 新查询的分组是候选分组的子集、聚合均为 SUM / COUNT / MIN / MAX 且候选中存在、
+ * 额外的过滤条件只涉及候选分组列时，在内存中过滤并上卷，否则返回 null 由调用方查询数据源
+ */
+@Slf4j
+@Component
+public class RollupEngine {
+
+    private static final Set<String> ROLLUP_FUNCS = new HashSet<>(Arrays.asList(
+            ColumnarRollup.SUM, ColumnarRollup.COUNT, ColumnarRollup.MIN, ColumnarRollup.MAX));
+
+    private static final String QUOTES = "`\"[]";
+
+    @Value("${source.rollup.enable:false}")
+    private boolean enable;
+
+    /**
+     * 所有候选的单元格（行数 * 列数）总数上限
+     */
+    @Value("${source.rollup.max-cells:2000000}")
+    private long maxCells;
+
+    /**
+     * 行数超过该值的结果不作为候选
+     */
+    @Value("${source.rollup.max-rows:100000}")
+    private int maxRows;
+
+    @Value("${source.rollup.max-candidates:8}")
+    private int maxCandidates;
+
+    @Value("${source.rollup.expire-seconds:300}")
+    private long expireSeconds;
+
+    @Value("${source.result-limit:1000000}")
+    private int resultLimit;
+
+    private Cache<String, List<Candidate>> candidates;
+
+    @PostConstruct
+    public void init() {
+        this.candidates = Caffeine.newBuilder()
+                .maximumWeight(maxCells)
+                .weigher((String key, List<Candidate> list) -> (int) Math.min(Integer.MAX_VALUE,
+                        Math.max(1L, list.stream().mapToLong(c -> c.result.cells()).sum())))
+                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enable;
+    }
+
+    /**
+     * 记录一次完整的查询结果
+     *
+     * @param viewId
+     * @param viewSql      参数替换后的 view sql
+     * @param executeParam
+     * @param paginate
+     */
+    public void register(Long viewId, String viewSql, ViewExecuteParam executeParam, PaginateWithQueryColumns paginate) {
+        if (!enable || null == paginate || null == paginate.getResultList() || executeParam.isNativeQuery()
+                || CollectionUtils.isEmpty(executeParam.getAggregators())) {
+            return;
+        }
+        int rows = paginate.getResultList().size();
+        boolean complete = executeParam.getPageNo() < 1 && executeParam.getPageSize() < 1
+                && (executeParam.getLimit() <= 0 || rows < executeParam.getLimit())
+                && rows < resultLimit;
+        if (!complete || rows > maxRows) {
+            return;
+        }
+
+        Candidate candidate = new Candidate();
+        candidate.viewId = viewId;
+        candidate.groups = null == executeParam.getGroups() ? Collections.emptyList() : new ArrayList<>(executeParam.getGroups());
+        candidate.aggregators = new HashMap<>();
+        executeParam.getAggregators().forEach(a -> candidate.aggregators.put(aggregatorKey(a), label(a)));
+        candidate.filters = null == executeParam.getFilters() ? Collections.emptySet() : new HashSet<>(executeParam.getFilters());
+        candidate.result = ColumnarResult.of(paginate.getColumns(), paginate.getResultList());
+        candidate.createTime = System.currentTimeMillis();
+
+        String key = key(viewId, viewSql);
+        List<Candidate> list = new ArrayList<>();
+        list.add(candidate);
+        List<Candidate> existing = candidates.getIfPresent(key);
+        if (null != existing) {
+            existing.stream()
+                    .filter(c -> !isExpired(c) && !c.sameShape(candidate))
+                    .limit(Math.max(0, maxCandidates - 1))
+                    .forEach(list::add);
+        }
+        candidates.put(key, Collections.unmodifiableList(list));
+    }
+
+    /**
+     * 从候选结果上卷
+     *
+     * @param viewId
+     * @param viewSql        参数替换后的 view sql
+     * @param executeParam
+     * @param excludeColumns 无权访问的列
+     * @return 无法回答时返回 null
+     */
+    public PaginateWithQueryColumns query(Long viewId, String viewSql, ViewExecuteParam executeParam, Set<String> excludeColumns) {
+        // flush 要求重新查询数据源，查询结果随后重新登记为候选
+        if (!enable || executeParam.isNativeQuery() || CollectionUtils.isEmpty(executeParam.getAggregators())
+                || Boolean.TRUE.equals(executeParam.getFlush())) {
+            return null;
+        }
+        List<Candidate> list = candidates.getIfPresent(key(viewId, viewSql));
+        if (CollectionUtils.isEmpty(list)) {
+            return null;
+        }
+
+        List<String> groups = null == executeParam.getGroups() ? Collections.emptyList() : executeParam.getGroups();
+        List<Aggregator> aggregators = executeParam.getAggregators();
+        if (aggregators.stream().anyMatch(a -> !ROLLUP_FUNCS.contains(a.getFunc().trim().toUpperCase()))) {
+            return null;
+        }
+        List<String> filters = null == executeParam.getFilters() ? Collections.emptyList() : executeParam.getFilters();
+
+        Candidate best = null;
+        List<SqlFilter> bestFilters = null;
+        for (Candidate candidate : list) {
+            if (isExpired(candidate) || (null != best && best.result.getRowCount() <= candidate.result.getRowCount())) {
+                continue;
+            }
+            List<SqlFilter> remaining = candidate.answer(groups, aggregators, filters);
+            if (null != remaining) {
+                best = candidate;
+                bestFilters = remaining;
+            }
+        }
+        if (null == best) {
+            return null;
+        }
+
+        try {
+            ColumnarResult data = best.result;
+            Map<String, Integer> groupColumns = new HashMap<>();
+            best.groups.forEach(g -> groupColumns.put(g, data.indexOf(g)));
+
+            boolean[] mask = ColumnarRollup.filter(data, bestFilters, groupColumns);
+            int[] groupIndexes = groups.stream().mapToInt(data::indexOf).toArray();
+            int[] aggIndexes = new int[aggregators.size()];
+            String[] funcs = new String[aggregators.size()];
+            List<String> labels = new ArrayList<>();
+            for (int i = 0; i < aggregators.size(); i++) {
+                Aggregator aggregator = aggregators.get(i);
+                aggIndexes[i] = data.indexOf(best.aggregators.get(aggregatorKey(aggregator)));
+                funcs[i] = aggregator.getFunc().trim().toUpperCase();
+                labels.add(label(aggregator));
+            }
+            ColumnarResult rolled = ColumnarRollup.rollup(data, mask, groupIndexes, aggIndexes, funcs, groups, labels);
+            PaginateWithQueryColumns paginate = paginate(rolled, executeParam, excludeColumns);
+            if (null != paginate) {
+                log.debug("view (:{}) answered from {} cached rows", viewId, data.getRowCount());
+            }
+            return paginate;
+        } catch (RuntimeException e) {
+            log.debug("view (:{}) can not be rolled up: {}", viewId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * view 或其数据源修改后丢弃候选
+     *
+     * @param viewId
+     */
+    public void invalidate(Long viewId) {
+        if (null != candidates) {
+            candidates.asMap().values().removeIf(list -> list.stream().anyMatch(c -> c.viewId.equals(viewId)));
+        }
+    }
+
+    private PaginateWithQueryColumns paginate(ColumnarResult result, ViewExecuteParam executeParam, Set<String> excludeColumns) {
+        List<Map<String, Object>> rows = result.toRows(0, result.getRowCount(), null);
+
+        List<Order> orders = executeParam.getOrders();
+        if (!CollectionUtils.isEmpty(orders)) {
+            Comparator<Map<String, Object>> comparator = null;
+            for (Order order : orders) {
+                String column = columnOf(order.getColumn(), result.getColumns());
+                if (null == column) {
+                    return null;
+                }
+                Comparator<Map<String, Object>> next = (a, b) -> compare(a.get(column), b.get(column));
+                if ("DESC".equalsIgnoreCase(order.getDirection())) {
+                    next = next.reversed();
+                }
+                comparator = null == comparator ? next : comparator.thenComparing(next);
+            }
+            rows.sort(comparator);
+        }
+
+        int limit = executeParam.getLimit() > 0 ? Math.min(executeParam.getLimit(), resultLimit) : resultLimit;
+        if (rows.size() > limit) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+
+        int total = rows.size();
+        PaginateWithQueryColumns paginate = new PaginateWithQueryColumns();
+        paginate.setColumns(result.getColumns().stream()
+                .filter(c -> null == excludeColumns || !excludeColumns.contains(c.getName()))
+                .collect(Collectors.toList()));
+        int pageNo = executeParam.getPageNo();
+        int pageSize = executeParam.getPageSize();
+        if (pageNo < 1 || pageSize < 1) {
+            paginate.setPageNo(1);
+            paginate.setPageSize(rows.size());
+        } else {
+            int start = Math.min((pageNo - 1) * pageSize, rows.size());
+            int end = Math.min(start + pageSize, rows.size());
+            paginate.setPageNo(pageNo);
+            paginate.setPageSize(pageSize);
+            paginate.setHasNext(end < rows.size());
+            rows = new ArrayList<>(rows.subList(start, end));
+        }
+        paginate.setTotalCount(total);
+        if (!CollectionUtils.isEmpty(excludeColumns)) {
+            rows.forEach(r -> r.keySet().removeAll(excludeColumns));
+        }
+        paginate.setResultList(rows);
+        return paginate;
+    }
+
+    /**
+     * 数值与日期按大小比较；字符串的顺序依赖排序规则，区分与不区分大小写的结果不同时放弃；不支持 NULL
+     */
+    private int compare(Object a, Object b) {
+        if (null == a || null == b) {
+            throw new ColumnarRollup.Unsupported("order by column with null");
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Date && b instanceof Date) {
+            return ((Date) a).compareTo((Date) b);
+        }
+        if (a instanceof String && b instanceof String) {
+            int sensitive = Integer.signum(((String) a).compareTo((String) b));
+            if (sensitive != Integer.signum(((String) a).compareToIgnoreCase((String) b))) {
+                throw new ColumnarRollup.Unsupported("string order depends on collation");
+            }
+            return sensitive;
+        }
+        throw new ColumnarRollup.Unsupported("order by " + a.getClass().getSimpleName());
+    }
+
+    private String columnOf(String orderColumn, List<QueryColumn> columns) {
+        if (StringUtils.isEmpty(orderColumn)) {
+            return null;
+        }
+        String column = strip(orderColumn);
+        for (QueryColumn queryColumn : columns) {
+            if (strip(queryColumn.getName()).equalsIgnoreCase(column)) {
+                return queryColumn.getName();
+            }
+        }
+        return null;
+    }
+
+    private static String strip(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            if (!Character.isWhitespace(c) && QUOTES.indexOf(c) < 0) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private boolean isExpired(Candidate candidate) {
+        return System.currentTimeMillis() - candidate.createTime > TimeUnit.SECONDS.toMillis(expireSeconds);
+    }
+
+    private static String key(Long viewId, String viewSql) {
+        return MD5Util.getMD5(viewId + MINUS + viewSql, true, 32);
+    }
+
+    private static String aggregatorKey(Aggregator aggregator) {
+        return aggregator.getFunc().trim().toUpperCase() + PARENTHESES_START + aggregator.getColumn().trim() + PARENTHESES_END;
+    }
+
+    /**
+     * 与 sql 查询结果列名保持一致
+     */
+    private static String label(Aggregator aggregator) {
+        return aggregator.getFunc().trim() + PARENTHESES_START + aggregator.getColumn() + PARENTHESES_END;
+    }
+
+    private static class Candidate {
+        private Long viewId;
+
+        private List<String> groups;
+
+        /**
+         * 聚合 -> 结果列名
+         */
+        private Map<String, String> aggregators;
+
+        private Set<String> filters;
+
+        private ColumnarResult result;
+
+        private long createTime;
+
+        private boolean sameShape(Candidate other) {
+            return groups.equals(other.groups) && filters.equals(other.filters)
+                    && aggregators.keySet().equals(other.aggregators.keySet());
+        }
+
+        /**
+         * 能否回答查询
+         *
+         * @return 需要在内存中执行的过滤条件，无法回答时返回 null
+         */
+        private List<SqlFilter> answer(List<String> queryGroups, List<Aggregator> queryAggregators, List<String> queryFilters) {
+            if (!groups.containsAll(queryGroups) || !queryFilters.containsAll(filters)) {
+                return null;
+            }
+            for (Aggregator aggregator : queryAggregators) {
+                String label = aggregators.get(aggregatorKey(aggregator));
+                if (null == label || result.indexOf(label) < 0) {
+                    return null;
+                }
+            }
+            for (String group : queryGroups) {
+                if (result.indexOf(group) < 0) {
+                    return null;
+                }
+            }
+
+            List<SqlFilter> remaining = new ArrayList<>();
+            for (String filter : queryFilters) {
+                if (filters.contains(filter)) {
+                    continue;
+                }
+                SqlFilter sqlFilter;
+                try {
+                    sqlFilter = JSON.parseObject(filter, SqlFilter.class);
+                } catch (Exception e) {
+                    return null;
+                }
+                if (null == sqlFilter || !filterOnGroups(sqlFilter)) {
+                    return null;
+                }
+                remaining.add(sqlFilter);
+            }
+            return remaining;
+        }
+
+        private boolean filterOnGroups(SqlFilter filter) {
+            if (SqlFilter.Type.relation.equalsIgnoreCase(filter.getType())) {
+                return !CollectionUtils.isEmpty(filter.getChildren()) && filter.getChildren().stream().allMatch(this::filterOnGroups);
+            }
+            return SqlFilter.Type.filter.equalsIgnoreCase(filter.getType())
+                    && groups.contains(filter.getName()) && result.indexOf(filter.getName()) >= 0;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.screenshot;
+
+import com.alibaba.druid.util.StringUtils;
+import com.alibaba.fastjson.JSONObject;
+import edp.core.utils.CollectionUtils;
+import edp.davinci.dto.viewDto.Aggregator;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Arc2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static edp.core.consts.Consts.*;
+
+/**
+ * 服务端图表渲染，不依赖浏览器直接将 widget 数据绘制为 png
+ * 仅支持表格、折线图、柱状图、饼图，其余图表仍走浏览器截图
+ */
+@Slf4j
+@Component
+public class ChartRenderer {
+
+    private static final int CHART_TABLE = 1;
+    private static final int CHART_LINE = 2;
+    private static final int CHART_BAR = 3;
+    private static final int CHART_PIE = 5;
+
+    private static final int DEFAULT_IMAGE_WIDTH = 1920;
+    private static final int MAX_IMAGE_HEIGHT = 20000;
+
+    /**
+     * 与前端 dashboard 栅格布局保持一致
+     */
+    private static final int GRID_COLS = 12;
+    private static final int GRID_ROW_HEIGHT = 30;
+    private static final int GRID_MARGIN = 8;
+
+    private static final int TITLE_HEIGHT = 32;
+    private static final int PADDING = 12;
+    private static final int TABLE_ROW_HEIGHT = 24;
+
+    private static final Color BACKGROUND = new Color(0xF0F2F5);
+    private static final Color TEXT = new Color(0x333333);
+    private static final Color TEXT_LIGHT = new Color(0x999999);
+    private static final Color BORDER = new Color(0xE8E8E8);
+    private static final Color TABLE_HEADER = new Color(0xFAFAFA);
+
+    private static final Color[] PALETTE = {
+            new Color(0x509AF2), new Color(0xF27C4C), new Color(0x42B9A9), new Color(0xF7C740),
+            new Color(0x9A6BF2), new Color(0x70C1E6), new Color(0xE06E83), new Color(0x66BB6A)
+    };
+
+    private static final Font TITLE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 14);
+    private static final Font TEXT_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+
+    /**
+     * 判断 widget 是否可由服务端渲染
+     *
+     * @param widgetConfig
+     * @return
+     */
+    public boolean isSupported(String widgetConfig) {
+        return getChartType(widgetConfig) > 0;
+    }
+
+    /**
+     * 表格在给定栅格高度下可展示的数据行数
+     *
+     * @param gridHeight
+     * @return
+     */
+    public int getTableRowCapacity(int gridHeight) {
+        int height = gridHeight * (GRID_ROW_HEIGHT + GRID_MARGIN) - GRID_MARGIN - TITLE_HEIGHT - PADDING;
+        return Math.max(1, height / TABLE_ROW_HEIGHT - 1);
+    }
+
+    /**
+     * 按 dashboard 布局绘制所有 widget
+     *
+     * @param items
+     * @param imageWidth
+     * @return
+     * @throws IOException
+     */
+    public File render(List<ChartItem> items, Integer imageWidth) throws IOException {
+        int width = imageWidth != null && imageWidth > 0 ? imageWidth : DEFAULT_IMAGE_WIDTH;
+        double colWidth = (width - GRID_MARGIN) / (double) GRID_COLS;
+
+        int height = GRID_MARGIN;
+        for (ChartItem item : items) {
+            height = Math.max(height, (item.getY() + item.getHeight()) * (GRID_ROW_HEIGHT + GRID_MARGIN) + GRID_MARGIN);
+        }
+        height = Math.min(height, MAX_IMAGE_HEIGHT);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, width, height);
+
+            for (ChartItem item : items) {
+                int x = (int) Math.round(GRID_MARGIN + item.getX() * colWidth);
+                int y = GRID_MARGIN + item.getY() * (GRID_ROW_HEIGHT + GRID_MARGIN);
+                int w = (int) Math.round(item.getWidth() * colWidth) - GRID_MARGIN;
+                int h = item.getHeight() * (GRID_ROW_HEIGHT + GRID_MARGIN) - GRID_MARGIN;
+                if (y >= height) {
+                    continue;
+                }
+                Graphics2D itemGraphics = (Graphics2D) g.create(x, y, w, h);
+                try {
+                    drawItem(itemGraphics, item, w, h);
+                } catch (Exception e) {
+                    log.warn("render widget ({}) error: {}", item.getName(), e.getMessage());
+                } finally {
+                    itemGraphics.dispose();
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        File file = File.createTempFile("davinci_chart_", ".png");
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    private void drawItem(Graphics2D g, ChartItem item, int w, int h) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+
+        g.setFont(TITLE_FONT);
+        g.setColor(TEXT);
+        drawString(g, item.getName(), PADDING, TITLE_HEIGHT - 10, w - PADDING * 2);
+
+        int top = TITLE_HEIGHT;
+        int width = w - PADDING * 2;
+        int height = h - TITLE_HEIGHT - PADDING;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Graphics2D body = (Graphics2D) g.create(PADDING, top, width, height);
+        try {
+            body.setFont(TEXT_FONT);
+            if (CollectionUtils.isEmpty(item.getData())) {
+                body.setColor(TEXT_LIGHT);
+                drawCenteredString(body, "No Data", width / 2, height / 2);
+                return;
+            }
+            switch (getChartType(item.getConfig())) {
+                case CHART_TABLE:
+                    drawTable(body, item, width, height);
+                    break;
+                case CHART_LINE:
+                case CHART_BAR:
+                    drawCartesian(body, item, width, height, getChartType(item.getConfig()) == CHART_BAR);
+                    break;
+                case CHART_PIE:
+                    drawPie(body, item, width, height);
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            body.dispose();
+        }
+    }
+
+    private void drawTable(Graphics2D g, ChartItem item, int width, int height) {
+        List<String> columns = new ArrayList<>();
+        if (!CollectionUtils.isEmpty(item.getExecuteParam().getGroups())) {
+            columns.addAll(item.getExecuteParam().getGroups());
+        }
+        columns.addAll(getMetricLabels(item.getExecuteParam()));
+        if (columns.isEmpty()) {
+            columns.addAll(item.getData().get(0).keySet());
+        }
+
+        int colWidth = Math.max(1, width / columns.size());
+        g.setColor(TABLE_HEADER);
+        g.fillRect(0, 0, width, TABLE_ROW_HEIGHT);
+        g.setColor(TEXT);
+        for (int i = 0; i < columns.size(); i++) {
+            drawString(g, columns.get(i), i * colWidth + 6, TABLE_ROW_HEIGHT - 8, colWidth - 12);
+        }
+
+        int rows = Math.min(item.getData().size(), height / TABLE_ROW_HEIGHT - 1);
+        for (int r = 0; r < rows; r++) {
+            Map<String, Object> row = item.getData().get(r);
+            int y = (r + 1) * TABLE_ROW_HEIGHT;
+            g.setColor(BORDER);
+            g.drawLine(0, y, width, y);
+            g.setColor(TEXT);
+            for (int i = 0; i < columns.size(); i++) {
+                drawString(g, format(getValue(row, columns.get(i))), i * colWidth + 6, y + TABLE_ROW_HEIGHT - 8, colWidth - 12);
+            }
+        }
+        g.setColor(BORDER);
+        g.drawLine(0, (rows + 1) * TABLE_ROW_HEIGHT, width, (rows + 1) * TABLE_ROW_HEIGHT);
+    }
+
+    private void drawCartesian(Graphics2D g, ChartItem item, int width, int height, boolean isBar) {
+        List<String> metrics = getMetricLabels(item.getExecuteParam());
+        if (metrics.isEmpty()) {
+            return;
+        }
+        List<String> categories = getCategories(item);
+        double[][] values = new double[metrics.size()][categories.size()];
+        double max = 0D;
+        double min = 0D;
+        for (int s = 0; s < metrics.size(); s++) {
+            for (int i = 0; i < categories.size(); i++) {
+                values[s][i] = toDouble(getValue(item.getData().get(i), metrics.get(s)));
+                max = Math.max(max, values[s][i]);
+                min = Math.min(min, values[s][i]);
+            }
+        }
+        max = niceNumber(max);
+        min = min < 0 ? -niceNumber(-min) : 0D;
+        if (max == min) {
+            max = min + 1;
+        }
+
+        int legendHeight = metrics.size() > 1 ? drawLegend(g, metrics, width) : 0;
+        int left = 56;
+        int bottom = 24;
+        int plotTop = legendHeight + 8;
+        int plotWidth = width - left - 8;
+        int plotHeight = height - plotTop - bottom;
+        if (plotWidth <= 0 || plotHeight <= 0) {
+            return;
+        }
+
+        int ticks = 5;
+        for (int t = 0; t <= ticks; t++) {
+            double value = min + (max - min) * t / ticks;
+            int y = plotTop + plotHeight - (int) Math.round(plotHeight * t / (double) ticks);
+            g.setColor(BORDER);
+            g.drawLine(left, y, left + plotWidth, y);
+            g.setColor(TEXT_LIGHT);
+            drawString(g, format(value), 0, y + 4, left - 6);
+        }
+
+        double band = plotWidth / (double) categories.size();
+        int zeroY = plotTop + plotHeight - (int) Math.round(plotHeight * (0 - min) / (max - min));
+        int labelStep = Math.max(1, (int) Math.ceil(categories.size() * 60D / plotWidth));
+        for (int i = 0; i < categories.size(); i += labelStep) {
+            g.setColor(TEXT_LIGHT);
+            drawCenteredString(g, categories.get(i), left + (int) (band * i + band / 2), plotTop + plotHeight + 16);
+        }
+
+        for (int s = 0; s < metrics.size(); s++) {
+            g.setColor(PALETTE[s % PALETTE.length]);
+            int lastX = -1;
+            int lastY = -1;
+            for (int i = 0; i < categories.size(); i++) {
+                int y = plotTop + plotHeight - (int) Math.round(plotHeight * (values[s][i] - min) / (max - min));
+                if (isBar) {
+                    double barWidth = band * 0.7 / metrics.size();
+                    int x = left + (int) Math.round(band * i + band * 0.15 + barWidth * s);
+                    g.fillRect(x, Math.min(y, zeroY), Math.max(1, (int) barWidth), Math.abs(zeroY - y));
+                } else {
+                    int x = left + (int) Math.round(band * i + band / 2);
+                    if (lastX >= 0) {
+                        g.setStroke(new BasicStroke(2f));
+                        g.drawLine(lastX, lastY, x, y);
+                    }
+                    g.fillOval(x - 3, y - 3, 6, 6);
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+    }
+
+    private void drawPie(Graphics2D g, ChartItem item, int width, int height) {
+        List<String> metrics = getMetricLabels(item.getExecuteParam());
+        if (metrics.isEmpty()) {
+            return;
+        }
+        List<String> categories = getCategories(item);
+        double[] values = new double[categories.size()];
+        double total = 0D;
+        for (int i = 0; i < categories.size(); i++) {
+            values[i] = Math.max(0D, toDouble(getValue(item.getData().get(i), metrics.get(0))));
+            total += values[i];
+        }
+        if (total <= 0D) {
+            return;
+        }
+
+        int legendWidth = Math.min(width / 3, 200);
+        int diameter = Math.min(width - legendWidth, height) - 8;
+        if (diameter <= 0) {
+            return;
+        }
+        int cx = (width - legendWidth - diameter) / 2;
+        int cy = (height - diameter) / 2;
+
+        double start = 90D;
+        for (int i = 0; i < values.length; i++) {
+            double extent = -360D * values[i] / total;
+            g.setColor(PALETTE[i % PALETTE.length]);
+            g.fill(new Arc2D.Double(cx, cy, diameter, diameter, start, extent, Arc2D.PIE));
+            start += extent;
+        }
+
+        int x = width - legendWidth;
+        int rows = Math.min(categories.size(), height / 18);
+        for (int i = 0; i < rows; i++) {
+            int y = i * 18 + 4;
+            g.setColor(PALETTE[i % PALETTE.length]);
+            g.fillRect(x, y, 10, 10);
+            g.setColor(TEXT);
+            String label = categories.get(i) + SPACE + new DecimalFormat("0.##%").format(values[i] / total);
+            drawString(g, label, x + 16, y + 10, legendWidth - 16);
+        }
+    }
+
+    private int drawLegend(Graphics2D g, List<String> labels, int width) {
+        FontMetrics metrics = g.getFontMetrics();
+        int x = 0;
+        for (int i = 0; i < labels.size(); i++) {
+            int labelWidth = metrics.stringWidth(labels.get(i));
+            if (x + labelWidth + 16 > width) {
+                break;
+            }
+            g.setColor(PALETTE[i % PALETTE.length]);
+            g.fillRect(x, 2, 10, 10);
+            g.setColor(TEXT);
+            g.drawString(labels.get(i), x + 14, 12);
+            x += labelWidth + 30;
+        }
+        return 18;
+    }
+
+    private List<String> getCategories(ChartItem item) {
+        List<String> groups = item.getExecuteParam().getGroups();
+        return item.getData().stream().map(row -> {
+            if (CollectionUtils.isEmpty(groups)) {
+                return EMPTY;
+            }
+            return groups.stream().map(group -> format(getValue(row, group))).collect(Collectors.joining(SPACE));
+        }).collect(Collectors.toList());
+    }
+
+    private List<String> getMetricLabels(ViewExecuteParam executeParam) {
+        List<String> labels = new ArrayList<>();
+        if (!CollectionUtils.isEmpty(executeParam.getAggregators())) {
+            for (Aggregator aggregator : executeParam.getAggregators()) {
+                labels.add(String.join(EMPTY, aggregator.getFunc().trim(), PARENTHESES_START, aggregator.getColumn().trim(), PARENTHESES_END));
+            }
+        }
+        return labels;
+    }
+
+    private int getChartType(String widgetConfig) {
+        if (StringUtils.isEmpty(widgetConfig)) {
+            return -1;
+        }
+        try {
+            JSONObject config = JSONObject.parseObject(widgetConfig);
+            if (!"chart".equals(config.getString("mode"))) {
+                return -1;
+            }
+            Integer selectedChart = config.getInteger("selectedChart");
+            if (selectedChart == null) {
+                return -1;
+            }
+            switch (selectedChart) {
+                case CHART_TABLE:
+                case CHART_LINE:
+                case CHART_BAR:
+                case CHART_PIE:
+                    return selectedChart;
+                default:
+                    return -1;
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private Object getValue(Map<String, Object> row, String key) {
+        if (row.containsKey(key)) {
+            return row.get(key);
+        }
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(key)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return 0D;
+            }
+        }
+        return 0D;
+    }
+
+    private String format(Object value) {
+        if (value == null) {
+            return EMPTY;
+        }
+        if (value instanceof Number) {
+            return new DecimalFormat("#,##0.##").format(value);
+        }
+        return value.toString();
+    }
+
+    private double niceNumber(double value) {
+        if (value <= 0D) {
+            return 0D;
+        }
+        double exponent = Math.pow(10, Math.floor(Math.log10(value)));
+        double fraction = value / exponent;
+        double nice = fraction <= 1 ? 1 : fraction <= 2 ? 2 : fraction <= 5 ? 5 : 10;
+        return nice * exponent;
+    }
+
+    private void drawString(Graphics2D g, String text, int x, int y, int maxWidth) {
+        if (StringUtils.isEmpty(text) || maxWidth <= 0) {
+            return;
+        }
+        FontMetrics metrics = g.getFontMetrics();
+        if (metrics.stringWidth(text) > maxWidth) {
+            int end = text.length();
+            while (end > 0 && metrics.stringWidth(text.substring(0, end) + "...") > maxWidth) {
+                end--;
+            }
+            text = end > 0 ? text.substring(0, end) + "..." : EMPTY;
+        }
+        g.drawString(text, x, y);
+    }
+
+    private void drawCenteredString(Graphics2D g, String text, int cx, int y) {
+        if (StringUtils.isEmpty(text)) {
+            return;
+        }
+        g.drawString(text, cx - g.getFontMetrics().stringWidth(text) / 2, y);
+    }
+
+    @Data
+    public static class ChartItem {
+        private String name;
+        private String config;
+        private ViewExecuteParam executeParam;
+        private List<Map<String, Object>> data;
+
+        /**
+         * dashboard 栅格位置
+         */
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.screenshot;
+
+import com.alibaba.fastjson.JSON;
+import edp.core.common.cache.Caches;
+import edp.core.utils.CollectionUtils;
+import edp.core.utils.MD5Util;
+import edp.davinci.dao.*;
+import edp.davinci.dto.displayDto.MemDisplaySlideWidgetWithSlide;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import edp.davinci.dto.widgetDto.WidgetWithRelationDashboardId;
+import edp.davinci.model.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import javax.script.ScriptEngine;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static edp.core.consts.Consts.UNDERLINE;
+import static edp.davinci.common.utils.ScriptUtiils.getExecuptParamScriptEngine;
+import static edp.davinci.common.utils.ScriptUtiils.getViewExecuteParam;
+
+/**
+ * 截图结果缓存，仅按过期时间（10分钟）失效，默认关闭（screenshot.cache_enable）
+ * <p>
+ * key 由分享实体、图片宽度、用户、配置版本和 widget 查询版本（view sql、view/source 更新时间及查询参数）组成，
+ * 不执行查询、不包含查询结果，过期前数据源中数据的变化不会被感知
+ */
+@Slf4j
+@Component
+public class ScreenshotCache {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private DashboardMapper dashboardMapper;
+
+    @Autowired
+    private MemDashboardWidgetMapper memDashboardWidgetMapper;
+
+    @Autowired
+    private DisplayMapper displayMapper;
+
+    @Autowired
+    private DisplaySlideMapper displaySlideMapper;
+
+    @Autowired
+    private MemDisplaySlideWidgetMapper memDisplaySlideWidgetMapper;
+
+    @Autowired
+    private WidgetMapper widgetMapper;
+
+    @Autowired
+    private ViewMapper viewMapper;
+
+    @Autowired
+    private SourceMapper sourceMapper;
+
+    private final Map<String, CompletableFuture<File>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 生成截图缓存key
+     *
+     * @param contentType
+     * @param id
+     * @param imageWidth
+     * @param user
+     * @return 无法计算版本时返回null，不使用缓存
+     */
+    public String getCacheKey(String contentType, Long id, Integer imageWidth, User user) {
+        try {
+            StringBuilder version = new StringBuilder();
+            StringBuilder query = new StringBuilder();
+            Map<Long, String> viewVersions = new HashMap<>();
+            ScriptEngine engine = getExecuptParamScriptEngine();
+
+            if ("dashboard".equalsIgnoreCase(contentType)) {
+                Dashboard dashboard = dashboardMapper.getById(id);
+                if (dashboard == null) {
+                    return null;
+                }
+                version.append(dashboard.getConfig());
+
+                List<MemDashboardWidget> memDashboardWidgets = memDashboardWidgetMapper.getByDashboardId(id);
+                if (!CollectionUtils.isEmpty(memDashboardWidgets)) {
+                    memDashboardWidgets.stream().sorted(Comparator.comparing(MemDashboardWidget::getId)).forEach(version::append);
+                }
+
+                Set<WidgetWithRelationDashboardId> widgets = widgetMapper.getByDashboard(id);
+                if (!CollectionUtils.isEmpty(widgets)) {
+                    List<WidgetWithRelationDashboardId> sortedWidgets = widgets.stream()
+                            .sorted(Comparator.comparing(WidgetWithRelationDashboardId::getRelationId)).collect(Collectors.toList());
+                    for (WidgetWithRelationDashboardId widget : sortedWidgets) {
+                        version.append(widget.getId()).append(widget.getConfig()).append(widget.getUpdateTime());
+                        ViewExecuteParam executeParam = getViewExecuteParam(engine, dashboard.getConfig(), widget.getConfig(), widget.getRelationId());
+                        query.append(getQueryVersion(widget.getViewId(), executeParam, viewVersions));
+                    }
+                }
+            } else if ("display".equalsIgnoreCase(contentType)) {
+                Display display = displayMapper.getById(id);
+                if (display == null) {
+                    return null;
+                }
+                version.append(display.getUpdateTime());
+
+                List<DisplaySlide> slides = displaySlideMapper.selectByDisplayId(id);
+                if (!CollectionUtils.isEmpty(slides)) {
+                    slides.stream().sorted(Comparator.comparing(DisplaySlide::getId)).forEach(s -> version.append(s.getId()).append(s.getConfig()));
+                }
+
+                List<MemDisplaySlideWidgetWithSlide> layers = memDisplaySlideWidgetMapper.getMemWithSlideByDisplayId(id);
+                if (!CollectionUtils.isEmpty(layers)) {
+                    layers.stream().sorted(Comparator.comparing(MemDisplaySlideWidget::getId)).forEach(version::append);
+                }
+
+                Set<Widget> widgets = widgetMapper.getByDisplayId(id);
+                if (!CollectionUtils.isEmpty(widgets)) {
+                    List<Widget> sortedWidgets = widgets.stream().sorted(Comparator.comparing(Widget::getId)).collect(Collectors.toList());
+                    for (Widget widget : sortedWidgets) {
+                        version.append(widget.getId()).append(widget.getConfig()).append(widget.getUpdateTime());
+                        ViewExecuteParam executeParam = getViewExecuteParam(engine, null, widget.getConfig(), null);
+                        query.append(getQueryVersion(widget.getViewId(), executeParam, viewVersions));
+                    }
+                }
+            } else {
+                return null;
+            }
+
+            return String.join(UNDERLINE, contentType.toLowerCase(), String.valueOf(id), String.valueOf(imageWidth), String.valueOf(user.getId()),
+                    MD5Util.getMD5(version.toString(), true, 32), MD5Util.getMD5(query.toString(), true, 32));
+        } catch (Exception e) {
+            log.warn("get screenshot cache key of {} (:{}) error: {}", contentType, id, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取缓存的截图
+     *
+     * @param key
+     * @return 未命中或文件已被清理时返回null
+     */
+    public File get(String key) {
+        Cache cache = cacheManager.getCache(Caches.screenshot.name());
+        File file = null == cache ? null : cache.get(key, File.class);
+        return null != file && file.exists() ? file : null;
+    }
+
+    /**
+     * 占用截图任务，同一key同时只有一个任务截图
+     *
+     * @param key
+     * @return 已有任务在截图时返回其结果，否则返回null，由调用方截图后调用 release
+     */
+    public CompletableFuture<File> acquire(String key) {
+        return pending.putIfAbsent(key, new CompletableFuture<>());
+    }
+
+    /**
+     * 写入截图结果并唤醒等待中的任务
+     *
+     * @param key
+     * @param file 截图失败时为null，不写入缓存
+     */
+    public void release(String key, File file) {
+        if (null != file) {
+            Cache cache = cacheManager.getCache(Caches.screenshot.name());
+            if (null != cache) {
+                cache.put(key, file);
+            }
+        }
+        CompletableFuture<File> future = pending.remove(key);
+        if (null != future) {
+            future.complete(file);
+        }
+    }
+
+    /**
+     * widget 查询版本：view sql、变量、view与source的更新时间及查询参数，不执行查询
+     */
+    private String getQueryVersion(Long viewId, ViewExecuteParam executeParam, Map<Long, String> viewVersions) {
+        String viewVersion = viewVersions.computeIfAbsent(viewId, vid -> {
+            View view = viewMapper.getById(vid);
+            if (null == view) {
+                return String.valueOf(vid);
+            }
+            Source source = sourceMapper.getById(view.getSourceId());
+            return String.join(UNDERLINE, String.valueOf(vid), view.getSql(), view.getVariable(), String.valueOf(view.getUpdateTime()),
+                    null == source ? null : String.valueOf(source.getUpdateTime()), null == source ? null : source.getConfig());
+        });
+        return viewVersion + JSON.toJSONString(executeParam);
+    }
+}
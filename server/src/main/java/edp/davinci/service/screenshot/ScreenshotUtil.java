@@ -20,6 +20,7 @@
 package edp.davinci.service.screenshot;
 
 import com.alibaba.druid.util.StringUtils;
+import edp.core.utils.MetricsUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.openqa.selenium.*;
 import org.openqa.selenium.chrome.ChromeDriver;
@@ -27,12 +28,12 @@ import org.openqa.selenium.chrome.ChromeDriverService;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.phantomjs.PhantomJSDriver;
 import org.openqa.selenium.phantomjs.PhantomJSDriverService;
-import org.openqa.selenium.support.ui.ExpectedCondition;
-import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -57,12 +58,49 @@ public class ScreenshotUtil {
     @Value("${screenshot.timeout_second:600}")
     private int timeOutSecond;
 
+    @Value("${screenshot.browser_pool.size:4}")
+    private int browserPoolSize;
+
+    @Value("${screenshot.browser_pool.max_uses:50}")
+    private int browserMaxUses;
+
+    @Value("${screenshot.browser_pool.max_idle_second:600}")
+    private long browserMaxIdleSecond;
+
+    private WebDriverPool webDriverPool;
+
 
     private static final int DEFAULT_SCREENSHOT_WIDTH = 1920;
     private static final int DEFAULT_SCREENSHOT_HEIGHT = 1080;
 
+    private static final long RENDER_POLLING_MILLIS = 200L;
+
+    /**
+     * 分享页渲染完成信号，兼容只输出 headlessBrowserRenderSign 的旧页面
+     */
+    private static final String SCRIPT_RENDER_FINISHED = "return !!(window.__davinciRender__ && window.__davinciRender__.finished)"
+            + " || !!document.getElementById('headlessBrowserRenderSign');";
+
+    private static final String SCRIPT_RENDER_SIGNAL_SUPPORTED = "return !!(window.__davinciRender__ && window.__davinciRender__.finished);";
+
+    private static final String SCRIPT_RENDER_TIMINGS = "return JSON.stringify(window.__davinciRender__.timings);";
+
+    private static final String SCRIPT_WAIT_REPAINT = "var callback = arguments[arguments.length - 1];"
+            + " requestAnimationFrame(function () { requestAnimationFrame(function () { callback(); }); });";
+
     private static final ExecutorService executorService = Executors.newFixedThreadPool(8);
 
+    @PostConstruct
+    public void initWebDriverPool() {
+        webDriverPool = new WebDriverPool(browserPoolSize, browserMaxUses, browserMaxIdleSecond, this::generateWebDriver);
+    }
+
+    @PreDestroy
+    public void closeWebDriverPool() {
+        if (null != webDriverPool) {
+            webDriverPool.close();
+        }
+    }
 
     public void screenshot(long jobId, List<ImageContent> imageContents, Integer imageWidth) {
         log.info("start screenshot for job: {}", jobId);
@@ -71,13 +109,17 @@ public class ScreenshotUtil {
             List<Future> futures = new ArrayList<>(imageContents.size());
             imageContents.forEach(content -> futures.add(executorService.submit(() -> {
                 log.info("thread for screenshot start, type: {}, id: {}", content.getDesc(), content.getCId());
+                long start = System.currentTimeMillis();
+                boolean success = false;
                 try {
                     File image = doScreenshot(content.getUrl(), imageWidth);
                     content.setContent(image);
+                    success = null != image;
                 } catch (Exception e) {
                     log.error("error ScreenshotUtil.screenshot, ", e);
                     e.printStackTrace();
                 } finally {
+                    MetricsUtils.recordScreenshot(DEFAULT_BROWSER, System.currentTimeMillis() - start, success);
                     countDownLatch.countDown();
                     log.info("thread for screenshot finish, type: {}, id: {}", content.getDesc(), content.getCId());
                 }
@@ -102,17 +144,22 @@ public class ScreenshotUtil {
 
 
     private File doScreenshot(String url, Integer imageWidth) throws Exception {
-        WebDriver driver = generateWebDriver(imageWidth);
-        driver.get(url);
-        log.info("getting... {}", url);
+        WebDriverPool.PooledWebDriver pooled = webDriverPool.lease(timeOutSecond, TimeUnit.SECONDS);
+        WebDriver driver = pooled.getDriver();
+        boolean broken = true;
         try {
-            WebDriverWait wait = new WebDriverWait(driver, timeOutSecond);
+            driver.manage().window().setSize(new Dimension(imageWidth != null && imageWidth > 0 ? imageWidth : DEFAULT_SCREENSHOT_WIDTH, DEFAULT_SCREENSHOT_HEIGHT));
+            driver.get(url);
+            log.info("getting... {}", url);
 
-            ExpectedCondition<WebElement> ConditionOfSign = ExpectedConditions.presenceOfElementLocated(By.id("headlessBrowserRenderSign"));
-            ExpectedCondition<WebElement> ConditionOfWidth = ExpectedConditions.presenceOfElementLocated(By.id("width"));
-            ExpectedCondition<WebElement> ConditionOfHeight = ExpectedConditions.presenceOfElementLocated(By.id("height"));
+            long start = System.currentTimeMillis();
+            WebDriverWait wait = new WebDriverWait(driver, timeOutSecond, RENDER_POLLING_MILLIS);
+            wait.until(d -> Boolean.TRUE.equals(((JavascriptExecutor) d).executeScript(SCRIPT_RENDER_FINISHED)));
 
-            wait.until(ExpectedConditions.or(ConditionOfSign, ConditionOfWidth, ConditionOfHeight));
+            JavascriptExecutor executor = (JavascriptExecutor) driver;
+            boolean renderSignalSupported = Boolean.TRUE.equals(executor.executeScript(SCRIPT_RENDER_SIGNAL_SUPPORTED));
+            log.info("{} rendered in {} ms, widget render timings (ms): {}", url, System.currentTimeMillis() - start,
+                    renderSignalSupported ? executor.executeScript(SCRIPT_RENDER_TIMINGS) : "unsupported");
 
             String widthVal = driver.findElement(By.id("width")).getAttribute("value");
             String heightVal = driver.findElement(By.id("height")).getAttribute("value");
@@ -128,18 +175,39 @@ public class ScreenshotUtil {
                 height = Integer.parseInt(heightVal);
             }
             driver.manage().window().setSize(new Dimension(width, height));
-            Thread.sleep(2000);
-            return ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
+            if (renderSignalSupported) {
+                waitForRepaint(executor);
+            } else {
+                Thread.sleep(2000);
+            }
+            File image = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
+            broken = false;
+            return image;
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
-            log.info("finish get {}, webdriver will quit soon", url);
-            driver.quit();
+            log.info("finish get {}, webdriver will be released soon", url);
+            webDriverPool.release(pooled, broken);
         }
         return null;
     }
 
-    private WebDriver generateWebDriver(Integer imageWidth) throws ExecutionException {
+    /**
+     * 窗口尺寸变化后等待页面完成重绘
+     *
+     * @param executor
+     * @throws InterruptedException
+     */
+    private void waitForRepaint(JavascriptExecutor executor) throws InterruptedException {
+        try {
+            executor.executeAsyncScript(SCRIPT_WAIT_REPAINT);
+        } catch (Exception e) {
+            log.warn("wait for repaint error: {}", e.getMessage());
+            Thread.sleep(500);
+        }
+    }
+
+    private WebDriver generateWebDriver() throws ExecutionException {
         WebDriver driver;
         BrowserEnum browserEnum = valueOf(DEFAULT_BROWSER);
         switch (browserEnum) {
@@ -154,9 +222,9 @@ public class ScreenshotUtil {
         }
 
         driver.manage().timeouts().implicitlyWait(3, TimeUnit.MINUTES);
+        driver.manage().timeouts().setScriptTimeout(30, TimeUnit.SECONDS);
         driver.manage().window().maximize();
-        driver.manage().window().setSize(new Dimension(imageWidth != null && imageWidth > 0 ? imageWidth : DEFAULT_SCREENSHOT_WIDTH, DEFAULT_SCREENSHOT_HEIGHT));
-        
+
         return driver;
     }
 
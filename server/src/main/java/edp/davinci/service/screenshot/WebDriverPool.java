@@ -0,0 +1,186 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.davinci.service.screenshot;
+
+import lombok.extern.slf4j.Slf4j;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 无头浏览器池，复用已启动的浏览器会话
+ * <p>
+ * 每个会话使用达到上限、空闲超时或健康检查失败后销毁重建
+ */
+@Slf4j
+public class WebDriverPool {
+
+    private static final String BLANK_PAGE = "about:blank";
+
+    private static final String HTTP_PREFIX = "http";
+
+    private static final String CLEAR_STORAGE_SCRIPT = "localStorage.clear(); sessionStorage.clear();";
+
+    private final int maxUses;
+
+    private final long maxIdleMillis;
+
+    private final WebDriverFactory factory;
+
+    private final Semaphore permits;
+
+    private final LinkedBlockingDeque<PooledWebDriver> idleDrivers = new LinkedBlockingDeque<>();
+
+    private volatile boolean closed = false;
+
+    public WebDriverPool(int size, int maxUses, long maxIdleSeconds, WebDriverFactory factory) {
+        this.maxUses = maxUses;
+        this.maxIdleMillis = TimeUnit.SECONDS.toMillis(maxIdleSeconds);
+        this.factory = factory;
+        this.permits = new Semaphore(Math.max(size, 1), true);
+    }
+
+    /**
+     * 租用一个浏览器会话，使用完毕必须调用 {@link #release(PooledWebDriver, boolean)}
+     *
+     * @param timeout 等待空闲会话的最长时间
+     * @param unit
+     * @return
+     * @throws Exception
+     */
+    public PooledWebDriver lease(long timeout, TimeUnit unit) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("webdriver pool is closed");
+        }
+        if (!permits.tryAcquire(timeout, unit)) {
+            throw new TimeoutException("waiting for webdriver timeout");
+        }
+        try {
+            PooledWebDriver pooled;
+            while ((pooled = idleDrivers.pollFirst()) != null) {
+                if (isExpired(pooled) || !isHealthy(pooled)) {
+                    destroy(pooled);
+                    continue;
+                }
+                return pooled;
+            }
+            return new PooledWebDriver(factory.create());
+        } catch (Exception e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 归还浏览器会话
+     *
+     * @param pooled
+     * @param broken 会话执行出错时销毁，不再复用
+     */
+    public void release(PooledWebDriver pooled, boolean broken) {
+        if (null == pooled) {
+            return;
+        }
+        try {
+            pooled.uses++;
+            pooled.lastUsedTime = System.currentTimeMillis();
+            if (closed || broken || pooled.uses >= maxUses) {
+                destroy(pooled);
+            } else {
+                try {
+                    clearSession(pooled.driver);
+                    pooled.driver.get(BLANK_PAGE);
+                    idleDrivers.offerFirst(pooled);
+                } catch (Exception e) {
+                    log.warn("webdriver session clear error: {}", e.getMessage());
+                    destroy(pooled);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        PooledWebDriver pooled;
+        while ((pooled = idleDrivers.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * 清除当前页面所属站点的 cookie 和 storage，需在离开该页面前执行
+     */
+    private void clearSession(WebDriver driver) {
+        String url = driver.getCurrentUrl();
+        if (null == url || !url.toLowerCase().startsWith(HTTP_PREFIX)) {
+            return;
+        }
+        if (!(driver instanceof JavascriptExecutor)) {
+            throw new IllegalStateException("webdriver can not execute script");
+        }
+        driver.manage().deleteAllCookies();
+        ((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+    }
+
+    private boolean isExpired(PooledWebDriver pooled) {
+        return maxIdleMillis > 0 && System.currentTimeMillis() - pooled.lastUsedTime > maxIdleMillis;
+    }
+
+    private boolean isHealthy(PooledWebDriver pooled) {
+        try {
+            pooled.driver.getWindowHandle();
+            return true;
+        } catch (Exception e) {
+            log.warn("webdriver health check failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void destroy(PooledWebDriver pooled) {
+        try {
+            pooled.driver.quit();
+        } catch (Exception e) {
+            log.warn("webdriver quit error: {}", e.getMessage());
+        }
+    }
+
+    public interface WebDriverFactory {
+        WebDriver create() throws Exception;
+    }
+
+    public static class PooledWebDriver {
+        private final WebDriver driver;
+        private int uses = 0;
+        private long lastUsedTime = System.currentTimeMillis();
+
+        private PooledWebDriver(WebDriver driver) {
+            this.driver = driver;
+        }
+
+        public WebDriver getDriver() {
+            return driver;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.common.quartz;
+
+import org.apache.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+
+public class ScheduleCoordinatorTest {
+
+    private static final String ROOT_PATH = "/davinci/schedule/test";
+
+    private TestingServer server;
+
+    private ScheduleCoordinator nodeA;
+
+    private ScheduleCoordinator nodeB;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new TestingServer(true);
+        nodeA = createNode(server.getConnectString());
+        nodeB = createNode(server.getConnectString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+        server.close();
+    }
+
+    private static ScheduleCoordinator createNode(String zookeeper) {
+        ScheduleCoordinator coordinator = new ScheduleCoordinator();
+        ReflectionTestUtils.setField(coordinator, "zookeeper", zookeeper);
+        ReflectionTestUtils.setField(coordinator, "rootPath", ROOT_PATH);
+        coordinator.init();
+        return coordinator;
+    }
+
+    @Test
+    public void standaloneAlwaysAcquires() {
+        ScheduleCoordinator standalone = new ScheduleCoordinator();
+        standalone.init();
+        assertFalse(standalone.isClusterEnable());
+        assertTrue(standalone.tryAcquire(1L, 1000L));
+        assertTrue(standalone.tryAcquire(1L, 1000L));
+    }
+
+    @Test
+    public void eachFireRunsOnExactlyOneNode() {
+        int ownedByA = 0;
+        for (long jobId = 1; jobId <= 50; jobId++) {
+            boolean a = nodeA.tryAcquire(jobId, 1000L);
+            boolean b = nodeB.tryAcquire(jobId, 1000L);
+            assertTrue("job " + jobId + " must run on exactly one node", a ^ b);
+            if (a) {
+                ownedByA++;
+            }
+        }
+        // rendezvous hash spreads jobs over both nodes
+        assertTrue(ownedByA > 0 && ownedByA < 50);
+    }
+
+    @Test
+    public void ownershipIsStableAcrossFires() {
+        for (long jobId = 1; jobId <= 20; jobId++) {
+            boolean first = nodeA.tryAcquire(jobId, 1000L);
+            assertEquals(first, nodeA.tryAcquire(jobId, 2000L));
+        }
+    }
+
+    @Test
+    public void sameFireIsNotTakenTwice() {
+        long jobId = 1;
+        ScheduleCoordinator owner = nodeA.tryAcquire(jobId, 1000L) ? nodeA : nodeB;
+        assertFalse(owner.tryAcquire(jobId, 1000L));
+        assertTrue(owner.tryAcquire(jobId, 2000L));
+    }
+
+    @Test
+    public void survivingNodeTakesOverJobs() {
+        nodeB.close();
+        for (long jobId = 1; jobId <= 20; jobId++) {
+            assertTrue(nodeA.tryAcquire(jobId, 1000L));
+        }
+    }
+
+    @Test
+    public void removeJobClearsFires() {
+        long jobId = 1;
+        ScheduleCoordinator owner = nodeA.tryAcquire(jobId, 1000L) ? nodeA : nodeB;
+        owner.removeJob(jobId);
+        assertTrue(owner.tryAcquire(jobId, 1000L));
+        nodeA.removeJob(404L);
+    }
+}
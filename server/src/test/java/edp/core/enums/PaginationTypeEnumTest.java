@@ -0,0 +1,88 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.enums;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PaginationTypeEnumTest {
+
+    private static final String SQL = "SELECT a, b FROM t";
+
+    @Test
+    public void paginate() {
+        assertEquals(SQL, PaginationTypeEnum.NONE.paginate(SQL, 20, 11));
+        assertEquals(SQL + " LIMIT 31", PaginationTypeEnum.LIMIT.paginate(SQL, 20, 11));
+        assertEquals(SQL + " LIMIT 20, 11", PaginationTypeEnum.LIMIT_COMMA.paginate(SQL, 20, 11));
+        assertEquals(SQL + " LIMIT 11 OFFSET 20", PaginationTypeEnum.LIMIT_OFFSET.paginate(SQL, 20, 11));
+        assertEquals(SQL + " OFFSET 20 LIMIT 11", PaginationTypeEnum.OFFSET_LIMIT.paginate(SQL, 20, 11));
+        assertEquals(SQL + " OFFSET 20 ROWS FETCH NEXT 11 ROWS ONLY", PaginationTypeEnum.OFFSET_FETCH.paginate(SQL, 20, 11));
+    }
+
+    @Test
+    public void paginateRownum() {
+        String pageSql = PaginationTypeEnum.ROWNUM.paginate(SQL, 20, 11);
+        assertEquals("SELECT * FROM (SELECT PT.*, ROWNUM " + PaginationTypeEnum.ROW_NUMBER_COLUMN + " FROM (" + SQL + ") PT WHERE ROWNUM <= 31) WHERE "
+                + PaginationTypeEnum.ROW_NUMBER_COLUMN + " > 20", pageSql);
+    }
+
+    @Test
+    public void paginateTop() {
+        assertEquals("SELECT TOP 31 a, b FROM t", PaginationTypeEnum.TOP.paginate(SQL, 20, 11));
+        assertEquals("select distinct TOP 31 a FROM t", PaginationTypeEnum.TOP.paginate("select distinct a FROM t", 20, 11));
+        assertEquals("WITH x AS (SELECT 1) SELECT * FROM x", PaginationTypeEnum.TOP.paginate("WITH x AS (SELECT 1) SELECT * FROM x", 20, 11));
+    }
+
+    @Test
+    public void paginateLimitedSql() {
+        String limited = "SELECT a, b FROM t ORDER BY a LIMIT 100";
+        assertEquals("SELECT * FROM (" + limited + ") T LIMIT 31", PaginationTypeEnum.LIMIT.paginate(limited, 20, 11));
+        assertEquals("SELECT * FROM (" + limited + ") T LIMIT 11 OFFSET 20", PaginationTypeEnum.LIMIT_OFFSET.paginate(limited, 20, 11));
+
+        String fetched = "SELECT a FROM t ORDER BY a OFFSET 0 ROWS FETCH NEXT 5 ROWS ONLY";
+        assertEquals("SELECT * FROM (" + fetched + ") T OFFSET 20 ROWS FETCH NEXT 11 ROWS ONLY", PaginationTypeEnum.OFFSET_FETCH.paginate(fetched, 20, 11));
+
+        String top = "SELECT TOP 100 a, b FROM t";
+        assertEquals("SELECT TOP 31 * FROM (" + top + ") T", PaginationTypeEnum.TOP.paginate(top, 20, 11));
+    }
+
+    @Test
+    public void offsetPushdown() {
+        assertFalse(PaginationTypeEnum.NONE.isOffsetPushdown());
+        assertFalse(PaginationTypeEnum.LIMIT.isOffsetPushdown());
+        assertFalse(PaginationTypeEnum.TOP.isOffsetPushdown());
+        assertTrue(PaginationTypeEnum.LIMIT_COMMA.isOffsetPushdown());
+        assertTrue(PaginationTypeEnum.ROWNUM.isOffsetPushdown());
+    }
+
+    @Test
+    public void typeOf() {
+        assertEquals(PaginationTypeEnum.LIMIT, PaginationTypeEnum.typeOf(" limit "));
+        assertEquals(PaginationTypeEnum.OFFSET_FETCH, PaginationTypeEnum.typeOf("OFFSET_FETCH"));
+        assertNull(PaginationTypeEnum.typeOf(""));
+        assertNull(PaginationTypeEnum.typeOf("UNKNOWN"));
+    }
+
+    @Test
+    public void prestoDefaultsToLimitOnly() {
+        assertEquals(PaginationTypeEnum.LIMIT, DataTypeEnum.PRESTO.getPaginationType());
+    }
+}
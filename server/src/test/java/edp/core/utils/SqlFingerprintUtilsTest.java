@@ -0,0 +1,78 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SqlFingerprintUtilsTest {
+
+    @Test
+    public void maskLiterals() {
+        String normalized = SqlFingerprintUtils.normalize("select a from t where b = 'x' and c > 10 and d < 1.5");
+        assertEquals("SELECT a FROM t WHERE b = ? AND c > ? AND d < ?", normalized);
+    }
+
+    @Test
+    public void sameStructureSameFingerprint() {
+        String first = SqlFingerprintUtils.normalize("select a, sum(b) from t where c = 'east' and d in (1, 2, 3) group by a");
+        String second = SqlFingerprintUtils.normalize("select a,  sum(b)\n from t where c = 'west' and d in (4) group by a");
+        assertEquals(first, second);
+        assertEquals(SqlFingerprintUtils.digest(first), SqlFingerprintUtils.digest(second));
+        assertTrue(first.contains("IN (?)"));
+    }
+
+    @Test
+    public void notInListIsKept() {
+        String normalized = SqlFingerprintUtils.normalize("select a from t where b not in ('x', 'y')");
+        assertTrue(normalized.contains("NOT IN (?)"));
+    }
+
+    @Test
+    public void subqueryInIsNotCollapsed() {
+        String normalized = SqlFingerprintUtils.normalize("select a from t where b in (select b from s where c = 1)");
+        assertTrue(normalized.contains("SELECT b FROM s WHERE c = ?"));
+    }
+
+    @Test
+    public void differentStructureDifferentFingerprint() {
+        String first = SqlFingerprintUtils.normalize("select a from t where b = 1");
+        String second = SqlFingerprintUtils.normalize("select a from t where c = 1");
+        assertNotEquals(SqlFingerprintUtils.digest(first), SqlFingerprintUtils.digest(second));
+    }
+
+    @Test
+    public void fallbackToPatternOnUnparsableSql() {
+        String normalized = SqlFingerprintUtils.normalize("SELEC col1, t2.c3 FROM t\n WHERE b = 'it''s' AND c IN (1, -2, 3.5)");
+        assertEquals("SELEC col1, t2.c3 FROM t WHERE b = ? AND c IN (?)", normalized);
+    }
+
+    @Test
+    public void emptySql() {
+        assertNull(SqlFingerprintUtils.normalize(null));
+        assertEquals("", SqlFingerprintUtils.normalize(""));
+    }
+
+    @Test
+    public void digestLength() {
+        assertEquals(16, SqlFingerprintUtils.digest("SELECT a FROM t WHERE b = ?").length());
+    }
+}
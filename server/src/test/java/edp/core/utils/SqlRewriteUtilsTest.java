@@ -0,0 +1,100 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.utils;
+
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class SqlRewriteUtilsTest {
+
+    @Test
+    public void pushdownFilter() throws Exception {
+        String sql = "SELECT id, name, age FROM t_user";
+        String rewritten = SqlRewriteUtils.pushdown(sql, Collections.singletonList("age > 18"), null);
+        assertNotEquals(sql, rewritten);
+        assertTrue(rewritten.contains("WHERE"));
+        assertTrue(rewritten.contains("age > 18"));
+        CCJSqlParserUtil.parse(rewritten);
+    }
+
+    @Test
+    public void pushdownFilterResolvesAlias() {
+        String sql = "SELECT u.id, u.age AS years FROM t_user u";
+        String rewritten = SqlRewriteUtils.pushdown(sql, Collections.singletonList("years > 18"), null);
+        assertTrue(rewritten.contains("u.age > 18"));
+    }
+
+    @Test
+    public void pushdownFilterOnExpressionColumnSkipped() {
+        String sql = "SELECT id, age + 1 AS next_age FROM t_user";
+        assertEquals(sql, SqlRewriteUtils.pushdown(sql, Collections.singletonList("next_age > 18"), null));
+    }
+
+    @Test
+    public void pruneColumns() {
+        String sql = "SELECT id, name, age FROM t_user";
+        assertEquals("SELECT name FROM t_user", SqlRewriteUtils.pushdown(sql, null, new HashSet<>(Collections.singletonList("name"))));
+    }
+
+    @Test
+    public void pruneKeepsFilterColumns() {
+        String sql = "SELECT id, name, age FROM t_user";
+        String rewritten = SqlRewriteUtils.pushdown(sql, Collections.singletonList("age > 18"), new HashSet<>(Collections.singletonList("name")));
+        assertFalse(rewritten.contains("id,"));
+        assertTrue(rewritten.startsWith("SELECT name, age FROM t_user"));
+    }
+
+    @Test
+    public void pruneSkippedWithOrderBy() {
+        String sql = "SELECT id, name, age FROM t_user ORDER BY age";
+        assertEquals(sql, SqlRewriteUtils.pushdown(sql, null, new HashSet<>(Collections.singletonList("name"))));
+    }
+
+    @Test
+    public void complexSelectNotRewritten() {
+        String grouped = "SELECT name, count(1) AS cnt FROM t_user GROUP BY name";
+        assertEquals(grouped, SqlRewriteUtils.pushdown(grouped, Collections.singletonList("name = 'a'"), null));
+
+        String limited = "SELECT id, name FROM t_user LIMIT 10";
+        assertEquals(limited, SqlRewriteUtils.pushdown(limited, Collections.singletonList("id > 1"), null));
+
+        String union = "SELECT id FROM t_a UNION SELECT id FROM t_b";
+        assertEquals(union, SqlRewriteUtils.pushdown(union, Collections.singletonList("id > 1"), null));
+    }
+
+    @Test
+    public void lossySerializationNotRewritten() {
+        String sql = "SELECT id, age FROM t_user /* keep */";
+        assertEquals(sql, SqlRewriteUtils.pushdown(sql, Collections.singletonList("age > 18"), new HashSet<>(Arrays.asList("id", "age"))));
+    }
+
+    @Test
+    public void unparsableNotRewritten() {
+        String sql = "SELECT id FROM t_user WHERE";
+        assertEquals(sql, SqlRewriteUtils.pushdown(sql, Collections.singletonList("id > 1"), null));
+        assertEquals("", SqlRewriteUtils.pushdown("", Collections.singletonList("id > 1"), null));
+    }
+}
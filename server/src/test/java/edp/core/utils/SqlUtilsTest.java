@@ -0,0 +1,58 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.core.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SqlUtilsTest {
+
+    private static Map<String, Object> plan(Object id, Object rows) {
+        Map<String, Object> plan = new HashMap<>();
+        plan.put("id", id);
+        plan.put("rows", rows);
+        return plan;
+    }
+
+    @Test
+    public void multiplyJoinRows() {
+        assertEquals(1000L * 50L, SqlUtils.multiplyPlanRows(Arrays.asList(plan(1, 1000L), plan(1, 50L))).getRows());
+    }
+
+    @Test
+    public void sumAcrossSelects() {
+        assertEquals(1000L * 50L + 20L, SqlUtils.multiplyPlanRows(Arrays.asList(plan(1, 1000L), plan(1, 50L), plan(2, 20L))).getRows());
+    }
+
+    @Test
+    public void ignoreRowsWithoutEstimate() {
+        assertEquals(30L, SqlUtils.multiplyPlanRows(Arrays.asList(plan(1, 30L), plan(null, null))).getRows());
+    }
+
+    @Test
+    public void capOverflow() {
+        assertEquals(Long.MAX_VALUE, SqlUtils.multiplyPlanRows(Arrays.asList(plan(1, Long.MAX_VALUE / 2), plan(1, 3L), plan(2, 1L))).getRows());
+    }
+}
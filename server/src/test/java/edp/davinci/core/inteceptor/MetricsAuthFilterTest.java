@@ -0,0 +1,49 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.core.inteceptor;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.*;
+
+public class MetricsAuthFilterTest {
+
+    private static MetricsAuthFilter filter(String token) {
+        MetricsAuthFilter filter = new MetricsAuthFilter();
+        ReflectionTestUtils.setField(filter, "token", token);
+        return filter;
+    }
+
+    @Test
+    public void rejectWithoutConfiguredToken() {
+        assertFalse(filter("").isAuthorized("Bearer "));
+        assertFalse(filter(null).isAuthorized("Bearer abc"));
+    }
+
+    @Test
+    public void acceptMatchingBearerToken() {
+        MetricsAuthFilter filter = filter("abc");
+        assertTrue(filter.isAuthorized("Bearer abc"));
+        assertFalse(filter.isAuthorized("Bearer abd"));
+        assertFalse(filter.isAuthorized("Basic abc"));
+        assertFalse(filter.isAuthorized(null));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.elastic;
+
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ElasticAggregationEngineTest {
+
+    private static final String GROUP = "region";
+
+    private static final String LABEL = "COUNT(*)";
+
+    private ElasticAggregationEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new ElasticAggregationEngine();
+        ReflectionTestUtils.setField(engine, "maxBuckets", 100);
+    }
+
+    private static Terms.Bucket bucket(String key, long docCount) {
+        Terms.Bucket bucket = mock(Terms.Bucket.class);
+        doReturn(key).when(bucket).getKey();
+        doReturn(key).when(bucket).getKeyAsString();
+        doReturn(docCount).when(bucket).getDocCount();
+        doReturn(mock(Aggregations.class)).when(bucket).getAggregations();
+        return bucket;
+    }
+
+    private static Aggregations terms(Terms.Bucket... buckets) {
+        Terms terms = mock(Terms.class);
+        doReturn(Arrays.asList(buckets)).when(terms).getBuckets();
+        Aggregations aggregations = mock(Aggregations.class);
+        doReturn(terms).when(aggregations).get("g0");
+        return aggregations;
+    }
+
+    private boolean collect(Aggregations aggregations, long totalHits, List<Map<String, Object>> rows) {
+        return (Boolean) ReflectionTestUtils.invokeMethod(engine, "collect", aggregations, totalHits, 0,
+                Collections.singletonList(GROUP), Collections.singletonList(LABEL),
+                Collections.singletonList((AggregationBuilder) null), new LinkedHashMap<String, Object>(), rows);
+    }
+
+    @Test
+    public void collectBuckets() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+
+        assertTrue(collect(terms(bucket("east", 3L), bucket("west", 2L)), 5L, rows));
+
+        assertEquals(2, rows.size());
+        assertEquals("east", rows.get(0).get(GROUP));
+        assertEquals(3L, rows.get(0).get(LABEL));
+        assertEquals("west", rows.get(1).get(GROUP));
+        assertEquals(2L, rows.get(1).get(LABEL));
+    }
+
+    @Test
+    public void fallBackWhenGroupFieldIsMissing() {
+        // 6 条命中中有 1 条缺少分组字段，sql 会返回 NULL 分组
+        List<Map<String, Object>> rows = new ArrayList<>();
+
+        assertFalse(collect(terms(bucket("east", 3L), bucket("west", 2L)), 6L, rows));
+    }
+
+    @Test
+    public void bucketDocCount() {
+        Terms terms = mock(Terms.class);
+        doReturn(Arrays.asList(bucket("east", 3L), bucket("west", 4L))).when(terms).getBuckets();
+
+        assertEquals(7L, ElasticAggregationEngine.bucketDocCount(terms));
+    }
+
+    @Test
+    public void skipNativeQuery() {
+        ViewExecuteParam executeParam = new ViewExecuteParam();
+        executeParam.setGroups(Collections.singletonList(GROUP));
+        executeParam.setNativeQuery(true);
+
+        assertNull(engine.query(null, "SELECT * FROM idx", executeParam, Collections.emptySet()));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.elastic;
+
+import edp.davinci.service.elastic.ElasticQueryTranslator.ElasticView;
+import org.elasticsearch.index.query.*;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ElasticQueryTranslatorTest {
+
+    private static QueryBuilder where(String sql) {
+        ElasticView view = ElasticQueryTranslator.parseView(sql);
+        assertNotNull(view);
+        return view.getWhere();
+    }
+
+    /**
+     * 否定条件需要字段存在，与 sql 中 NULL 不满足否定条件一致
+     */
+    private static QueryBuilder assertNegated(QueryBuilder query, String field) {
+        assertTrue(query instanceof BoolQueryBuilder);
+        BoolQueryBuilder bool = (BoolQueryBuilder) query;
+        assertEquals(1, bool.filter().size());
+        assertTrue(bool.filter().get(0) instanceof ExistsQueryBuilder);
+        assertEquals(field, ((ExistsQueryBuilder) bool.filter().get(0)).fieldName());
+        assertEquals(1, bool.mustNot().size());
+        return bool.mustNot().get(0);
+    }
+
+    @Test
+    public void notEquals() {
+        assertTrue(assertNegated(where("SELECT * FROM idx WHERE region != 'east'"), "region") instanceof TermQueryBuilder);
+        assertTrue(assertNegated(where("SELECT * FROM idx WHERE region <> 'east'"), "region") instanceof TermQueryBuilder);
+    }
+
+    @Test
+    public void notIn() {
+        assertTrue(assertNegated(where("SELECT * FROM idx WHERE region NOT IN ('east', 'west')"), "region") instanceof TermsQueryBuilder);
+    }
+
+    @Test
+    public void notBetween() {
+        assertTrue(assertNegated(where("SELECT * FROM idx WHERE amount NOT BETWEEN 1 AND 10"), "amount") instanceof RangeQueryBuilder);
+    }
+
+    @Test
+    public void notLike() {
+        assertTrue(assertNegated(where("SELECT * FROM idx WHERE region NOT LIKE 'ea%'"), "region") instanceof WildcardQueryBuilder);
+    }
+
+    @Test
+    public void notInFilter() {
+        ElasticView view = ElasticQueryTranslator.parseView("SELECT * FROM idx");
+        String filter = "{\"name\":\"region\",\"type\":\"filter\",\"operator\":\"NOT IN\",\"value\":[\"'east'\"]}";
+
+        BoolQueryBuilder query = ElasticQueryTranslator.translateFilters(Collections.singletonList(filter), view);
+
+        assertNotNull(query);
+        assertEquals(1, query.filter().size());
+        assertTrue(assertNegated(query.filter().get(0), "region") instanceof TermsQueryBuilder);
+    }
+
+    @Test
+    public void isNullMatchesMissingFields() {
+        QueryBuilder query = where("SELECT * FROM idx WHERE region IS NULL");
+
+        assertTrue(query instanceof BoolQueryBuilder);
+        assertTrue(((BoolQueryBuilder) query).filter().isEmpty());
+        assertTrue(((BoolQueryBuilder) query).mustNot().get(0) instanceof ExistsQueryBuilder);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.impl;
+
+import edp.core.model.PaginateWithQueryColumns;
+import edp.core.model.QueryColumn;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MaterializedResultStoreTest {
+
+    private MaterializedResultStore store;
+
+    @Before
+    public void setUp() {
+        store = new MaterializedResultStore();
+        ReflectionTestUtils.setField(store, "enable", true);
+        ReflectionTestUtils.setField(store, "maxCells", 1000L);
+        ReflectionTestUtils.setField(store, "expireMinutes", 10L);
+        store.init();
+    }
+
+    private static PaginateWithQueryColumns result() {
+        PaginateWithQueryColumns paginate = new PaginateWithQueryColumns();
+        paginate.setColumns(Arrays.asList(new QueryColumn("region", "VARCHAR"), new QueryColumn("SUM(amount)", "DOUBLE")));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (String region : new String[]{"east", "west", "north"}) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("region", region);
+            row.put("SUM(amount)", 10D);
+            rows.add(row);
+        }
+        paginate.setResultList(rows);
+        return paginate;
+    }
+
+    @Test
+    public void readerExcludeColumnsAppliedOnRead() {
+        store.put("k", 1L, 7L, result());
+
+        PaginateWithQueryColumns full = store.get("k", -1, -1, Collections.emptySet());
+        assertEquals(2, full.getColumns().size());
+        assertEquals(3, full.getResultList().size());
+
+        PaginateWithQueryColumns restricted = store.get("k", -1, -1, Collections.singleton("SUM(amount)"));
+        assertEquals(1, restricted.getColumns().size());
+        assertFalse(restricted.getResultList().get(0).containsKey("SUM(amount)"));
+        assertEquals("east", restricted.getResultList().get(0).get("region"));
+    }
+
+    @Test
+    public void pageInMemory() {
+        store.put("k", 1L, 7L, result());
+
+        PaginateWithQueryColumns page = store.get("k", 2, 2, null);
+        assertEquals(3L, page.getTotalCount());
+        assertEquals(1, page.getResultList().size());
+        assertEquals("north", page.getResultList().get(0).get("region"));
+        assertFalse(page.isHasNext());
+    }
+
+    @Test
+    public void invalidateJobKeepsSharedEntries() {
+        store.put("a", 1L, 7L, result());
+        store.put("b", 1L, 7L, result());
+        store.put("b", 1L, 8L, result());
+
+        store.invalidateJob(7L);
+        assertNull(store.get("a", -1, -1, null));
+        assertNotNull(store.get("b", -1, -1, null));
+
+        store.invalidateJob(8L);
+        assertNull(store.get("b", -1, -1, null));
+    }
+
+    @Test
+    public void invalidateView() {
+        store.put("a", 1L, 7L, result());
+        store.put("b", 2L, 7L, result());
+
+        store.invalidate(1L);
+        assertNull(store.get("a", -1, -1, null));
+        assertNotNull(store.get("b", -1, -1, null));
+    }
+}
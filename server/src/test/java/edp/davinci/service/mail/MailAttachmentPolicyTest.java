@@ -0,0 +1,149 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+
+package edp.davinci.service.mail;
+
+import edp.core.model.MailAttachment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MailAttachmentPolicyTest {
+
+    private MailAttachmentPolicy policy;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        policy = new MailAttachmentPolicy();
+        dir = Files.createTempDirectory("mail-attachment").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private MailAttachment attachment(String name, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        File file = new File(dir, name);
+        Files.write(file.toPath(), bytes);
+        return new MailAttachment(name, file);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<MailAttachment>> split(List<MailAttachment> files, long maxSize) {
+        return (List<List<MailAttachment>>) ReflectionTestUtils.invokeMethod(policy, "split", files, maxSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<MailAttachment> splitVolumes(MailAttachment attachment, long volumeSize) {
+        return (List<MailAttachment>) ReflectionTestUtils.invokeMethod(policy, "splitVolumes", attachment, volumeSize);
+    }
+
+    @Test
+    public void splitPacksFilesUnderLimit() throws IOException {
+        MailAttachment a = attachment("a.xlsx", 40);
+        MailAttachment b = attachment("b.xlsx", 40);
+        MailAttachment c = attachment("c.xlsx", 40);
+
+        List<List<MailAttachment>> parts = split(Arrays.asList(a, b, c), 100L);
+
+        assertEquals(2, parts.size());
+        assertEquals(Arrays.asList(a, b), parts.get(0));
+        assertEquals(Collections.singletonList(c), parts.get(1));
+    }
+
+    @Test
+    public void splitOversizeFileIntoVolumes() throws IOException {
+        MailAttachment small = attachment("small.xlsx", 10);
+        MailAttachment large = attachment("large.zip", 250);
+
+        List<List<MailAttachment>> parts = split(Arrays.asList(small, large), 100L);
+
+        assertEquals(4, parts.size());
+        assertEquals("large.zip.001", parts.get(0).get(0).getName());
+        assertEquals("large.zip.002", parts.get(1).get(0).getName());
+        assertEquals("large.zip.003", parts.get(2).get(0).getName());
+        assertEquals(Collections.singletonList(small), parts.get(3));
+        for (List<MailAttachment> part : parts) {
+            long size = part.stream().mapToLong(attachment -> attachment.getFile().length()).sum();
+            assertTrue(size <= 100L);
+        }
+    }
+
+    @Test
+    public void splitVolumesKeepsContent() throws IOException {
+        MailAttachment archive = attachment("data.zip", 250);
+
+        List<MailAttachment> volumes = splitVolumes(archive, 100L);
+
+        assertEquals(3, volumes.size());
+        assertEquals(100L, volumes.get(0).getFile().length());
+        assertEquals(100L, volumes.get(1).getFile().length());
+        assertEquals(50L, volumes.get(2).getFile().length());
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (MailAttachment volume : volumes) {
+            joined.write(Files.readAllBytes(volume.getFile().toPath()));
+        }
+        assertArrayEquals(Files.readAllBytes(archive.getFile().toPath()), joined.toByteArray());
+    }
+
+    @Test
+    public void splitVolumesOnExactMultiple() throws IOException {
+        MailAttachment archive = attachment("data.zip", 200);
+
+        List<MailAttachment> volumes = splitVolumes(archive, 100L);
+
+        assertEquals(2, volumes.size());
+        assertFalse(new File(archive.getFile().getAbsolutePath() + ".003").exists());
+    }
+
+    @Test
+    public void applyWithoutLimitSendsOneMail() throws IOException {
+        MailAttachment a = attachment("a.xlsx", 40);
+        MailAttachment b = attachment("b.xlsx", 40);
+
+        MailAttachmentPolicy.AttachmentDelivery delivery = policy.apply(1L, "job", Arrays.asList(a, b));
+
+        assertEquals(1, delivery.getParts().size());
+        assertEquals(Arrays.asList(a, b), delivery.getParts().get(0));
+        assertTrue(delivery.getLinks().isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.davinci.service.olap;
+
+import edp.core.model.ColumnarResult;
+import edp.core.model.QueryColumn;
+import edp.davinci.core.model.SqlFilter;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ColumnarRollupTest {
+
+    private static ColumnarResult data(Object[][] values) {
+        List<QueryColumn> columns = Arrays.asList(new QueryColumn("region", "VARCHAR"),
+                new QueryColumn("city", "VARCHAR"), new QueryColumn("SUM(amount)", "BIGINT"));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object[] value : values) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("region", value[0]);
+            row.put("city", value[1]);
+            row.put("SUM(amount)", value[2]);
+            rows.add(row);
+        }
+        return ColumnarResult.of(columns, rows);
+    }
+
+    private static ColumnarResult rollupByRegion(ColumnarResult data) {
+        boolean[] mask = new boolean[data.getRowCount()];
+        Arrays.fill(mask, true);
+        return ColumnarRollup.rollup(data, mask, new int[]{0}, new int[]{2}, new String[]{ColumnarRollup.SUM},
+                Collections.singletonList("region"), Collections.singletonList("SUM(amount)"));
+    }
+
+    @Test
+    public void rollupSumByGroup() {
+        ColumnarResult rolled = rollupByRegion(data(new Object[][]{
+                {"east", "a", 1L}, {"east", "b", 2L}, {"west", "c", 5L}, {null, "d", 7L}
+        }));
+
+        Map<Object, Object> sums = new HashMap<>();
+        rolled.toRows(0, rolled.getRowCount(), null).forEach(row -> sums.put(row.get("region"), row.get("SUM(amount)")));
+        assertEquals(3, sums.size());
+        assertEquals(3L, sums.get("east"));
+        assertEquals(5L, sums.get("west"));
+        assertEquals(7L, sums.get(null));
+    }
+
+    @Test(expected = ColumnarRollup.Unsupported.class)
+    public void groupValuesDifferingInCase() {
+        // _ci 排序规则下 east 与 East 为同一组
+        rollupByRegion(data(new Object[][]{{"east", "a", 1L}, {"East", "b", 2L}}));
+    }
+
+    @Test(expected = ColumnarRollup.Unsupported.class)
+    public void groupValuesDifferingInTrailingSpaces() {
+        rollupByRegion(data(new Object[][]{{"east", "a", 1L}, {"east  ", "b", 2L}}));
+    }
+
+    @Test
+    public void filteredOutRowsDoNotCollide() {
+        ColumnarResult data = data(new Object[][]{{"east", "a", 1L}, {"East", "b", 2L}});
+        SqlFilter filter = new SqlFilter();
+        filter.setType(SqlFilter.Type.filter);
+        filter.setName("city");
+        filter.setOperator("=");
+        filter.setValue("'a'");
+        Map<String, Integer> columns = new HashMap<>();
+        columns.put("city", 1);
+
+        boolean[] mask = ColumnarRollup.filter(data, Collections.singletonList(filter), columns);
+        ColumnarResult rolled = ColumnarRollup.rollup(data, mask, new int[]{0}, new int[]{2}, new String[]{ColumnarRollup.SUM},
+                Collections.singletonList("region"), Collections.singletonList("SUM(amount)"));
+
+        assertEquals(1, rolled.getRowCount());
+        assertEquals(1L, rolled.getData()[1][0]);
+    }
+
+    @Test(expected = ColumnarRollup.Unsupported.class)
+    public void filterEqualsDependsOnCollation() {
+        ColumnarResult data = data(new Object[][]{{"east", "a ", 1L}});
+        SqlFilter filter = new SqlFilter();
+        filter.setType(SqlFilter.Type.filter);
+        filter.setName("city");
+        filter.setOperator("=");
+        filter.setValue("'a'");
+        ColumnarRollup.filter(data, Collections.singletonList(filter), Collections.singletonMap("city", 1));
+    }
+
+    @Test
+    public void collationKey() {
+        assertEquals(ColumnarRollup.collationKey("Café "), ColumnarRollup.collationKey("cafe"));
+        assertNotEquals(ColumnarRollup.collationKey(" cafe"), ColumnarRollup.collationKey("cafe"));
+    }
+}
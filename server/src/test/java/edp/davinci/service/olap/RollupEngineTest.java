@@ -0,0 +1,115 @@
+/*
+ * <<
+ *  Davinci
+ *  ==
+ *  Copyright (C) 2016 - 2019 EDP
+ *  ==
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *  >>
+ *
+ */
+package edp.davinci.service.olap;
+
+import edp.core.model.PaginateWithQueryColumns;
+import edp.core.model.QueryColumn;
+import edp.davinci.dto.viewDto.Aggregator;
+import edp.davinci.dto.viewDto.ViewExecuteParam;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RollupEngineTest {
+
+    private static final String VIEW_SQL = "select * from sales";
+
+    private RollupEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new RollupEngine();
+        ReflectionTestUtils.setField(engine, "enable", true);
+        ReflectionTestUtils.setField(engine, "maxCells", 10000L);
+        ReflectionTestUtils.setField(engine, "maxRows", 1000);
+        ReflectionTestUtils.setField(engine, "maxCandidates", 8);
+        ReflectionTestUtils.setField(engine, "expireSeconds", 300L);
+        ReflectionTestUtils.setField(engine, "resultLimit", 100000);
+        engine.init();
+    }
+
+    private static ViewExecuteParam param(String... groups) {
+        ViewExecuteParam executeParam = new ViewExecuteParam();
+        executeParam.setGroups(new ArrayList<>(Arrays.asList(groups)));
+        executeParam.setAggregators(Collections.singletonList(new Aggregator("amount", "sum")));
+        return executeParam;
+    }
+
+    private void registerFine() {
+        PaginateWithQueryColumns paginate = new PaginateWithQueryColumns();
+        paginate.setColumns(Arrays.asList(new QueryColumn("region", "VARCHAR"), new QueryColumn("city", "VARCHAR"),
+                new QueryColumn("sum(amount)", "BIGINT")));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Object[][] values = {{"east", "a", 1L}, {"east", "b", 2L}, {"west", "c", 5L}};
+        for (Object[] value : values) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("region", value[0]);
+            row.put("city", value[1]);
+            row.put("sum(amount)", value[2]);
+            rows.add(row);
+        }
+        paginate.setResultList(rows);
+        engine.register(1L, VIEW_SQL, param("region", "city"), paginate);
+    }
+
+    @Test
+    public void answerCoarserGroups() {
+        registerFine();
+
+        PaginateWithQueryColumns paginate = engine.query(1L, VIEW_SQL, param("region"), Collections.emptySet());
+
+        assertNotNull(paginate);
+        assertEquals(2L, paginate.getTotalCount());
+        Map<Object, Object> sums = new HashMap<>();
+        paginate.getResultList().forEach(row -> sums.put(row.get("region"), row.get("sum(amount)")));
+        assertEquals(3L, sums.get("east"));
+        assertEquals(5L, sums.get("west"));
+    }
+
+    @Test
+    public void flushBypassesCandidates() {
+        registerFine();
+        ViewExecuteParam executeParam = param("region");
+        executeParam.setFlush(true);
+
+        assertNull(engine.query(1L, VIEW_SQL, executeParam, Collections.emptySet()));
+    }
+
+    @Test
+    public void invalidateDropsViewCandidates() {
+        registerFine();
+
+        engine.invalidate(2L);
+        assertNotNull(engine.query(1L, VIEW_SQL, param("region"), Collections.emptySet()));
+
+        engine.invalidate(1L);
+        assertNull(engine.query(1L, VIEW_SQL, param("region"), Collections.emptySet()));
+    }
+
+    @Test
+    public void groupNotInCandidate() {
+        registerFine();
+
+        assertNull(engine.query(1L, VIEW_SQL, param("country"), Collections.emptySet()));
+    }
+}
@@ -0,0 +1,29 @@
+interface IRenderSignal {
+  finished: boolean
+  timings: { [itemId: string]: number }
+}
+
+declare global {
+  interface Window {
+    __davinciRender__?: IRenderSignal
+  }
+}
+
+// polled by the server side headless browser to detect render completion
+function getRenderSignal (): IRenderSignal {
+  if (!window.__davinciRender__) {
+    window.__davinciRender__ = { finished: false, timings: {} }
+  }
+  return window.__davinciRender__
+}
+
+export function markItemRendered (itemId: number | string) {
+  const { timings } = getRenderSignal()
+  if (timings[itemId] === void 0) {
+    timings[itemId] = Math.round(performance.now())
+  }
+}
+
+export function markRenderFinished () {
+  getRenderSignal().finished = true
+}
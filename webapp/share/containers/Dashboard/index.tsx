@@ -43,6 +43,7 @@ import GlobalControlPanel from 'app/components/Filters/FilterPanel'
 import DownloadList from 'app/components/DownloadList'
 import {getValidColumnValue} from 'app/components/Filters/util'
 import HeadlessBrowserIdentifier from '../../components/HeadlessBrowserIdentifier'
+import { markItemRendered, markRenderFinished } from '../../components/HeadlessBrowserIdentifier/renderSignal'
 
 import { RenderType, IWidgetConfig, IWidgetProps } from 'app/containers/Widget/components/Widget'
 import { ViewActions } from 'app/containers/View/actions'
@@ -273,15 +274,16 @@ export class Share extends React.Component<IDashboardProps, IDashboardStates> {
       }
     }
     if (currentItemsInfo) {
-      const initialedItems = Object.values(currentItemsInfo)
-        .filter((info) => [DashboardItemStatus.Fulfilled, DashboardItemStatus.Error].includes(info.status))
-      if (initialedItems.length === currentItems.length) {
-        // FIXME
+      const initialedItems = Object.entries(currentItemsInfo)
+        .filter(([_, info]) => [DashboardItemStatus.Fulfilled, DashboardItemStatus.Error].includes(info.status))
+      initialedItems.forEach(([itemId]) => markItemRendered(itemId))
+      if (initialedItems.length === currentItems.length && !this.state.headlessBrowserRenderSign) {
+        // wait for chart animations
         setTimeout(() => {
           this.setState({
             headlessBrowserRenderSign: true
-          })
-        }, 5000)
+          }, markRenderFinished)
+        }, 1000)
       }
     }
     // if (dashboard && !this.props.dashboard) {
@@ -38,6 +38,7 @@ import LayerItem from 'app/containers/Display/components/LayerItem'
 import { RenderType, IWidgetConfig } from 'app/containers/Widget/components/Widget'
 import { decodeMetricName } from 'app/containers/Widget/components/util'
 import HeadlessBrowserIdentifier from '../../components/HeadlessBrowserIdentifier'
+import { markItemRendered, markRenderFinished } from '../../components/HeadlessBrowserIdentifier/renderSignal'
 
 const mainStyles = require('app/containers/Main/Main.less')
 const styles = require('app/containers/Display/Display.less')
@@ -150,12 +151,14 @@ export class Display extends React.Component<IDisplayProps, IDisplayStates> {
           return widgetLayers.find((layer) => layer.id === Number(key))
             && [DashboardItemStatus.Fulfilled, DashboardItemStatus.Error].includes(info.status)
         })
-      if (initialedItems.length === widgetLayers.length) {
+      initialedItems.forEach(([layerId]) => markItemRendered(layerId))
+      if (initialedItems.length === widgetLayers.length && !this.state.headlessBrowserRenderSign) {
+        // wait for chart animations
         setTimeout(() => {
           this.setState({
             headlessBrowserRenderSign: true
-          })
-        }, 5000)
+          }, markRenderFinished)
+        }, 1000)
       }
     }
   }